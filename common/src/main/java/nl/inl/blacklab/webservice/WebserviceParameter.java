@@ -42,6 +42,7 @@ public enum WebserviceParameter {
     SORT_BY("sort"),  // sorting (grouped) hits/docs
     FIRST_RESULT("first"), // results window
     NUMBER_OF_RESULTS("number"), // results window
+    CURSOR("cursor"), // results window (unsorted hits after a cursor, instead of first)
     WORDS_AROUND_HIT("wordsaroundhit"), // KWIC / concordances
     CREATE_CONCORDANCES_FROM("usecontent"), // create concs from forward index or original content (content store)?
     OMIT_EMPTY_CAPTURES("omitemptycaptures"),  // omit capture groups of length 0? (false)
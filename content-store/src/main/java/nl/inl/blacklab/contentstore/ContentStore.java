@@ -1,5 +1,8 @@
 package nl.inl.blacklab.contentstore;
 
+import java.io.Reader;
+import java.io.StringReader;
+
 public interface ContentStore {
     /**
      * Retrieve a document from the content store.
@@ -12,6 +15,20 @@ public interface ContentStore {
         return rv == null ? null : rv[0];
     }
 
+    /**
+     * Retrieve a document from the content store as a stream.
+     *
+     * Useful for large documents, so they don't have to be kept in memory all at once.
+     * The default implementation just retrieves the entire document.
+     *
+     * @param id document id
+     * @return stream of the original content, or null if not found
+     */
+    default Reader retrieveReader(int id) {
+        String content = retrieve(id);
+        return content == null ? null : new StringReader(content);
+    }
+
     /**
      * Retrieve one or more substrings from the specified content.
      * This is more efficient than retrieving the whole content, or retrieving parts
@@ -1,5 +1,8 @@
 package nl.inl.blacklab.contentstore;
 
+import java.io.Reader;
+import java.io.StringReader;
+
 import net.jcip.annotations.NotThreadSafe;
 
 /**
@@ -29,6 +32,22 @@ public interface ContentStoreSegmentReader {
      */
     String getValue(int docId, String luceneField);
 
+    /**
+     * Get a stream of the entire field value.
+     *
+     * Useful for large values, so they don't have to be kept in memory all at once.
+     * The default implementation just retrieves the entire value.
+     *
+     * The stream uses this segment reader, so it must be consumed by the same thread.
+     *
+     * @param docId document id
+     * @param luceneField field to get
+     * @return stream of the field value
+     */
+    default Reader getValueReader(int docId, String luceneField) {
+        return new StringReader(getValue(docId, luceneField));
+    }
+
     /**
      * Get part of the field value.
      *
@@ -1,5 +1,7 @@
 package nl.inl.blacklab.search;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.text.Collator;
 import java.util.Arrays;
 import java.util.Collection;
@@ -20,8 +22,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCache;
+import nl.inl.blacklab.codec.TokensIndexCache;
 import nl.inl.blacklab.forwardindex.AnnotationForwardIndex;
+import nl.inl.blacklab.forwardindex.AnnotationForwardIndexIntegrated;
 import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.forwardindex.TermsIntegratedCache;
 import nl.inl.blacklab.index.annotated.AnnotationSensitivities;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedFieldNameUtil;
@@ -147,6 +153,44 @@ public class TestIndexFormats {
         }
     }
 
+    @Test
+    public void testTokensIndexCache() {
+        if (!(wordFi instanceof AnnotationForwardIndexIntegrated))
+            return; // only applies to integrated index
+        long maxBytesBefore = TokensIndexCache.getMaxBytes();
+        TokensIndexCache.setMaxBytes(1_000_000);
+        try {
+            Assert.assertTrue(((AnnotationForwardIndexIntegrated) wordFi).cacheTokensIndex());
+            Assert.assertTrue(((AnnotationForwardIndexIntegrated) posFi).cacheTokensIndex());
+            testDocLength();
+            testRetrieve();
+        } finally {
+            TokensIndexCache.setMaxBytes(maxBytesBefore);
+        }
+    }
+
+    @Test
+    public void testUnloadTerms() {
+        if (!(wordFi instanceof AnnotationForwardIndexIntegrated))
+            return; // only applies to integrated index
+        long maxBytesBefore = TermsIntegratedCache.getMaxBytes();
+        TermsIntegratedCache.setMaxBytes(1); // only the most recently loaded terms fit
+        try {
+            ((AnnotationForwardIndexIntegrated) posFi).unloadTerms();
+            Terms wordTermsBefore = wordFi.terms();
+            posFi.terms(); // loading these should unload the word terms
+            Terms wordTermsAfter = wordFi.terms();
+            Assert.assertNotSame(wordTermsBefore, wordTermsAfter);
+
+            // Reloaded terms should be identical
+            int docId = testIndex.getDocIdForDocNumber(0);
+            Assert.assertEquals("fox", wordTermsAfter.get(getToken(wordFi, docId, 3)));
+            Assert.assertEquals(wordTermsBefore.indexOf("fox"), wordTermsAfter.indexOf("fox"));
+        } finally {
+            TermsIntegratedCache.setMaxBytes(maxBytesBefore);
+        }
+    }
+
     /** if token offset out of range, throw an exception */
     @Test(expected = IllegalArgumentException.class)
     public void testRetrieveOutOfRange() {
@@ -222,4 +266,38 @@ public class TestIndexFormats {
         }
     }
 
+    @Test
+    public void testContentStoreReader() throws IOException {
+        AnnotatedField fieldsContents = index.mainAnnotatedField();
+        ContentAccessor ca = index.contentAccessor(fieldsContents);
+        for (int i = 0; i < TestIndex.TEST_DATA.length; i++) {
+            int docId = testIndex.getDocIdForDocNumber(i);
+            Document document = index.luceneDoc(docId);
+            StringBuilder contents = new StringBuilder();
+            try (Reader reader = ca.getDocumentReader(docId, document)) {
+                char[] buffer = new char[7]; // small, so we need several reads
+                int n;
+                while ((n = reader.read(buffer)) >= 0)
+                    contents.append(buffer, 0, n);
+            }
+            Assert.assertEquals(TestIndex.TEST_DATA[i], contents.toString());
+        }
+    }
+
+    @Test
+    public void testContentStoreBlockCache() {
+        if (testIndex.indexFormat() != BlackLabIndex.IndexType.INTEGRATED)
+            return; // only applies to integrated index
+        long maxBytesBefore = ContentStoreBlockCache.getMaxBytes();
+        ContentStoreBlockCache.setMaxBytes(1_000_000);
+        try {
+            testContentStoreRetrieve(); // fills the cache
+            long hitsBefore = (long) ContentStoreBlockCache.getInfo().get("hits");
+            testContentStoreRetrieve(); // should be served from the cache, with identical results
+            Assert.assertTrue((long) ContentStoreBlockCache.getInfo().get("hits") > hitsBefore);
+        } finally {
+            ContentStoreBlockCache.setMaxBytes(maxBytesBefore);
+        }
+    }
+
 }
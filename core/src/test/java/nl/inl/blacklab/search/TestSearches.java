@@ -18,6 +18,8 @@ import org.junit.runners.Parameterized;
 
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.resultproperty.HitPropertyHitPosition;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
 import nl.inl.blacklab.resultproperty.HitPropertyLeftContext;
 import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
@@ -196,6 +198,21 @@ public class TestSearches {
         Assert.assertEquals(expected, testIndex.findConc(" 'fo[xr].*' "));
     }
 
+    @Test
+    public void testStringRegexesTermDisjunction() {
+        // Make sure even small term disjunctions are resolved by reading and sorting all positions
+        int minTermsBefore = BlackLab.config().getSearch().getTermDisjunctionMinTerms();
+        BlackLab.config().getSearch().setTermDisjunctionMinTerms(1);
+        try {
+            testStringRegexes();
+            testTags();
+            testNfa4();
+            testOnlyRepetition();
+        } finally {
+            BlackLab.config().getSearch().setTermDisjunctionMinTerms(minTermsBefore);
+        }
+    }
+
     @Test
     public void testUniq() {
         expected = List.of(
@@ -408,6 +425,48 @@ public class TestSearches {
         Assert.assertEquals(expected, testIndex.findConc("(c:'NOTININDEX')? a:[] 'aap' b:[] :: c -> a.word = b.word", sortBy));
     }
 
+    @Test
+    public void testSortWithSortKeys() {
+        // Make sure even small numbers of hits are sorted using sort keys and a parallel sort
+        int minHitsBefore = BlackLab.config().getSearch().getParallelSortMinHits();
+        BlackLab.config().getSearch().setParallelSortMinHits(1);
+        try {
+            testSort();
+            testSortReverse();
+        } finally {
+            BlackLab.config().getSearch().setParallelSortMinHits(minHitsBefore);
+        }
+    }
+
+    @Test
+    public void testSortTop() {
+        // Sort by hit text and left context, using doc id and position to make the order unique
+        BlackLabIndex index = testIndex.index();
+        HitProperty sortBy = new HitPropertyMultiple(new HitPropertyHitText(index, MatchSensitivity.INSENSITIVE),
+                new HitPropertyLeftContext(index, MatchSensitivity.INSENSITIVE),
+                new HitPropertyDocumentId(), new HitPropertyHitPosition());
+        Hits hits = testIndex.find(" [] ");
+
+        // Use small batches, so we select the first hits in several steps
+        int minBatchSizeBefore = BlackLab.config().getSearch().getSortTopMinBatchSize();
+        BlackLab.config().getSearch().setSortTopMinBatchSize(1);
+        try {
+            // (these properties have sort keys, so the first hits are selected using those)
+            for (HitProperty prop: List.of(sortBy, sortBy.reverse())) {
+                Hits sorted = hits.sort(prop);
+                for (int number: List.of(1, 3, 10, (int) hits.size() + 1)) {
+                    Hits top = hits.sortTop(prop, number);
+                    Assert.assertEquals(Math.min(number, hits.size()), top.size());
+                    for (int i = 0; i < top.size(); i++)
+                        Assert.assertEquals(sorted.get(i), top.get(i));
+                    Assert.assertEquals(hits.hitsStats().countedTotal(), top.hitsStats().countedTotal());
+                }
+            }
+        } finally {
+            BlackLab.config().getSearch().setSortTopMinBatchSize(minBatchSizeBefore);
+        }
+    }
+
     @Test
     public void testFilter() {
         expected = List.of(
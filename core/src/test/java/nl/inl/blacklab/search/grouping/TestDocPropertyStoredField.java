@@ -0,0 +1,157 @@
+package nl.inl.blacklab.search.grouping;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.DocGroups;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.Facets;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.blacklab.testutil.TestIndex;
+import nl.inl.util.GlobalOrdinals;
+
+@RunWith(Parameterized.class)
+public class TestDocPropertyStoredField {
+
+    @Parameterized.Parameters(name = "index type {0}")
+    public static Collection<TestIndex> typeToUse() {
+        return TestIndex.typesForTests();
+    }
+
+    @Parameterized.Parameter
+    public TestIndex testIndex;
+
+    private BlackLabIndex index;
+
+    @Before
+    public void setUp() {
+        index = testIndex.index();
+    }
+
+    @Test
+    public void testOrdinalsMatchStoredValues() {
+        GlobalOrdinals ordinals = new DocPropertyStoredField(index, "title").ordinals();
+        Assert.assertNotNull(ordinals);
+        Assert.assertFalse(ordinals.isMultiValued());
+        for (int docId = 0; docId < index.reader().maxDoc(); docId++) {
+            if (index.luceneDoc(docId).get("title") == null) // e.g. index metadata document
+                continue;
+            Assert.assertArrayEquals(index.luceneDoc(docId).getValues("title"), ordinals.values(docId));
+        }
+    }
+
+    @Test
+    public void testOrdinalsAreBuiltWhenNeeded() {
+        // (start with an empty cache)
+        long maxBytesBefore = GlobalOrdinals.getMaxBytes();
+        GlobalOrdinals.setMaxBytes(100_000_000);
+        try {
+            DocPropertyStoredField prop = new DocPropertyStoredField(index, "title");
+            DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+            docs.sort(prop);
+            docs.group(prop, Results.NO_LIMIT);
+            for (int docId = 0; docId < index.reader().maxDoc(); docId++) {
+                if (index.luceneDoc(docId).get("title") == null) // e.g. index metadata document
+                    continue;
+                Assert.assertArrayEquals(index.luceneDoc(docId).getValues("title"), prop.get(docId));
+            }
+            // Sorting and grouping a few documents doesn't need them...
+            Assert.assertEquals(0L, GlobalOrdinals.getInfo().get("timesBuilt"));
+
+            // ...but sort and group keys do, and they're accounted for
+            Assert.assertTrue(prop.hasSortKeys());
+            Assert.assertEquals(1L, GlobalOrdinals.getInfo().get("timesBuilt"));
+            Assert.assertTrue((long) GlobalOrdinals.getInfo().get("sizeBytes") > 0);
+        } finally {
+            GlobalOrdinals.setMaxBytes(maxBytesBefore);
+        }
+    }
+
+    @Test
+    public void testGroupHitsByTitle() {
+        Hits hits = testIndex.find(" 'the' ");
+        HitProperty p = new HitPropertyDocumentStoredField(index, "title");
+        HitGroups groups = hits.group(p, Results.NO_LIMIT);
+
+        // Group using group keys as well, and check the results are the same
+        int minHitsBefore = BlackLab.config().getSearch().getParallelGroupingMinHits();
+        BlackLab.config().getSearch().setParallelGroupingMinHits(1);
+        HitGroups groupsKeys;
+        try {
+            groupsKeys = hits.group(p, Results.NO_LIMIT);
+        } finally {
+            BlackLab.config().getSearch().setParallelGroupingMinHits(minHitsBefore);
+        }
+
+        for (HitGroups g: List.of(groups, groupsKeys)) {
+            Assert.assertEquals(3, g.size());
+            Assert.assertEquals(2, g.get(new PropertyValueString("Pangram")).size());
+            Assert.assertEquals(1, g.get(new PropertyValueString("Star Wars")).size());
+            Assert.assertEquals(1, g.get(new PropertyValueString("Bastardized Shakespeare")).size());
+        }
+    }
+
+    @Test
+    public void testGroupAndSortDocsByTitle() {
+        DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+        DocPropertyStoredField prop = new DocPropertyStoredField(index, "title");
+
+        DocGroups groups = docs.group(prop, Results.NO_LIMIT);
+        Assert.assertEquals(3, groups.size());
+        Assert.assertEquals(1, groups.get(new PropertyValueString("Pangram")).size());
+
+        List<String> sorted = docs.sort(prop).stream()
+                .map(prop::getFirstValue)
+                .collect(Collectors.toList());
+        Assert.assertEquals(List.of("Bastardized Shakespeare", "Pangram", "Star Wars"), sorted);
+        List<String> sortedReverse = docs.sort(prop.reverse()).stream()
+                .map(prop::getFirstValue)
+                .collect(Collectors.toList());
+        Assert.assertEquals(List.of("Star Wars", "Pangram", "Bastardized Shakespeare"), sortedReverse);
+    }
+
+    @Test
+    public void testFacets() {
+        DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+        DocProperty title = new DocPropertyStoredField(index, "title");
+        DocProperty pid = new DocPropertyStoredField(index, "pid");
+        // (count even these few documents using global ordinals)
+        int minHitsBefore = BlackLab.config().getSearch().getParallelGroupingMinHits();
+        BlackLab.config().getSearch().setParallelGroupingMinHits(1);
+        Facets facets;
+        try {
+            facets = new Facets(docs, List.of(title, pid));
+        } finally {
+            BlackLab.config().getSearch().setParallelGroupingMinHits(minHitsBefore);
+        }
+
+        // Counting facets together should give the same results as grouping
+        for (DocProperty facet: List.of(title, pid)) {
+            DocGroups expected = docs.group(facet, 0);
+            DocGroups actual = facets.countsPerFacet().get(facet);
+            Assert.assertEquals(expected.size(), actual.size());
+            expected.forEach(group -> {
+                Assert.assertEquals(group.size(), actual.get(group.identity()).size());
+                Assert.assertEquals(group.totalTokens(), actual.get(group.identity()).totalTokens());
+            });
+            Assert.assertTrue(facets.timingsPerFacet().containsKey(facet));
+        }
+        Assert.assertEquals(1, facets.countsPerFacet().get(pid).get(new PropertyValueString("2")).size());
+    }
+}
@@ -15,6 +15,7 @@ import nl.inl.blacklab.resultproperty.HitPropertyContextWords;
 import nl.inl.blacklab.resultproperty.HitPropertyHitText;
 import nl.inl.blacklab.resultproperty.PropertyValueContext;
 import nl.inl.blacklab.resultproperty.PropertyValueContextWords;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
@@ -65,6 +66,18 @@ public class TestHitProperties {
         Assert.assertEquals(1, group.size());
     }
 
+    @Test
+    public void testHitPropHitTextGroupKeys() {
+        // Make sure even small numbers of hits are grouped using group keys
+        int minHitsBefore = BlackLab.config().getSearch().getParallelGroupingMinHits();
+        BlackLab.config().getSearch().setParallelGroupingMinHits(1);
+        try {
+            testHitPropHitText();
+        } finally {
+            BlackLab.config().getSearch().setParallelGroupingMinHits(minHitsBefore);
+        }
+    }
+
     @Test
     public void testHitPropContextWords() {
         Hits hits = testIndex.find(" 'the' ");
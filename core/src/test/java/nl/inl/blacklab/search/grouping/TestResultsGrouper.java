@@ -10,6 +10,7 @@ import nl.inl.blacklab.mocks.MockBlackLabIndex;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
 import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.HitGroups;
 import nl.inl.blacklab.search.results.Hits;
@@ -46,4 +47,40 @@ public class TestResultsGrouper {
         PropertyValueInt three = new PropertyValueInt(3);
         Assert.assertEquals(1, grouper.get(three).size());
     }
+
+    @Test
+    public void testGrouperPartitioned() {
+        MockBlackLabIndex index = new MockBlackLabIndex();
+
+        IndexSearcher indexSearcher = Mockito.mock(IndexSearcher.class);
+        Mockito.when(indexSearcher.getSimilarity()).thenReturn(new BM25Similarity());
+
+        index.setIndexSearcher(indexSearcher);
+        Hits hits = Hits.list(QueryInfo.create(index), doc, start, end);
+        HitProperty crit = new HitPropertyDocumentId();
+
+        // Make sure groups are spread over several partitions that have to be merged
+        int minHitsBefore = BlackLab.config().getSearch().getParallelGroupingMinHits();
+        int partitionSizeBefore = BlackLab.config().getSearch().getGroupingPartitionSize();
+        BlackLab.config().getSearch().setParallelGroupingMinHits(1);
+        BlackLab.config().getSearch().setGroupingPartitionSize(2);
+        try {
+            HitGroups grouper = hits.group(crit, 2);
+            Assert.assertEquals(3, grouper.size());
+            HitGroup group1 = grouper.get(new PropertyValueInt(1));
+            Assert.assertEquals(3, group1.size());
+            Assert.assertEquals(2, group1.storedResults().size());
+            Assert.assertEquals(1, group1.storedResults().get(0).start());
+            Assert.assertEquals(3, group1.storedResults().get(1).start());
+            HitGroup group2 = grouper.get(new PropertyValueInt(2));
+            Assert.assertEquals(2, group2.size());
+            Assert.assertEquals(2, group2.storedResults().get(0).start());
+            Assert.assertEquals(5, group2.storedResults().get(1).start());
+            Assert.assertEquals(1, grouper.get(new PropertyValueInt(3)).size());
+            Assert.assertEquals(3, grouper.largestGroupSize());
+        } finally {
+            BlackLab.config().getSearch().setParallelGroupingMinHits(minHitsBefore);
+            BlackLab.config().getSearch().setGroupingPartitionSize(partitionSizeBefore);
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package nl.inl.blacklab.search.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TestFacetCounter {
+
+    private static final int VALUE_COUNT = 1000;
+
+    /** Get the counts as a map from ordinal to [docs, tokens] */
+    private static Map<Integer, String> toMap(FacetCounter.Counts counts) {
+        Map<Integer, String> result = new TreeMap<>();
+        counts.forEach((ord, numberOfDocs, numberOfTokens) -> result.put(ord, numberOfDocs + "/" + numberOfTokens));
+        return result;
+    }
+
+    @Test
+    public void testSparseSameAsDense() {
+        FacetCounter.Counts dense = new FacetCounter.Counts(VALUE_COUNT, VALUE_COUNT);
+        FacetCounter.Counts sparse = new FacetCounter.Counts(VALUE_COUNT, 10);
+        assertNotNull(dense.docs);
+        assertNull(sparse.docs);
+
+        Random random = new Random(12345);
+        for (int i = 0; i < 10; i++) {
+            int ord = random.nextInt(VALUE_COUNT + 1); // (VALUE_COUNT means: no value)
+            int length = random.nextInt(100);
+            dense.count(ord, 1, length);
+            sparse.count(ord, 1, length);
+        }
+        Map<Integer, String> expected = toMap(dense);
+        assertEquals(expected, toMap(sparse));
+
+        // Merging partitions works, whichever way they were counted
+        FacetCounter.Counts denseTotal = new FacetCounter.Counts(VALUE_COUNT, VALUE_COUNT);
+        denseTotal.add(dense);
+        denseTotal.add(sparse);
+        FacetCounter.Counts sparseTotal = new FacetCounter.Counts(VALUE_COUNT, 10);
+        sparseTotal.add(sparse);
+        sparseTotal.add(dense);
+        Map<Integer, String> expectedTotal = toMap(denseTotal);
+        assertEquals(expected.size(), expectedTotal.size());
+        assertEquals(expectedTotal, toMap(sparseTotal));
+    }
+
+}
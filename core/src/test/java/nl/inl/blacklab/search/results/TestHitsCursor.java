@@ -0,0 +1,102 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.Span;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.testutil.TestIndex;
+
+@RunWith(Parameterized.class)
+public class TestHitsCursor {
+
+    @Parameterized.Parameters(name = "index type {0}")
+    public static Collection<TestIndex> typeToUse() {
+        return TestIndex.typesForTests();
+    }
+
+    @Parameterized.Parameter
+    public TestIndex testIndex;
+
+    private static final Comparator<Hit> INDEX_ORDER = Comparator.comparingInt(Hit::doc)
+            .thenComparingInt(Hit::start).thenComparingInt(Hit::end);
+
+    private BLSpanQuery query(String pattern) throws InvalidQuery {
+        return CorpusQueryLanguageParser.parse(pattern).toQuery(QueryInfo.create(testIndex.index()));
+    }
+
+    /** Page through all hits using cursors, passing each cursor along in serialized form. */
+    private List<Hit> pageThrough(String pattern, int pageSize) throws InvalidQuery {
+        BlackLabIndex index = testIndex.index();
+        List<Hit> result = new ArrayList<>();
+        HitsCursor cursor = HitsCursor.START;
+        while (cursor != null) {
+            Hits page = Hits.fromSpanQueryAfter(QueryInfo.create(index), query(pattern), index.searchSettings(),
+                    cursor, pageSize);
+            Assert.assertTrue(page.size() <= pageSize);
+            page.forEach(result::add);
+            cursor = HitsCursor.next(index, page, pageSize);
+            if (cursor != null)
+                cursor = HitsCursor.deserialize(cursor.serialize());
+        }
+        return result;
+    }
+
+    /** All hits in index order (hits from different segments may be merged in any order) */
+    private List<Hit> allHits(String pattern) {
+        List<Hit> hits = new ArrayList<>();
+        testIndex.find(pattern).forEach(hits::add);
+        hits.sort(INDEX_ORDER);
+        return hits;
+    }
+
+    private void assertSameAsAllHits(String pattern) throws InvalidQuery {
+        List<Hit> expected = allHits(pattern);
+        for (int pageSize: List.of(1, 2, 3, 100)) {
+            List<Hit> actual = pageThrough(pattern, pageSize);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testPages() throws InvalidQuery {
+        assertSameAsAllHits(" 'the' ");
+        assertSameAsAllHits(" [] ");
+        assertSameAsAllHits(" 'noot' ");
+    }
+
+    @Test
+    public void testCapturedGroups() throws InvalidQuery {
+        BlackLabIndex index = testIndex.index();
+        // (get the expected hits from the same Hits object, so their captured groups have been read)
+        Hits all = testIndex.find("A:'the' []");
+        List<Hit> sorted = new ArrayList<>();
+        all.forEach(sorted::add);
+        sorted.sort(INDEX_ORDER);
+        Hits page = Hits.fromSpanQueryAfter(QueryInfo.create(index), query("A:'the' []"), index.searchSettings(),
+                HitsCursor.after(index, sorted.get(0)), 1);
+        Assert.assertEquals(1, page.size());
+        Hit hit = page.get(0);
+        Assert.assertEquals(sorted.get(1), hit);
+        Assert.assertEquals(all.capturedGroups().names(), page.capturedGroups().names());
+        Span expected = all.capturedGroups().get(sorted.get(1), false)[0];
+        Span actual = page.capturedGroups().get(hit, false)[0];
+        Assert.assertEquals(expected.start(), actual.start());
+        Assert.assertEquals(expected.end(), actual.end());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() {
+        HitsCursor.deserialize("not a cursor");
+    }
+}
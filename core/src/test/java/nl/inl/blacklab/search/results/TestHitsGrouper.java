@@ -0,0 +1,58 @@
+package nl.inl.blacklab.search.results;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.mocks.MockBlackLabIndex;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
+import nl.inl.blacklab.search.BlackLab;
+
+public class TestHitsGrouper {
+    final int[] doc   = { 1, 2, 1, 3, 2, 1 };
+    final int[] start = { 1, 2, 3, 4, 5, 6 };
+    final int[] end   = { 7, 8, 9, 10, 11, 12 };
+
+    private HitProperty groupByDocId() {
+        MockBlackLabIndex index = new MockBlackLabIndex();
+        IndexSearcher indexSearcher = Mockito.mock(IndexSearcher.class);
+        Mockito.when(indexSearcher.getSimilarity()).thenReturn(new BM25Similarity());
+        index.setIndexSearcher(indexSearcher);
+        Hits hits = Hits.list(QueryInfo.create(index), doc, start, end);
+        return new HitPropertyDocumentId().copyWith(hits);
+    }
+
+    private void assertTooManyGroups(int partitionSize) {
+        int partitionSizeBefore = BlackLab.config().getSearch().getGroupingPartitionSize();
+        BlackLab.config().getSearch().setGroupingPartitionSize(partitionSize);
+        try {
+            HitsGrouper.group(doc.length, groupByDocId(), -1, 2);
+            Assert.fail("Expected too many groups error");
+        } catch (BlackLabRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("more than 2 groups"));
+        } finally {
+            BlackLab.config().getSearch().setGroupingPartitionSize(partitionSizeBefore);
+        }
+    }
+
+    @Test
+    public void testMaxNumberOfGroupsInPartition() {
+        // All hits in one partition, which has too many groups
+        assertTooManyGroups(100);
+    }
+
+    @Test
+    public void testMaxNumberOfGroupsWhenMerging() {
+        // Each partition has at most 2 groups, but merging them produces too many
+        assertTooManyGroups(2);
+    }
+
+    @Test
+    public void testMaxNumberOfGroupsNotExceeded() {
+        Assert.assertEquals(3, HitsGrouper.group(doc.length, groupByDocId(), -1, 3).size());
+    }
+}
@@ -0,0 +1,134 @@
+package nl.inl.blacklab.search.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+public class TestHitsInternalConcurrent {
+
+    @Test
+    public void testAddAndGet() {
+        HitsInternalMutable hits = HitsInternal.createConcurrent();
+        // Enough hits to span several chunks of different sizes
+        int n = 10_000;
+        for (int i = 0; i < n; i++)
+            hits.add(i, i + 1, i + 2);
+        assertEquals(n, hits.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, hits.doc(i));
+            assertEquals(i + 1, hits.start(i));
+            assertEquals(i + 2, hits.end(i));
+        }
+        int i = 0;
+        for (EphemeralHit h: hits) {
+            assertEquals(i, h.doc);
+            i++;
+        }
+        assertEquals(n, i);
+        assertThrows(IndexOutOfBoundsException.class, () -> hits.doc(n));
+
+        hits.clear();
+        assertEquals(0, hits.size());
+    }
+
+    @Test
+    public void testConcurrentAddAll() throws InterruptedException, ExecutionException {
+        int numberOfThreads = 8;
+        int batchesPerThread = 200;
+        int batchSize = 123;
+        HitsInternalMutable hits = HitsInternal.createConcurrent();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    HitsInternalMutable batch = HitsInternal.create(batchSize, false, false);
+                    for (int b = 0; b < batchesPerThread; b++) {
+                        // doc = thread, start = batch, end = position in batch
+                        for (int i = 0; i < batchSize; i++)
+                            batch.add(thread, b, i);
+                        hits.addAll(batch);
+                        batch.clear();
+                    }
+                }));
+            }
+            for (Future<?> f: futures)
+                f.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals((long) numberOfThreads * batchesPerThread * batchSize, hits.size());
+
+        // Each batch must be contiguous, and each thread's batches must be in order
+        int[] nextBatch = new int[numberOfThreads];
+        for (long i = 0; i < hits.size(); i += batchSize) {
+            int thread = hits.doc(i);
+            int batch = hits.start(i);
+            assertEquals(nextBatch[thread], batch);
+            nextBatch[thread]++;
+            for (int j = 0; j < batchSize; j++) {
+                assertEquals(thread, hits.doc(i + j));
+                assertEquals(batch, hits.start(i + j));
+                assertEquals(j, hits.end(i + j));
+            }
+        }
+        for (int b: nextBatch)
+            assertTrue(b == batchesPerThread);
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailedAddAllDoesntBlockWritersOrExposeHits() throws InterruptedException, ExecutionException, TimeoutException {
+        HitsInternalMutable hits = HitsInternal.createConcurrent();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Future<?>> otherWriter = new ArrayList<>();
+            HitsInternalMutable failing = new HitsInternalNoLock32() {
+                @Override
+                public HitsInternal.Iterator iterator() {
+                    // Another writer reserves a range after ours and waits for us to publish...
+                    otherWriter.add(executor.submit(() -> hits.add(4, 5, 6)));
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    // ...but we fail before writing our range
+                    throw new IllegalStateException("test");
+                }
+            };
+            failing.add(1, 2, 3);
+            assertThrows(IllegalStateException.class, () -> hits.addAll(failing));
+
+            // Writers after the failed one must not wait for it forever
+            try {
+                otherWriter.get(0).get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // (it may also notice that adding hits failed)
+                assertTrue(e.getCause() instanceof BlackLabRuntimeException);
+            }
+
+            // The unwritten hit must never be visible
+            assertThrows(BlackLabRuntimeException.class, hits::size);
+            assertThrows(BlackLabRuntimeException.class, () -> hits.doc(0));
+            assertThrows(BlackLabRuntimeException.class, () -> hits.iterator().hasNext());
+            assertThrows(BlackLabRuntimeException.class, () -> hits.add(7, 8, 9));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nl.inl.blacklab.search.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.inl.blacklab.search.Span;
+
+public class TestRamBytesUsed {
+
+    private static void testGrows(HitsInternalMutable hits) {
+        long empty = hits.ramBytesUsed();
+        assertTrue(empty > 0);
+        int n = 10_000;
+        for (int i = 0; i < n; i++)
+            hits.add(i, i + 1, i + 2);
+        // At least 3 ints per hit
+        assertTrue(hits.ramBytesUsed() >= empty + 3L * Integer.BYTES * n);
+    }
+
+    @Test
+    public void testHitsInternal() {
+        testGrows(HitsInternal.create(-1, false, false));
+        testGrows(HitsInternal.create(-1, false, true));
+        testGrows(HitsInternal.create(-1, true, false));
+        testGrows(HitsInternal.create(-1, true, true));
+        testGrows(HitsInternal.createConcurrent());
+    }
+
+    @Test
+    public void testCapturedGroups() {
+        CapturedGroupsImpl capturedGroups = new CapturedGroupsImpl(List.of("a", "b"));
+        long empty = capturedGroups.ramBytesUsed();
+        Hit hit = new HitImpl(1, 2, 3);
+        capturedGroups.put(hit, new Span[] { new Span(2, 3), new Span(2, 2) });
+        long oneHit = capturedGroups.ramBytesUsed();
+        assertTrue(oneHit > empty);
+
+        // Replacing the groups for a hit shouldn't change the size
+        capturedGroups.put(hit, new Span[] { new Span(2, 2), new Span(3, 3) });
+        assertEquals(oneHit, capturedGroups.ramBytesUsed());
+    }
+}
@@ -0,0 +1,118 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.blacklab.testutil.TestIndex;
+
+@RunWith(Parameterized.class)
+public class TestSearchResultCodec {
+
+    @Parameterized.Parameters(name = "index type {0}")
+    public static Collection<TestIndex> typeToUse() {
+        return TestIndex.typesForTests();
+    }
+
+    @Parameterized.Parameter
+    public TestIndex testIndex;
+
+    private static SearchResult roundTrip(SearchResult result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Assert.assertTrue(SearchResultCodec.encode(result, out));
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        SearchResult decoded = SearchResultCodec.decode(((Results<?, ?>) result).queryInfo(), in);
+        Assert.assertFalse(in.hasRemaining());
+        return decoded;
+    }
+
+    private static void assertSameHits(Hits expected, Hits actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            Assert.assertEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    public void testHitGroups() throws IOException {
+        Hits hits = testIndex.find(" 'the' ");
+        HitGroups groups = hits.group(new HitPropertyDocumentStoredField(testIndex.index(), "title"), Results.NO_LIMIT);
+        HitGroups decoded = (HitGroups) roundTrip(groups);
+
+        Assert.assertEquals(groups.groupCriteria(), decoded.groupCriteria());
+        Assert.assertEquals(groups.hitsStats().countedTotal(), decoded.hitsStats().countedTotal());
+        Assert.assertEquals(groups.docsStats().countedTotal(), decoded.docsStats().countedTotal());
+        Assert.assertEquals(groups.size(), decoded.size());
+        for (int i = 0; i < groups.size(); i++) {
+            HitGroup group = groups.get(i);
+            HitGroup decodedGroup = decoded.get(i);
+            Assert.assertEquals(group.identity(), decodedGroup.identity());
+            Assert.assertEquals(group.size(), decodedGroup.size());
+            assertSameHits(group.storedResults(), decodedGroup.storedResults());
+        }
+    }
+
+    @Test
+    public void testHitGroupsWithoutResults() throws IOException {
+        QueryInfo queryInfo = QueryInfo.create(testIndex.index());
+        List<HitGroup> list = List.of(
+                new HitGroupWithoutResults(queryInfo, new PropertyValueString("a"), 10, 3, false, false),
+                new HitGroupWithoutResults(queryInfo, new PropertyValueString("b"), 5, 1, false, false));
+        ResultsStats stats = new ResultsStatsStatic(15, 15, MaxStats.NOT_EXCEEDED);
+        HitGroups groups = HitGroups.fromList(queryInfo, list,
+                new HitPropertyDocumentStoredField(testIndex.index(), "title"), null, null, stats, stats);
+        HitGroups decoded = (HitGroups) roundTrip(groups);
+
+        Assert.assertEquals(2, decoded.size());
+        HitGroup a = decoded.get(new PropertyValueString("a"));
+        Assert.assertTrue(a instanceof HitGroupWithoutResults);
+        Assert.assertEquals(10, a.size());
+        Assert.assertEquals(3, a.storedResults().docsStats().countedTotal());
+    }
+
+    @Test
+    public void testDocGroups() throws IOException {
+        DocResults docs = testIndex.find(" 'the' ").perDocResults(Results.NO_LIMIT);
+        DocGroups groups = docs.group(new DocPropertyStoredField(testIndex.index(), "title"), Results.NO_LIMIT);
+        DocGroups decoded = (DocGroups) roundTrip(groups);
+
+        Assert.assertEquals(groups.groupCriteria(), decoded.groupCriteria());
+        Assert.assertEquals(groups.size(), decoded.size());
+        for (int i = 0; i < groups.size(); i++) {
+            DocGroup group = groups.get(i);
+            DocGroup decodedGroup = decoded.get(i);
+            Assert.assertEquals(group.identity(), decodedGroup.identity());
+            Assert.assertEquals(group.size(), decodedGroup.size());
+            Assert.assertEquals(group.totalTokens(), decodedGroup.totalTokens());
+            Assert.assertEquals(group.storedResults().size(), decodedGroup.storedResults().size());
+            for (int j = 0; j < group.storedResults().size(); j++) {
+                DocResult doc = group.storedResults().get(j);
+                DocResult decodedDoc = decodedGroup.storedResults().get(j);
+                Assert.assertEquals(doc.docId(), decodedDoc.docId());
+                Assert.assertEquals(doc.size(), decodedDoc.size());
+                assertSameHits(doc.storedResults(), decodedDoc.storedResults());
+            }
+        }
+    }
+
+    @Test
+    public void testWindowNotEncoded() {
+        Hits hits = testIndex.find(" 'the' ");
+        HitGroups groups = hits.group(new HitPropertyDocumentStoredField(testIndex.index(), "title"), Results.NO_LIMIT);
+        Assert.assertTrue(SearchResultCodec.canEncode(groups));
+        Assert.assertFalse(SearchResultCodec.canEncode(groups.window(0, 1)));
+        Assert.assertFalse(SearchResultCodec.canEncode(hits));
+    }
+}
@@ -0,0 +1,117 @@
+package nl.inl.blacklab.search.results;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestTokenGroupCounts {
+
+    @Test
+    public void testAdd() {
+        TokenGroupCounts counts = new TokenGroupCounts(2);
+        counts.startDocument();
+        counts.add(new int[] { 0, 10, 20 }, new int[] { 1, 2 }, 1);
+        counts.add(new int[] { 0, 10, 20 }, new int[] { 3, 4 }, 1); // same group, different term ids
+        counts.add(new int[] { 1, 10, 20 }, new int[] { 1, 2 }, 1); // different metadata
+        counts.startDocument();
+        counts.add(new int[] { 0, 10, 20 }, new int[] { 1, 2 }, 5);
+
+        assertEquals(2, counts.size());
+        assertEquals(0, counts.metadataId(0));
+        assertEquals(7, counts.hits(0));
+        assertEquals(2, counts.docs(0));
+        assertEquals(1, counts.termId(0, 0)); // first term ids we saw
+        assertEquals(2, counts.termId(0, 1));
+        assertEquals(1, counts.metadataId(1));
+        assertEquals(1, counts.hits(1));
+        assertEquals(1, counts.docs(1));
+    }
+
+    @Test
+    public void testGrow() {
+        // Add more groups than the initial capacity, and check that we can still find all of them
+        TokenGroupCounts counts = new TokenGroupCounts(1);
+        counts.startDocument();
+        int numberOfGroups = 5000;
+        for (int i = 0; i < numberOfGroups; i++)
+            counts.add(new int[] { 0, i }, new int[] { i }, 1);
+        for (int i = 0; i < numberOfGroups; i++)
+            counts.add(new int[] { 0, i }, new int[] { -1 }, i);
+
+        assertEquals(numberOfGroups, counts.size());
+        for (int i = 0; i < numberOfGroups; i++) {
+            assertEquals(i, counts.termId(i, 0));
+            assertEquals(i + 1, counts.hits(i));
+            assertEquals(1, counts.docs(i));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        TokenGroupCounts a = new TokenGroupCounts(1);
+        a.startDocument();
+        a.add(new int[] { 0, 1 }, new int[] { 1 }, 2);
+        a.add(new int[] { 0, 2 }, new int[] { 2 }, 1);
+        TokenGroupCounts b = new TokenGroupCounts(1);
+        b.startDocument();
+        b.add(new int[] { 0, 1 }, new int[] { 1 }, 3);
+        b.startDocument();
+        b.add(new int[] { 0, 1 }, new int[] { 1 }, 1);
+        b.add(new int[] { 0, 3 }, new int[] { 3 }, 1);
+
+        TokenGroupCounts merged = a.merge(b);
+        // Counting a new document after merging should increment the document counts
+        merged.startDocument();
+        merged.add(new int[] { 0, 1 }, new int[] { 1 }, 1);
+
+        assertEquals(3, merged.size());
+        Map<Integer, Integer> groupPerTerm = new HashMap<>();
+        for (int i = 0; i < merged.size(); i++)
+            groupPerTerm.put(merged.termId(i, 0), i);
+        int group1 = groupPerTerm.get(1);
+        assertEquals(7, merged.hits(group1));
+        assertEquals(4, merged.docs(group1));
+        assertEquals(1, merged.hits(groupPerTerm.get(2)));
+        assertEquals(1, merged.docs(groupPerTerm.get(3)));
+    }
+
+    @Test
+    public void testGrowAndMerge() {
+        // Count the same random tokens into one instance, and spread over two instances that we merge
+        Random random = new Random(123);
+        TokenGroupCounts single = new TokenGroupCounts(1);
+        List<TokenGroupCounts> parts = List.of(new TokenGroupCounts(1), new TokenGroupCounts(1));
+        Map<Integer, Long> expectedHits = new HashMap<>();
+        int[] key = new int[2];
+        int[] termIds = new int[1];
+        for (int doc = 0; doc < 100; doc++) {
+            TokenGroupCounts part = parts.get(doc % 2);
+            single.startDocument();
+            part.startDocument();
+            for (int token = 0; token < 1000; token++) {
+                key[1] = termIds[0] = random.nextInt(10_000); // more than the initial capacity
+                single.add(key, termIds, 1);
+                part.add(key, termIds, 1);
+                expectedHits.merge(key[1], 1L, Long::sum);
+            }
+        }
+        TokenGroupCounts merged = parts.get(0).merge(parts.get(1));
+
+        assertEquals(expectedHits.size(), single.size());
+        assertEquals(expectedHits.size(), merged.size());
+        Map<Integer, Integer> docsPerTerm = new HashMap<>();
+        for (int i = 0; i < single.size(); i++) {
+            assertEquals((long) expectedHits.get(single.termId(i, 0)), single.hits(i));
+            docsPerTerm.put(single.termId(i, 0), single.docs(i));
+        }
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals((long) expectedHits.get(merged.termId(i, 0)), merged.hits(i));
+            assertEquals((int) docsPerTerm.get(merged.termId(i, 0)), merged.docs(i));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package nl.inl.blacklab.tools.frequency;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.testutil.TestIndex;
+import nl.inl.util.UtilsForTesting;
+
+/**
+ * Check that the per-segment frequency lists are the same as the regular ones.
+ */
+public class TestCalcTokenFrequenciesPerSegment {
+
+    private static ConfigFreqList freqList(List<String> annotations, List<String> metadataFields) {
+        ConfigFreqList freqList = new ConfigFreqList();
+        freqList.setAnnotations(annotations);
+        freqList.setMetadataFields(metadataFields);
+        return freqList;
+    }
+
+    /** Make the frequency lists and return the lines of each output file, sorted */
+    private static List<List<String>> frequencyLists(Config config) throws IOException {
+        BlackLabIndex index = TestIndex.getReusable(BlackLabIndex.IndexType.INTEGRATED).index();
+        try (UtilsForTesting.TestDir dir = UtilsForTesting.createBlackLabTestDir("TestCalcTokenFrequencies")) {
+            FrequencyTool.makeFrequencyLists(index, config, dir.file(), false);
+            List<List<String>> result = new ArrayList<>();
+            for (ConfigFreqList freqList: config.getFrequencyLists()) {
+                File file = new File(dir.file(), freqList.getReportName() + ".tsv");
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                Collections.sort(lines);
+                result.add(lines);
+            }
+            return result;
+        }
+    }
+
+    private static Config config(boolean perSegment, int groupsPerChunk) {
+        Config config = new Config();
+        config.setAnnotatedField("contents");
+        config.setFrequencyLists(List.of(
+                freqList(List.of("word"), List.of()),
+                freqList(List.of("lemma", "pos"), List.of()),
+                freqList(List.of("word"), List.of("title")),
+                freqList(List.of("lemma"), List.of("pid", "title"))
+        ));
+        config.setPerSegment(perSegment);
+        config.setGroupsPerChunk(groupsPerChunk);
+        return config;
+    }
+
+    @Test
+    public void testSameAsRegular() throws IOException {
+        List<List<String>> expected = frequencyLists(config(false, 10_000_000));
+        Assert.assertFalse(expected.get(2).isEmpty());
+        Assert.assertEquals(expected, frequencyLists(config(true, 10_000_000)));
+    }
+
+    @Test
+    public void testSameAsRegularWithManyRuns() throws IOException {
+        // A tiny memory budget, so each segment writes a run after every document
+        List<List<String>> expected = frequencyLists(config(false, 10_000_000));
+        Assert.assertEquals(expected, frequencyLists(config(true, 1)));
+    }
+
+}
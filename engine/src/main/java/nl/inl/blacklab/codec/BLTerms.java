@@ -1,6 +1,7 @@
 package nl.inl.blacklab.codec;
 
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
@@ -23,11 +24,12 @@ public class BLTerms extends Terms implements TermsSegmentReader {
     /** The Lucene terms object we're wrapping */
     private final Terms terms;
 
-    /** The global terms object, which we use to implement get() and termsEqual() */
-    private nl.inl.blacklab.forwardindex.Terms termsIntegrated;
+    /** Gives us the global terms object, which we use to implement get() and termsEqual().
+     *  (a supplier because the global terms are loaded on demand, and may be unloaded again) */
+    private volatile Supplier<nl.inl.blacklab.forwardindex.Terms> termsIntegrated;
 
     /** Our segment number */
-    private int ord;
+    private volatile int ord;
 
     public BLTerms(Terms terms, BlackLab40PostingsReader fieldsProducer) {
         this.terms = terms;
@@ -109,18 +111,20 @@ public class BLTerms extends Terms implements TermsSegmentReader {
 
     @Override
     public String get(int id) {
-        return termsIntegrated.get(termsIntegrated.segmentIdToGlobalId(ord, id));
+        nl.inl.blacklab.forwardindex.Terms terms = termsIntegrated.get();
+        return terms.get(terms.segmentIdToGlobalId(ord, id));
     }
 
     @Override
     public boolean termsEqual(int[] termIds, MatchSensitivity sensitivity) {
-        int[] globalTermIds = termsIntegrated.segmentIdsToGlobalIds(ord, termIds);
-        return termsIntegrated.termsEqual(globalTermIds, sensitivity);
+        nl.inl.blacklab.forwardindex.Terms terms = termsIntegrated.get();
+        int[] globalTermIds = terms.segmentIdsToGlobalIds(ord, termIds);
+        return terms.termsEqual(globalTermIds, sensitivity);
     }
 
-    public void setTermsIntegrated(nl.inl.blacklab.forwardindex.Terms termsIntegrated, int ord) {
-        this.termsIntegrated = termsIntegrated;
+    public void setTermsIntegrated(Supplier<nl.inl.blacklab.forwardindex.Terms> termsIntegrated, int ord) {
         this.ord = ord;
+        this.termsIntegrated = termsIntegrated;
     }
 
 }
@@ -0,0 +1,92 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.DataOutput;
+
+/**
+ * Reads and writes unsigned integers of an arbitrary bit width (1-32), packed together.
+ *
+ * Value i occupies bits [i * bitsPerValue, (i + 1) * bitsPerValue), most significant
+ * bit first. Because every value has the same width, any range of values can be
+ * decoded without looking at the values before it.
+ */
+class BitPackedInts {
+
+    /** Extra bytes the decode buffer needs after the packed bytes (so we can always read a full long). */
+    public static final int DECODE_PADDING = Long.BYTES;
+
+    private BitPackedInts() {
+    }
+
+    /**
+     * How many bits do we need to store values from 0 up to and including max?
+     *
+     * @param max maximum (unsigned) value
+     * @return number of bits needed
+     */
+    public static int bitsRequired(int max) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+    }
+
+    /**
+     * How many bytes do we need to store this many values?
+     *
+     * @param numberOfValues number of values
+     * @param bitsPerValue bits per value
+     * @return number of bytes needed
+     */
+    public static long bytesRequired(long numberOfValues, int bitsPerValue) {
+        return (numberOfValues * bitsPerValue + 7) / 8;
+    }
+
+    /**
+     * Write values, each minus base, packed into the given bit width.
+     *
+     * @param out where to write
+     * @param values values to write
+     * @param base value to subtract from each value (so they're all non-negative)
+     * @param bitsPerValue bits per value
+     * @throws IOException on write error
+     */
+    public static void write(DataOutput out, int[] values, int base, int bitsPerValue) throws IOException {
+        long buffer = 0; // bits not yet written, right-aligned
+        int bitsInBuffer = 0;
+        for (int value: values) {
+            buffer = (buffer << bitsPerValue) | ((value - base) & 0xFFFFFFFFL);
+            bitsInBuffer += bitsPerValue;
+            while (bitsInBuffer >= 8) {
+                bitsInBuffer -= 8;
+                out.writeByte((byte) (buffer >>> bitsInBuffer));
+            }
+        }
+        if (bitsInBuffer > 0)
+            out.writeByte((byte) (buffer << (8 - bitsInBuffer)));
+    }
+
+    /**
+     * Decode a range of packed values.
+     *
+     * The packed bytes must start at the byte containing the first value's first bit,
+     * and the buffer must contain {@link #DECODE_PADDING} bytes after the last packed byte
+     * (their contents don't matter).
+     *
+     * @param src packed bytes
+     * @param firstBit bit offset of the first value in src (0-7)
+     * @param bitsPerValue bits per value
+     * @param base value to add to each decoded value
+     * @param dest where to store the decoded values
+     * @param n number of values to decode
+     */
+    public static void decode(byte[] src, int firstBit, int bitsPerValue, int base, int[] dest, int n) {
+        long mask = (1L << bitsPerValue) - 1;
+        long bitPos = firstBit;
+        for (int i = 0; i < n; i++, bitPos += bitsPerValue) {
+            int p = (int) (bitPos >>> 3);
+            long word = ((src[p] & 0xFFL) << 56) | ((src[p + 1] & 0xFFL) << 48) | ((src[p + 2] & 0xFFL) << 40)
+                    | ((src[p + 3] & 0xFFL) << 32) | ((src[p + 4] & 0xFFL) << 24) | ((src[p + 5] & 0xFFL) << 16)
+                    | ((src[p + 6] & 0xFFL) << 8) | (src[p + 7] & 0xFFL);
+            dest[i] = base + (int) ((word >>> (64 - (bitPos & 7) - bitsPerValue)) & mask);
+        }
+    }
+}
@@ -162,6 +162,23 @@ public class BlackLab40PostingsReader extends FieldsProducer {
         }
     }
 
+    /** @return number of documents in this segment (including deleted ones) */
+    int numberOfDocs() {
+        return state.segmentInfo.maxDoc();
+    }
+
+    /**
+     * Keep the forward index's tokens index for this field in memory, if the cache size limit allows it.
+     *
+     * Speeds up retrieving snippets and document lengths. See {@link TokensIndexCache}.
+     *
+     * @param luceneField field to cache the tokens index for
+     * @return true if the tokens index for this field is cached, false if it wouldn't fit
+     */
+    public boolean cacheForwardIndexTokensIndex(String luceneField) {
+        return forwardIndex.cacheTokensIndex(luceneField);
+    }
+
     /**
      * Create a forward index reader for this segment.
      *
@@ -443,33 +443,45 @@ public class BlackLab40PostingsWriter extends FieldsConsumer {
      * @throws IOException       When failing to write
      */
     private void writeTokensInDoc(IndexOutput outTokensIndexFile, IndexOutput outTokensFile, int[] tokensInDoc) throws IOException {
+        // Gather the statistics we need to choose an encoding
         int max = 0, min = 0;
-        boolean allTheSame = tokensInDoc.length > 0; // if no tokens, then not all the same.
-        int last = -1;
-        for (int token: tokensInDoc) {
+        int bitPackedMin = tokensInDoc.length == 0 ? 0 : Integer.MAX_VALUE; // actual lowest value (min is at most 0)
+        int numberOfRuns = 0;
+        for (int i = 0; i < tokensInDoc.length; i++) {
+            int token = tokensInDoc[i];
             max = Math.max(max, token);
             min = Math.min(min, token);
-            allTheSame = allTheSame && (last == -1 || last == token);
-            last = token;
-            if ((min < Short.MIN_VALUE || max > Short.MAX_VALUE) && !allTheSame) // stop if already at worst case (int per token + not all the same).
-                break;
+            bitPackedMin = Math.min(bitPackedMin, token);
+            if (i == 0 || token != tokensInDoc[i - 1])
+                numberOfRuns++;
         }
-
-        // determine codec
-        TokensCodec tokensCodec = allTheSame ? TokensCodec.ALL_TOKENS_THE_SAME : TokensCodec.VALUE_PER_TOKEN;
-
-        // determine parameter byte for codec.
-        byte tokensCodecParameter = 0;
-        switch (tokensCodec) {
-            case ALL_TOKENS_THE_SAME: tokensCodecParameter = 0; break;
-            case VALUE_PER_TOKEN: {
-                if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) tokensCodecParameter = VALUE_PER_TOKEN_PARAMETER.BYTE.code;
-                else if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) tokensCodecParameter = VALUE_PER_TOKEN_PARAMETER.SHORT.code;
-                else if (min >= ThreeByteInt.MIN_VALUE && max <= ThreeByteInt.MAX_VALUE) tokensCodecParameter = VALUE_PER_TOKEN_PARAMETER.THREE_BYTES.code;
-                else tokensCodecParameter = VALUE_PER_TOKEN_PARAMETER.INT.code;
-                break;
-            }
-            default: throw new NotImplementedException("Parameter byte determination for tokens codec " + tokensCodec + " not implemented.");
+        boolean allTheSame = numberOfRuns == 1; // if no tokens, then not all the same.
+
+        // Determine the smallest encoding.
+        // VALUE_PER_TOKEN is the fastest to decode, so we prefer it if there's a tie.
+        TokensCodec tokensCodec;
+        byte tokensCodecParameter;
+        int bitsPerToken = BitPackedInts.bitsRequired(max - bitPackedMin);
+        VALUE_PER_TOKEN_PARAMETER valuePerTokenParameter;
+        if (min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE) valuePerTokenParameter = VALUE_PER_TOKEN_PARAMETER.BYTE;
+        else if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) valuePerTokenParameter = VALUE_PER_TOKEN_PARAMETER.SHORT;
+        else if (min >= ThreeByteInt.MIN_VALUE && max <= ThreeByteInt.MAX_VALUE) valuePerTokenParameter = VALUE_PER_TOKEN_PARAMETER.THREE_BYTES;
+        else valuePerTokenParameter = VALUE_PER_TOKEN_PARAMETER.INT;
+        long valuePerTokenSize = (long) tokensInDoc.length * valuePerTokenParameter.getBytesPerToken();
+        long bitPackedSize = Integer.BYTES + BitPackedInts.bytesRequired(tokensInDoc.length, bitsPerToken);
+        long runLengthSize = Integer.BYTES + (long) numberOfRuns * 2 * Integer.BYTES;
+        if (allTheSame) {
+            tokensCodec = TokensCodec.ALL_TOKENS_THE_SAME;
+            tokensCodecParameter = 0;
+        } else if (runLengthSize < valuePerTokenSize && runLengthSize < bitPackedSize) {
+            tokensCodec = TokensCodec.RUN_LENGTH;
+            tokensCodecParameter = 0;
+        } else if (bitPackedSize < valuePerTokenSize) {
+            tokensCodec = TokensCodec.BIT_PACKED;
+            tokensCodecParameter = (byte) bitsPerToken;
+        } else {
+            tokensCodec = TokensCodec.VALUE_PER_TOKEN;
+            tokensCodecParameter = valuePerTokenParameter.code;
         }
 
         // Write offset in the tokens file, doc length in tokens and tokens codec used
@@ -485,7 +497,7 @@ public class BlackLab40PostingsWriter extends FieldsConsumer {
         // Write the tokens
         switch (tokensCodec) {
         case VALUE_PER_TOKEN: 
-            switch (VALUE_PER_TOKEN_PARAMETER.fromCode(tokensCodecParameter)) {
+            switch (valuePerTokenParameter) {
                 case BYTE: 
                     for (int token: tokensInDoc) {
                         outTokensFile.writeByte((byte) token);
@@ -512,6 +524,19 @@ public class BlackLab40PostingsWriter extends FieldsConsumer {
         case ALL_TOKENS_THE_SAME:
             outTokensFile.writeInt(tokensInDoc[0]);
             break;
+        case BIT_PACKED:
+            outTokensFile.writeInt(bitPackedMin);
+            BitPackedInts.write(outTokensFile, tokensInDoc, bitPackedMin, bitsPerToken);
+            break;
+        case RUN_LENGTH:
+            outTokensFile.writeInt(numberOfRuns);
+            for (int i = 0; i < tokensInDoc.length; i++) {
+                if (i == 0 || tokensInDoc[i] != tokensInDoc[i - 1]) {
+                    outTokensFile.writeInt(i);
+                    outTokensFile.writeInt(tokensInDoc[i]);
+                }
+            }
+            break;
         }
     }
 
@@ -1,11 +1,13 @@
 package nl.inl.blacklab.codec;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.StoredFieldsReader;
@@ -20,6 +22,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Accountables;
+import org.apache.lucene.util.StringHelper;
 
 import nl.inl.blacklab.contentstore.ContentStoreSegmentReader;
 import nl.inl.blacklab.search.BlackLabIndexIntegrated;
@@ -84,6 +87,9 @@ public class BlackLab40StoredFieldsReader extends StoredFieldsReader {
     /** How many characters from the document do we encode into a data block? */
     private final int blockSizeChars;
 
+    /** Unique id of our segment, used to identify our blocks in the {@link ContentStoreBlockCache}. */
+    private final String segmentId;
+
     /** Name of the StoredFieldsFormat we delegate to.
      *  We check the index files to make sure this matches. */
     private String delegateFormatName;
@@ -114,6 +120,7 @@ public class BlackLab40StoredFieldsReader extends StoredFieldsReader {
         this.fieldInfos = fieldInfos;
         this.delegate = delegate;
         this.delegateFormatName = delegateFormatName; // check that this matches what was written
+        segmentId = StringHelper.idToString(segmentInfo.getId());
 
         IndexInput fieldsFile = openInput(BlackLab40StoredFieldsFormat.FIELDS_EXT, directory, segmentInfo, ioContext);
         blockSizeChars = fieldsFile.readInt();
@@ -291,6 +298,9 @@ public class BlackLab40StoredFieldsReader extends StoredFieldsReader {
             // Buffer for decoding blocks. Automatically reallocated if needed.
             byte[] decodedValue;
 
+            // Buffer for decoding a single block. Automatically reallocated if needed.
+            byte[] decodedBlock;
+
             // Clones of the various file handles, so we can reposition them without
             // causing problems. Cloned IndexInputs don't need to be closed.
             private final IndexInput docIndexFile = _docIndexFile.clone();
@@ -432,72 +442,149 @@ public class BlackLab40StoredFieldsReader extends StoredFieldsReader {
                         startChar = valueLengthChar;
                     if (endChar == -1 || endChar > valueLengthChar)
                         endChar = valueLengthChar;
+                    if (startChar == endChar)
+                        return "";
                     ContentStoreBlockCodec blockCodec = ContentStoreBlockCodec.fromCode(valueIndexFile.readByte());
                     long blockIndexOffset = valueIndexFile.readLong();
                     long blocksOffset = valueIndexFile.readLong();
 
                     // Determine what blocks we'll need
                     int firstBlockNeeded = startChar / blockSizeChars;
-                    int lastBlockNeeded = endChar / blockSizeChars;
-                    int numBlocksNeeded = lastBlockNeeded - firstBlockNeeded + 1;
-
-                    // Determine where our first block starts, and position blockindex file
-                    // to start reading subsequent after-block positions
-                    int blockStartOffset = findBlockStartOffset(blockIndexOffset, blocksOffset, firstBlockNeeded);
-
-                    int currentBlockCharOffset = firstBlockNeeded * blockSizeChars;
-                    int blocksRead = 0;
-                    StringBuilder result = new StringBuilder();
-                    byte[] decodedBlock = new byte[blockSizeChars * UTF8_MAX_BYTES_PER_CHAR + ESTIMATED_DECODE_OVERHEAD];
-                    try (ContentStoreBlockCodec.Decoder decoder = blockCodec.getDecoder()) {
-                        while (blocksRead < numBlocksNeeded) {
+                    int lastBlockNeeded = (endChar - 1) / blockSizeChars; // (endChar is exclusive)
+
+                    int fieldId = contentStoreFieldIndexes.get(luceneField);
+                    StringBuilder result = new StringBuilder(endChar - startChar);
+                    for (int blockNumber = firstBlockNeeded; blockNumber <= lastBlockNeeded; blockNumber++) {
+                        String block = getBlock(blockCodec, fieldId, docId, blockIndexOffset, blocksOffset, blockNumber);
+
+                        // Append the content we need to the result.
+                        int blockCharOffset = blockNumber * blockSizeChars;
+                        int from = Math.max(0, startChar - blockCharOffset);
+                        int to = Math.min(block.length(), endChar - blockCharOffset);
+                        result.append(block, from, to);
+                    }
+                    return result.toString();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
 
-                            // Read a block and decompress it.
-                            int blockEndOffset = blockIndexFile.readInt();
-                            int blockSizeBytes = blockEndOffset - blockStartOffset;
-                            int decodedSize = -1;
-                            while (decodedSize < 0) {
-                                decodedSize = readAndDecodeBlock(blockSizeBytes, decoder, decodedBlock, 0);
-                                if (decodedSize < 0) {
-                                    if (decodedBlock.length > MAX_DECODE_BUFFER_LENGTH)
-                                        throw new IOException("Insufficient buffer space for decoding block, even at max (" + MAX_DECODE_BUFFER_LENGTH + ")");
-                                    decodedBlock = new byte[decodedBlock.length * 2];
-                                }
-                            }
-                            String blockDecompressed = new String(decodedBlock, 0, decodedSize, StandardCharsets.UTF_8);
-
-                            // Append the content we need to the result.
-                            if (blocksRead == 0) {
-                                // First block. Only take the part we need.
-                                if (numBlocksNeeded == 1) {
-                                    // This is the only block we need. Take the requested part from the middle.
-                                    result.append(blockDecompressed, startChar - currentBlockCharOffset,
-                                            endChar - currentBlockCharOffset);
-                                } else {
-                                    // We'll need more blocks. Take part at the end.
-                                    result.append(blockDecompressed, startChar - currentBlockCharOffset,
-                                            blockSizeChars);
-                                }
-                            } else if (blocksRead == numBlocksNeeded - 1) {
-                                // Last block. Take the part we need from the beginning.
-                                result.append(blockDecompressed, 0, endChar - currentBlockCharOffset);
-                            } else {
-                                // Middle block. Append the whole thing.
-                                result.append(blockDecompressed);
+            /**
+             * Get a stream of the entire field value.
+             *
+             * Blocks are read and decoded as the stream is consumed, so memory use doesn't
+             * depend on the length of the value.
+             *
+             * @param docId document id
+             * @param luceneField field to get
+             * @return stream of the field value
+             */
+            @Override
+            public Reader getValueReader(int docId, String luceneField) {
+                try {
+                    int valueLengthChar = findValueLengthChar(docId, luceneField);
+                    if (valueLengthChar == 0)
+                        return Reader.nullReader(); // no value stored for this document
+                    ContentStoreBlockCodec blockCodec = ContentStoreBlockCodec.fromCode(valueIndexFile.readByte());
+                    long blockIndexOffset = valueIndexFile.readLong();
+                    long blocksOffset = valueIndexFile.readLong();
+                    int fieldId = contentStoreFieldIndexes.get(luceneField);
+                    int numberOfBlocks = (valueLengthChar + blockSizeChars - 1) / blockSizeChars;
+                    return new Reader() {
+                        /** Next block to decode */
+                        int nextBlockNumber = 0;
+
+                        /** Current decoded block */
+                        String block = "";
+
+                        /** Read position in the current block */
+                        int positionInBlock = 0;
+
+                        @Override
+                        public int read(char[] cbuf, int off, int len) throws IOException {
+                            Objects.checkFromIndexSize(off, len, cbuf.length);
+                            if (len == 0)
+                                return 0;
+                            while (positionInBlock == block.length()) {
+                                if (nextBlockNumber == numberOfBlocks)
+                                    return -1;
+                                block = getBlock(blockCodec, fieldId, docId, blockIndexOffset, blocksOffset,
+                                        nextBlockNumber);
+                                nextBlockNumber++;
+                                positionInBlock = 0;
                             }
+                            int n = Math.min(len, block.length() - positionInBlock);
+                            block.getChars(positionInBlock, positionInBlock + n, cbuf, off);
+                            positionInBlock += n;
+                            return n;
+                        }
 
-                            // Update variables to read the next block
-                            blockStartOffset = blockEndOffset;
-                            currentBlockCharOffset += blockSizeChars;
-                            blocksRead++;
+                        @Override
+                        public void close() {
+                            block = "";
+                            positionInBlock = 0;
+                            nextBlockNumber = numberOfBlocks;
                         }
-                    }
-                    return result.toString();
+                    };
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             }
 
+            /**
+             * Get a decoded block from the cache, or read and decode it.
+             *
+             * Positions the file pointers itself, so it doesn't matter what was read before.
+             *
+             * @param blockCodec codec the block was encoded with
+             * @param fieldId content store field index
+             * @param docId document id
+             * @param blockIndexOffset where the value's block index starts
+             * @param blocksOffset where the value's blocks start
+             * @param blockNumber block to get
+             * @return decoded block
+             */
+            private String getBlock(ContentStoreBlockCodec blockCodec, int fieldId, int docId, long blockIndexOffset,
+                    long blocksOffset, int blockNumber) throws IOException {
+                ContentStoreBlockCache.BlockKey key = new ContentStoreBlockCache.BlockKey(segmentId, fieldId, docId,
+                        blockNumber);
+                String block = ContentStoreBlockCache.get(key);
+                if (block == null) {
+                    int blockStartOffset = findBlockStartOffset(blockIndexOffset, blocksOffset, blockNumber);
+                    int blockEndOffset = blockIndexFile.readInt();
+                    block = readAndDecodeBlockToString(blockCodec, blockEndOffset - blockStartOffset);
+                    ContentStoreBlockCache.put(key, block);
+                }
+                return block;
+            }
+
+            /**
+             * Read a block (file is already positioned) and decode it to a string.
+             *
+             * @param blockCodec codec the block was encoded with
+             * @param blockSizeBytes encoded size of the block
+             * @return decoded block
+             */
+            private String readAndDecodeBlockToString(ContentStoreBlockCodec blockCodec, int blockSizeBytes)
+                    throws IOException {
+                if (decodedBlock == null)
+                    decodedBlock = new byte[blockSizeChars * UTF8_MAX_BYTES_PER_CHAR + ESTIMATED_DECODE_OVERHEAD];
+                try (ContentStoreBlockCodec.Decoder decoder = blockCodec.getDecoder()) {
+                    int decodedSize = -1;
+                    while (decodedSize < 0) {
+                        decodedSize = readAndDecodeBlock(blockSizeBytes, decoder, decodedBlock, 0);
+                        if (decodedSize < 0) {
+                            if (decodedBlock.length > MAX_DECODE_BUFFER_LENGTH)
+                                throw new IOException("Insufficient buffer space for decoding block, even at max (" + MAX_DECODE_BUFFER_LENGTH + ")");
+                            decodedBlock = new byte[decodedBlock.length * 2];
+                            // Reposition the file so we can read the block again
+                            blocksFile.seek(blocksFile.getFilePointer() - blockSizeBytes);
+                        }
+                    }
+                    return new String(decodedBlock, 0, decodedSize, StandardCharsets.UTF_8);
+                }
+            }
+
             int readAndDecodeBlock(int blockSizeBytes, ContentStoreBlockCodec.Decoder decoder, byte[] buffer, int offset)
                     throws IOException {
                 // Read block (file is already positioned)
@@ -572,10 +659,7 @@ public class BlackLab40StoredFieldsReader extends StoredFieldsReader {
             public String[] getValueSubstrings(int docId, String luceneField, int[] start, int[] end) {
                 if (start.length != end.length)
                     throw new IllegalArgumentException("Different numbers of starts and ends provided: " + start.length + ", " + end.length);
-                // OPT: we could optimize this to avoid reading blocks twice!
-                //   easiest is to determine the lowest start and highest end, read the entire document part,
-                //   then cut the snippets from that. More efficient is to figure out exactly which blocks we
-                //   need, retrieve those, then cut the snippets.
+                // If the ContentStoreBlockCache is enabled, blocks needed for several parts are only decoded once.
                 String[] results = new String[start.length];
                 for (int i = 0; i < start.length; i++) {
                     results[i] = getValueSubstring(docId, luceneField, start[i], end[i]);
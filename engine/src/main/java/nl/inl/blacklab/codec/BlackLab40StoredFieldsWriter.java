@@ -50,8 +50,8 @@ public class BlackLab40StoredFieldsWriter extends StoredFieldsWriter {
     /** Fields with a content store and their field index. */
     private final Map<String, Integer> contentStoreFieldIndexes = new HashMap<>();
 
-    /** How we (de)compress our blocks. */
-    private final ContentStoreBlockCodec blockCodec = ContentStoreBlockCodecZlib.INSTANCE;
+    /** How we (de)compress our blocks, per field (chosen at index time, see {@link BlackLabIndexIntegrated#contentStoreCodec(FieldInfo)}). */
+    private final Map<String, ContentStoreBlockCodec> blockCodecs = new HashMap<>();
 
     /** Lucene's default stored fields writer, for regular stored fields. */
     private final StoredFieldsWriter delegate;
@@ -134,6 +134,9 @@ public class BlackLab40StoredFieldsWriter extends StoredFieldsWriter {
      * @param value string value for the field
      */
     private void writeContentStoreField(FieldInfo fieldInfo, String value) throws IOException {
+        ContentStoreBlockCodec blockCodec = blockCodecs.computeIfAbsent(fieldInfo.name,
+                __ -> ContentStoreBlockCodec.fromName(BlackLabIndexIntegrated.contentStoreCodec(fieldInfo)));
+
         // Write some info about this value
         valueIndexFile.writeByte(getFieldIndex(fieldInfo)); // which field is this?
         int lengthChars = value.length();
@@ -235,7 +238,8 @@ public class BlackLab40StoredFieldsWriter extends StoredFieldsWriter {
                 RamUsageEstimator.sizeOfObject(blockIndexFile) +
                 RamUsageEstimator.sizeOfObject(blocksFile) +
                 Integer.BYTES * 2 + // blockSizeChars, numberOfFieldsWritten
-                RamUsageEstimator.sizeOfMap(contentStoreFieldIndexes);
+                RamUsageEstimator.sizeOfMap(contentStoreFieldIndexes) +
+                RamUsageEstimator.shallowSizeOf(blockCodecs);
     }
 
     @Override
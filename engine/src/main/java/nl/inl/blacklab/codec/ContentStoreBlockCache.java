@@ -0,0 +1,158 @@
+package nl.inl.blacklab.codec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Cache of decoded content store blocks.
+ *
+ * Retrieving part of a document from the content store means reading and decoding
+ * (usually decompressing) one or more blocks. Snippets for several hits in the same
+ * document, or popular documents being viewed repeatedly, need the same blocks over
+ * and over, so we can optionally keep decoded blocks in memory.
+ *
+ * All segments share a single cache with a global size limit, which is 0 (caching disabled)
+ * by default. When the cache is full, blocks are evicted based on how recently and how
+ * often they were used (Caffeine's W-TinyLFU policy, which behaves like LRU for most
+ * access patterns but isn't flushed by a single large scan, e.g. during export).
+ * See {@link #setMaxBytes(long)}.
+ */
+@ThreadSafe
+public class ContentStoreBlockCache {
+
+    /** Estimated number of bytes of heap each cache entry uses, in addition to the block itself. */
+    private static final int ENTRY_OVERHEAD_BYTES = 100;
+
+    /** Identifies a block in the content store. */
+    static final class BlockKey {
+
+        /** Unique id of the segment */
+        private final String segmentId;
+
+        /** Content store field index within the segment */
+        private final int field;
+
+        /** Document id within the segment */
+        private final int docId;
+
+        /** Block number within the value */
+        private final int block;
+
+        BlockKey(String segmentId, int field, int docId, int block) {
+            this.segmentId = segmentId;
+            this.field = field;
+            this.docId = docId;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            BlockKey blockKey = (BlockKey) o;
+            return field == blockKey.field && docId == blockKey.docId && block == blockKey.block &&
+                    segmentId.equals(blockKey.segmentId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(segmentId, field, docId, block);
+        }
+    }
+
+    /** Maximum number of bytes the cache may use. */
+    private static volatile long maxBytes = 0;
+
+    /** The cache, or null if caching is disabled. */
+    private static volatile Cache<BlockKey, String> cache = null;
+
+    /**
+     * Set the maximum number of bytes the cache may use.
+     *
+     * Changing the limit discards any blocks currently cached.
+     *
+     * @param maxBytes maximum number of bytes, or 0 to disable caching
+     */
+    public static synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes == ContentStoreBlockCache.maxBytes)
+            return;
+        ContentStoreBlockCache.maxBytes = maxBytes;
+        cache = maxBytes <= 0 ? null : Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((BlockKey key, String block) -> blockSizeBytes(block))
+                .recordStats()
+                .build();
+    }
+
+    public static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static int blockSizeBytes(String block) {
+        return (int) Math.min(Integer.MAX_VALUE, RamUsageEstimator.sizeOf(block) + ENTRY_OVERHEAD_BYTES);
+    }
+
+    /**
+     * Get a decoded block from the cache.
+     *
+     * @param key block to get
+     * @return the decoded block, or null if not cached (or caching is disabled)
+     */
+    static String get(BlockKey key) {
+        Cache<BlockKey, String> c = cache;
+        return c == null ? null : c.getIfPresent(key);
+    }
+
+    /**
+     * Add a decoded block to the cache (if caching is enabled).
+     *
+     * @param key block to add
+     * @param block decoded block
+     */
+    static void put(BlockKey key, String block) {
+        Cache<BlockKey, String> c = cache;
+        if (c != null)
+            c.put(key, block);
+    }
+
+    /**
+     * Discard all cached blocks.
+     */
+    public static void clear() {
+        Cache<BlockKey, String> c = cache;
+        if (c != null)
+            c.invalidateAll();
+    }
+
+    /**
+     * Get information about the cache, for monitoring.
+     *
+     * @return cache size and hit/miss statistics
+     */
+    public static Map<String, Object> getInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        Cache<BlockKey, String> c = cache;
+        info.put("maxBytes", maxBytes);
+        if (c != null) {
+            CacheStats stats = c.stats();
+            info.put("sizeBytes", c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+            info.put("numberOfBlocks", c.estimatedSize());
+            info.put("hits", stats.hitCount());
+            info.put("misses", stats.missCount());
+            info.put("hitRate", stats.hitRate());
+            info.put("evictions", stats.evictionCount());
+        }
+        return info;
+    }
+}
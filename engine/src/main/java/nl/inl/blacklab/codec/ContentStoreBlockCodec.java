@@ -1,9 +1,13 @@
 package nl.inl.blacklab.codec;
 
 import java.io.IOException;
+import java.util.List;
 
 /** A codec for blocks in the content store. */
-interface ContentStoreBlockCodec {
+public interface ContentStoreBlockCodec {
+
+    /** Valid codec names for {@link #fromName(String)} */
+    List<String> NAMES = List.of("zlib", "lz4", "none");
 
     interface Encoder extends AutoCloseable {
         /** Encode and return a new byte buffer.
@@ -64,11 +68,37 @@ interface ContentStoreBlockCodec {
             return ContentStoreBlockCodecUncompressed.INSTANCE;
         case 1:
             return ContentStoreBlockCodecZlib.INSTANCE;
+        case 2:
+            return ContentStoreBlockCodecLZ4.INSTANCE;
         default:
             throw new IllegalArgumentException("Unknown block codec with code " + code);
         }
     }
 
+    /**
+     * Get a codec by name.
+     *
+     * This is how the codec to use for a content store field is chosen when indexing.
+     *
+     * @param name codec name: "zlib" (default, best compression), "lz4" (fastest decompression)
+     *             or "none" (no compression); null or empty means the default
+     * @return the codec
+     */
+    static ContentStoreBlockCodec fromName(String name) {
+        if (name == null || name.isEmpty())
+            return ContentStoreBlockCodecZlib.INSTANCE;
+        switch (name.toLowerCase()) {
+        case "none":
+            return ContentStoreBlockCodecUncompressed.INSTANCE;
+        case "zlib":
+            return ContentStoreBlockCodecZlib.INSTANCE;
+        case "lz4":
+            return ContentStoreBlockCodecLZ4.INSTANCE;
+        default:
+            throw new IllegalArgumentException("Unknown block codec: " + name + " (valid codecs: " + String.join(", ", NAMES) + ")");
+        }
+    }
+
     Encoder getEncoder();
 
     Decoder getDecoder();
@@ -0,0 +1,341 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import nl.inl.util.SimpleResourcePool;
+
+/**
+ * A fast codec for blocks in the content store, using LZ4-style compression.
+ *
+ * Compresses less than zlib, but decompresses much faster, which is what matters when
+ * retrieving document contents and snippets. Pure Java, no native code.
+ *
+ * The encoded block is a series of sequences, in the style of the LZ4 block format:
+ * <ul>
+ *     <li>a token byte: high nibble is the number of literal bytes, low nibble the match length minus 4
+ *         (a nibble value of 15 means more length bytes follow, each added to the length, until one is not 255)</li>
+ *     <li>the literal bytes</li>
+ *     <li>unless this is the last sequence: the match offset (2 bytes, little-endian; how far back the match
+ *         starts) followed by any additional match length bytes</li>
+ * </ul>
+ * The last sequence only contains literals.
+ */
+public class ContentStoreBlockCodecLZ4 implements ContentStoreBlockCodec {
+
+    /** Our singleton instance. */
+    public static final ContentStoreBlockCodec INSTANCE = new ContentStoreBlockCodecLZ4();
+
+    /** How large is the buffer allowed to get when automatically reallocating? */
+    private static final int MAX_ALLOWABLE_BUFFER_SIZE = 100_000;
+
+    /** When decoding to a string, what buffer size should we start with? We will automatically grow this when needed. */
+    private static final int STARTING_DECODE_BUFFER_SIZE = 12500;
+
+    /** How many encoders and decoders to keep in the pool? */
+    private static final int MAX_FREE_POOL_SIZE = 20;
+
+    /** Shortest match we encode */
+    private static final int MIN_MATCH = 4;
+
+    /** Maximum match offset (must fit in 2 bytes) */
+    private static final int MAX_DISTANCE = 65535;
+
+    /** The last bytes of the input are always encoded as literals */
+    private static final int LAST_LITERALS = 5;
+
+    /** No match may start this close to the end of the input */
+    private static final int MF_LIMIT = 12;
+
+    /** Number of bits in the hash used to find matches */
+    private static final int HASH_LOG = 12;
+
+    /** Our pool of encoders. */
+    private final SimpleResourcePool<Encoder> encoderPool;
+
+    /** Our pool of decoders. */
+    private final SimpleResourcePool<Decoder> decoderPool;
+
+    private ContentStoreBlockCodecLZ4() {
+        encoderPool = new SimpleResourcePool<>(MAX_FREE_POOL_SIZE) {
+            @Override
+            public Encoder createResource() {
+                return createEncoder();
+            }
+        };
+        decoderPool = new SimpleResourcePool<>(MAX_FREE_POOL_SIZE) {
+            @Override
+            public Decoder createResource() {
+                return createDecoder();
+            }
+        };
+    }
+
+    @Override
+    public Encoder getEncoder() {
+        return encoderPool.acquire();
+    }
+
+    @Override
+    public Decoder getDecoder() {
+        return decoderPool.acquire();
+    }
+
+    public Decoder createDecoder() {
+        return new Decoder() {
+
+            byte[] buf = new byte[STARTING_DECODE_BUFFER_SIZE];
+
+            @Override
+            public void close() {
+                decoderPool.release(this);
+            }
+
+            @Override
+            public String decode(byte[] buffer, int offset, int length) throws IOException {
+                while (true) {
+                    int resultLength = decode(buffer, offset, length, buf, 0, buf.length);
+                    if (resultLength >= 0)
+                        return new String(buf, 0, resultLength, StandardCharsets.UTF_8);
+                    if (buf.length > MAX_ALLOWABLE_BUFFER_SIZE)
+                        throw new IOException("Error, could not decode input of length " + length +
+                                " even with largest buffer (" + buf.length + ")");
+                    buf = new byte[buf.length * 2];
+                }
+            }
+
+            @Override
+            public int decode(byte[] buffer, int offset, int length, byte[] decoded, int decodedOffset, int decodedMaxLength) throws IOException {
+                try {
+                    return decompress(buffer, offset, length, decoded, decodedOffset, decodedMaxLength);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Error, corrupt block", e);
+                }
+            }
+        };
+    }
+
+    public Encoder createEncoder() {
+        return new Encoder() {
+
+            /** Most recent position of each hashed 4-byte sequence (-1 if none) */
+            final int[] hashTable = new int[1 << HASH_LOG];
+
+            @Override
+            public void close() {
+                encoderPool.release(this);
+            }
+
+            @Override
+            public int encode(String input, int offset, int length, byte[] encoded, int encodedOffset, int encodedMaxLength) {
+                byte[] inputBytes = input.substring(offset, offset + length).getBytes(StandardCharsets.UTF_8);
+                return compress(inputBytes, hashTable, encoded, encodedOffset, encodedMaxLength);
+            }
+
+            @Override
+            public byte[] encode(String input, int offset, int length) {
+                byte[] inputBytes = input.substring(offset, offset + length).getBytes(StandardCharsets.UTF_8);
+                byte[] buffer = new byte[maxCompressedLength(inputBytes.length)];
+                int compressedLength = compress(inputBytes, hashTable, buffer, 0, buffer.length);
+                return Arrays.copyOf(buffer, compressedLength);
+            }
+        };
+    }
+
+    public byte getCode() {
+        return 2;
+    }
+
+    /**
+     * Largest possible size of the compressed data.
+     *
+     * @param length input length in bytes
+     * @return maximum compressed length in bytes
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Compress the input.
+     *
+     * @param src input bytes
+     * @param hashTable hash table to use (contents will be overwritten)
+     * @param dest output buffer
+     * @param destOffset where to start writing in the output buffer
+     * @param destMaxLength maximum number of bytes to write
+     * @return compressed length, or -1 if not enough buffer space
+     */
+    static int compress(byte[] src, int[] hashTable, byte[] dest, int destOffset, int destMaxLength) {
+        final int srcLength = src.length;
+        final int destEnd = destOffset + destMaxLength;
+        int op = destOffset;
+        int anchor = 0; // start of the literals not yet written
+        if (srcLength >= MF_LIMIT + 1) {
+            Arrays.fill(hashTable, -1);
+            final int matchLimit = srcLength - LAST_LITERALS;
+            final int mfLimit = srcLength - MF_LIMIT;
+            int ip = 0;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    // No match; skip ahead faster the longer we haven't found one
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+
+                // Extend the match backwards and forwards
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength])
+                    matchLength++;
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dest, op, destEnd);
+                if (op < 0)
+                    return -1;
+                ip += matchLength;
+                anchor = ip;
+                if (ip - 2 < mfLimit)
+                    hashTable[hash(readInt(src, ip - 2))] = ip - 2;
+            }
+        }
+        // Write the remaining bytes as literals
+        op = writeSequence(src, anchor, srcLength - anchor, 0, 0, dest, op, destEnd);
+        return op < 0 ? -1 : op - destOffset;
+    }
+
+    /**
+     * Write a sequence of literals followed by a match.
+     *
+     * @param src input bytes
+     * @param literalStart where the literals start in the input
+     * @param literalLength number of literals
+     * @param matchOffset how far back the match starts, or 0 if this is the last sequence
+     * @param matchLength length of the match (ignored if this is the last sequence)
+     * @param dest output buffer
+     * @param op where to write in the output buffer
+     * @param destEnd end of the output buffer
+     * @return new position in the output buffer, or -1 if not enough buffer space
+     */
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int matchOffset,
+            int matchLength, byte[] dest, int op, int destEnd) {
+        int extraMatchLength = matchLength - MIN_MATCH;
+        // token + extra literal length bytes + literals + offset + extra match length bytes
+        if (op + 1 + literalLength / 255 + 1 + literalLength + 2 + extraMatchLength / 255 + 1 > destEnd)
+            return -1;
+        int tokenPos = op++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            op = writeLength(literalLength - 15, dest, op);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalStart, dest, op, literalLength);
+        op += literalLength;
+        if (matchOffset > 0) {
+            dest[op++] = (byte) matchOffset;
+            dest[op++] = (byte) (matchOffset >>> 8);
+            if (extraMatchLength >= 15) {
+                token |= 15;
+                op = writeLength(extraMatchLength - 15, dest, op);
+            } else {
+                token |= extraMatchLength;
+            }
+        }
+        dest[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(int length, byte[] dest, int op) {
+        while (length >= 255) {
+            dest[op++] = (byte) 255;
+            length -= 255;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+
+    /**
+     * Decompress a block.
+     *
+     * @param src buffer containing the block
+     * @param srcOffset start of the block
+     * @param srcLength length of the block
+     * @param dest where to decompress to
+     * @param destOffset where to start writing
+     * @param destMaxLength maximum number of bytes to write
+     * @return decompressed length, or -1 if not enough buffer space
+     */
+    static int decompress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset, int destMaxLength)
+            throws IOException {
+        final int srcEnd = srcOffset + srcLength;
+        final int destEnd = destOffset + destMaxLength;
+        int ip = srcOffset;
+        int op = destOffset;
+        while (ip < srcEnd) {
+            int token = src[ip++] & 0xFF;
+
+            // Copy literals
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if (ip + literalLength > srcEnd)
+                throw new IOException("Error, corrupt block (literals past end of block)");
+            if (op + literalLength > destEnd)
+                return -1;
+            System.arraycopy(src, ip, dest, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == srcEnd)
+                break; // last sequence has no match
+
+            // Copy match
+            int matchOffset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+            ip += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int ref = op - matchOffset;
+            if (matchOffset == 0 || ref < destOffset)
+                throw new IOException("Error, corrupt block (invalid match offset " + matchOffset + ")");
+            if (op + matchLength > destEnd)
+                return -1;
+            if (matchOffset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+                op += matchLength;
+            } else {
+                // Overlapping match (repeating pattern); copy byte by byte
+                for (int i = 0; i < matchLength; i++)
+                    dest[op++] = dest[ref++];
+            }
+        }
+        return op - destOffset;
+    }
+}
@@ -6,8 +6,8 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.lang3.NotImplementedException;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.IndexInput;
 
@@ -33,6 +33,9 @@ class SegmentForwardIndex implements AutoCloseable {
      */
     private static final long TOKENS_INDEX_RECORD_SIZE = Long.BYTES + Integer.BYTES + Byte.BYTES + Byte.BYTES;
 
+    /** Initial size of each reader's buffer for bulk-reading tokens (enough for a typical KWIC) */
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
     /** Our fields producer */
     private final BlackLab40PostingsReader fieldsProducer;
 
@@ -46,9 +49,15 @@ class SegmentForwardIndex implements AutoCloseable {
     /** Contains the tokens for all fields and documents */
     private IndexInput _tokensFile;
 
+    /** Number of documents in this segment */
+    private final int numberOfDocs;
+
+    /** In-memory copies of the tokens index for fields we've warmed up (if any) */
+    private final Map<String, TokensIndexCache> tokensIndexCaches = new ConcurrentHashMap<>();
 
     public SegmentForwardIndex(BlackLab40PostingsReader postingsReader) throws IOException {
         this.fieldsProducer = postingsReader;
+        this.numberOfDocs = postingsReader.numberOfDocs();
 
         try (IndexInput fieldsFile = postingsReader.openIndexFile(BlackLab40PostingsFormat.FIELDS_EXT)) {
             long size = fieldsFile.length();
@@ -64,6 +73,8 @@ class SegmentForwardIndex implements AutoCloseable {
 
     @Override
     public void close() {
+        tokensIndexCaches.values().forEach(TokensIndexCache::release);
+        tokensIndexCaches.clear();
         try {
             _tokensFile.close();
             _tokensIndexFile.close();
@@ -73,6 +84,76 @@ class SegmentForwardIndex implements AutoCloseable {
         }
     }
 
+    /**
+     * Keep the tokens index records for this field in memory, if the cache size limit allows it.
+     *
+     * This speeds up finding documents in the tokens file. See {@link TokensIndexCache}.
+     *
+     * @param luceneField field to cache the tokens index for
+     * @return true if the tokens index for this field is cached, false if it wouldn't fit
+     */
+    boolean cacheTokensIndex(String luceneField) {
+        Field field = fieldsByName.get(luceneField);
+        if (field == null)
+            throw new IllegalArgumentException("Field has no forward index: " + luceneField);
+        synchronized (tokensIndexCaches) {
+            if (tokensIndexCaches.containsKey(luceneField))
+                return true;
+            try {
+                TokensIndexCache cache = TokensIndexCache.load(_tokensIndexFile.clone(), field.getTokensIndexOffset(), numberOfDocs);
+                if (cache == null)
+                    return false;
+                tokensIndexCaches.put(luceneField, cache);
+                return true;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Decode a snippet from a document encoded using {@link TokensCodec#RUN_LENGTH}.
+     *
+     * Binary searches for the run containing the first token, then reads runs
+     * until the snippet is complete.
+     *
+     * @param tokens tokens file
+     * @param docTokensOffset where the document starts in the tokens file
+     * @param docLength document length in tokens
+     * @param start first token to read
+     * @param snippet where to store the tokens (determines how many we read)
+     */
+    static void readRunLength(IndexInput tokens, long docTokensOffset, int docLength, int start, int[] snippet)
+            throws IOException {
+        final long runsOffset = docTokensOffset + Integer.BYTES;
+        final long runRecordSize = Integer.BYTES * 2;
+        tokens.seek(docTokensOffset);
+        int numberOfRuns = tokens.readInt();
+
+        // Find the last run starting at or before our first token
+        int lo = 0, hi = numberOfRuns - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            tokens.seek(runsOffset + mid * runRecordSize);
+            if (tokens.readInt() <= start)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        // Fill the snippet from this run and the following ones
+        tokens.seek(runsOffset + lo * runRecordSize + Integer.BYTES);
+        int end = start + snippet.length;
+        int position = start;
+        for (int run = lo; position < end; run++) {
+            int value = tokens.readInt();
+            int nextRunStart = run + 1 < numberOfRuns ? tokens.readInt() : docLength;
+            int runEnd = Math.min(nextRunStart, end);
+            Arrays.fill(snippet, position - start, runEnd - start, value);
+            position = runEnd;
+        }
+    }
+
     /** 
      * Get a new ForwardIndexSegmentReader on this segment. 
      * Though the reader is not Threadsafe, a new instance is returned every time, 
@@ -107,6 +188,20 @@ class SegmentForwardIndex implements AutoCloseable {
         // to be decoded by the appropriate tokensCodec
         private byte tokensCodecParameter;
 
+        // Field and document whose tokens index record we've read (so we can skip reading it again)
+        private String currentField;
+
+        private int currentDocId = -1;
+
+        // Where the current field's records start in the tokens index file
+        private long currentFieldTokensIndexOffset;
+
+        // Cached tokens index for current field, or null if not cached
+        private TokensIndexCache currentFieldCache;
+
+        // Reusable buffer for bulk-reading encoded tokens (grows as needed)
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
         private IndexInput tokensIndex() {
             if (_tokensIndex == null)
                 _tokensIndex = _tokensIndexFile.clone();
@@ -164,36 +259,13 @@ class SegmentForwardIndex implements AutoCloseable {
                 int[] snippet = new int[end - start];
                 switch (tokensCodec) {
                 case VALUE_PER_TOKEN:
-                    switch(VALUE_PER_TOKEN_PARAMETER.fromCode(tokensCodecParameter)) {
-                        case INT: 
-                            _tokens.seek(docTokensOffset + (long) start * Integer.BYTES);
-                            for (int j = 0; j < snippet.length; j++) {
-                                snippet[j] = _tokens.readInt();
-                            }
-                            break;
-                        case THREE_BYTES:
-                            _tokens.seek(docTokensOffset + (long) start * 3);
-                            for (int j = 0; j < snippet.length; j++) {
-                                snippet[j] = ThreeByteInt.read( () -> _tokens.readByte() );
-
-                            }
-                            break;
-                        case SHORT: 
-                            _tokens.seek(docTokensOffset + (long) start * Short.BYTES);
-                            for (int j = 0; j < snippet.length; j++) {
-                                snippet[j] = _tokens.readShort();
-                            }
-                            break;
-                        case BYTE: 
-                            // Simplest encoding, just one 4-byte int per token
-                            _tokens.seek(docTokensOffset + (long) start * Byte.BYTES);
-                            for (int j = 0; j < snippet.length; j++) {
-                                snippet[j] = _tokens.readByte();
-                            }
-                            break;
-                        default: throw new NotImplementedException("Handling for tokens codec " + tokensCodec + " with parameter " + tokensCodecParameter
-                                + " not implemented.");
-                    }
+                    // Read all the bytes we need at once, then decode them in a tight loop
+                    VALUE_PER_TOKEN_PARAMETER param = VALUE_PER_TOKEN_PARAMETER.fromCode(tokensCodecParameter);
+                    int bytesPerToken = param.getBytesPerToken();
+                    int numberOfBytes = snippet.length * bytesPerToken;
+                    _tokens.seek(docTokensOffset + (long) start * bytesPerToken);
+                    _tokens.readBytes(buffer(numberOfBytes), 0, numberOfBytes);
+                    param.decode(buffer, snippet, 0, snippet.length);
                     break;
                 case ALL_TOKENS_THE_SAME:
                     // All tokens have the same value, so we only have one value stored
@@ -201,6 +273,12 @@ class SegmentForwardIndex implements AutoCloseable {
                     int value = _tokens.readInt();
                     Arrays.fill(snippet, value);
                     break;
+                case BIT_PACKED:
+                    readBitPacked(start, snippet);
+                    break;
+                case RUN_LENGTH:
+                    readRunLength(_tokens, docTokensOffset, docLength, start, snippet);
+                    break;
                 default:
                     throw new UnsupportedOperationException("Cannot read tokens codec: " + tokensCodec);
                 }
@@ -210,18 +288,67 @@ class SegmentForwardIndex implements AutoCloseable {
             }
         }
 
+        /**
+         * Decode a snippet from a document encoded using {@link TokensCodec#BIT_PACKED}.
+         *
+         * Only reads the bytes containing the snippet's tokens.
+         *
+         * @param start first token to read
+         * @param snippet where to store the tokens (determines how many we read)
+         */
+        private void readBitPacked(int start, int[] snippet) throws IOException {
+            int bitsPerToken = tokensCodecParameter;
+            _tokens.seek(docTokensOffset);
+            int base = _tokens.readInt();
+            long firstBit = (long) start * bitsPerToken;
+            long firstByte = firstBit >>> 3;
+            long endBit = firstBit + (long) snippet.length * bitsPerToken;
+            int numberOfBytes = (int) (((endBit + 7) >>> 3) - firstByte);
+            _tokens.seek(docTokensOffset + Integer.BYTES + firstByte);
+            _tokens.readBytes(buffer(numberOfBytes + BitPackedInts.DECODE_PADDING), 0, numberOfBytes);
+            BitPackedInts.decode(buffer, (int) (firstBit & 7), bitsPerToken, base, snippet, snippet.length);
+        }
+
+        /**
+         * Get our reusable buffer for reading encoded tokens, making sure it's large enough.
+         *
+         * @param minSize minimum size in bytes
+         * @return the buffer
+         */
+        private byte[] buffer(int minSize) {
+            if (buffer.length < minSize)
+                buffer = new byte[Math.max(minSize, buffer.length * 2)];
+            return buffer;
+        }
+
         private void getDocOffsetAndLength(String luceneField, int docId)  {
-            try {
-                tokensIndex(); // ensure input available
-                long fieldTokensIndexOffset = fieldsByName.get(luceneField).getTokensIndexOffset();
-                _tokensIndex.seek(fieldTokensIndexOffset + (long) docId * TOKENS_INDEX_RECORD_SIZE);
-                docTokensOffset = _tokensIndex.readLong();
-                docLength = _tokensIndex.readInt();
-                tokensCodec = TokensCodec.fromCode(_tokensIndex.readByte());
-                tokensCodecParameter = _tokensIndex.readByte();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            // Hot loops often ask for the same document again (e.g. for each hit in it)
+            if (docId == currentDocId && luceneField.equals(currentField))
+                return;
+            if (!luceneField.equals(currentField)) {
+                currentFieldTokensIndexOffset = fieldsByName.get(luceneField).getTokensIndexOffset();
+                currentFieldCache = tokensIndexCaches.get(luceneField);
+                currentField = luceneField;
+            }
+            currentDocId = -1; // in case reading fails
+            if (currentFieldCache != null) {
+                docTokensOffset = currentFieldCache.docTokensOffset(docId);
+                docLength = currentFieldCache.docLength(docId);
+                tokensCodec = TokensCodec.fromCode(currentFieldCache.tokensCodec(docId));
+                tokensCodecParameter = currentFieldCache.tokensCodecParameter(docId);
+            } else {
+                try {
+                    tokensIndex(); // ensure input available
+                    _tokensIndex.seek(currentFieldTokensIndexOffset + (long) docId * TOKENS_INDEX_RECORD_SIZE);
+                    docTokensOffset = _tokensIndex.readLong();
+                    docLength = _tokensIndex.readInt();
+                    tokensCodec = TokensCodec.fromCode(_tokensIndex.readByte());
+                    tokensCodecParameter = _tokensIndex.readByte();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
             }
+            currentDocId = docId;
         }
 
         /** Get length of document in tokens from the forward index.
@@ -1,5 +1,9 @@
 package nl.inl.blacklab.codec;
 
+import java.io.IOException;
+
+import org.apache.lucene.store.DataInput;
+
 /**
  * How the tokens in a document are encoded in the tokens file.
  * This allows us to add alternative encodings over time, e.g. to deal with
@@ -7,15 +11,31 @@ package nl.inl.blacklab.codec;
  * Every document in the index has an entry in the tokens index file, basically a header containing:
  * - offset in actual tokens file
  * - doc length
- * - codec (this) 
+ * - codec (this)
  * - codec parameter (usually 0, but can be set depending on codec).
  */
-enum TokensCodec {
+public enum TokensCodec {
     /** Simplest possible encoding, one 4-byte integer per token. */
     VALUE_PER_TOKEN((byte) 1),
 
     /** All our tokens have the same value. Stores only that value (as Integer). */
-    ALL_TOKENS_THE_SAME((byte) 2);
+    ALL_TOKENS_THE_SAME((byte) 2),
+
+    /**
+     * Each token is stored as (value - base) using a fixed number of bits (the codec parameter, 1-32).
+     * Stores the base value (as Integer), followed by the packed values.
+     * Useful for annotations with few distinct values (e.g. part of speech), or whose values are all
+     * close together. Any range of tokens can be decoded directly, see {@link BitPackedInts}.
+     */
+    BIT_PACKED((byte) 3),
+
+    /**
+     * Runs of identical values are stored as (start position, value) pairs.
+     * Stores the number of runs (as Integer), followed by the pairs (both as Integer).
+     * Useful for sparse annotations (e.g. the start tag annotation or punctuation), which are
+     * mostly NO_TERM. Runs are sorted by start position, so we can binary search for a snippet.
+     */
+    RUN_LENGTH((byte) 4);
 
     /** How we'll write this encoding to the tokens index file. */
     byte code;
@@ -37,15 +57,27 @@ enum TokensCodec {
     }
 
     public enum VALUE_PER_TOKEN_PARAMETER {
-        BYTE((byte) 0),
-        SHORT((byte) 1),
-        THREE_BYTES((byte) 2),
-        INT((byte) 3);
+        BYTE((byte) 0, Byte.BYTES),
+        SHORT((byte) 1, Short.BYTES),
+        THREE_BYTES((byte) 2, 3),
+        INT((byte) 3, Integer.BYTES);
 
         final byte code;
 
-        VALUE_PER_TOKEN_PARAMETER(byte code) {
+        /** How many bytes each token takes in the tokens file. */
+        final int bytesPerToken;
+
+        VALUE_PER_TOKEN_PARAMETER(byte code, int bytesPerToken) {
             this.code = code;
+            this.bytesPerToken = bytesPerToken;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public int getBytesPerToken() {
+            return bytesPerToken;
         }
 
         public static VALUE_PER_TOKEN_PARAMETER fromCode(byte code) {
@@ -55,5 +87,80 @@ enum TokensCodec {
             }
             throw new IllegalArgumentException("Unknown payload value for VALUE_PER_TOKEN: " + code);
         }
+
+        /**
+         * Decode tokens that were bulk-read from the tokens file.
+         *
+         * Values are stored big-endian (as written by Lucene's DataOutput) and
+         * sign-extended, so e.g. NO_TERM (-1) survives the round trip.
+         *
+         * @param src encoded tokens, starting at offset 0
+         * @param dest where to store the decoded tokens
+         * @param destOffset first index in dest to write to
+         * @param n number of tokens to decode
+         */
+        public void decode(byte[] src, int[] dest, int destOffset, int n) {
+            int end = destOffset + n;
+            int p = 0;
+            switch (this) {
+            case BYTE:
+                for (int i = destOffset; i < end; i++) {
+                    dest[i] = src[p++];
+                }
+                break;
+            case SHORT:
+                for (int i = destOffset; i < end; i++, p += 2) {
+                    dest[i] = (short) ((src[p] << 8) | (src[p + 1] & 0xFF));
+                }
+                break;
+            case THREE_BYTES:
+                for (int i = destOffset; i < end; i++, p += 3) {
+                    // Shift the 24-bit value to the top and back down again to sign-extend it
+                    dest[i] = (((src[p] & 0xFF) << 24) | ((src[p + 1] & 0xFF) << 16) | ((src[p + 2] & 0xFF) << 8)) >> 8;
+                }
+                break;
+            case INT:
+                for (int i = destOffset; i < end; i++, p += 4) {
+                    dest[i] = (src[p] << 24) | ((src[p + 1] & 0xFF) << 16) | ((src[p + 2] & 0xFF) << 8) | (src[p + 3] & 0xFF);
+                }
+                break;
+            }
+        }
+
+        /**
+         * Read tokens one at a time from the input.
+         *
+         * This is the straightforward (but slower) alternative to bulk-reading the bytes and
+         * calling {@link #decode(byte[], int[], int, int)}. It is kept as a reference
+         * implementation for testing and benchmarking.
+         *
+         * @param in input, positioned at the first token to read
+         * @param dest where to store the decoded tokens
+         * @throws IOException on read error
+         */
+        public void readTokenByToken(DataInput in, int[] dest) throws IOException {
+            switch (this) {
+            case BYTE:
+                for (int j = 0; j < dest.length; j++) {
+                    dest[j] = in.readByte();
+                }
+                break;
+            case SHORT:
+                for (int j = 0; j < dest.length; j++) {
+                    dest[j] = in.readShort();
+                }
+                break;
+            case THREE_BYTES:
+                for (int j = 0; j < dest.length; j++) {
+                    dest[j] = ThreeByteInt.read(in::readByte);
+                }
+                break;
+            case INT:
+                for (int j = 0; j < dest.length; j++) {
+                    dest[j] = in.readInt();
+                }
+                break;
+            }
+        }
     }
 }
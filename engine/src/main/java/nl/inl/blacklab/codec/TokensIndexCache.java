@@ -0,0 +1,122 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.IndexInput;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * In-memory copy of the tokens index records for one field in one segment.
+ *
+ * Looking up where a document's tokens are stored normally means a seek and four reads
+ * in the tokens index file. Hot loops (building KWICs, sorting on context) ask for the same
+ * documents over and over, so we can optionally keep these records in primitive arrays.
+ *
+ * All caches share a global size limit, which is 0 (caching disabled) by default.
+ * See {@link #setMaxBytes(long)}.
+ */
+@ThreadSafe
+public class TokensIndexCache {
+
+    /** How many bytes of heap each cached document takes. */
+    public static final int BYTES_PER_DOC = Long.BYTES + Integer.BYTES + Byte.BYTES + Byte.BYTES;
+
+    /** Maximum number of bytes all caches together may use. */
+    private static volatile long maxBytes = 0;
+
+    /** Number of bytes all caches together currently use. */
+    private static final AtomicLong bytesUsed = new AtomicLong();
+
+    /**
+     * Set the maximum number of bytes all tokens index caches together may use.
+     *
+     * Existing caches are not affected; new caches will only be created while we're below the limit.
+     *
+     * @param maxBytes maximum number of bytes, or 0 to disable caching
+     */
+    public static void setMaxBytes(long maxBytes) {
+        TokensIndexCache.maxBytes = maxBytes;
+    }
+
+    public static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * How many bytes all caches together currently use.
+     *
+     * @return number of bytes used
+     */
+    public static long getBytesUsed() {
+        return bytesUsed.get();
+    }
+
+    /**
+     * Read a field's tokens index records into a new cache, if the size limit allows it.
+     *
+     * @param tokensIndex tokens index file (will be repositioned)
+     * @param fieldOffset offset of the field's first record in the tokens index file
+     * @param numberOfDocs number of documents in the segment
+     * @return the cache, or null if it wouldn't fit
+     */
+    static TokensIndexCache load(IndexInput tokensIndex, long fieldOffset, int numberOfDocs) throws IOException {
+        long size = (long) numberOfDocs * BYTES_PER_DOC;
+        // Reserve the memory first, so concurrent loads can't exceed the limit together
+        if (bytesUsed.addAndGet(size) > maxBytes) {
+            bytesUsed.addAndGet(-size);
+            return null;
+        }
+        try {
+            return new TokensIndexCache(tokensIndex, fieldOffset, numberOfDocs);
+        } catch (IOException | RuntimeException e) {
+            bytesUsed.addAndGet(-size);
+            throw e;
+        }
+    }
+
+    private final long[] docTokensOffset;
+
+    private final int[] docLength;
+
+    private final byte[] tokensCodec;
+
+    private final byte[] tokensCodecParameter;
+
+    private TokensIndexCache(IndexInput tokensIndex, long fieldOffset, int numberOfDocs) throws IOException {
+        docTokensOffset = new long[numberOfDocs];
+        docLength = new int[numberOfDocs];
+        tokensCodec = new byte[numberOfDocs];
+        tokensCodecParameter = new byte[numberOfDocs];
+        tokensIndex.seek(fieldOffset);
+        for (int i = 0; i < numberOfDocs; i++) {
+            // (records are contiguous, so we can just keep reading)
+            docTokensOffset[i] = tokensIndex.readLong();
+            docLength[i] = tokensIndex.readInt();
+            tokensCodec[i] = tokensIndex.readByte();
+            tokensCodecParameter[i] = tokensIndex.readByte();
+        }
+    }
+
+    /** Give back the memory we reserved. Call when the segment is closed. */
+    void release() {
+        bytesUsed.addAndGet(-(long) docLength.length * BYTES_PER_DOC);
+    }
+
+    long docTokensOffset(int docId) {
+        return docTokensOffset[docId];
+    }
+
+    int docLength(int docId) {
+        return docLength[docId];
+    }
+
+    byte tokensCodec(int docId) {
+        return tokensCodec[docId];
+    }
+
+    byte tokensCodecParameter(int docId) {
+        return tokensCodecParameter[docId];
+    }
+}
@@ -1,9 +1,13 @@
 package nl.inl.blacklab.config;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCache;
+import nl.inl.blacklab.codec.TokensIndexCache;
+import nl.inl.blacklab.forwardindex.TermsIntegratedCache;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
 import nl.inl.blacklab.search.results.ContextSize;
 import nl.inl.blacklab.search.results.SearchSettings;
+import nl.inl.util.GlobalOrdinals;
 
 public class BLConfigSearch {
     private BLConfigCollator collator = new BLConfigCollator();
@@ -22,6 +26,71 @@ public class BLConfigSearch {
      */
     private boolean enableHugeResultSets = true;
 
+    /** How much memory (in MB) may be used to cache where each document's tokens are in the forward index?
+     *
+     * Speeds up KWICs and sorting/grouping on context. Costs 14 bytes per document per annotation.
+     * 0 (the default) disables this cache.
+     */
+    private int fiDocIndexCacheMegs = 0;
+
+    /** Load the terms for all annotations with a forward index in the background when opening an index?
+     *
+     * If false, an annotation's terms are loaded the first time they're needed. Only applies to
+     * the integrated index format. Defaults to true.
+     */
+    private boolean fiTermsPreload = true;
+
+    /** How much memory (in MB) may the loaded terms for all annotations use together?
+     *
+     * If this is exceeded, the least recently used terms are unloaded (and loaded again when
+     * needed). Only applies to the integrated index format. 0 (the default) means no limit.
+     */
+    private int fiTermsMaxMegs = 0;
+
+    /** How much memory (in MB) may be used to cache decoded content store blocks?
+     *
+     * Speeds up retrieving snippets and (parts of) documents that were retrieved recently.
+     * Only applies to the integrated index format. 0 (the default) disables this cache.
+     */
+    private int csBlockCacheMegs = 0;
+
+    /** How much memory (in MB) may the index-wide ordinals for metadata fields use together?
+     *
+     * These are built when sorting or grouping a large number of results on a metadata field.
+     * If this is exceeded, the least recently used are discarded (and built again when needed).
+     * 0 (the default) means no limit.
+     */
+    private int metadataOrdinalsMaxMegs = 0;
+
+    /** Minimum number of hits to sort using sort keys and a parallel sort (see HitsSorter). */
+    private int parallelSortMinHits = 10_000;
+
+    /** Minimum number of hits to process at a time when selecting the first sorted hits. */
+    private int sortTopMinBatchSize = 100_000;
+
+    /** If a window of sorted hits ends before this, select the first hits instead of sorting all of them.
+     *
+     * Windows that end beyond this sort all hits, so the sorted result can be reused for other windows.
+     * 0 means always sort all hits.
+     */
+    private long sortTopMaxHits = 10_000;
+
+    /** Minimum number of hits to group using group keys and parallel grouping (see HitsGrouper). */
+    private int parallelGroupingMinHits = 10_000;
+
+    /** How many hits to group per partition (partitions are grouped in parallel). */
+    private int groupingPartitionSize = 100_000;
+
+    /** If at least this many terms of an OR of terms occur in a segment, read and sort all
+     * their positions instead of merging their postings (see SpansTermDisjunction). */
+    private int termDisjunctionMinTerms = 16;
+
+    /** Only read and sort all positions of an OR of terms if there are at most this many in the segment.
+     *
+     * (uses 8 bytes per position)
+     */
+    private long termDisjunctionMaxPositions = 4_000_000;
+
     public BLConfigCollator getCollator() {
         return collator;
     }
@@ -75,6 +144,108 @@ public class BLConfigSearch {
         this.enableHugeResultSets = enableHugeResultSets;
     }
 
+    public int getFiDocIndexCacheMegs() {
+        return fiDocIndexCacheMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setFiDocIndexCacheMegs(int fiDocIndexCacheMegs) {
+        this.fiDocIndexCacheMegs = fiDocIndexCacheMegs;
+    }
+
+    public boolean isFiTermsPreload() {
+        return fiTermsPreload;
+    }
+
+    @SuppressWarnings("unused")
+    public void setFiTermsPreload(boolean fiTermsPreload) {
+        this.fiTermsPreload = fiTermsPreload;
+    }
+
+    public int getFiTermsMaxMegs() {
+        return fiTermsMaxMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setFiTermsMaxMegs(int fiTermsMaxMegs) {
+        this.fiTermsMaxMegs = fiTermsMaxMegs;
+    }
+
+    public int getCsBlockCacheMegs() {
+        return csBlockCacheMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setCsBlockCacheMegs(int csBlockCacheMegs) {
+        this.csBlockCacheMegs = csBlockCacheMegs;
+    }
+
+    public int getMetadataOrdinalsMaxMegs() {
+        return metadataOrdinalsMaxMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setMetadataOrdinalsMaxMegs(int metadataOrdinalsMaxMegs) {
+        this.metadataOrdinalsMaxMegs = metadataOrdinalsMaxMegs;
+    }
+
+    public int getParallelSortMinHits() {
+        return parallelSortMinHits;
+    }
+
+    public void setParallelSortMinHits(int parallelSortMinHits) {
+        this.parallelSortMinHits = parallelSortMinHits;
+    }
+
+    public int getSortTopMinBatchSize() {
+        return sortTopMinBatchSize;
+    }
+
+    public void setSortTopMinBatchSize(int sortTopMinBatchSize) {
+        this.sortTopMinBatchSize = sortTopMinBatchSize;
+    }
+
+    public long getSortTopMaxHits() {
+        return sortTopMaxHits;
+    }
+
+    @SuppressWarnings("unused")
+    public void setSortTopMaxHits(long sortTopMaxHits) {
+        this.sortTopMaxHits = sortTopMaxHits;
+    }
+
+    public int getParallelGroupingMinHits() {
+        return parallelGroupingMinHits;
+    }
+
+    public void setParallelGroupingMinHits(int parallelGroupingMinHits) {
+        this.parallelGroupingMinHits = parallelGroupingMinHits;
+    }
+
+    public int getGroupingPartitionSize() {
+        return groupingPartitionSize;
+    }
+
+    public void setGroupingPartitionSize(int groupingPartitionSize) {
+        this.groupingPartitionSize = Math.max(1, groupingPartitionSize);
+    }
+
+    public int getTermDisjunctionMinTerms() {
+        return termDisjunctionMinTerms;
+    }
+
+    public void setTermDisjunctionMinTerms(int termDisjunctionMinTerms) {
+        this.termDisjunctionMinTerms = termDisjunctionMinTerms;
+    }
+
+    public long getTermDisjunctionMaxPositions() {
+        return termDisjunctionMaxPositions;
+    }
+
+    public void setTermDisjunctionMaxPositions(long termDisjunctionMaxPositions) {
+        this.termDisjunctionMaxPositions = termDisjunctionMaxPositions;
+    }
+
     /**
      * Apply the search configuration settings to an opened index.
      *
@@ -88,6 +259,11 @@ public class BLConfigSearch {
         long fiMatchFactor = getFiMatchFactor();
         SearchSettings sett = SearchSettings.get(maxHitsToProcess, maxHitsToCount, fiMatchFactor);
         ClauseCombinerNfa.setNfaThreshold(fiMatchFactor);
+        TokensIndexCache.setMaxBytes(getFiDocIndexCacheMegs() * 1_000_000L);
+        TermsIntegratedCache.setPreload(isFiTermsPreload());
+        TermsIntegratedCache.setMaxBytes(getFiTermsMaxMegs() * 1_000_000L);
+        ContentStoreBlockCache.setMaxBytes(getCsBlockCacheMegs() * 1_000_000L);
+        GlobalOrdinals.setMaxBytes(getMetadataOrdinalsMaxMegs() * 1_000_000L);
         index.setSearchSettings(sett);
     }
 }
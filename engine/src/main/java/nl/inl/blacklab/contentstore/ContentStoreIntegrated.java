@@ -1,5 +1,7 @@
 package nl.inl.blacklab.contentstore;
 
+import java.io.Reader;
+
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 
@@ -35,6 +37,13 @@ public class ContentStoreIntegrated implements ContentStore {
         return cs.getValue(docId - lrc.docBase, luceneField);
     }
 
+    @Override
+    public Reader retrieveReader(int docId) {
+        LeafReaderContext lrc = leafReaderLookup.forId(docId);
+        ContentStoreSegmentReader cs = BlackLabIndexIntegrated.contentStore(lrc);
+        return cs.getValueReader(docId - lrc.docBase, luceneField);
+    }
+
     @Override
     public String retrievePart(int docId, int start, int end) {
         if (start == -1) start = 0; // fix legacy quirk
@@ -1,12 +1,19 @@
 package nl.inl.blacklab.forwardindex;
 
+import java.io.IOException;
 import java.text.Collator;
 import java.util.List;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 
+import nl.inl.blacklab.codec.BLTerms;
+import nl.inl.blacklab.codec.BlackLab40PostingsReader;
 import nl.inl.blacklab.codec.LeafReaderLookup;
+import nl.inl.blacklab.codec.TokensIndexCache;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.forwardindex.Collators.CollatorVersion;
 import nl.inl.blacklab.search.BlackLabIndexIntegrated;
@@ -24,6 +31,11 @@ import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
  */
 public class AnnotationForwardIndexIntegrated implements AnnotationForwardIndex {
 
+    private static final Logger logger = LogManager.getLogger(AnnotationForwardIndexIntegrated.class);
+
+    /** How precisely we keep track of when our terms were last used */
+    private static final long LAST_USED_RESOLUTION_MS = 1000;
+
     /**
      * Open an integrated forward index.
      *
@@ -49,9 +61,20 @@ public class AnnotationForwardIndexIntegrated implements AnnotationForwardIndex
     /** Collators to use for comparisons */
     private final Collators collators;
 
-    private Terms terms;
+    /** Global terms (loaded on demand, and may be unloaded again, see {@link TermsIntegratedCache}) */
+    private volatile TermsIntegrated terms;
+
+    /** Have we cached the tokens index yet? (only done once) */
+    private boolean tokensIndexCached = false;
+
+    /** When were our terms last used? (approximately; for unloading least recently used terms) */
+    private volatile long termsLastUsedMs;
+
+    /** How long did it take to load our terms the last time? */
+    private volatile long termsLoadTimeMs = -1;
 
-    private boolean initialized = false;
+    /** How often have our terms been loaded? */
+    private volatile int termsTimesLoaded = 0;
 
     /** Index of segments by their doc base (the number to add to get global docId) */
     private final LeafReaderLookup leafReaderLookup;
@@ -69,35 +92,143 @@ public class AnnotationForwardIndexIntegrated implements AnnotationForwardIndex
 
         // Ensure quick lookup of the segment we need
         leafReaderLookup = new LeafReaderLookup(indexReader);
+
+        // Let the segments' terms access our global terms (loading them if necessary)
+        for (LeafReaderContext lrc: indexReader.leaves()) {
+            try {
+                BLTerms segmentTerms = (BLTerms) lrc.reader().terms(luceneField);
+                if (segmentTerms != null)
+                    segmentTerms.setTermsIntegrated(this::terms, lrc.ord);
+            } catch (IOException e) {
+                throw BlackLabRuntimeException.wrap(e);
+            }
+        }
     }
 
     @Override
-    public synchronized void initialize() {
-        if (initialized) {
-            return;
+    public void initialize() {
+        terms();
+    }
+
+    /**
+     * Load our terms if they're not loaded (anymore).
+     *
+     * Different annotations can load their terms concurrently.
+     *
+     * @return the terms
+     */
+    private TermsIntegrated loadTerms() {
+        TermsIntegrated loadedTerms;
+        synchronized (this) {
+            if (terms != null)
+                return terms;
+            try {
+                long start = System.currentTimeMillis();
+                loadedTerms = new TermsIntegrated(collators, indexReader, luceneField);
+                termsLoadTimeMs = System.currentTimeMillis() - start;
+                termsTimesLoaded++;
+                termsLastUsedMs = System.currentTimeMillis();
+                logger.debug("Loaded terms for " + luceneField + " in " + termsLoadTimeMs + " ms (" +
+                        loadedTerms.ramBytesUsed() + " bytes)");
+                if (!tokensIndexCached && TokensIndexCache.getMaxBytes() > 0) {
+                    cacheTokensIndex();
+                    tokensIndexCached = true;
+                }
+                terms = loadedTerms;
+                TermsIntegratedCache.register(this); // (under our lock, so unloading can't interfere)
+            } catch (InterruptedException e) {
+                throw new InterruptedSearch("Intialization of Forward Index was interrupted", e);
+            }
         }
+        // (outside the lock, as this may unload other annotations' terms)
+        TermsIntegratedCache.unloadIfOverLimit(this);
+        return loadedTerms;
+    }
+
+    /**
+     * Unload our terms to free up memory.
+     *
+     * They will be loaded again when needed. Anyone still using the old terms can
+     * keep doing so safely, as the terms are always the same for the same index reader.
+     *
+     * @return true if the terms were unloaded, false if they weren't loaded
+     */
+    public synchronized boolean unloadTerms() {
+        if (terms == null)
+            return false;
+        terms = null;
+        TermsIntegratedCache.unregister(this);
+        return true;
+    }
 
-        try {
-            this.terms = new TermsIntegrated(collators, indexReader, luceneField);
-            this.initialized = true;
-        } catch (InterruptedException e) {
-            throw new InterruptedSearch("Intialization of Forward Index was interrupted", e);
+    /** Unload our terms. Called when the index is closed. */
+    void close() {
+        unloadTerms();
+    }
+
+    String luceneField() {
+        return luceneField;
+    }
+
+    /**
+     * Estimated memory used by our terms.
+     *
+     * @return number of bytes, or 0 if not loaded
+     */
+    long termsRamBytesUsed() {
+        TermsIntegrated t = terms;
+        return t == null ? 0 : t.ramBytesUsed();
+    }
+
+    long termsLastUsedMs() {
+        return termsLastUsedMs;
+    }
+
+    long termsLoadTimeMs() {
+        return termsLoadTimeMs;
+    }
+
+    int termsTimesLoaded() {
+        return termsTimesLoaded;
+    }
+
+    /**
+     * Keep the tokens index for this annotation in memory for all segments, as far as the
+     * cache size limit allows.
+     *
+     * Called automatically on initialization if the cache is enabled, but can also be used
+     * to warm up the cache for a specific annotation.
+     *
+     * @return true if all segments were cached, false if (some) didn't fit
+     */
+    public boolean cacheTokensIndex() {
+        boolean allCached = true;
+        for (LeafReaderContext lrc: indexReader.leaves()) {
+            if (!BlackLab40PostingsReader.get(lrc).cacheForwardIndexTokensIndex(luceneField))
+                allCached = false;
         }
+        return allCached;
     }
 
     @Override
     public Terms terms() {
-        initialize();
-        return terms;
+        TermsIntegrated t = terms;
+        if (t == null)
+            t = loadTerms();
+        // Only update the last used time occasionally, to avoid contention in hot loops
+        long now = System.currentTimeMillis();
+        if (now - termsLastUsedMs > LAST_USED_RESOLUTION_MS)
+            termsLastUsedMs = now;
+        return t;
     }
 
     @Override
     public List<int[]> retrievePartsInt(int docId, int[] start, int[] end) {
-        initialize();
+        Terms t = terms();
         LeafReaderContext lrc = leafReaderLookup.forId(docId);
         ForwardIndexSegmentReader fi = BlackLabIndexIntegrated.forwardIndex(lrc);
         List<int[]> segmentResults = fi.retrieveParts(luceneField, docId - lrc.docBase, start, end);
-        return terms.segmentIdsToGlobalIds(lrc.ord, segmentResults);
+        return t.segmentIdsToGlobalIds(lrc.ord, segmentResults);
     }
 
     @Override
@@ -58,10 +58,13 @@ public abstract class ForwardIndexAbstract implements ForwardIndex {
 
         // Open forward indexes
         ExecutorService executorService = index.blackLab().initializationExecutorService();
+        boolean initializeInBackground = initializeInBackground();
         for (Annotation annotation: field.annotations()) {
             if (!annotation.hasForwardIndex())
                 continue;
             AnnotationForwardIndex afi = get(annotation);
+            if (!initializeInBackground)
+                continue; // will be initialized when first used
             // Automatically initialize forward index (in the background)
             executorService.execute(() -> {
                 try {
@@ -82,6 +85,17 @@ public abstract class ForwardIndexAbstract implements ForwardIndex {
         initialized = true;
     }
 
+    /**
+     * Should we initialize the annotation forward indexes in the background when opening?
+     *
+     * If not, they will be initialized when first used.
+     *
+     * @return true if we should initialize in the background
+     */
+    protected boolean initializeInBackground() {
+        return true;
+    }
+
     @Override
     public boolean canDoNfaMatching() {
         return canDoNfaMatching;
@@ -25,4 +25,17 @@ public class ForwardIndexIntegrated extends ForwardIndexAbstract {
         add(annotation, afi);
         return afi;
     }
+
+    @Override
+    protected boolean initializeInBackground() {
+        return TermsIntegratedCache.isPreload();
+    }
+
+    @Override
+    public void close() {
+        for (AnnotationForwardIndex afi: this) {
+            ((AnnotationForwardIndexIntegrated) afi).close();
+        }
+        super.close();
+    }
 }
@@ -2,71 +2,52 @@ package nl.inl.blacklab.forwardindex;
 
 import java.io.IOException;
 import java.text.CollationKey;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import nl.inl.blacklab.codec.BLTerms;
 import nl.inl.blacklab.codec.BlackLab40PostingsReader;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.util.BlockTimer;
 
 /** Keeps a list of unique terms and their sort positions.
  *
  * This version is integrated into the Lucene index.
+ *
+ * Each segment stores the sort orders of its own terms. If those were determined
+ * using the same collators we use, we determine the global sort orders by merging
+ * the segments' sort orders, which is much faster than sorting all terms again.
  */
 public class TermsIntegrated extends TermsReaderAbstract {
 
-    private static final Comparator<TermInIndex> CMP_TERM_SENSITIVE = (a, b) -> a.ckSensitive.compareTo(b.ckSensitive);
-
-    private static final Comparator<TermInIndex> CMP_TERM_INSENSITIVE = (a, b) -> a.ckInsensitive.compareTo(b.ckInsensitive);
-
-    /** Information about a term in the index, and the sort positions in each segment
-     *  it occurs in. We'll use this to speed up comparisons where possible (comparing
-     *  sort positions in one of the segments is much faster than calculating CollationKeys).
-     */
-    private class TermInIndex {
-        /** Term string */
-        String term;
-
-        CollationKey ckSensitive;
+    /** A segment's terms in sorted order, used while merging the segments' sort orders. */
+    private static final class SegmentSortOrder {
+        /** Global term ids in this segment's sort order */
+        final int[] sortedGlobalIds;
 
-        CollationKey ckInsensitive;
+        /** Current position in sortedGlobalIds */
+        int position = 0;
 
-        /** This term's global id */
-        int globalTermId;
-
-        public TermInIndex(String term, int globalTermId) {
-            this.term = term;
-            this.globalTermId = globalTermId;
-            ckSensitive = collator.getCollationKey(term);
-            ckInsensitive = collatorInsensitive.getCollationKey(term);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o)
-                return true;
-            if (!(o instanceof TermInIndex))
-                return false;
-            TermInIndex that = (TermInIndex) o;
-            return globalTermId == that.globalTermId;
+        SegmentSortOrder(int[] sortedGlobalIds) {
+            this.sortedGlobalIds = sortedGlobalIds;
         }
 
-        @Override
-        public int hashCode() {
-            return Integer.hashCode(globalTermId);
+        int currentGlobalId() {
+            return sortedGlobalIds[position];
         }
-
     }
 
     private IndexReader indexReader;
@@ -79,6 +60,15 @@ public class TermsIntegrated extends TermsReaderAbstract {
      */
     private final Map<Integer, int[]> segmentToGlobalTermIds = new HashMap<>();
 
+    /** Can we use the sort orders stored in the segments? (only if they used the same collators as we do) */
+    private final boolean useSegmentSortOrders;
+
+    /** Per segment: global term ids in sensitive sort order (temporary, only used during initialization) */
+    private List<int[]> segmentSortOrdersSensitive = new ArrayList<>();
+
+    /** Per segment: global term ids in insensitive sort order (temporary, only used during initialization) */
+    private List<int[]> segmentSortOrdersInsensitive = new ArrayList<>();
+
     public TermsIntegrated(Collators collators, IndexReader indexReader, String luceneField)
             throws InterruptedException {
         super(collators);
@@ -87,31 +77,41 @@ public class TermsIntegrated extends TermsReaderAbstract {
             this.indexReader = indexReader;
             this.luceneField = luceneField;
 
+            // Segments are written using the default collators
+            Collators segmentCollators = Collators.defaultCollator();
+            useSegmentSortOrders = collator.equals(segmentCollators.get(MatchSensitivity.SENSITIVE)) &&
+                    collatorInsensitive.equals(segmentCollators.get(MatchSensitivity.INSENSITIVE));
+
             // Read the terms from all the different segments and determine global term ids
-            Pair<TermInIndex[], String[]> termAndStrings;
+            String[] termStrings;
             try (BlockTimer bt2 = BlockTimer.create(LOG_TIMINGS, luceneField + ": readTermsFromIndex")) {
-                termAndStrings = readTermsFromIndex();
+                termStrings = readTermsFromIndex();
             }
-            TermInIndex[] terms = termAndStrings.getLeft();
-            String[] termStrings = termAndStrings.getRight();
 
             // Determine the sort orders for the global terms list
             List<int[]> sortedInverted;
             try (BlockTimer bt2 = BlockTimer.create(LOG_TIMINGS, luceneField + ": determineSort and invert")) {
                 sortedInverted = List.of(true, false).parallelStream()
                         .map(sensitive -> {
-                            Comparator<TermInIndex> cmp = sensitive ? CMP_TERM_SENSITIVE : CMP_TERM_INSENSITIVE;;
+                            // Collator.compare() is synchronized, so use our own copy in this thread
+                            Collator coll = (Collator) (sensitive ? collator : collatorInsensitive).clone();
 
                             // Get a sorted term index array (sort position > term id)
-                            // Note that multiple terms may be equal according to the comparator,
+                            // Note that multiple terms may be equal according to the collator,
                             // but they still get separate sort positions. This will be fixed later on the
                             // second invert pass.
-                            int[] sorted = determineSort(terms, cmp);
+                            int[] sorted = null;
+                            if (useSegmentSortOrders) {
+                                sorted = mergeSegmentSortOrders(termStrings,
+                                        sensitive ? segmentSortOrdersSensitive : segmentSortOrdersInsensitive, coll);
+                            }
+                            if (sorted == null)
+                                sorted = determineSort(termStrings, coll);
                             // Invert array because that's what finishInitialization needs.
                             // Produces a term id > sort position array.
                             // NOTE: gives equal sort positions to equal terms, so the second invert can collect
                             // all the equal terms into one entry.
-                            return invertSortedTermsArray(terms, sorted, cmp);
+                            return invertSortedTermsArray(termStrings, sorted, coll);
                         })
                         .collect(Collectors.toList());
             }
@@ -125,27 +125,28 @@ public class TermsIntegrated extends TermsReaderAbstract {
 
             // clear temporary variables
             this.indexReader = null;
+            segmentSortOrdersSensitive = segmentSortOrdersInsensitive = null;
         }
     }
 
-    private Pair<TermInIndex[], String[]> readTermsFromIndex() throws InterruptedException {
-        // Globally unique terms that occur in our index (sorted by global id)
-        Map<String, TermInIndex> globalTermIds = new LinkedHashMap<>();
+    private String[] readTermsFromIndex() throws InterruptedException {
+        // Globally unique terms that occur in our index, and their global ids
+        Object2IntOpenHashMap<String> globalTermIds = new Object2IntOpenHashMap<>();
+        globalTermIds.defaultReturnValue(-1);
+        List<String> termStrings = new ArrayList<>();
 
         // Intentionally single-threaded; multi-threaded is slower.
         // Probably because reading from a single file sequentially is more efficient than alternating between
         // several files..?
         for (LeafReaderContext l: indexReader.leaves()) {
-            readTermsFromSegment(globalTermIds, l);
+            readTermsFromSegment(globalTermIds, termStrings, l);
         }
 
-        TermInIndex[] terms = globalTermIds.values().toArray(TermInIndex[]::new);
-        String[] termStrings = Arrays.stream(terms).map(t -> t.term).toArray(String[]::new);
-        return Pair.of(terms, termStrings);
+        return termStrings.toArray(String[]::new);
     }
 
-    private void readTermsFromSegment(Map<String, TermInIndex> globalTermIds, LeafReaderContext lrc)
-            throws InterruptedException {
+    private void readTermsFromSegment(Object2IntOpenHashMap<String> globalTermIds, List<String> termStrings,
+            LeafReaderContext lrc) throws InterruptedException {
         BLTerms segmentTerms;
         try {
             segmentTerms = (BLTerms) lrc.reader().terms(luceneField);
@@ -156,34 +157,94 @@ public class TermsIntegrated extends TermsReaderAbstract {
             // can happen if segment only contains index metadata doc
             return;
         }
-        segmentTerms.setTermsIntegrated(this, lrc.ord);
         BlackLab40PostingsReader r = BlackLab40PostingsReader.get(lrc);
-        TermsIntegratedSegment s = new TermsIntegratedSegment(r, luceneField, lrc.ord);
-
-        Iterator<TermsIntegratedSegment.TermInSegment> it = s.iterator();
-        int[] segmentToGlobal = segmentToGlobalTermIds.computeIfAbsent(s.ord(), __ -> new int[s.size()]);
-        while (it.hasNext()) {
-            // Make sure this can be interrupted if e.g. a commandline utility completes
-            // before this initialization is finished.
-            if (Thread.interrupted())
-                throw new InterruptedException();
-
-            TermsIntegratedSegment.TermInSegment t = it.next();
-            TermInIndex tii = globalTermIds.computeIfAbsent(t.term, __ -> new TermInIndex(t.term, globalTermIds.size()));
-            // Remember the mapping from segment id to global id
-            segmentToGlobal[t.id] = tii.globalTermId;
+        try (TermsIntegratedSegment s = new TermsIntegratedSegment(r, luceneField, lrc.ord)) {
+            Iterator<TermsIntegratedSegment.TermInSegment> it = s.iterator();
+            int[] segmentToGlobal = segmentToGlobalTermIds.computeIfAbsent(s.ord(), __ -> new int[s.size()]);
+            while (it.hasNext()) {
+                // Make sure this can be interrupted if e.g. a commandline utility completes
+                // before this initialization is finished.
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+
+                TermsIntegratedSegment.TermInSegment t = it.next();
+                int globalTermId = globalTermIds.getInt(t.term);
+                if (globalTermId < 0) {
+                    globalTermId = termStrings.size();
+                    globalTermIds.put(t.term, globalTermId);
+                    termStrings.add(t.term);
+                }
+                // Remember the mapping from segment id to global id
+                segmentToGlobal[t.id] = globalTermId;
+            }
+
+            if (useSegmentSortOrders) {
+                // Keep the segment's sort orders (in global term ids) so we can merge them later
+                segmentSortOrdersSensitive.add(toGlobalIds(s.readSortOrder(true), segmentToGlobal));
+                segmentSortOrdersInsensitive.add(toGlobalIds(s.readSortOrder(false), segmentToGlobal));
+            }
         }
+    }
 
-        s.close();
+    private static int[] toGlobalIds(int[] segmentTermIds, int[] segmentToGlobal) {
+        for (int i = 0; i < segmentTermIds.length; i++)
+            segmentTermIds[i] = segmentToGlobal[segmentTermIds[i]];
+        return segmentTermIds;
     }
 
-    private int[] determineSort(TermInIndex[] terms, Comparator<TermInIndex> cmp) {
+    /**
+     * Determine the global sort order by merging the sort orders of all segments.
+     *
+     * Each term is included once, even if it occurs in several segments.
+     *
+     * @param terms term strings by global term id
+     * @param segmentSortOrders per segment: global term ids in sorted order
+     * @param coll collator the segment sort orders were determined with (only use from this thread)
+     * @return global term ids in sorted order, or null if a segment turned out not to be sorted
+     *   according to this collator (so we should sort the terms ourselves)
+     */
+    private static int[] mergeSegmentSortOrders(String[] terms, List<int[]> segmentSortOrders, Collator coll) {
+        PriorityQueue<SegmentSortOrder> queue = new PriorityQueue<>(Math.max(1, segmentSortOrders.size()),
+                (a, b) -> coll.compare(terms[a.currentGlobalId()], terms[b.currentGlobalId()]));
+        for (int[] sortOrder: segmentSortOrders) {
+            if (sortOrder.length > 0)
+                queue.add(new SegmentSortOrder(sortOrder));
+        }
+        int[] sorted = new int[terms.length];
+        int n = 0;
+        BitSet added = new BitSet(terms.length);
+        while (!queue.isEmpty()) {
+            // Add the lowest term (unless we already added it from another segment)
+            SegmentSortOrder segment = queue.poll();
+            int globalTermId = segment.currentGlobalId();
+            if (!added.get(globalTermId)) {
+                added.set(globalTermId);
+                sorted[n++] = globalTermId;
+            }
+
+            // Advance this segment, making sure it really is sorted the way we expect
+            segment.position++;
+            if (segment.position < segment.sortedGlobalIds.length) {
+                if (coll.compare(terms[globalTermId], terms[segment.currentGlobalId()]) > 0)
+                    return null;
+                queue.add(segment);
+            }
+        }
+        return n == terms.length ? sorted : null;
+    }
+
+    private static int[] determineSort(String[] terms, Collator coll) {
+        // Collator.compare() is synchronized, so precomputing the collation keys speeds things up
+        CollationKey[] ck = new CollationKey[terms.length];
+        for (int i = 0; i < terms.length; i++)
+            ck[i] = coll.getCollationKey(terms[i]);
+
         // Initialize array of indexes to be sorted
         int[] sorted = new int[terms.length];
         for (int i = 0; i < terms.length; i++) {
             sorted[i] = i;
         }
-        IntArrays.parallelQuickSort(sorted, (a, b) -> cmp.compare(terms[a], terms[b]));
+        IntArrays.parallelQuickSort(sorted, (a, b) -> ck[a].compareTo(ck[b]));
         return sorted;
     }
 
@@ -193,19 +254,19 @@ public class TermsIntegrated extends TermsReaderAbstract {
      * Will make sure that if multiple terms are considered equal (insensitive comparison),
      * they all get the same sort value
      *
-     * @params terms terms the array refers to
+     * @param terms terms the array refers to
      * @param array array of term ids sorted by term string
-     * @param cmp comparator to use for equality test
+     * @param coll collator to use for equality test (only use from this thread)
      * @return inverted array
      */
-    private int[] invertSortedTermsArray(TermInIndex[] terms, int[] array, Comparator<TermInIndex> cmp) {
+    private static int[] invertSortedTermsArray(String[] terms, int[] array, Collator coll) {
         int[] result = new int[array.length];
         int prevSortPosition = -1;
         int prevTermId = -1;
         for (int i = 0; i < array.length; i++) {
             int termId = array[i];
             int sortPosition = i;
-            if (prevTermId >= 0 && cmp.compare(terms[prevTermId], terms[termId]) == 0) {
+            if (prevTermId >= 0 && coll.compare(terms[prevTermId], terms[termId]) == 0) {
                 // Keep the same sort position because the terms are the same
                 sortPosition = prevSortPosition;
             } else {
@@ -233,4 +294,10 @@ public class TermsIntegrated extends TermsReaderAbstract {
         return id < 0 ? id : mapping[id];
     }
 
+    @Override
+    public long ramBytesUsed() {
+        long segmentMappings = segmentToGlobalTermIds.values().stream().mapToLong(RamUsageEstimator::sizeOf).sum();
+        return super.ramBytesUsed() + segmentMappings;
+    }
+
 }
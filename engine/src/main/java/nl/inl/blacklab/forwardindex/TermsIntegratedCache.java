@@ -0,0 +1,156 @@
+package nl.inl.blacklab.forwardindex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Keeps track of the global terms loaded for integrated forward indexes.
+ *
+ * Terms are loaded on demand (see {@link AnnotationForwardIndexIntegrated#terms()}), or
+ * in the background when an index is opened if preloading is enabled (the default).
+ *
+ * All loaded terms share a global size limit, which is 0 (no limit) by default. If loading
+ * terms takes us over the limit, we unload the terms that were least recently used.
+ * They will be loaded again when needed. See {@link #setMaxBytes(long)}.
+ */
+@ThreadSafe
+public class TermsIntegratedCache {
+
+    private static final Logger logger = LogManager.getLogger(TermsIntegratedCache.class);
+
+    /** Load the terms for all annotations in the background when opening an index? */
+    private static volatile boolean preload = true;
+
+    /** Maximum number of bytes all loaded terms together may use (0 for no limit). */
+    private static volatile long maxBytes = 0;
+
+    /** Forward indexes that have their terms loaded */
+    private static final Set<AnnotationForwardIndexIntegrated> loaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Set whether to load the terms for all annotations in the background when opening an index.
+     *
+     * If false, terms are only loaded when first needed.
+     *
+     * @param preload whether to preload terms
+     */
+    public static void setPreload(boolean preload) {
+        TermsIntegratedCache.preload = preload;
+    }
+
+    public static boolean isPreload() {
+        return preload;
+    }
+
+    /**
+     * Set the maximum number of bytes all loaded terms together may use.
+     *
+     * If the limit is exceeded, the least recently used terms are unloaded. The terms
+     * that were just loaded are never unloaded, so the limit may be exceeded if a single
+     * annotation's terms are larger than the limit.
+     *
+     * @param maxBytes maximum number of bytes, or 0 for no limit
+     */
+    public static void setMaxBytes(long maxBytes) {
+        TermsIntegratedCache.maxBytes = maxBytes;
+    }
+
+    public static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * How many bytes all loaded terms together currently use.
+     *
+     * @return number of bytes used
+     */
+    public static long getBytesUsed() {
+        return loaded.stream().mapToLong(AnnotationForwardIndexIntegrated::termsRamBytesUsed).sum();
+    }
+
+    /**
+     * Get information about the terms for each forward index, for monitoring.
+     *
+     * @return information per loaded forward index
+     */
+    public static List<Map<String, Object>> getInfo() {
+        List<Map<String, Object>> info = new ArrayList<>();
+        for (AnnotationForwardIndexIntegrated afi: loaded) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("luceneField", afi.luceneField());
+            m.put("sizeBytes", afi.termsRamBytesUsed());
+            m.put("loadTimeMs", afi.termsLoadTimeMs());
+            m.put("timesLoaded", afi.termsTimesLoaded());
+            m.put("notUsedForSec", (System.currentTimeMillis() - afi.termsLastUsedMs()) / 1000);
+            info.add(m);
+        }
+        return info;
+    }
+
+    /**
+     * Register newly loaded terms.
+     *
+     * Called with the forward index's lock held, so it can't be unloaded (and unregistered) at the same time.
+     *
+     * @param afi forward index that just loaded its terms
+     */
+    static void register(AnnotationForwardIndexIntegrated afi) {
+        loaded.add(afi);
+    }
+
+    /**
+     * Unregister unloaded terms.
+     *
+     * Called with the forward index's lock held, so its terms can't be loaded (and registered) at the same time.
+     *
+     * @param afi forward index that just unloaded its terms
+     */
+    static void unregister(AnnotationForwardIndexIntegrated afi) {
+        loaded.remove(afi);
+    }
+
+    /**
+     * Unload other terms if we're over the limit.
+     *
+     * @param justLoaded forward index that just loaded its terms (won't be unloaded)
+     */
+    static synchronized void unloadIfOverLimit(AnnotationForwardIndexIntegrated justLoaded) {
+        if (maxBytes <= 0)
+            return;
+        long bytesUsed = getBytesUsed();
+        if (bytesUsed <= maxBytes)
+            return;
+
+        // Sort by last use. Copy the last used times first, as they may change while we sort.
+        AnnotationForwardIndexIntegrated[] candidates = loaded.stream()
+                .filter(afi -> afi != justLoaded)
+                .toArray(AnnotationForwardIndexIntegrated[]::new);
+        long[] lastUsedMs = new long[candidates.length];
+        for (int i = 0; i < candidates.length; i++)
+            lastUsedMs[i] = candidates[i].termsLastUsedMs();
+        int[] order = IntStream.range(0, candidates.length).toArray();
+        IntArrays.quickSort(order, (a, b) -> Long.compare(lastUsedMs[a], lastUsedMs[b]));
+
+        for (int i: order) {
+            if (bytesUsed <= maxBytes)
+                break;
+            AnnotationForwardIndexIntegrated afi = candidates[i];
+            long size = afi.termsRamBytesUsed();
+            if (afi.unloadTerms()) { // (also unregisters them)
+                bytesUsed -= size;
+                logger.debug("Unloaded terms for " + afi.luceneField() + " (" + size + " bytes)");
+            }
+        }
+    }
+}
@@ -85,6 +85,30 @@ public class TermsIntegratedSegment implements AutoCloseable {
         return this.field.getNumberOfTerms();
     }
 
+    /**
+     * Read the sort order of the terms in this segment for this field.
+     *
+     * The sort order was determined using the default collators when the segment was written.
+     *
+     * @param sensitive read the sensitive (true) or insensitive (false) sort order
+     * @return segment term ids in sorted order
+     */
+    public int[] readSortOrder(boolean sensitive) {
+        if (this.isClosed) throw new BlackLabRuntimeException("Segment is closed");
+        int n = size();
+        int[] pos2TermId = new int[n];
+        try {
+            // See TermInSegmentIterator for the layout of the term order file
+            IndexInput termOrderFile = _termOrderFile.clone();
+            termOrderFile.seek(field.getTermOrderOffset() + (long) n * Integer.BYTES * (sensitive ? 3 : 1));
+            for (int i = 0; i < n; i++)
+                pos2TermId[i] = termOrderFile.readInt();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return pos2TermId;
+    }
+
     public static class TermInSegment {
         public String term;
         /** The local term id. */
@@ -3,6 +3,8 @@ package nl.inl.blacklab.forwardindex;
 import java.text.Collator;
 import java.util.Arrays;
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
 import gnu.trove.iterator.TIntObjectIterator;
@@ -13,7 +15,7 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 import nl.inl.util.BlockTimer;
 
-public abstract class TermsReaderAbstract implements Terms {
+public abstract class TermsReaderAbstract implements Terms, Accountable {
 
     /** Log the timing of different initialization tasks? */
     protected static final boolean LOG_TIMINGS = false;
@@ -357,4 +359,15 @@ public abstract class TermsReaderAbstract implements Terms {
         this.printSensitivityInformation(MatchSensitivity.SENSITIVE);
         this.printSensitivityInformation(MatchSensitivity.INSENSITIVE);
     }
+
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.sizeOf(insensitivePosition2GroupId) +
+                RamUsageEstimator.sizeOf(sensitivePosition2GroupId) +
+                RamUsageEstimator.sizeOf(termId2SensitivePosition) +
+                RamUsageEstimator.sizeOf(termId2InsensitivePosition) +
+                RamUsageEstimator.sizeOf(groupId2TermIds) +
+                RamUsageEstimator.sizeOf(termId2CharDataOffset) +
+                (termCharData == null ? 0 : termCharData.size64());
+    }
 }
@@ -17,6 +17,16 @@ public interface BLIndexObjectFactory {
 
     BLFieldType fieldTypeContentStore();
 
+    /**
+     * Get the field type for a content store field that uses a specific block codec.
+     *
+     * @param codecName block codec (e.g. "zlib" or "lz4"), or null for the default
+     * @return field type
+     */
+    default BLFieldType fieldTypeContentStore(String codecName) {
+        return fieldTypeContentStore();
+    }
+
     BLFieldType fieldTypeAnnotationSensitivity(boolean offsets, boolean forwardIndex);
 
     BLFieldType fieldTypeIndexMetadataMarker();
@@ -46,6 +46,11 @@ public class BLIndexObjectFactoryLucene implements BLIndexObjectFactory {
         return BLFieldTypeLucene.contentStore();
     }
 
+    @Override
+    public BLFieldType fieldTypeContentStore(String codecName) {
+        return BLFieldTypeLucene.contentStore(codecName);
+    }
+
     @Override
     public BLFieldType fieldTypeAnnotationSensitivity(boolean offsets, boolean forwardIndex) {
         return BLFieldTypeLucene.annotationSensitivity(offsets, forwardIndex);
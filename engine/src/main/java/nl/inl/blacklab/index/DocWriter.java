@@ -76,7 +76,21 @@ public interface DocWriter {
      */
     void addToForwardIndex(AnnotatedFieldWriter field, BLInputDocument currentDoc);
 
-    void storeInContentStore(BLInputDocument currentDoc, TextContent document, String contentIdFieldName, String contentStoreName);
+    default void storeInContentStore(BLInputDocument currentDoc, TextContent document, String contentIdFieldName, String contentStoreName) {
+        storeInContentStore(currentDoc, document, contentIdFieldName, contentStoreName, null);
+    }
+
+    /**
+     * Store a document in the content store.
+     *
+     * @param currentDoc document we're indexing, to add the content store field (or content id) to
+     * @param document document contents to store
+     * @param contentIdFieldName field to store the content id in (external index format only)
+     * @param contentStoreName name of the content store (usually the annotated field name)
+     * @param contentStoreCodec block codec to use (e.g. "zlib" or "lz4"; integrated index format only), or null for the default
+     */
+    void storeInContentStore(BLInputDocument currentDoc, TextContent document, String contentIdFieldName,
+            String contentStoreName, String contentStoreCodec);
 
     boolean needsPrimaryValuePayloads();
 }
@@ -432,7 +432,7 @@ class IndexerImpl implements DocWriter, Indexer {
 
     @Override
     public void storeInContentStore(BLInputDocument currentDoc, TextContent document, String contentIdFieldName,
-            String contentStoreName) {
+            String contentStoreName, String contentStoreCodec) {
 
         Field field = indexWriter.metadata().annotatedField(contentStoreName);
         if (field == null) field = indexWriter.metadata().metadataField(contentStoreName);
@@ -448,7 +448,7 @@ class IndexerImpl implements DocWriter, Indexer {
             }
 
             String luceneFieldName = AnnotatedFieldNameUtil.contentStoreField(contentStoreName);
-            BLFieldType fieldType = indexWriter.indexObjectFactory().fieldTypeContentStore();
+            BLFieldType fieldType = indexWriter.indexObjectFactory().fieldTypeContentStore(contentStoreCodec);
             currentDoc.addField(luceneFieldName, document.toString(), fieldType);
         } else {
             // external contentstore, different api
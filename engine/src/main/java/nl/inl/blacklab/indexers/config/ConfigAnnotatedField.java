@@ -34,6 +34,10 @@ public class ConfigAnnotatedField implements ConfigWithAnnotations {
     /** Punctuation between words (or null if we don't need/want to capture this) */
     private String punctPath = null;
 
+    /** Block codec for the content store ("zlib", "lz4" or "none"), or null for the default (zlib).
+     *  Only applies to the integrated index format. */
+    private String contentStoreCodec = null;
+
     /** Annotations on our words */
     private final Map<String, ConfigAnnotation> annotations = new LinkedHashMap<>();
 
@@ -76,6 +80,7 @@ public class ConfigAnnotatedField implements ConfigWithAnnotations {
         result.setWordPath(wordPath);
         result.setTokenIdPath(tokenIdPath);
         result.setPunctPath(punctPath);
+        result.setContentStoreCodec(contentStoreCodec);
         for (ConfigAnnotation a : annotations.values())
             result.addAnnotation(a.copy());
         for (ConfigStandoffAnnotations a : standoffAnnotations)
@@ -155,6 +160,14 @@ public class ConfigAnnotatedField implements ConfigWithAnnotations {
         return punctPath;
     }
 
+    public String getContentStoreCodec() {
+        return contentStoreCodec;
+    }
+
+    public void setContentStoreCodec(String contentStoreCodec) {
+        this.contentStoreCodec = contentStoreCodec;
+    }
+
     public List<ConfigInlineTag> getInlineTags() {
         return inlineTags;
     }
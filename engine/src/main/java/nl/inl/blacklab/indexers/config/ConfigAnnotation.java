@@ -46,6 +46,9 @@ public class ConfigAnnotation {
     /** How to process annotation values (if at all) */
     private final List<ConfigProcessStep> process = new ArrayList<>();
 
+    /** Compiled version of process (see getProcessPipeline()) */
+    private volatile ProcessPipeline processPipeline;
+
     /**
      * What sensitivity setting to use to index this annotation (optional, default
      * depends on field name)
@@ -243,6 +246,24 @@ public class ConfigAnnotation {
     public void setProcess(List<ConfigProcessStep> process) {
         this.process.clear();
         this.process.addAll(process);
+        processPipeline = null;
+    }
+
+    /**
+     * Get the compiled processing steps.
+     *
+     * They are compiled when first needed.
+     *
+     * @return compiled processing steps
+     */
+    public ProcessPipeline getProcessPipeline() {
+        ProcessPipeline pipeline = processPipeline;
+        if (pipeline == null) {
+            // (if several threads get here at the same time, they compile the same steps; no harm done)
+            pipeline = new ProcessPipeline(process);
+            processPipeline = pipeline;
+        }
+        return pipeline;
     }
 
     public boolean createForwardIndex() {
@@ -17,6 +17,9 @@ public class ConfigLinkValue {
     /** Operations to perform on this value, if any */
     private final List<ConfigProcessStep> process = new ArrayList<>();
 
+    /** Compiled version of process (see getProcessPipeline()) */
+    private volatile ProcessPipeline processPipeline;
+
     public ConfigLinkValue() {
     }
 
@@ -65,10 +68,29 @@ public class ConfigLinkValue {
     public void setProcess(List<ConfigProcessStep> p) {
         process.clear();
         process.addAll(p);
+        processPipeline = null;
     }
 
     public void addProcessStep(ConfigProcessStep p) {
         this.process.add(p);
+        processPipeline = null;
+    }
+
+    /**
+     * Get the compiled processing steps.
+     *
+     * They are compiled when first needed.
+     *
+     * @return compiled processing steps
+     */
+    public ProcessPipeline getProcessPipeline() {
+        ProcessPipeline pipeline = processPipeline;
+        if (pipeline == null) {
+            // (if several threads get here at the same time, they compile the same steps; no harm done)
+            pipeline = new ProcessPipeline(process);
+            processPipeline = pipeline;
+        }
+        return pipeline;
     }
 
     @Override
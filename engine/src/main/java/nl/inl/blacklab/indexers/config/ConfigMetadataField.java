@@ -28,6 +28,9 @@ public class ConfigMetadataField {
     /** How to process annotation values (if at all) */
     private final List<ConfigProcessStep> process = new ArrayList<>();
 
+    /** Compiled version of process (see getProcessPipeline()) */
+    private volatile ProcessPipeline processPipeline;
+
     private final Map<String, String> mapValues = new HashMap<>();
 
     /** How to index the field (tokenized|untokenized|numeric) */
@@ -215,6 +218,24 @@ public class ConfigMetadataField {
     public void setProcess(List<ConfigProcessStep> process) {
         this.process.clear();
         this.process.addAll(process);
+        processPipeline = null;
+    }
+
+    /**
+     * Get the compiled processing steps.
+     *
+     * They are compiled when first needed.
+     *
+     * @return compiled processing steps
+     */
+    public ProcessPipeline getProcessPipeline() {
+        ProcessPipeline pipeline = processPipeline;
+        if (pipeline == null) {
+            // (if several threads get here at the same time, they compile the same steps; no harm done)
+            pipeline = new ProcessPipeline(process);
+            processPipeline = pipeline;
+        }
+        return pipeline;
     }
 
     public void setMapValues(Map<String, String> mapValues) {
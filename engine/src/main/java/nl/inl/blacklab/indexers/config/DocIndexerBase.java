@@ -478,7 +478,18 @@ public abstract class DocIndexerBase extends DocIndexerAbstract {
         } else {
             contentIdFieldName = contentStoreName + "Cid";
         }
-        getDocWriter().storeInContentStore(currentDoc, document, contentIdFieldName, contentStoreName);
+        getDocWriter().storeInContentStore(currentDoc, document, contentIdFieldName, contentStoreName,
+                getContentStoreCodec(contentStoreName));
+    }
+
+    /**
+     * What block codec should be used for this content store?
+     *
+     * @param contentStoreName name of the content store (usually the annotated field name)
+     * @return codec name (e.g. "zlib" or "lz4"), or null for the default
+     */
+    protected String getContentStoreCodec(String contentStoreName) {
+        return null;
     }
 
     /**
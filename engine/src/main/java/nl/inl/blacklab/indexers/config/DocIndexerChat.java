@@ -467,7 +467,7 @@ public class DocIndexerChat extends DocIndexerConfig {
         for (String word : words) {
             beginWord();
             for (ConfigAnnotation annot : currentAnnotatedField.getAnnotationsFlattened().values()) {
-                String processed = processString(word, annot.getProcess(), null);
+                String processed = processString(word, annot.getProcessPipeline(), null);
                 annotation(annot.getName(), processed, 1, null);
             }
             endWord();
@@ -12,7 +12,6 @@ import java.util.Map;
 import java.util.TreeSet;
 import java.util.function.Function;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -95,6 +94,12 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         this.config = config;
     }
 
+    @Override
+    protected String getContentStoreCodec(String contentStoreName) {
+        ConfigAnnotatedField af = config == null ? null : config.getAnnotatedField(contentStoreName);
+        return af == null ? null : af.getContentStoreCodec();
+    }
+
     @Override
     protected String optTranslateFieldName(String from) {
         if (config == null) // test
@@ -171,46 +176,9 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         ensureInitialized();
     }
 
-    protected String processString(String result, List<ConfigProcessStep> process, Map<String, String> mapValues) {
-        for (ConfigProcessStep step : process) {
-            String method = step.getMethod();
-            Map<String, String> param = step.getParam();
-            switch (method) {
-            case "replace":
-                if (param.getOrDefault("keep", "replaced").equals("all"))
-                    warn("'replace' processing step with 'keep: all', but multiple values not allowed");
-                result = opReplace(result, param);
-                break;
-            case "default":
-                result = opDefault(result, param);
-                break;
-            case "append":
-                result = opAppend(result, param);
-                break;
-            case "split":
-                result = opSplit(result, param).get(0);
-                break;
-            case "chatFormatAgeToMonths":
-                result = opChatFormatAgeToMonths(result);
-                break;
-            case "strip":
-                result = opStrip(result, param);
-                break;
-             case "concatDate":
-                result = opConcatDate(param);
-                break;
-            case "parsePos":
-            {
-                // Get individual feature out of a part of speech string like "NOU(gender=f,number=p)"
-                String field = param.getOrDefault("field", "_");
-                result = opParsePartOfSpeech(result, field);
-                break;
-            }
-            default:
-                // In the future, we'll support user plugins here
-                throw new UnsupportedOperationException("Unknown processing step method " + method);
-            }
-        }
+    protected String processString(String result, ProcessPipeline process, Map<String, String> mapValues) {
+        if (!process.isEmpty())
+            result = process.apply(this, result);
         if (mapValues != null && !mapValues.isEmpty()) {
             // Finally, apply any value mappings specified.
             String mappedResult = mapValues.get(result);
@@ -220,6 +188,15 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         return result;
     }
 
+    /**
+     * Report a problem applying a processing step.
+     *
+     * @param msg warning message
+     */
+    void processingWarning(String msg) {
+        warn(msg);
+    }
+
     /**
      * process linked documents when configured. An xPath processor can be provided,
      * it will retrieve information from the document to construct a path to a linked document.
@@ -247,7 +224,7 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
             }
             List<String> resultAfterProcessing = new ArrayList<>();
             for (String inputValue : results) {
-                resultAfterProcessing.addAll(processStringMultipleValues(inputValue, linkValue.getProcess(), null));
+                resultAfterProcessing.addAll(processStringMultipleValues(inputValue, linkValue.getProcessPipeline(), null));
             }
             results = resultAfterProcessing;
         }
@@ -280,82 +257,17 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         }
     }
 
-    protected List<String> processStringMultipleValues(String input, List<ConfigProcessStep> process, Map<String, String> mapValues) {
+    protected List<String> processStringMultipleValues(String input, ProcessPipeline process, Map<String, String> mapValues) {
         // If there's no processing to be done (the most common case), skip the list allocation.
         if (process.isEmpty() && (mapValues == null || mapValues.isEmpty()))
             return List.of(input);
 
-        List<String> result = new ArrayList<>();
-        result.add(input);
-
-        for (ConfigProcessStep step : process) {
-            String method = step.getMethod();
-            Map<String, String> param = step.getParam();
-
-            switch (method) {
-            case "replace":
-                // keep only replaced strings, or originals as well?
-                boolean keepAll = param.getOrDefault("keep", "replaced").equals("all");
-                for (int i = 0; i < result.size(); ++i) {
-                    String afterReplace = opReplace(result.get(i), param);
-                    if (keepAll) {
-                        // We want to keep the original and add the result as well.
-                        // Note that we insert it after the original to keep things in a nice order.
-                        result.add(i + 1, afterReplace);
-                        i++;
-                    } else {
-                        // Replace the original version with the result.
-                        result.set(i, afterReplace);
-                    }
-                }
-                break;
-            case "default":
-                for (int i = 0; i < result.size(); ++i) {
-                    result.set(i, opDefault(result.get(i), param));
-                }
-                break;
-            case "append":
-                for (int i = 0; i < result.size(); ++i) {
-                    result.set(i, opAppend(result.get(i), param));
-                }
-                break;
-            case "split": {
-                ArrayList<String> r = new ArrayList<>();
-                for (String s : result) {
-                    r.addAll(opSplit(s, param));
-                }
-                result = r;
-                break;
-            }
-            case "chatFormatAgeToMonths":
-                for (int i = 0; i < result.size(); ++i) {
-                    result.set(i, opChatFormatAgeToMonths(result.get(i)));
-                }
-                break;
-            case "strip":
-                for (int i = 0; i < result.size(); ++i) {
-                    result.set(i, opStrip(result.get(i), param));
-                }
-                break;
-            case "parsePos":
-            {
-                // Get individual feature out of a part of speech string like "NOU(gender=f,number=p)"
-                String field = param.getOrDefault("field", "_");
-                for (int i = 0; i < result.size(); ++i) {
-                    result.set(i, opParsePartOfSpeech(result.get(i), field));
-                }
-                break;
-            }
-            case "concatDate":
-                String s = opConcatDate(param);
-                if (!s.isEmpty()) {
-                    result.set(0, s);
-                }
-                break;
-            default:
-                // In the future, we'll support user plugins here
-                throw new UnsupportedOperationException("Unknown processing step method " + method);
-            }
+        List<String> result;
+        if (process.isEmpty()) {
+            result = new ArrayList<>();
+            result.add(input);
+        } else {
+            result = process.applyMultiple(this, input);
         }
         if (mapValues != null && !mapValues.isEmpty()) {
             // Finally, apply any value mappings specified.
@@ -390,11 +302,9 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         }
     }
 
-    static String opStrip(String result, Map<String, String> param) {
+    static String opStrip(String result, String stripChars) {
         // Trim character/string from beginning and end
-        String stripChars = param.getOrDefault("chars", " ");
-        result = StringUtils.strip(result, stripChars);
-        return result;
+        return StringUtils.strip(result, stripChars);
     }
     
     /**
@@ -406,18 +316,13 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
      * 
      * Result: "20001019"
      *  
-     * @param param operation parameters
+     * @param yearField metadata field containing the year
+     * @param monthField metadata field containing the month
+     * @param dayField metadata field containing the day
+     * @param isStart if true, fill in missing month/day as the start of the year/month, otherwise the end
      * @return resulting value
      */
-    protected String opConcatDate(Map<String, String> param) {
-        String yearField = param.get("yearField");
-        String monthField = param.get("monthField");
-        String dayField = param.get("dayField");
-        String mode = param.get("autofill");
-        if (yearField == null || monthField == null || dayField == null || mode == null || !(mode.equalsIgnoreCase("start")||mode.equalsIgnoreCase("end")))
-            throw new InvalidInputFormatConfig("concatDate needs parameters yearField, monthField, dayField, and autoFill ('start' or 'end')");
-        
-        boolean isStart = mode.equalsIgnoreCase("start");
+    protected String opConcatDate(String yearField, String monthField, String dayField, boolean isStart) {
         Integer y, m, d;
         try { y = Integer.parseInt(getMetadataField(yearField).get(0)); } catch (Exception e) { y = null; }
         try { m = Integer.parseInt(getMetadataField(monthField).get(0)); } catch (Exception e) { m = null; }
@@ -447,38 +352,44 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
         return Integer.toString(years * 12 + months + (days > 14 ? 1 : 0) );
     }
 
+    /** Value for opSplit's keep parameter to return all parts */
+    static final int SPLIT_KEEP_ALL = -2;
+
+    /** Value for opSplit's keep parameter to return both the original string and all parts */
+    static final int SPLIT_KEEP_BOTH = -3;
+
     /**
      * Split the result string on a separator and return one or all parts.
      *
+     * The parameters are resolved from the step's "separator" (defaults to ;) and
+     * "keep" (a number, or the special strings "all" or "both"; defaults to -1) parameters.
+     *
      * @param result the string to split
-     * @param param
+     * @param separator separator regex
+     * @param separatorPattern compiled separator regex, or null to let String.split() handle it
+     * @param keep
      * <pre>
-     * - "separator" for the separator (defaults to ;),
-     * - "keep" for the keep index, accepts numbers or the special string "all" (defaults to -1)
-     *      if "keep" <= 0 returns the first part.
-     *      if "keep" > number of splits return empty string.
-     *      if "keep" == "all" return all parts
-     *      if "keep" == "both" return both the original (unsplit) string and all parts
+     *      if keep <= 0 returns the first part (if negative, a warning is given as well).
+     *      if keep > number of splits return empty string.
+     *      if keep == SPLIT_KEEP_ALL return all parts
+     *      if keep == SPLIT_KEEP_BOTH return both the original (unsplit) string and all parts
      * </pre>
      */
-    private List<String> opSplit(String result, Map<String, String> param) {
+    List<String> opSplit(String result, String separator, Pattern separatorPattern, int keep) {
         // Split on a separator regex and keep one or all parts (first part by default)
-        String separator = param.getOrDefault("separator", ";");
-        String keep = param.getOrDefault("keep", "-1").toLowerCase();
-        String[] parts = result.split(separator, -1);
+        String[] parts = separatorPattern == null ? result.split(separator, -1) : separatorPattern.split(result, -1);
 
-        if (keep.equals("all")) {
+        if (keep == SPLIT_KEEP_ALL) {
             return Arrays.asList(parts);
         }
-        if (keep.equals("both")) {
+        if (keep == SPLIT_KEEP_BOTH) {
             ArrayList<String> r = new ArrayList<>();
             r.add(result);
             Collections.addAll(r, parts);
             return r;
         }
 
-        int i = -1;
-        try { i = Integer.parseInt(keep); } catch (NumberFormatException e) { /* handled below */ }
+        int i = keep;
         if (i < 0) {
             warn("action 'split', parameter 'keep': must be at least 1");
             i = 0;
@@ -491,21 +402,16 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
      * Appends a constant value, or the value of a metadata field to the result string.
      *
      * @param result the input string
-     * @param param
-     * <pre>
-     * - "separator" for the separator (defaults to " ")
-     * - "field" for the metadata field whose value will be appended
-     * - "value" for a constant value ("field" takes precedence if it exists)
-     * </pre>
+     * @param field the metadata field whose value will be appended (step parameter "field")
+     * @param constantValue a constant value; "field" takes precedence if it exists (step parameter "value")
+     * @param separator the separator (step parameter "separator", defaults to " ")
      */
-    private String opAppend(String result, Map<String, String> param) {
-        String separator = param.getOrDefault("separator", " ");
-        String field = param.get("field");
+    String opAppend(String result, String field, String constantValue, String separator) {
         String value;
         if (field != null)
             value = StringUtils.join(getMetadataField(field), separator);
         else
-            value = param.get("value");
+            value = constantValue;
         if (value != null && value.length() > 0) {
             if (result.length() > 0)
                 result += separator;
@@ -518,22 +424,17 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
      * Optionally replace an empty result with a constant value, or the value of a metadata field.
      *
      * @param result the input string
-     * @param param
-     * <pre>
-     * - "field" for the metadata field whose value will be used
-     * - "separator" to join the metadata field if it contains multiple values (defaults to ;)
-     * - "value" for a constant value ("field" takes precedence if it exists)
-     * </pre>
+     * @param field the metadata field whose value will be used (step parameter "field")
+     * @param constantValue a constant value; "field" takes precedence if it exists (step parameter "value")
+     * @param sep to join the metadata field if it contains multiple values (step parameter "separator", defaults to ;)
      */
-    private String opDefault(String result, Map<String, String> param) {
+    String opDefault(String result, String field, String constantValue, String sep) {
         if (result.length() == 0) {
-            String field = param.get("field");
             String value;
-            String sep = param.getOrDefault("separator", ";");
             if (field != null)
                 value = StringUtils.join(getMetadataField(field), sep);
             else
-                value = param.get("value");
+                value = constantValue;
             if (value != null)
                 result = value;
         }
@@ -543,23 +444,12 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
     /**
      * Perform a regex replace on result. Allows group references.
      *
-     * @param param
-     * <pre>
-     * - "find" for the regex
-     * - "replace" the replacement string
-     * </pre>
+     * @param result the input string
+     * @param find the regex (step parameter "find")
+     * @param replace the replacement string (step parameter "replace")
      */
-    private static String opReplace(String result, Map<String, String> param) {
-        String find = param.get("find");
-        String replace = param.get("replace");
-        if (find == null || replace == null)
-            throw new InvalidInputFormatConfig("replace needs parameters find and replace");
-        try {
-            result = result.replaceAll(find, replace);
-        } catch (PatternSyntaxException e) {
-            throw new InvalidInputFormatConfig("Syntax error in replace regex: " + find);
-        }
-        return result;
+    static String opReplace(String result, Pattern find, String replace) {
+        return find.matcher(result).replaceAll(replace);
     }
 
     /**
@@ -576,7 +466,7 @@ public abstract class DocIndexerConfig extends DocIndexerBase {
     protected String processMetadataValue(String name, String value) {
         ConfigMetadataField f = config.getMetadataField(name);
         if (f != null) {
-            value = processString(value, f.getProcess(), f.getMapValues());
+            value = processString(value, f.getProcessPipeline(), f.getMapValues());
         }
         return value;
     }
@@ -283,11 +283,11 @@ public class DocIndexerSaxon extends DocIndexerConfig {
         for (Object val : saxonHelper.find(f.getValuePath(),header)) {
             if (val instanceof NodeInfo) {
                 String unprocessedValue = saxonHelper.getValue(".", val);
-                for (String value : processStringMultipleValues(unprocessedValue, f.getProcess(), f.getMapValues())) {
+                for (String value : processStringMultipleValues(unprocessedValue, f.getProcessPipeline(), f.getMapValues())) {
                     addMetadataField(f.getName(), value);
                 }
             } else {
-                String metadataValue = processString(String.valueOf(val), f.getProcess(), f.getMapValues());
+                String metadataValue = processString(String.valueOf(val), f.getProcessPipeline(), f.getMapValues());
                 addMetadataField(f.getName(), metadataValue);
 
             }
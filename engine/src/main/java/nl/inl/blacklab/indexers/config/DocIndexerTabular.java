@@ -278,7 +278,7 @@ public class DocIndexerTabular extends DocIndexerConfig {
                             else
                                 value = "";
                         }
-                        value = processString(value, annotation.getProcess(), null);
+                        value = processString(value, annotation.getProcessPipeline(), null);
                         if (annotation.isMultipleValues()) {
                             // Multiple values possible. Split on multipleValuesSeparator.
                             boolean first = true;
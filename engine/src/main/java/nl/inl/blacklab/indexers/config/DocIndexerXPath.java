@@ -584,11 +584,11 @@ public class DocIndexerXPath extends DocIndexerConfig {
                                 while (apMetadata.evalXPath() != -1) {
                                     apEvalToString.resetXPath();
                                     String unprocessedValue = apEvalToString.evalXPathToString();
-                                    for (String value: processStringMultipleValues(unprocessedValue, f.getProcess(),
+                                    for (String value: processStringMultipleValues(unprocessedValue, f.getProcessPipeline(),
                                             f.getMapValues())) {
                                         // Also execute process defined for named metadata field, if any
                                         for (String processedValue: processStringMultipleValues(value,
-                                                metadataField.getProcess(), metadataField.getMapValues())) {
+                                                metadataField.getProcessPipeline(), metadataField.getMapValues())) {
                                             addMetadataField(fieldName, processedValue);
                                         }
                                     }
@@ -606,10 +606,10 @@ public class DocIndexerXPath extends DocIndexerConfig {
                                             "string(//tei:availability[1]/@status='free')"));
                                 }
                                 String unprocessedValue = apMetadata.evalXPathToString();
-                                for (String value: processStringMultipleValues(unprocessedValue, f.getProcess(),
+                                for (String value: processStringMultipleValues(unprocessedValue, f.getProcessPipeline(),
                                         f.getMapValues())) {
                                     for (String processedValue: processStringMultipleValues(value,
-                                            metadataField.getProcess(), metadataField.getMapValues())) {
+                                            metadataField.getProcessPipeline(), metadataField.getMapValues())) {
                                         addMetadataField(fieldName, processedValue);
                                     }
                                 }
@@ -631,7 +631,7 @@ public class DocIndexerXPath extends DocIndexerConfig {
                             while (apMetadata.evalXPath() != -1) {
                                 apEvalToString.resetXPath();
                                 String unprocessedValue = apEvalToString.evalXPathToString();
-                                for (String value: processStringMultipleValues(unprocessedValue, f.getProcess(),
+                                for (String value: processStringMultipleValues(unprocessedValue, f.getProcessPipeline(),
                                         f.getMapValues())) {
                                     addMetadataField(f.getName(), value);
                                 }
@@ -649,7 +649,7 @@ public class DocIndexerXPath extends DocIndexerConfig {
                                         "string(//tei:availability[1]/@status='free')"));
                             }
                             String unprocessedValue = apMetadata.evalXPathToString();
-                            for (String value: processStringMultipleValues(unprocessedValue, f.getProcess(),
+                            for (String value: processStringMultipleValues(unprocessedValue, f.getProcessPipeline(),
                                     f.getMapValues())) {
                                 addMetadataField(f.getName(), value);
                             }
@@ -797,7 +797,7 @@ public class DocIndexerXPath extends DocIndexerConfig {
             List<Integer> indexAtPositions, final Collection<String> reuseValueFromParentAnnot, int spanEndPos)
                 throws XPathEvalException, NavException {
         boolean evalXml = annotation.isCaptureXml();
-        List<ConfigProcessStep> processingSteps = annotation.getProcess();
+        ProcessPipeline processingSteps = annotation.getProcessPipeline();
         boolean hasProcessing = !processingSteps.isEmpty();
 
         Collection<String> values = reuseValueFromParentAnnot;
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCodec;
 import nl.inl.blacklab.exceptions.InvalidInputFormatConfig;
 import nl.inl.blacklab.index.DocIndexerFactory.Format;
 import nl.inl.blacklab.index.DocumentFormats;
@@ -356,6 +357,17 @@ public class InputFormatReader extends YamlJsonReader {
                 case "punctPath":
                     af.setPunctPath(str(e));
                     break;
+                case "contentStoreCodec": {
+                    String codecName = str(e);
+                    try {
+                        ContentStoreBlockCodec.fromName(codecName); // make sure it's valid
+                    } catch (IllegalArgumentException ex) {
+                        throw new InvalidInputFormatConfig("Unknown contentStoreCodec " + codecName + inFormat() +
+                                " (valid codecs: " + String.join(", ", ContentStoreBlockCodec.NAMES) + ")");
+                    }
+                    af.setContentStoreCodec(codecName);
+                    break;
+                }
                 case "annotations":
                     readAnnotations(e, af);
                     break;
@@ -0,0 +1,257 @@
+package nl.inl.blacklab.indexers.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import nl.inl.blacklab.exceptions.InvalidInputFormatConfig;
+
+/**
+ * A list of processing steps, compiled so it can be applied to many values efficiently.
+ *
+ * Processing steps are applied to every value of an annotation or metadata field, so
+ * for larger corpora they're applied billions of times. Compiling them once means
+ * we don't have to look up the method and its parameters for each value, and
+ * regexes are only compiled once instead of for each value.
+ *
+ * The config objects that have processing steps (ConfigAnnotation, ConfigMetadataField,
+ * ConfigLinkValue) compile them when first needed, and keep the result, so it's shared
+ * by all indexers using the same config.
+ */
+public final class ProcessPipeline {
+
+    /** A compiled processing step. */
+    interface Step {
+
+        /**
+         * Apply this step to a value that may not produce multiple values.
+         *
+         * @param indexer indexer we're applying the step for
+         * @param value value to process
+         * @return processed value
+         */
+        String apply(DocIndexerConfig indexer, String value);
+
+        /**
+         * Apply this step to a list of values.
+         *
+         * @param indexer indexer we're applying the step for
+         * @param values values to process; may be modified
+         * @return processed values (may be the same list)
+         */
+        default List<String> applyMultiple(DocIndexerConfig indexer, List<String> values) {
+            for (int i = 0; i < values.size(); ++i) {
+                values.set(i, apply(indexer, values.get(i)));
+            }
+            return values;
+        }
+    }
+
+    /** Our compiled steps */
+    private final Step[] steps;
+
+    /**
+     * Compile a list of processing steps.
+     *
+     * @param process processing steps
+     */
+    public ProcessPipeline(List<ConfigProcessStep> process) {
+        steps = new Step[process.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = compileStep(process.get(i));
+        }
+    }
+
+    /**
+     * Is this an empty pipeline?
+     *
+     * @return true if there are no steps
+     */
+    public boolean isEmpty() {
+        return steps.length == 0;
+    }
+
+    /**
+     * Apply the processing steps to a value that may not produce multiple values.
+     *
+     * @param indexer indexer we're applying the steps for
+     * @param value value to process
+     * @return processed value
+     */
+    public String apply(DocIndexerConfig indexer, String value) {
+        for (Step step: steps) {
+            value = step.apply(indexer, value);
+        }
+        return value;
+    }
+
+    /**
+     * Apply the processing steps to a value that may produce multiple values.
+     *
+     * @param indexer indexer we're applying the steps for
+     * @param value value to process
+     * @return processed values (modifiable)
+     */
+    public List<String> applyMultiple(DocIndexerConfig indexer, String value) {
+        List<String> result = new ArrayList<>();
+        result.add(value);
+        for (Step step: steps) {
+            result = step.applyMultiple(indexer, result);
+        }
+        return result;
+    }
+
+    private static Step compileStep(ConfigProcessStep step) {
+        String method = step.getMethod();
+        Map<String, String> param = step.getParam();
+        switch (method) {
+        case "replace":
+            return replace(param);
+        case "default": {
+            String field = param.get("field");
+            String value = param.get("value");
+            String separator = param.getOrDefault("separator", ";");
+            return (indexer, v) -> indexer.opDefault(v, field, value, separator);
+        }
+        case "append": {
+            String field = param.get("field");
+            String value = param.get("value");
+            String separator = param.getOrDefault("separator", " ");
+            return (indexer, v) -> indexer.opAppend(v, field, value, separator);
+        }
+        case "split":
+            return split(param);
+        case "chatFormatAgeToMonths":
+            return (indexer, v) -> indexer.opChatFormatAgeToMonths(v);
+        case "strip": {
+            String stripChars = param.getOrDefault("chars", " ");
+            return (indexer, v) -> DocIndexerConfig.opStrip(v, stripChars);
+        }
+        case "concatDate":
+            return concatDate(param);
+        case "parsePos": {
+            // Get individual feature out of a part of speech string like "NOU(gender=f,number=p)"
+            String field = param.getOrDefault("field", "_");
+            return (indexer, v) -> DocIndexerConfig.opParsePartOfSpeech(v, field);
+        }
+        default:
+            // In the future, we'll support user plugins here
+            throw new UnsupportedOperationException("Unknown processing step method " + method);
+        }
+    }
+
+    private static Step replace(Map<String, String> param) {
+        String find = param.get("find");
+        String replace = param.get("replace");
+        if (find == null || replace == null)
+            throw new InvalidInputFormatConfig("replace needs parameters find and replace");
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(find);
+        } catch (PatternSyntaxException e) {
+            throw new InvalidInputFormatConfig("Syntax error in replace regex: " + find);
+        }
+        // keep only replaced strings, or originals as well?
+        boolean keepAll = param.getOrDefault("keep", "replaced").equals("all");
+        return new Step() {
+            @Override
+            public String apply(DocIndexerConfig indexer, String value) {
+                if (keepAll)
+                    indexer.processingWarning("'replace' processing step with 'keep: all', but multiple values not allowed");
+                return DocIndexerConfig.opReplace(value, pattern, replace);
+            }
+
+            @Override
+            public List<String> applyMultiple(DocIndexerConfig indexer, List<String> values) {
+                for (int i = 0; i < values.size(); ++i) {
+                    String afterReplace = DocIndexerConfig.opReplace(values.get(i), pattern, replace);
+                    if (keepAll) {
+                        // We want to keep the original and add the result as well.
+                        // Note that we insert it after the original to keep things in a nice order.
+                        values.add(i + 1, afterReplace);
+                        i++;
+                    } else {
+                        // Replace the original version with the result.
+                        values.set(i, afterReplace);
+                    }
+                }
+                return values;
+            }
+        };
+    }
+
+    private static Step split(Map<String, String> param) {
+        String separator = param.getOrDefault("separator", ";");
+        Pattern separatorPattern = isLiteralSplitChar(separator) ? null : Pattern.compile(separator);
+        String keepParam = param.getOrDefault("keep", "-1").toLowerCase();
+        int keep;
+        if (keepParam.equals("all")) {
+            keep = DocIndexerConfig.SPLIT_KEEP_ALL;
+        } else if (keepParam.equals("both")) {
+            keep = DocIndexerConfig.SPLIT_KEEP_BOTH;
+        } else {
+            try {
+                keep = Math.max(-1, Integer.parseInt(keepParam));
+            } catch (NumberFormatException e) {
+                keep = -1; // (invalid; warned about when applied)
+            }
+        }
+        int finalKeep = keep;
+        return new Step() {
+            @Override
+            public String apply(DocIndexerConfig indexer, String value) {
+                return indexer.opSplit(value, separator, separatorPattern, finalKeep).get(0);
+            }
+
+            @Override
+            public List<String> applyMultiple(DocIndexerConfig indexer, List<String> values) {
+                List<String> r = new ArrayList<>();
+                for (String s: values) {
+                    r.addAll(indexer.opSplit(s, separator, separatorPattern, finalKeep));
+                }
+                return r;
+            }
+        };
+    }
+
+    /**
+     * Can String.split() split on this separator without using a regex?
+     *
+     * That's the case for a single character that has no special meaning in a regex.
+     * It's a lot faster than a (precompiled) regex, so we use it if we can.
+     *
+     * @param separator separator regex
+     * @return true if it's a single literal character
+     */
+    private static boolean isLiteralSplitChar(String separator) {
+        return separator.length() == 1 && ".$|()[{^?*+\\".indexOf(separator.charAt(0)) < 0 &&
+                !Character.isHighSurrogate(separator.charAt(0));
+    }
+
+    private static Step concatDate(Map<String, String> param) {
+        String yearField = param.get("yearField");
+        String monthField = param.get("monthField");
+        String dayField = param.get("dayField");
+        String mode = param.get("autofill");
+        if (yearField == null || monthField == null || dayField == null || mode == null || !(mode.equalsIgnoreCase("start")||mode.equalsIgnoreCase("end")))
+            throw new InvalidInputFormatConfig("concatDate needs parameters yearField, monthField, dayField, and autoFill ('start' or 'end')");
+        boolean isStart = mode.equalsIgnoreCase("start");
+        return new Step() {
+            @Override
+            public String apply(DocIndexerConfig indexer, String value) {
+                return indexer.opConcatDate(yearField, monthField, dayField, isStart);
+            }
+
+            @Override
+            public List<String> applyMultiple(DocIndexerConfig indexer, List<String> values) {
+                String s = indexer.opConcatDate(yearField, monthField, dayField, isStart);
+                if (!s.isEmpty()) {
+                    values.set(0, s);
+                }
+                return values;
+            }
+        };
+    }
+}
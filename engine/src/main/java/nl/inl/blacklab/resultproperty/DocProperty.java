@@ -18,7 +18,7 @@ import nl.inl.blacklab.util.PropertySerializeUtil;
  * a stored field in the Lucene document, ...)
  *
  * This class is thread-safe.
- * Some DocProperty instances use synchronization for threadsafety, e.g. DocPropertyStoredField,
+ * Some DocProperty instances use synchronization for threadsafety, e.g. DocPropertyAnnotatedFieldLength,
  * because they store DocValues instances, which may only be used from one thread at a time.
  */
 public abstract class DocProperty implements ResultProperty<DocResult>, Comparator<DocResult> {
@@ -67,6 +67,35 @@ public abstract class DocProperty implements ResultProperty<DocResult>, Comparat
         return get(a).compareTo(get(b));
     }
 
+    /**
+     * Can this property provide group keys for documents?
+     *
+     * If true, {@link #groupKey(DocResult)} may be used to speed up grouping large
+     * numbers of documents.
+     *
+     * @return true if groupKey() is supported
+     */
+    public boolean hasGroupKeys() {
+        return false;
+    }
+
+    /**
+     * Get a group key for a document.
+     *
+     * Same contract as {@link HitProperty#groupKey(long)}: documents with the same key
+     * must have equal values for this property; documents with different keys usually
+     * have different values, but will end up in the same group if they don't.
+     *
+     * Only supported if {@link #hasGroupKeys()} returns true.
+     *
+     * @param result document to get the group key for
+     * @return group key, or {@link HitProperty#NO_GROUP_KEY} if this document has none
+     *   (it will be grouped using {@link #get(DocResult)} instead)
+     */
+    public long groupKey(DocResult result) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public abstract String name();
 
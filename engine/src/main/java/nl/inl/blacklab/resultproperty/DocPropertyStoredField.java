@@ -1,16 +1,13 @@
 package nl.inl.blacklab.resultproperty;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.text.Collator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
@@ -28,9 +25,9 @@ import nl.inl.blacklab.search.indexmetadata.MetadataField;
 import nl.inl.blacklab.search.results.DocResult;
 import nl.inl.blacklab.util.PropertySerializeUtil;
 import nl.inl.util.DocValuesUtil;
+import nl.inl.util.GlobalOrdinals;
 import nl.inl.util.LuceneUtil;
 import nl.inl.util.NumericDocValuesCacher;
-import nl.inl.util.SortedDocValuesCacher;
 import nl.inl.util.SortedSetDocValuesCacher;
 import nl.inl.util.StringUtil;
 
@@ -40,8 +37,9 @@ import nl.inl.util.StringUtil;
  * be "author", "year", and such.
  *
  * This class is thread-safe.
- * (using synchronization on DocValues instance; DocValues are stored for each LeafReader,
- *  and each of those should only be used from one thread at a time)
+ * (DocValues are read using synchronization on the DocValues instance per LeafReader;
+ *  if we're sorting or grouping a large number of results, string values are looked up
+ *  using index-wide global ordinals instead, which don't need locking)
  */
 public class DocPropertyStoredField extends DocProperty {
     //private static final Logger logger = LogManager.getLogger(DocPropertyStoredField.class);
@@ -52,10 +50,24 @@ public class DocPropertyStoredField extends DocProperty {
     /** Display name for the field */
     private final String friendlyName;
 
-    /** The DocValues per segment (keyed by docBase), or null if we don't have docValues. New indexes all have SortedSetDocValues, but some very old indexes may still contain regular SortedDocValues! */
-    private Map<Integer, Pair<SortedDocValuesCacher, SortedSetDocValuesCacher>> docValues = null;
-    /** Null unless the field is numeric. */
-    private Map<Integer, NumericDocValuesCacher> numericDocValues = null;
+    /** Is this a string field we can get global ordinals for? */
+    private final boolean stringDocValues;
+
+    /**
+     * Global ordinals for the string DocValues, or null if we haven't needed them yet.
+     *
+     * Only built when we sort or group a large number of results (see {@link #ordinals()}).
+     */
+    private volatile GlobalOrdinals ordinals = null;
+
+    /** Start of each segment (docBase), if we have DocValues. */
+    private int[] docBases = null;
+
+    /** DocValues per segment for string fields. (entries can be null if a segment has no values for this field) */
+    private SortedSetDocValuesCacher[] docValues = null;
+
+    /** Null unless the field is numeric. (entries can be null if a segment has no values for this field) */
+    private NumericDocValuesCacher[] numericDocValues = null;
 
     /** Our index */
     private final BlackLabIndex index;
@@ -65,6 +77,11 @@ public class DocPropertyStoredField extends DocProperty {
         this.index = prop.index;
         this.fieldName = prop.fieldName;
         this.friendlyName = prop.friendlyName;
+        this.stringDocValues = prop.stringDocValues;
+        this.ordinals = prop.ordinals;
+        this.docBases = prop.docBases;
+        this.docValues = prop.docValues;
+        this.numericDocValues = prop.numericDocValues;
     }
 
     public DocPropertyStoredField(BlackLabIndex index, String fieldName) {
@@ -76,38 +93,70 @@ public class DocPropertyStoredField extends DocProperty {
         this.fieldName = fieldName;
         this.friendlyName = friendlyName;
 
+        boolean isString = false;
         try {
             if (index.reader() != null) { // skip for MockIndex (testing)
-                if (index.metadataField(fieldName).type().equals(FieldType.NUMERIC)) {
-                    numericDocValues = new TreeMap<>();
-                    for (LeafReaderContext rc : index.reader().leaves()) {
-                        LeafReader r = rc.reader();
-                        // NOTE: can be null! This is valid and indicates the documents in this segment does not contain any values for this field.
-                        NumericDocValues values = r.getNumericDocValues(fieldName);
-                        numericDocValues.put(rc.docBase, DocValuesUtil.cacher(values));
-                    }
-                } else { // regular string doc values.
-                    docValues = new TreeMap<>();
-                    for (LeafReaderContext rc : index.reader().leaves()) {
-                        LeafReader r = rc.reader();
+                boolean isNumeric = index.metadataField(fieldName).type().equals(FieldType.NUMERIC);
+                List<LeafReaderContext> leaves = index.reader().leaves();
+                if (!leaves.isEmpty()) {
+                    isString = !isNumeric;
+                    docBases = new int[leaves.size()];
+                    if (isNumeric)
+                        numericDocValues = new NumericDocValuesCacher[leaves.size()];
+                    else
+                        docValues = new SortedSetDocValuesCacher[leaves.size()];
+                    for (int i = 0; i < leaves.size(); i++) {
+                        LeafReaderContext rc = leaves.get(i);
+                        docBases[i] = rc.docBase;
                         // NOTE: can be null! This is valid and indicates the documents in this segment does not contain any values for this field.
-                        SortedSetDocValues sortedSetDocValues = r.getSortedSetDocValues(fieldName);
-                        SortedDocValues sortedDocValues = r.getSortedDocValues(fieldName);
-                        if (sortedSetDocValues != null || sortedDocValues != null) {
-                            docValues.put(rc.docBase, Pair.of(DocValuesUtil.cacher(sortedDocValues), DocValuesUtil.cacher(sortedSetDocValues)));
+                        if (isNumeric) {
+                            NumericDocValues values = rc.reader().getNumericDocValues(fieldName);
+                            numericDocValues[i] = DocValuesUtil.cacher(values);
                         } else {
-                            docValues.put(rc.docBase, null);
+                            SortedSetDocValues values = rc.reader().getSortedSetDocValues(fieldName);
+                            if (values == null) {
+                                // Very old indexes may still contain regular SortedDocValues
+                                SortedDocValues sortedValues = rc.reader().getSortedDocValues(fieldName);
+                                values = sortedValues == null ? null : DocValues.singleton(sortedValues);
+                            }
+                            docValues[i] = DocValuesUtil.cacher(values);
                         }
                     }
-                    if (docValues.isEmpty()) {
-                        // We don't actually have DocValues.
-                        docValues = null;
-                    }
                 }
             }
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
+        stringDocValues = isString;
+    }
+
+    /**
+     * Get the global ordinals for this field's values, building them if necessary.
+     *
+     * Useful for grouping or sorting on ints, only looking up the values for the output.
+     * Building them reads this field for the whole index (see {@link GlobalOrdinals}), so
+     * only call this (or {@link #hasSortKeys()} or {@link #hasGroupKeys()}) if you're
+     * going to sort or group a large number of results.
+     *
+     * @return global ordinals, or null if not available (e.g. because the field is numeric)
+     */
+    public GlobalOrdinals ordinals() {
+        if (ordinals == null && stringDocValues)
+            ordinals = GlobalOrdinals.get(index.reader(), fieldName);
+        return ordinals;
+    }
+
+    /**
+     * Find the segment a document is in.
+     *
+     * @param docId Lucene document id
+     * @return segment number
+     */
+    private int segment(int docId) {
+        int segment = Arrays.binarySearch(docBases, docId);
+        if (segment < 0)
+            segment = -segment - 2; // docId is in the segment before the insertion point
+        return segment;
     }
 
     /**
@@ -116,51 +165,29 @@ public class DocPropertyStoredField extends DocProperty {
      *
      */
     public String[] get(int docId) {
-        if  (docValues != null) {
+        GlobalOrdinals ordinals = this.ordinals;
+        if (ordinals != null) {
+            // (we've built these already, so use them)
+            // If no values were indexed for this field (in this segment), this returns an empty array.
+            return ordinals.values(docId);
+        } else if (docValues != null) {
             // Find the value in the correct segment
-            Entry<Integer, Pair<SortedDocValuesCacher, SortedSetDocValuesCacher>> target = null;
-            for (Entry<Integer, Pair<SortedDocValuesCacher, SortedSetDocValuesCacher>> e : this.docValues.entrySet()) {
-                if (e.getKey() > docId) { break; }
-                target = e;
-            }
-
-            String[] ret = new String[0];
-            if (target != null) {
-                final int targetDocBase = target.getKey();
-                final Pair<SortedDocValuesCacher, SortedSetDocValuesCacher> targetDocValues = target.getValue();
-                if (targetDocValues != null) {
-                    SortedDocValuesCacher a = targetDocValues.getLeft();
-                    SortedSetDocValuesCacher b = targetDocValues.getRight();
-                    if (a != null) { // old index, only one value
-                        String value = a.get(docId - targetDocBase);
-                        ret = value == null ? new String[0] : new String[] { value };
-                    } else { // newer index, (possibly) multiple values.
-                        ret = b.get(docId - targetDocBase);
-                    }
-                }
-                // If no docvalues for this segment - no values were indexed for this field (in this segment).
-                // So returning the empty array is good.
-            }
-            return ret;
+            int segment = segment(docId);
+            final SortedSetDocValuesCacher targetDocValues = docValues[segment];
+            if (targetDocValues != null)
+                return targetDocValues.get(docId - docBases[segment]);
+            // If no docvalues for this segment - no values were indexed for this field (in this segment).
+            // So returning the empty array is good.
+            return new String[0];
         } else if (numericDocValues != null) {
             // Find the value in the correct segment
-            Entry<Integer, NumericDocValuesCacher> target = null;
-            for (Entry<Integer, NumericDocValuesCacher> e : this.numericDocValues.entrySet()) {
-                if (e.getKey() > docId) { break; }
-                target = e;
-            }
-
-            final List<String> ret = new ArrayList<>();
-            if (target != null) {
-                final Integer targetDocBase = target.getKey();
-                final NumericDocValuesCacher targetDocValues = target.getValue();
-                if (targetDocValues != null) {
-                    ret.add(Long.toString(targetDocValues.get(docId - targetDocBase)));
-                }
-                // If no docvalues for this segment - no values were indexed for this field (in this segment).
-                // So returning the empty array is good.
-            }
-            return ret.toArray(new String[0]);
+            int segment = segment(docId);
+            final NumericDocValuesCacher targetDocValues = numericDocValues[segment];
+            if (targetDocValues != null)
+                return new String[] { Long.toString(targetDocValues.get(docId - docBases[segment])) };
+            // If no docvalues for this segment - no values were indexed for this field (in this segment).
+            // So returning the empty array is good.
+            return new String[0];
         }
 
         // We don't have DocValues; just get the property from the document.
@@ -206,6 +233,86 @@ public class DocPropertyStoredField extends DocProperty {
         return new PropertyValueString(StringUtils.join(values, " · "));
     }
 
+    /**
+     * Get the collation rank of each value, if we can compare documents on those.
+     *
+     * Only uses global ordinals if we've already built them (see {@link #ordinals()}).
+     *
+     * @return ranks (see {@link GlobalOrdinals#sortRanks(Collator)}), or null if we can't use them
+     */
+    private int[] sortRanks() {
+        // If documents can have multiple values, we have to compare the combined values instead
+        GlobalOrdinals ordinals = this.ordinals;
+        return ordinals != null && !ordinals.isMultiValued() ? ordinals.sortRanks(PropertyValue.collator) : null;
+    }
+
+    private int sortRank(int[] ranks, int docId) {
+        return ordinals.count(docId) == 0 ? ranks[ordinals.valueCount()] : ranks[ordinals.ord(docId, 0)];
+    }
+
+    /**
+     * Can we provide sort keys for documents?
+     *
+     * This is the case if we have global ordinals and no document has multiple values.
+     * Builds the global ordinals if necessary (see {@link #ordinals()}).
+     *
+     * @return true if sortKey() is supported
+     */
+    public boolean hasSortKeys() {
+        GlobalOrdinals ordinals = ordinals();
+        return ordinals != null && !ordinals.isMultiValued();
+    }
+
+    /**
+     * Get a sort key for a document.
+     *
+     * Documents with smaller keys sort before documents with larger keys; documents
+     * with the same key are equal according to {@link #compare(int, int)}.
+     *
+     * Only supported if {@link #hasSortKeys()} returns true.
+     *
+     * @param docId document to get the sort key for
+     * @return sort key
+     */
+    public long sortKey(int docId) {
+        int rank = sortRank(sortRanks(), docId);
+        return reverse ? -rank : rank;
+    }
+
+    /**
+     * Can we provide group keys for documents?
+     *
+     * Builds the global ordinals if necessary (see {@link #ordinals()}).
+     *
+     * @return true if groupKey() is supported
+     */
+    @Override
+    public boolean hasGroupKeys() {
+        return ordinals() != null;
+    }
+
+    @Override
+    public long groupKey(DocResult result) {
+        return groupKey(result.identity().value());
+    }
+
+    /**
+     * Get a group key for a document.
+     *
+     * @param docId document to get the group key for
+     * @return group key (see {@link DocProperty#groupKey(DocResult)})
+     */
+    public long groupKey(int docId) {
+        switch (ordinals.count(docId)) {
+        case 0:
+            return -1;
+        case 1:
+            return ordinals.ord(docId, 0);
+        default:
+            return HitProperty.NO_GROUP_KEY;
+        }
+    }
+
     /**
      * Compares two docs on this property
      *
@@ -214,7 +321,13 @@ public class DocPropertyStoredField extends DocProperty {
      * @return 0 if equal, negative if a < b, positive if a > b.
      */
     public int compare(int docId1, int docId2) {
-        return fromArray(get(docId1)).compareTo(fromArray(get(docId2))) * (reverse ? -1 : 1);
+        int[] ranks = sortRanks();
+        int cmp;
+        if (ranks != null)
+            cmp = Integer.compare(sortRank(ranks, docId1), sortRank(ranks, docId2));
+        else
+            cmp = fromArray(get(docId1)).compareTo(fromArray(get(docId2)));
+        return cmp * (reverse ? -1 : 1);
     }
 
     /**
@@ -226,9 +339,7 @@ public class DocPropertyStoredField extends DocProperty {
      */
     @Override
     public int compare(DocResult a, DocResult b) {
-        PropertyValue v1 = get(a);
-        PropertyValue v2 = get(b);
-        return v1.compareTo(v2) * (reverse ? -1 : 1);
+        return compare(a.identity().value(), b.identity().value());
     }
 
     @Override
@@ -27,6 +27,9 @@ import nl.inl.blacklab.util.PropertySerializeUtil;
 public abstract class HitProperty implements ResultProperty<Hit>, LongComparator {
     protected static final Logger logger = LogManager.getLogger(HitProperty.class);
 
+    /** Returned by {@link #groupKey(long)} if a hit has no group key. */
+    public static final long NO_GROUP_KEY = Long.MIN_VALUE;
+
     public static HitProperty deserialize(Results<Hit, HitProperty> hits, String serialized) {
         return deserialize(hits.index(), hits.field(), serialized);
     }
@@ -191,6 +194,15 @@ public abstract class HitProperty implements ResultProperty<Hit>, LongComparator
         }
     }
 
+    /**
+     * Get the contexts this property uses.
+     *
+     * @return contexts, or null if we don't have any
+     */
+    public Contexts contexts() {
+        return contexts;
+    }
+
     /**
      * For HitProperties that need context, sets the context indices that correspond
      * to the context(s) they need in the result set.
@@ -217,6 +229,66 @@ public abstract class HitProperty implements ResultProperty<Hit>, LongComparator
         return hitPropValueA.compareTo(hitPropValueB);
     }
 
+    /**
+     * Can this property provide sort keys for hits?
+     *
+     * If true, {@link #sortKey(long)} may be used to speed up sorting large numbers of hits,
+     * and {@link #compare(long, long)} must be safe to call from multiple threads at the
+     * same time, so hits can be sorted in parallel.
+     *
+     * @return true if sortKey() is supported
+     */
+    public boolean hasSortKeys() {
+        return false;
+    }
+
+    /**
+     * Get a sort key for a hit.
+     *
+     * The key must be consistent with {@link #compare(long, long)}, but doesn't have to
+     * distinguish between all hits that compare() distinguishes: if the key for hit a
+     * is smaller than the key for hit b, compare(a, b) must be negative, but if the keys
+     * are equal, compare() decides.
+     *
+     * Only supported if {@link #hasSortKeys()} returns true.
+     *
+     * @param hitIndex hit to get the sort key for
+     * @return sort key
+     */
+    public long sortKey(long hitIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Can this property provide group keys for hits?
+     *
+     * If true, {@link #groupKey(long)} may be used to speed up grouping large numbers of hits,
+     * and {@link #get(long)} must be safe to call from multiple threads at the same time,
+     * so hits can be grouped in parallel.
+     *
+     * @return true if groupKey() is supported
+     */
+    public boolean hasGroupKeys() {
+        return false;
+    }
+
+    /**
+     * Get a group key for a hit.
+     *
+     * Hits with the same key must have equal values for this property. Hits with different
+     * keys usually have different values, but this is not required; they will end up in
+     * the same group.
+     *
+     * Only supported if {@link #hasGroupKeys()} returns true.
+     *
+     * @param hitIndex hit to get the group key for
+     * @return group key, or {@link #NO_GROUP_KEY} if this hit has none (it will be grouped
+     *   using {@link #get(long)} instead)
+     */
+    public long groupKey(long hitIndex) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Retrieve context from which field(s) prior to sorting/grouping on this
      * property?
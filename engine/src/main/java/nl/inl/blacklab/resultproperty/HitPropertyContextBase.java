@@ -78,6 +78,70 @@ public abstract class HitPropertyContextBase extends HitProperty {
 //        this.contextSize = contextSize == null ? index.defaultContextSize() : contextSize;
     }
 
+    /** Number of bits we need per token to pack sort positions into a key */
+    private int bitsPerKeyToken() {
+        // Sort positions range from -1 (unknown term) to numberOfTerms - 1; we store them + 2
+        return Integer.SIZE - Integer.numberOfLeadingZeros(terms.numberOfTerms() + 1);
+    }
+
+    /**
+     * Pack the sort positions of up to tokensPerKey tokens into a long.
+     *
+     * A value of 0 means "no more tokens", which sorts before any token.
+     */
+    private long packContext(int[] context, int first, int numberOfTokens, int step, int bitsPerToken, int tokensPerKey) {
+        int offset = contextIndices.getInt(0) * context[Contexts.LENGTH_INDEX] + Contexts.NUMBER_OF_BOOKKEEPING_INTS;
+        long key = 0;
+        for (int i = 0; i < tokensPerKey; i++) {
+            long value = 0;
+            if (i < numberOfTokens)
+                value = terms.idToSortPosition(context[offset + first + i * step], sensitivity) + 2;
+            key = (key << bitsPerToken) | value;
+        }
+        return key;
+    }
+
+    /**
+     * Pack the sort positions of the first few tokens to compare into a sort key.
+     *
+     * Helper for subclasses that support {@link #sortKey(long)}.
+     *
+     * As many tokens as fit are packed into the key, using as few bits per token
+     * as the number of terms allows. A value of 0 means "no more tokens", which sorts
+     * before any token, like a shorter context does in compare().
+     *
+     * @param context context of the hit
+     * @param first index in the context of the first token to compare
+     * @param numberOfTokens number of tokens compare() looks at
+     * @param step direction to compare tokens in: 1 for left to right, -1 for right to left
+     * @return sort key (see {@link #sortKey(long)})
+     */
+    protected long contextSortKey(int[] context, int first, int numberOfTokens, int step) {
+        int bitsPerToken = bitsPerKeyToken();
+        long key = packContext(context, first, numberOfTokens, step, bitsPerToken, (Long.SIZE - 1) / bitsPerToken);
+        return reverse ? -key : key;
+    }
+
+    /**
+     * Pack the sort positions of the tokens in a hit's value into a group key.
+     *
+     * Helper for subclasses that support {@link #groupKey(long)}. Packs the tokens like
+     * {@link #contextSortKey(int[], int, int, int)}, but only if they all fit.
+     *
+     * @param context context of the hit
+     * @param first index in the context of the first token of the value
+     * @param numberOfTokens number of tokens in the value
+     * @param step direction to pack tokens in: 1 for left to right, -1 for right to left
+     * @return group key, or NO_GROUP_KEY if the tokens don't fit
+     */
+    protected long contextGroupKey(int[] context, int first, int numberOfTokens, int step) {
+        int bitsPerToken = bitsPerKeyToken();
+        int tokensPerKey = (Long.SIZE - 1) / bitsPerToken;
+        if (numberOfTokens > tokensPerKey)
+            return NO_GROUP_KEY;
+        return packContext(context, first, numberOfTokens, step, bitsPerToken, tokensPerKey);
+    }
+
     @Override
     public List<Annotation> needsContext() {
         return annotation == null ? Collections.emptyList() : List.of(annotation);
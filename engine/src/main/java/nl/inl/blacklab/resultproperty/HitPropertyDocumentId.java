@@ -47,6 +47,27 @@ public class HitPropertyDocumentId extends HitProperty {
         return reverse ? docB - docA : docA - docB;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return true;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        int doc = hits.doc(hitIndex);
+        return reverse ? -doc : doc;
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        return hits.doc(hitIndex);
+    }
+
     @Override
     public String serialize() {
         return serializeReverse() + "docid";
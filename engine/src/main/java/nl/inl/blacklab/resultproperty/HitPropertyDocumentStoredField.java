@@ -54,6 +54,27 @@ public class HitPropertyDocumentStoredField extends HitProperty {
         return reverse ? -result : result;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return docPropStoredField.hasSortKeys();
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        long key = docPropStoredField.sortKey(hits.doc(hitIndex));
+        return reverse ? -key : key;
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return docPropStoredField.hasGroupKeys();
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        return docPropStoredField.groupKey(hits.doc(hitIndex));
+    }
+
     @Override
     public String name() {
         return "document: " + docPropStoredField.name();
@@ -50,6 +50,27 @@ public class HitPropertyHitPosition extends HitProperty {
         return reverse ? startB - startA : startA - startB;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return true;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        long key = (long) hits.start(hitIndex) << 32 | hits.end(hitIndex);
+        return reverse ? -key : key;
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return true;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        return hits.start(hitIndex);
+    }
+
     @Override
     public String serialize() {
         return serializeReverse() + "hitposition";
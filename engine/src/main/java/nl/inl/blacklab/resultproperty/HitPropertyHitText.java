@@ -96,6 +96,30 @@ public class HitPropertyHitText extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextSortKey(context, hitStart, context[Contexts.RIGHT_START_INDEX] - hitStart, 1);
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextGroupKey(context, hitStart, context[Contexts.RIGHT_START_INDEX] - hitStart, 1);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return true;
@@ -104,6 +104,31 @@ public class HitPropertyLeftContext extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        // Compare the left context starting at the end, like compare()
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextSortKey(context, hitStart - 1, hitStart, -1);
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextGroupKey(context, hitStart - 1, hitStart, -1);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
@@ -239,6 +239,23 @@ public class HitPropertyMultiple extends HitProperty implements Iterable<HitProp
         return 0;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        // All properties must support this, as it means compare() is thread-safe
+        for (HitProperty prop: properties) {
+            if (!prop.hasSortKeys())
+                return false;
+        }
+        return !properties.isEmpty();
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        // The first property decides, unless keys are equal
+        long key = properties.get(0).sortKey(hitIndex);
+        return reverse ? -key : key;
+    }
+
     @Override
     public String name() {
         StringBuilder b = new StringBuilder();
@@ -101,6 +101,30 @@ public class HitPropertyRightContext extends HitPropertyContextBase {
         return reverse ? -1 : 1; // a longer than b => a > b
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        return contextSortKey(context, rightStart, context[Contexts.LENGTH_INDEX] - rightStart, 1);
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        return contextGroupKey(context, rightStart, context[Contexts.LENGTH_INDEX] - rightStart, 1);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
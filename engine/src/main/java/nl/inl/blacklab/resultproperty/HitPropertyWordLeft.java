@@ -82,6 +82,31 @@ public class HitPropertyWordLeft extends HitPropertyContextBase {
         return reverse ? -cmp : cmp;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        // Only one word is compared
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextSortKey(context, hitStart - 1, Math.min(1, hitStart), -1);
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int hitStart = context[Contexts.HIT_START_INDEX];
+        return contextGroupKey(context, hitStart - 1, Math.min(1, hitStart), -1);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
@@ -74,6 +74,31 @@ public class HitPropertyWordRight extends HitPropertyContextBase {
         return reverse ? -cmp : cmp;
     }
 
+    @Override
+    public boolean hasSortKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long sortKey(long hitIndex) {
+        // Only one word is compared
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        return contextSortKey(context, rightStart, Math.min(1, context[Contexts.LENGTH_INDEX] - rightStart), 1);
+    }
+
+    @Override
+    public boolean hasGroupKeys() {
+        return contexts != null;
+    }
+
+    @Override
+    public long groupKey(long hitIndex) {
+        int[] context = contexts.get(hitIndex);
+        int rightStart = context[Contexts.RIGHT_START_INDEX];
+        return contextGroupKey(context, rightStart, Math.min(1, context[Contexts.LENGTH_INDEX] - rightStart), 1);
+    }
+
     @Override
     public boolean isDocPropOrHitText() {
         return false;
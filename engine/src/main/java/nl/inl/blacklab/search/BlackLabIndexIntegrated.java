@@ -25,6 +25,7 @@ import nl.inl.blacklab.contentstore.ContentStoreSegmentReader;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.blacklab.forwardindex.ForwardIndex;
+import nl.inl.blacklab.forwardindex.ForwardIndexAbstract;
 import nl.inl.blacklab.forwardindex.ForwardIndexIntegrated;
 import nl.inl.blacklab.forwardindex.ForwardIndexSegmentReader;
 import nl.inl.blacklab.indexers.config.ConfigInputFormat;
@@ -46,6 +47,9 @@ public class BlackLabIndexIntegrated extends BlackLabIndexAbstract {
     /** Lucene field attribute. Does the field have a content store */
     static final String BLFA_CONTENT_STORE = "BL_hasContentStore";
 
+    /** Lucene field attribute. Block codec for a content store field (e.g. "zlib" or "lz4") */
+    static final String BLFA_CONTENT_STORE_CODEC = "BL_contentStoreCodec";
+
     /**
      * Does the specified Lucene field have a forward index stored with it?
      *
@@ -83,6 +87,16 @@ public class BlackLabIndexIntegrated extends BlackLabIndexAbstract {
         return v != null && v.equals("true");
     }
 
+    /**
+     * What block codec should be used to write this content store field?
+     *
+     * @param fieldInfo field to check
+     * @return codec name, or null for the default
+     */
+    public static String contentStoreCodec(FieldInfo fieldInfo) {
+        return fieldInfo.getAttribute(BLFA_CONTENT_STORE_CODEC);
+    }
+
     /**
      * Get the content store for an index segment.
      *
@@ -115,6 +129,16 @@ public class BlackLabIndexIntegrated extends BlackLabIndexAbstract {
         type.putAttribute(BlackLabIndexIntegrated.BLFA_CONTENT_STORE, "true");
     }
 
+    /**
+     * Set the block codec to use for this content store field.
+     *
+     * @param type field type
+     * @param codecName codec name (e.g. "zlib" or "lz4")
+     */
+    public static void setContentStoreCodec(FieldType type, String codecName) {
+        type.putAttribute(BlackLabIndexIntegrated.BLFA_CONTENT_STORE_CODEC, codecName);
+    }
+
     /** A list of stored fields that doesn't include content store fields. */
     private Set<String> allExceptContentStoreFields;
 
@@ -165,6 +189,17 @@ public class BlackLabIndexIntegrated extends BlackLabIndexAbstract {
         return new ForwardIndexAccessorIntegrated(this, annotatedField(searchField));
     }
 
+    @Override
+    public void close() {
+        // Make sure the loaded terms for this index can be garbage collected
+        synchronized (forwardIndices) {
+            for (ForwardIndex fi: forwardIndices.values()) {
+                ((ForwardIndexAbstract)fi).close();
+            }
+        }
+        super.close();
+    }
+
     @Override
     public IndexMetadataIntegrated metadata() {
         return (IndexMetadataIntegrated)super.metadata();
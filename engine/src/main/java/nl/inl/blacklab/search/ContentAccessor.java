@@ -1,5 +1,7 @@
 package nl.inl.blacklab.search;
 
+import java.io.Reader;
+
 import org.apache.lucene.document.Document;
 
 import nl.inl.blacklab.contentstore.ContentStore;
@@ -78,6 +80,20 @@ public class ContentAccessor {
         return contentStore.retrieveParts(contentId, start, end);
     }
 
+    /**
+     * Get a stream of an entire document.
+     *
+     * For the integrated index format, the document is decoded block by block
+     * as the stream is read, so large documents don't have to be kept in memory.
+     *
+     * @param docId Lucene document id
+     * @param d the Lucene document
+     * @return stream of the document content
+     */
+    public Reader getDocumentReader(int docId, Document d) {
+        return contentStore.retrieveReader(getContentId(docId, d));
+    }
+
     public void delete(Document d) {
         delete(getContentId(-1, d));
     }
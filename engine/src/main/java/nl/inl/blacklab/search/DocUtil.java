@@ -1,6 +1,8 @@
 package nl.inl.blacklab.search;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -244,6 +246,36 @@ public class DocUtil {
         }
     }
 
+    /**
+     * Get a stream of a field's entire contents.
+     *
+     * Like {@link #contentsByCharPos(BlackLabIndex, int, Document, Field, int, int)}, but
+     * (for the integrated index format) reads the content store block by block, so
+     * large documents don't have to be kept in memory all at once.
+     *
+     * @param index our index
+     * @param docId document id
+     * @param d Lucene document (or null if not yet loaded)
+     * @param field field to get contents for
+     * @return stream of the contents
+     */
+    public static Reader contentsReader(BlackLabIndex index, int docId, Document d, Field field) {
+        try {
+            if (!field.hasContentStore()) {
+                String fieldName = field.contentsFieldName();
+                if (d == null)
+                    d = index.reader().document(docId, Set.of(fieldName));
+                return new StringReader(d.get(fieldName));
+            } else {
+                if (d == null && index instanceof BlackLabIndexExternal)
+                    d = index.reader().document(docId, Set.of(field.contentIdField()));
+                return index.contentAccessor(field).getDocumentReader(docId, d);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Highlight hits in (part of) a field's contents.
      *
@@ -7,6 +7,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.lucene.util.RamUsageEstimator;
 import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.factory.primitive.IntIntMaps;
@@ -35,6 +36,8 @@ import nl.inl.blacklab.search.results.SampleParameters;
  */
 public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty<TermFrequency>> {
 
+    private static final long TERM_FREQUENCY_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(TermFrequency.class);
+
     /**
      * Count occurrences of context words around hit.
      *
@@ -215,4 +218,12 @@ public class TermFrequencyList extends ResultsList<TermFrequency, ResultProperty
         return results.size();
     }
 
+    @Override
+    public long ramBytesUsed() {
+        long bytes = RamUsageEstimator.shallowSizeOf(this) + (long) results.size() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        for (TermFrequency tf: results)
+            bytes += TERM_FREQUENCY_RAM_BYTES_USED + RamUsageEstimator.sizeOf(tf.term);
+        return bytes;
+    }
+
 }
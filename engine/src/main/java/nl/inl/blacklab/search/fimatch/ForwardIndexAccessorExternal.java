@@ -54,9 +54,15 @@ public class ForwardIndexAccessorExternal extends ForwardIndexAccessorAbstract {
             this.readerContext = readerContext;
         }
 
+        /** Reused for each document we advance to */
+        private ForwardIndexDocumentImpl fiDoc;
+
         @Override
         public ForwardIndexDocument advanceForwardIndexDoc(int segmentDocId) {
-            return new ForwardIndexDocumentImpl(this, segmentDocId);
+            if (fiDoc == null)
+                fiDoc = new ForwardIndexDocumentImpl(this);
+            fiDoc.reset(segmentDocId);
+            return fiDoc;
         }
 
         @Override
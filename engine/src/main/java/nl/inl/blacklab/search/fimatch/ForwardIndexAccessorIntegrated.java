@@ -61,9 +61,15 @@ public class ForwardIndexAccessorIntegrated extends ForwardIndexAccessorAbstract
             lengthGetter = new DocFieldLengthGetter(readerContext.reader(), annotatedField.name());
         }
 
+        /** Reused for each document we advance to */
+        private ForwardIndexDocumentImpl fiDoc;
+
         @Override
         public ForwardIndexDocument advanceForwardIndexDoc(int segmentDocId) {
-            return new ForwardIndexDocumentImpl(this, segmentDocId);
+            if (fiDoc == null)
+                fiDoc = new ForwardIndexDocumentImpl(this);
+            fiDoc.reset(segmentDocId);
+            return fiDoc;
         }
 
         @Override
@@ -15,6 +15,9 @@ public interface ForwardIndexAccessorLeafReader {
      * Get a token source, which we can use to get tokens from a document for
      * different annotations.
      *
+     * The token source may be reused for the next document, so it is only valid
+     * until the next call to this method.
+     *
      * @param segmentDocId document id within this segment
      * @return the token source
      */
@@ -5,8 +5,8 @@ import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 
 /** Source of tokens for the forward index matching process.
  *
- * Not threadsafe. Used from Spans. An instance is created
- * per document, and a document only occurs in one index segment
+ * Not threadsafe. Used from Spans. An instance is used for
+ * one document at a time, and a document only occurs in one index segment
  * (so only one Spans), so this doesn't need threadsafety.
  */
 @NotThreadSafe
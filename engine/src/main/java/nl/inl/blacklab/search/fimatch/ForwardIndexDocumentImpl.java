@@ -1,52 +1,105 @@
 package nl.inl.blacklab.search.fimatch;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import nl.inl.blacklab.forwardindex.Terms;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
 
 /** Source of tokens for the forward index matching process.
  *
- * Not threadsafe. Used from Spans. An instance is created
- * per document, and a document only occurs in one index segment
+ * Not threadsafe. Used from Spans. A document only occurs in one index segment
  * (so only one Spans), so this doesn't need threadsafety.
+ *
+ * Each {@link ForwardIndexAccessorLeafReader} keeps a single instance that is
+ * reused for every document (see {@link #reset(int)}), so we don't allocate
+ * new buffers for each candidate document.
+ *
+ * For each annotation, we keep a window of tokens from the document (one with
+ * segment-local term ids and one with global term ids, as they're requested
+ * separately). Small documents are fetched completely on first access. For
+ * larger documents, the window is placed around the first position requested.
+ * When a token just outside the window is requested, we fetch a larger window
+ * in that direction (the NFA may be matching forwards or backwards, see
+ * {@link NfaTwoWay}).
  */
 class ForwardIndexDocumentImpl implements ForwardIndexDocument {
 
-    /** Default size for our chunks */
-    private static final int CHUNK_SIZE = 10;
+    /** Documents up to this length are fetched completely on first access */
+    private static final int WHOLE_DOCUMENT_MAX_LENGTH = 1024;
+
+    /** Number of tokens we fetch the first time we need a window for a document */
+    private static final int INITIAL_WINDOW_SIZE = 64;
+
+    /** Maximum number of tokens we fetch at once */
+    private static final int MAX_WINDOW_SIZE = 8192;
+
+    /** Consecutive tokens from the current document for one annotation. */
+    private static final class TokenWindow {
+
+        /** First position in the window */
+        int start;
+
+        /** One more than the last position in the window */
+        int end;
+
+        /** Tokens in the window (null if we haven't fetched any for this document) */
+        int[] tokens;
+
+        /** How many tokens to fetch next time */
+        int nextSize;
+
+        void clear() {
+            start = end = 0;
+            tokens = null;
+            nextSize = INITIAL_WINDOW_SIZE;
+        }
+    }
 
     /** How to access our forward indexes (for the current segment) */
     private final ForwardIndexAccessorLeafReader fiAccessor;
 
     /** Document id (within the segment) of the document we're looking at */
-    private final int segmentDocId;
+    private int segmentDocId;
 
     /** Number of tokens in document.
      *  NOTE: This does NOT include the extra closing token at the end.
      */
-    private final int docLengthTokens;
+    private int docLengthTokens;
 
-    /**
-     * Chunks of the document from the forward index, for each of the annotations.
-     */
-    private final List<List<int[]>> allAnnotChunks = new ArrayList<>();
+    /** Window of segment-local term ids for each annotation */
+    private final TokenWindow[] segmentTermIdWindows;
+
+    /** Window of global term ids for each annotation */
+    private final TokenWindow[] globalTermIdWindows;
 
     /**
-     * Construct a token reader for one or more annotations from one forward index document.
+     * Construct a token reader for one or more annotations from the forward index.
+     *
+     * Call {@link #reset(int)} to choose the document to read from.
      *
      * @param fiAccessor forward index accessor for this segment
-     * @param segmentDocId document if within this segment
      */
-    public ForwardIndexDocumentImpl(ForwardIndexAccessorLeafReader fiAccessor, int segmentDocId) {
+    ForwardIndexDocumentImpl(ForwardIndexAccessorLeafReader fiAccessor) {
         this.fiAccessor = fiAccessor;
-        this.segmentDocId = segmentDocId;
-        this.docLengthTokens = fiAccessor.getDocLength(segmentDocId);
+        int numberOfAnnotations = fiAccessor.getNumberOfAnnotations();
+        segmentTermIdWindows = new TokenWindow[numberOfAnnotations];
+        globalTermIdWindows = new TokenWindow[numberOfAnnotations];
+        for (int i = 0; i < numberOfAnnotations; i++) {
+            segmentTermIdWindows[i] = new TokenWindow();
+            globalTermIdWindows[i] = new TokenWindow();
+        }
+        reset(-1);
+    }
 
-        // Create empty lists of chunks for each annotation
-        for (int i = 0; i < fiAccessor.getNumberOfAnnotations(); i++) {
-            allAnnotChunks.add(new ArrayList<>());
+    /**
+     * Start reading from a different document.
+     *
+     * @param segmentDocId document id within this segment (or -1 for none)
+     */
+    void reset(int segmentDocId) {
+        this.segmentDocId = segmentDocId;
+        this.docLengthTokens = segmentDocId < 0 ? 0 : fiAccessor.getDocLength(segmentDocId);
+        for (int i = 0; i < segmentTermIdWindows.length; i++) {
+            segmentTermIdWindows[i].clear();
+            globalTermIdWindows[i].clear();
         }
     }
 
@@ -54,93 +107,58 @@ class ForwardIndexDocumentImpl implements ForwardIndexDocument {
     public int getTokenSegmentTermId(int annotIndex, int pos) {
         if (pos < 0 || pos >= docLengthTokens)
             return Terms.NO_TERM;
-
-        // Get the list of chunks for the annotation we're interested in,
-        // and the forward index object to get more.
-        List<int[]> chunks = allAnnotChunks.get(annotIndex);
-
-        // Where can our token be found?
-        int whichChunk = pos / CHUNK_SIZE;
-        int posWithinChunk = pos % CHUNK_SIZE;
-
-        // Make sure we have the chunk we need:
-        // First, make sure the list is long enough.
-        // (we fill with nulls to avoid fetching chunks we don't need)
-        while (chunks.size() <= whichChunk)
-            chunks.add(null);
-        // Now, see if we have the chunk we want, and fetch it if not
-        int[] chunk = chunks.get(whichChunk);
-        if (chunk == null) {
-            chunk = fetchChunkSegmentTermIds(annotIndex, whichChunk);
-            chunks.set(whichChunk, chunk);
-        }
-
-        return chunk[posWithinChunk];
+        TokenWindow window = segmentTermIdWindows[annotIndex];
+        if (pos < window.start || pos >= window.end)
+            fetchWindow(window, annotIndex, pos, false);
+        return window.tokens[pos - window.start];
     }
 
     @Override
     public int getTokenGlobalTermId(int annotIndex, int pos) {
         if (pos < 0 || pos >= docLengthTokens)
             return Terms.NO_TERM;
-
-        // Get the list of chunks for the annotation we're interested in,
-        // and the forward index object to get more.
-        List<int[]> chunks = allAnnotChunks.get(annotIndex);
-
-        // Where can our token be found?
-        int whichChunk = pos / CHUNK_SIZE;
-        int posWithinChunk = pos % CHUNK_SIZE;
-
-        // Make sure we have the chunk we need:
-        // First, make sure the list is long enough.
-        // (we fill with nulls to avoid fetching chunks we don't need)
-        while (chunks.size() <= whichChunk)
-            chunks.add(null);
-        // Now, see if we have the chunk we want, and fetch it if not
-        int[] chunk = chunks.get(whichChunk);
-        if (chunk == null) {
-            chunk = fetchChunkGlobalTermIds(annotIndex, whichChunk);
-            chunks.set(whichChunk, chunk);
-        }
-
-        return chunk[posWithinChunk];
-
-    }
-
-    /**
-     * Fetch a chunk from the forward index for the specified annotation.
-     *
-     * NOTE: returns global term ids!
-     *
-     * @param annotIndex which annotation we want a forward index chunk for
-     * @param number the chunk number to fetch
-     * @return the chunk
-     */
-    private int[] fetchChunkGlobalTermIds(int annotIndex, int number) {
-        int start = number * CHUNK_SIZE;
-        int end = start + CHUNK_SIZE;
-        if (end > docLengthTokens) {
-            end = docLengthTokens;
-        }
-        return fiAccessor.getChunkGlobalTermIds(annotIndex, segmentDocId, start, end);
+        TokenWindow window = globalTermIdWindows[annotIndex];
+        if (pos < window.start || pos >= window.end)
+            fetchWindow(window, annotIndex, pos, true);
+        return window.tokens[pos - window.start];
     }
 
     /**
-     * Fetch a chunk from the forward index for the specified annotation.
-     *
-     * NOTE: returns segment-local term ids!
+     * Fetch a new window of tokens containing the specified position.
      *
-     * @param annotIndex which annotation we want a forward index chunk for
-     * @param number the chunk number to fetch
-     * @return the chunk
+     * @param window window to update
+     * @param annotIndex which annotation we want tokens for
+     * @param pos position that must be in the new window
+     * @param globalTermIds whether to fetch global or segment-local term ids
      */
-    private int[] fetchChunkSegmentTermIds(int annotIndex, int number) {
-        int start = number * CHUNK_SIZE;
-        int end = start + CHUNK_SIZE;
-        if (end > docLengthTokens) {
+    private void fetchWindow(TokenWindow window, int annotIndex, int pos, boolean globalTermIds) {
+        int start, end;
+        if (docLengthTokens <= WHOLE_DOCUMENT_MAX_LENGTH) {
+            // Small document; just get all of it
+            start = 0;
             end = docLengthTokens;
+        } else {
+            int size = window.nextSize;
+            if (window.tokens != null && pos == window.end) {
+                // Moving forward; continue in that direction
+                start = pos;
+                end = Math.min(docLengthTokens, pos + size);
+            } else if (window.tokens != null && pos == window.start - 1) {
+                // Moving backward; continue in that direction
+                start = Math.max(0, pos + 1 - size);
+                end = pos + 1;
+            } else {
+                // Direction unknown; get tokens on both sides
+                start = Math.max(0, pos - size / 2);
+                end = Math.min(docLengthTokens, start + size);
+            }
+            window.nextSize = Math.min(MAX_WINDOW_SIZE, size * 2);
         }
-        return fiAccessor.getChunkSegmentTermIds(annotIndex, segmentDocId, start, end);
+        window.tokens = globalTermIds ?
+                fiAccessor.getChunkGlobalTermIds(annotIndex, segmentDocId, start, end) :
+                fiAccessor.getChunkSegmentTermIds(annotIndex, segmentDocId, start, end);
+        window.start = start;
+        window.end = end;
     }
 
     @Override
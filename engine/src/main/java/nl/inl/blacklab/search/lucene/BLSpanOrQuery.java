@@ -19,6 +19,7 @@ package nl.inl.blacklab.search.lucene;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,8 @@ import org.apache.lucene.search.spans.SpanWeight;
 import org.apache.lucene.search.spans.Spans;
 import org.apache.lucene.util.PriorityQueue;
 
+import nl.inl.blacklab.config.BLConfigSearch;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.fimatch.ForwardIndexAccessor;
 import nl.inl.blacklab.search.fimatch.Nfa;
@@ -369,13 +372,55 @@ public final class BLSpanOrQuery extends BLSpanQuery {
         return new SpanOrWeight(searcher, contexts, subWeights, boost);
     }
 
+    /**
+     * If all our clauses are terms in the same field, return those terms.
+     *
+     * @return the terms, or null if not all clauses are terms in the same field
+     */
+    private List<Term> getTermsIfTermDisjunction() {
+        List<Term> terms = new ArrayList<>();
+        for (SpanQuery cl: getClauses()) {
+            if (!(cl instanceof BLSpanTermQuery))
+                return null;
+            Term term = ((BLSpanTermQuery) cl).getTerm();
+            if (!terms.isEmpty() && !term.field().equals(terms.get(0).field()))
+                return null;
+            terms.add(term);
+        }
+        return terms.isEmpty() ? null : terms;
+    }
+
     public class SpanOrWeight extends BLSpanWeight {
         final List<BLSpanWeight> subWeights;
 
+        /** If all our clauses are terms in the same field: those terms, otherwise null */
+        final List<Term> disjunctionTerms;
+
+        /** If all our clauses are terms in the same field: their states (looked up by the clauses), otherwise null */
+        final List<TermStates> disjunctionTermStates;
+
         public SpanOrWeight(IndexSearcher searcher, Map<Term, TermStates> terms, List<BLSpanWeight> subWeights, float boost)
                 throws IOException {
             super(BLSpanOrQuery.this, searcher, terms, boost);
             this.subWeights = subWeights;
+            List<Term> disjunctionTerms = getTermsIfTermDisjunction();
+            List<TermStates> disjunctionTermStates = null;
+            if (disjunctionTerms != null) {
+                // Reuse the term states our clauses looked up, so we don't have to seek each term again
+                Map<Term, TermStates> termStates = new HashMap<>();
+                for (BLSpanWeight w: subWeights)
+                    w.extractTermStates(termStates);
+                disjunctionTermStates = new ArrayList<>(disjunctionTerms.size());
+                for (Term term: disjunctionTerms)
+                    disjunctionTermStates.add(termStates.get(term));
+                if (disjunctionTermStates.contains(null)) {
+                    // (shouldn't happen)
+                    disjunctionTerms = null;
+                    disjunctionTermStates = null;
+                }
+            }
+            this.disjunctionTerms = disjunctionTerms;
+            this.disjunctionTermStates = disjunctionTermStates;
         }
 
         @Override
@@ -408,6 +453,16 @@ public final class BLSpanOrQuery extends BLSpanQuery {
         @Override
         public BLSpans getSpans(final LeafReaderContext context, Postings requiredPostings) throws IOException {
 
+            if (disjunctionTerms != null && requiredPostings == Postings.POSITIONS) {
+                // Many terms (e.g. an expanded wildcard or regex) that don't occur too often in this segment?
+                // Then it's faster to read and sort all their positions than to merge their postings.
+                BLConfigSearch config = BlackLab.config().getSearch();
+                BLSpans spans = SpansTermDisjunction.create(context, disjunctionTerms, disjunctionTermStates,
+                        config.getTermDisjunctionMinTerms(), config.getTermDisjunctionMaxPositions());
+                if (spans != null)
+                    return spans;
+            }
+
             final ArrayList<Spans> subSpans = new ArrayList<>(inner.getClauses().length);
 
             for (SpanWeight w : subWeights) {
@@ -0,0 +1,294 @@
+package nl.inl.blacklab.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.spans.SpanCollector;
+import org.apache.lucene.util.BytesRef;
+
+import nl.inl.blacklab.search.Span;
+
+/**
+ * Matches any of a (large) number of terms, e.g. an expanded wildcard or regex.
+ *
+ * {@link BLSpanOrQuery} normally merges its clauses using priority queues,
+ * which costs O(log n) per hit and keeps all n postings open while iterating.
+ * Instead, we read the positions of all the terms in this segment into a single
+ * buffer of (doc, position) values and sort that. Iterating over the hits is then
+ * just walking through the buffer, and advancing is a binary search.
+ *
+ * Only suitable if the total number of positions is limited, as we need 8 bytes
+ * per position. Use {@link #create(LeafReaderContext, List, List, int, long)}, which checks this.
+ *
+ * Payloads are not supported, so don't use this if they are needed.
+ */
+class SpansTermDisjunction extends BLSpans {
+
+    /** Terms for our field in this segment */
+    private final Terms terms;
+
+    /** Bytes of the terms that occur in this segment */
+    private final List<BytesRef> termBytes;
+
+    /** States of the terms that occur in this segment, so we don't have to look them up again */
+    private final List<TermState> termStates;
+
+    /** Total number of positions of all our terms in this segment */
+    private final int totalTermFreq;
+
+    /** Sum of the document frequencies of all our terms (for cost()) */
+    private final long sumDocFreq;
+
+    /** Matching positions, as (docId << 32 | position), sorted. Null until we start iterating. */
+    private long[] positions;
+
+    /** Number of values in positions */
+    private int numberOfPositions;
+
+    /** Current document, or -1 if not started, or NO_MORE_DOCS if done */
+    private int currentDoc = -1;
+
+    /** Index in positions of the first hit in the current document */
+    private int docStartIndex = 0;
+
+    /** Index in positions after the last hit in the current document */
+    private int docEndIndex = 0;
+
+    /** Index in positions of the current hit, or -1 if nextStartPosition() hasn't been called yet for this doc */
+    private int currentIndex = -1;
+
+    /** Start of the current hit, -1 if not started, or NO_MORE_POSITIONS if done with this doc */
+    private int currentStart = -1;
+
+    /**
+     * Create a spans for a term disjunction, if this is the most efficient way.
+     *
+     * The term states are the ones the term clauses looked up. We use them instead of seeking
+     * the terms again, so it costs (almost) nothing to decide we won't use the sorted buffer after all.
+     *
+     * @param context segment to search
+     * @param terms terms to match (must all be in the same field)
+     * @param termStates states of the terms, in the same order
+     * @param minTerms use the sorted buffer if at least this many terms occur in the segment
+     * @param maxPositions use the sorted buffer if the terms occur at most this many times in the segment
+     * @return the spans, or null if we should merge the term postings the usual way
+     */
+    static SpansTermDisjunction create(LeafReaderContext context, List<Term> terms, List<TermStates> termStates,
+            int minTerms, long maxPositions) throws IOException {
+        if (terms.size() < minTerms)
+            return null;
+        Terms fieldTerms = context.reader().terms(terms.get(0).field());
+        if (fieldTerms == null || !fieldTerms.hasPositions() || fieldTerms.hasPayloads())
+            return null;
+        List<BytesRef> termBytes = new ArrayList<>();
+        List<TermState> segmentTermStates = new ArrayList<>();
+        long totalTermFreq = 0;
+        long sumDocFreq = 0;
+        TermsEnum termsEnum = fieldTerms.iterator();
+        for (int i = 0; i < terms.size(); i++) {
+            TermState state = termStates.get(i).get(context);
+            if (state == null)
+                continue; // term doesn't occur in this segment
+            termsEnum.seekExact(terms.get(i).bytes(), state); // (doesn't need to actually seek)
+            long termFreq = termsEnum.totalTermFreq();
+            if (termFreq < 0)
+                return null; // frequencies unknown
+            totalTermFreq += termFreq;
+            if (totalTermFreq > maxPositions)
+                return null; // too many positions to buffer
+            sumDocFreq += termsEnum.docFreq();
+            termBytes.add(terms.get(i).bytes());
+            segmentTermStates.add(state);
+        }
+        if (termBytes.size() < minTerms)
+            return null;
+        return new SpansTermDisjunction(fieldTerms, termBytes, segmentTermStates, (int) totalTermFreq, sumDocFreq);
+    }
+
+    private SpansTermDisjunction(Terms terms, List<BytesRef> termBytes, List<TermState> termStates,
+            int totalTermFreq, long sumDocFreq) {
+        this.terms = terms;
+        this.termBytes = termBytes;
+        this.termStates = termStates;
+        this.totalTermFreq = totalTermFreq;
+        this.sumDocFreq = sumDocFreq;
+    }
+
+    /**
+     * Read the positions of all our terms and sort them.
+     *
+     * Done when we start iterating, so we don't do the work if we're never used.
+     * The postings are only used here, so they don't stay open afterwards.
+     */
+    private void readPositions() throws IOException {
+        positions = new long[totalTermFreq];
+        int n = 0;
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        for (int i = 0; i < termBytes.size(); i++) {
+            termsEnum.seekExact(termBytes.get(i), termStates.get(i));
+            postings = termsEnum.postings(postings, PostingsEnum.POSITIONS);
+            int docId;
+            while ((docId = postings.nextDoc()) != NO_MORE_DOCS) {
+                long docPart = (long) docId << 32;
+                int freq = postings.freq();
+                for (int j = 0; j < freq; j++)
+                    positions[n++] = docPart | postings.nextPosition();
+            }
+        }
+        numberOfPositions = n;
+        Arrays.sort(positions, 0, numberOfPositions);
+        termStates.clear();
+    }
+
+    private static int doc(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static int position(long value) {
+        return (int) value;
+    }
+
+    /**
+     * Go to the document the hit at the specified index belongs to.
+     *
+     * @param index index in positions
+     * @return document id, or NO_MORE_DOCS
+     */
+    private int goToDocAt(int index) {
+        currentIndex = -1;
+        currentStart = -1;
+        if (index >= numberOfPositions) {
+            currentDoc = NO_MORE_DOCS;
+            docStartIndex = docEndIndex = numberOfPositions;
+            return currentDoc;
+        }
+        currentDoc = doc(positions[index]);
+        docStartIndex = index;
+        docEndIndex = index + 1;
+        while (docEndIndex < numberOfPositions && doc(positions[docEndIndex]) == currentDoc)
+            docEndIndex++;
+        return currentDoc;
+    }
+
+    /**
+     * Find the first value in a range of positions that is at least key.
+     *
+     * @param from first index to search
+     * @param to index after the last index to search
+     * @param key value to search for
+     * @return index of the first value greater than or equal to key, or to if there is none
+     */
+    private int firstIndexAtLeast(int from, int to, long key) {
+        int index = Arrays.binarySearch(positions, from, to, key);
+        if (index < 0)
+            return -index - 1;
+        // There may be several hits with this value; make sure we find the first one
+        while (index > from && positions[index - 1] == key)
+            index--;
+        return index;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+        if (currentDoc == NO_MORE_DOCS)
+            return NO_MORE_DOCS;
+        if (positions == null)
+            readPositions();
+        return goToDocAt(docEndIndex);
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+        if (currentDoc == NO_MORE_DOCS)
+            return NO_MORE_DOCS;
+        if (positions == null)
+            readPositions();
+        if (target <= currentDoc)
+            return nextDoc(); // always at least advance to the next document
+        return goToDocAt(firstIndexAtLeast(docEndIndex, numberOfPositions, (long) target << 32));
+    }
+
+    @Override
+    public int docID() {
+        return currentDoc;
+    }
+
+    @Override
+    public int nextStartPosition() {
+        if (currentStart == NO_MORE_POSITIONS)
+            return NO_MORE_POSITIONS;
+        currentIndex = currentIndex < 0 ? docStartIndex : currentIndex + 1;
+        currentStart = currentIndex < docEndIndex ? position(positions[currentIndex]) : NO_MORE_POSITIONS;
+        return currentStart;
+    }
+
+    @Override
+    public int advanceStartPosition(int target) {
+        if (currentStart == NO_MORE_POSITIONS)
+            return NO_MORE_POSITIONS;
+        int from = currentIndex < 0 ? docStartIndex : currentIndex + 1;
+        if (from < docEndIndex && position(positions[from]) < target)
+            from = firstIndexAtLeast(from, docEndIndex, (long) currentDoc << 32 | target);
+        currentIndex = from;
+        currentStart = currentIndex < docEndIndex ? position(positions[currentIndex]) : NO_MORE_POSITIONS;
+        return currentStart;
+    }
+
+    @Override
+    public int startPosition() {
+        return currentStart;
+    }
+
+    @Override
+    public int endPosition() {
+        if (currentStart < 0 || currentStart == NO_MORE_POSITIONS)
+            return currentStart;
+        return currentStart + 1;
+    }
+
+    @Override
+    public int width() {
+        return 0;
+    }
+
+    @Override
+    public void collect(SpanCollector collector) {
+        // nothing to collect (we don't support payloads)
+    }
+
+    @Override
+    public float positionsCost() {
+        // Positions have already been read and sorted, so going through them is cheap
+        return 1;
+    }
+
+    @Override
+    public long cost() {
+        return sumDocFreq;
+    }
+
+    @Override
+    protected void passHitQueryContextToClauses(HitQueryContext context) {
+        // no clauses, nothing to do
+    }
+
+    @Override
+    public void getCapturedGroups(Span[] capturedGroups) {
+        // no clauses, no groups
+    }
+
+    @Override
+    public String toString() {
+        return "TERMDISJUNCTION(" + termBytes.size() + " terms)";
+    }
+}
@@ -7,18 +7,29 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import nl.inl.blacklab.search.Span;
 
 /** Captured group information for a list of hits. */
 public class CapturedGroupsImpl implements CapturedGroups {
 
+    /** Memory used per hit, not counting the Span[] array: map entry and key */
+    private static final long RAM_BYTES_PER_HIT = RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY
+            + RamUsageEstimator.shallowSizeOfInstance(HitImpl.class);
+
+    /** Memory used per captured group Span */
+    private static final long RAM_BYTES_PER_SPAN = RamUsageEstimator.shallowSizeOfInstance(Span.class);
+
     /** The captured groups per hit. */
     private final Map<Hit, Span[]> capturedGroups;
 
     /** Capture group names. */
     private final List<String> capturedGroupNames;
 
+    /** Estimated memory used by the captured groups (updated as they're added) */
+    private volatile long ramBytesUsed = RamUsageEstimator.shallowSizeOfInstance(CapturedGroupsImpl.class);
+
     public CapturedGroupsImpl(List<String> capturedGroupNames) {
         this.capturedGroupNames = capturedGroupNames;
         capturedGroups = new HashMap<>();
@@ -31,7 +42,17 @@ public class CapturedGroupsImpl implements CapturedGroups {
      * @param groups groups for thishit
      */
     public void put(Hit hit, Span[] groups) {
-        capturedGroups.put(hit, groups);
+        Span[] previous = capturedGroups.put(hit, groups);
+        ramBytesUsed += previous == null ? RAM_BYTES_PER_HIT + ramBytesUsed(groups) : ramBytesUsed(groups) - ramBytesUsed(previous);
+    }
+
+    private static long ramBytesUsed(Span[] groups) {
+        return groups == null ? 0 : RamUsageEstimator.shallowSizeOf(groups) + groups.length * RAM_BYTES_PER_SPAN;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
     }
 
     /**
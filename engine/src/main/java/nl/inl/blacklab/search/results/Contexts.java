@@ -8,6 +8,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import it.unimi.dsi.fastutil.BigList;
 import it.unimi.dsi.fastutil.objects.ObjectBigArrayBigList;
@@ -26,7 +28,7 @@ import nl.inl.blacklab.search.indexmetadata.Annotation;
  *
  * This interface is read-only.
  */
-public class Contexts implements Iterable<int[]> {
+public class Contexts implements Iterable<int[]>, Accountable {
 
     /** In context arrays, how many bookkeeping ints are stored at the start? */
     public final static int NUMBER_OF_BOOKKEEPING_INTS = 3;
@@ -240,6 +242,9 @@ public class Contexts implements Iterable<int[]> {
      */
     private final List<Annotation> annotations;
 
+    /** Estimated memory used by the contexts */
+    private final long ramBytesUsed;
+
     /**
      * Retrieve context words for the hits.
      *
@@ -287,6 +292,16 @@ public class Contexts implements Iterable<int[]> {
         }
 
         this.annotations = new ArrayList<>(annotations);
+
+        long bytes = RamUsageEstimator.shallowSizeOfInstance(Contexts.class) + contexts.size64() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        for (int[] context: contexts)
+            bytes += RamUsageEstimator.sizeOf(context);
+        ramBytesUsed = bytes;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
     }
 
     /**
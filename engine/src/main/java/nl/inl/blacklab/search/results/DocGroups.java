@@ -49,6 +49,9 @@ public class DocGroups extends ResultsList<DocGroup, GroupProperty<DocResult, Do
     
     private long resultObjects = 0;
 
+    /** Estimated memory used by our groups */
+    private long ramBytesUsed = 0;
+
     private final DocProperty groupBy;
     
     private final WindowStats windowStats;
@@ -69,6 +72,7 @@ public class DocGroups extends ResultsList<DocGroup, GroupProperty<DocResult, Do
                 largestGroupSize = group.size();
             totalResults += group.size();
             resultObjects += group.numberOfStoredHits() + 1;
+            ramBytesUsed += group.ramBytesUsedWithoutResults() + group.storedResults().ramBytesUsed() + Group.RAM_BYTES_PER_GROUP;
             results.add(group);
             this.groups.put(group.identity(), group);
         }
@@ -186,4 +190,9 @@ public class DocGroups extends ResultsList<DocGroup, GroupProperty<DocResult, Do
         return resultObjects;
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
 }
@@ -19,7 +19,12 @@ import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.RamUsageEstimator;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
@@ -30,6 +35,7 @@ import nl.inl.blacklab.resultproperty.HitPropertyDoc;
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.PropertyValueDoc;
 import nl.inl.blacklab.resultproperty.PropertyValueInt;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabIndexAbstract;
 
 /**
@@ -162,6 +168,12 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
 
     private long resultObjects = 0;
 
+    /** Estimated memory used by our results, updated as results are added (see {@link #ramBytesUsed()}) */
+    private volatile long ramBytesUsed = 0;
+
+    /** Last captured groups object included in {@link #ramBytesUsed} */
+    private CapturedGroups ramBytesUsedLastCapturedGroups = null;
+
     private WindowStats windowStats;
 
     private SampleParameters sampleParameters;
@@ -224,6 +236,8 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
         this.results = results;
         this.sampleParameters = sampleParameters;
         this.windowStats = windowStats;
+        for (DocResult result: results)
+            addRamBytesUsed(result);
     }
 
     private DocResults(QueryInfo queryInfo, Query query) {
@@ -237,6 +251,8 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
         }
+        for (DocResult result: results)
+            addRamBytesUsed(result);
     }
 
     @Override
@@ -343,47 +359,96 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
         else
             docResult = DocResult.fromHits(doc, docHits, totalNumberOfHits);
         results.add(docResult);
+        addRamBytesUsed(docResult);
         if (docHits.size() > mostHitsInDocument)
             mostHitsInDocument = docHits.size();
         totalHits += docHits.size();
         resultObjects += docHits.numberOfResultObjects() + 1;
     }
 
+    /** A group being built by group(): its size and the results we store for it. */
+    private static class DocGroupInProgress {
+
+        /** Positions (in our results) of the results we store for this group, in order */
+        final IntArrayList stored = new IntArrayList();
+
+        /** Position (in our results) of the first result in this group */
+        int first = -1;
+
+        /** Number of documents in this group */
+        int size;
+
+        /** Number of tokens in this group's documents */
+        long tokens;
+
+        void add(int position, long docLengthTokens, long maxResultsToStorePerGroup) {
+            if (size == 0)
+                first = position;
+            if (maxResultsToStorePerGroup < 0 || stored.size() < maxResultsToStorePerGroup)
+                stored.add(position);
+            size++;
+            tokens += docLengthTokens;
+        }
+
+        void merge(DocGroupInProgress other, long maxResultsToStorePerGroup) {
+            stored.addAll(other.stored);
+            IntArrays.quickSort(stored.elements(), 0, stored.size());
+            if (maxResultsToStorePerGroup >= 0 && stored.size() > maxResultsToStorePerGroup)
+                stored.size((int) maxResultsToStorePerGroup);
+            first = Math.min(first, other.first);
+            size += other.size;
+            tokens += other.tokens;
+        }
+    }
+
     @Override
     public DocGroups group(DocProperty groupBy, long maxResultsToStorePerGroup) {
         ensureAllResultsRead();
 
-        Map<PropertyValue, List<DocResult>> groupLists = new HashMap<>();
-        Map<PropertyValue, Integer> groupSizes = new HashMap<>();
-        Map<PropertyValue, Long> groupTokenSizes = new HashMap<>();
-
         String tokenLengthFieldName = queryInfo().index().mainAnnotatedField().tokenLengthField();
         DocPropertyAnnotatedFieldLength fieldLengthProp = new DocPropertyAnnotatedFieldLength(queryInfo().index(), tokenLengthFieldName);
 
-        for (DocResult r : this) {
-            PropertyValue groupId = groupBy.get(r);
-            List<DocResult> group = groupLists.computeIfAbsent(groupId, k -> new ArrayList<>());
-            if (maxResultsToStorePerGroup < 0 || group.size() < maxResultsToStorePerGroup)
-                group.add(r);
-            Integer groupSize = groupSizes.get(groupId);
-            Long groupTokenSize = groupTokenSizes.get(groupId);
-            long docLengthTokens = fieldLengthProp.get(r.identity().value()) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
-            if (groupSize == null) {
-                groupSize = 1;
-                groupTokenSize = docLengthTokens;
+        // If the property supports it and there are enough results, group on (primitive) keys first
+        // and only get the PropertyValue once per group. Other results are grouped on their PropertyValue
+        // directly. (for small results, preparing the keys, e.g. building global ordinals, isn't worth it)
+        boolean useGroupKeys = results.size() >= BlackLab.config().getSearch().getParallelGroupingMinHits() && groupBy.hasGroupKeys();
+        Map<PropertyValue, DocGroupInProgress> groups = new HashMap<>();
+        Long2ObjectMap<DocGroupInProgress> keyedGroups = new Long2ObjectOpenHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            DocResult r = results.get(i);
+            long key = useGroupKeys ? groupBy.groupKey(r) : HitProperty.NO_GROUP_KEY;
+            DocGroupInProgress group;
+            if (key == HitProperty.NO_GROUP_KEY) {
+                group = groups.computeIfAbsent(groupBy.get(r), k -> new DocGroupInProgress());
             } else {
-                groupSize++;
-                groupTokenSize += docLengthTokens;
+                group = keyedGroups.get(key);
+                if (group == null) {
+                    group = new DocGroupInProgress();
+                    keyedGroups.put(key, group);
+                }
             }
-            groupSizes.put(groupId, groupSize);
-            groupTokenSizes.put(groupId, groupTokenSize);
+            long docLengthTokens = fieldLengthProp.get(r.identity().value()) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
+            group.add(i, docLengthTokens, maxResultsToStorePerGroup);
         }
-        List<DocGroup> results = new ArrayList<>();
-        for (Map.Entry<PropertyValue, List<DocResult>> e : groupLists.entrySet()) {
-            DocGroup docGroup = DocGroup.fromList(queryInfo(), e.getKey(), e.getValue(), groupSizes.get(e.getKey()), groupTokenSizes.get(e.getKey()));
-            results.add(docGroup);
+        for (DocGroupInProgress group: keyedGroups.values()) {
+            // Different keys may have the same value (see DocProperty.groupKey()); if so, merge them
+            PropertyValue groupId = groupBy.get(results.get(group.first));
+            DocGroupInProgress existing = groups.get(groupId);
+            if (existing == null)
+                groups.put(groupId, group);
+            else
+                existing.merge(group, maxResultsToStorePerGroup);
         }
-        return DocGroups.fromList(queryInfo(), results, groupBy, null, null);
+
+        List<DocGroup> groupList = new ArrayList<>();
+        for (Map.Entry<PropertyValue, DocGroupInProgress> e : groups.entrySet()) {
+            DocGroupInProgress group = e.getValue();
+            List<DocResult> stored = new ArrayList<>(group.stored.size());
+            for (int i = 0; i < group.stored.size(); i++)
+                stored.add(results.get(group.stored.getInt(i)));
+            groupList.add(DocGroup.fromList(queryInfo(), e.getKey(), stored, group.size, group.tokens));
+        }
+        return DocGroups.fromList(queryInfo(), groupList, groupBy, null, null);
     }
 
     /**
@@ -488,6 +553,35 @@ public class DocResults extends ResultsList<DocResult, DocProperty> implements R
         return resultObjects;
     }
 
+    /**
+     * Add the estimated memory used by a new result to our running total.
+     *
+     * Only called by the thread adding results (see {@link #ensureResultsRead(long)}).
+     *
+     * @param result result that was just added
+     */
+    private void addRamBytesUsed(DocResult result) {
+        long bytes = result.ramBytesUsedWithoutCapturedGroups() + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        CapturedGroups capturedGroups = result.storedResults().capturedGroups();
+        if (capturedGroups != null && capturedGroups != ramBytesUsedLastCapturedGroups) {
+            // (results that share captured groups are usually adjacent, so this avoids most double counting)
+            bytes += capturedGroups.ramBytesUsed();
+            ramBytesUsedLastCapturedGroups = capturedGroups;
+        }
+        ramBytesUsed += bytes;
+    }
+
+    /**
+     * Estimate the memory used by these results.
+     *
+     * Results may still be added while this is called. We keep a running total as they are added,
+     * so this doesn't need to lock anything.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
     /**
      * Determine the size of the subcorpus defined by this set of documents.
      *
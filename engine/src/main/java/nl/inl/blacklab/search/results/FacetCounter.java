@@ -0,0 +1,261 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMaps;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.DocPropertyStoredField;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.PropertyValueString;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndexAbstract;
+import nl.inl.util.GlobalOrdinals;
+
+/**
+ * Counts documents (and their tokens) per value for several metadata facets at once.
+ *
+ * Instead of grouping the documents once per facet (getting a PropertyValue per
+ * document for each facet), we count using the facets' global ordinals and primitive
+ * count arrays (or, if there are far fewer documents than values, hash maps). The documents are divided into partitions that are counted in parallel;
+ * each partition reads the document lengths once for all facets. Values are only
+ * looked up for the final counts.
+ */
+class FacetCounter {
+
+    /** Minimum number of documents per partition, so small results aren't split up needlessly */
+    private static final int MIN_DOCS_PER_PARTITION = 10_000;
+
+    /** Count using hash maps if a partition has this many times fewer documents than the facet has values */
+    private static final int SPARSE_FACTOR = 8;
+
+    private FacetCounter() {
+    }
+
+    /**
+     * Should we count this facet?
+     *
+     * Fewer documents than needed to group on keys are just grouped (see DocResults.group()):
+     * building global ordinals for them (if they don't exist yet) isn't worth it.
+     *
+     * @param source documents to count
+     * @param facet facet to count
+     * @return true if there are enough documents and the facet is a metadata field with global ordinals
+     */
+    static boolean canCount(DocResults source, DocProperty facet) {
+        return source.size() >= BlackLab.config().getSearch().getParallelGroupingMinHits() && facet instanceof DocPropertyStoredField &&
+                ((DocPropertyStoredField) facet).ordinals() != null;
+    }
+
+    /**
+     * Counts for one facet in one partition.
+     *
+     * Counts are kept per global ordinal, with documents without a value counted at the end
+     * (ordinal valueCount). If there are far fewer documents than values, the counts are kept
+     * in hash maps instead of arrays, so we don't allocate (and later scan) space for every value.
+     */
+    static class Counts {
+
+        /** Number of documents per global ordinal, or null if sparse */
+        final int[] docs;
+
+        /** Number of tokens per global ordinal, or null if sparse */
+        final long[] tokens;
+
+        /** Number of documents per global ordinal, or null if not sparse */
+        final Int2IntOpenHashMap sparseDocs;
+
+        /** Number of tokens per global ordinal, or null if not sparse */
+        final Int2LongOpenHashMap sparseTokens;
+
+        /** Documents with multiple values, by combined value: number of documents and tokens */
+        final Map<String, long[]> multipleValues = new HashMap<>();
+
+        Counts(int valueCount, int numberOfDocs) {
+            if ((long) numberOfDocs * SPARSE_FACTOR < valueCount) {
+                docs = null;
+                tokens = null;
+                sparseDocs = new Int2IntOpenHashMap(numberOfDocs);
+                sparseTokens = new Int2LongOpenHashMap(numberOfDocs);
+            } else {
+                docs = new int[valueCount + 1];
+                tokens = new long[valueCount + 1];
+                sparseDocs = null;
+                sparseTokens = null;
+            }
+        }
+
+        void count(int ord, int numberOfDocs, long numberOfTokens) {
+            if (docs != null) {
+                docs[ord] += numberOfDocs;
+                tokens[ord] += numberOfTokens;
+            } else {
+                sparseDocs.addTo(ord, numberOfDocs);
+                sparseTokens.addTo(ord, numberOfTokens);
+            }
+        }
+
+        /** Call action for each ordinal with documents: (ordinal, documents, tokens) */
+        void forEach(OrdinalCountConsumer action) {
+            if (docs != null) {
+                for (int ord = 0; ord < docs.length; ord++) {
+                    if (docs[ord] > 0)
+                        action.accept(ord, docs[ord], tokens[ord]);
+                }
+            } else {
+                for (Int2IntMap.Entry e: Int2IntMaps.fastIterable(sparseDocs)) {
+                    action.accept(e.getIntKey(), e.getIntValue(), sparseTokens.get(e.getIntKey()));
+                }
+            }
+        }
+
+        void add(Counts other) {
+            other.forEach(this::count);
+            for (Map.Entry<String, long[]> e: other.multipleValues.entrySet()) {
+                long[] counts = multipleValues.computeIfAbsent(e.getKey(), k -> new long[2]);
+                counts[0] += e.getValue()[0];
+                counts[1] += e.getValue()[1];
+            }
+        }
+    }
+
+    interface OrdinalCountConsumer {
+        void accept(int ord, int numberOfDocs, long numberOfTokens);
+    }
+
+    /**
+     * Count the facets.
+     *
+     * @param source documents to count
+     * @param facets facets to count (must all satisfy {@link #canCount(DocResults, DocProperty)})
+     * @param timingsMs (out) time spent counting each facet, summed over all threads
+     * @return counts per facet, as groups without stored results
+     */
+    static Map<DocProperty, DocGroups> count(DocResults source, List<DocProperty> facets, Map<DocProperty, Long> timingsMs) {
+        List<GlobalOrdinals> ordinals = facets.stream()
+                .map(f -> ((DocPropertyStoredField) f).ordinals())
+                .collect(Collectors.toList());
+
+        // Sort the doc ids so we can read each segment's DocValues in order
+        int[] docIds = new int[(int) source.size()];
+        int n = 0;
+        for (DocResult result: source)
+            docIds[n++] = result.identity().value();
+        Arrays.sort(docIds);
+
+        int numberOfPartitions = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                docIds.length / MIN_DOCS_PER_PARTITION));
+        String lengthField = source.queryInfo().index().mainAnnotatedField().tokenLengthField();
+        List<LeafReaderContext> leaves = source.queryInfo().index().reader().leaves();
+        AtomicLongArray nanos = new AtomicLongArray(facets.size());
+        List<List<Counts>> partitions = IntStream.range(0, numberOfPartitions).parallel()
+                .mapToObj(i -> {
+                    int start = (int) ((long) docIds.length * i / numberOfPartitions);
+                    int end = (int) ((long) docIds.length * (i + 1) / numberOfPartitions);
+                    return countPartition(docIds, start, end, leaves, lengthField, ordinals, nanos);
+                })
+                .collect(Collectors.toList());
+
+        // Merge the partitions and look up the values
+        Map<DocProperty, DocGroups> result = new LinkedHashMap<>();
+        for (int f = 0; f < facets.size(); f++) {
+            long startTime = System.nanoTime();
+            Counts total = partitions.get(0).get(f);
+            for (int i = 1; i < partitions.size(); i++)
+                total.add(partitions.get(i).get(f));
+            result.put(facets.get(f), toGroups(source.queryInfo(), facets.get(f), ordinals.get(f), total));
+            timingsMs.put(facets.get(f), (nanos.get(f) + System.nanoTime() - startTime) / 1_000_000);
+        }
+        return result;
+    }
+
+    private static List<Counts> countPartition(int[] docIds, int start, int end, List<LeafReaderContext> leaves,
+            String lengthField, List<GlobalOrdinals> ordinals, AtomicLongArray nanos) {
+        long[] docLengths = docLengths(docIds, start, end, leaves, lengthField);
+        List<Counts> result = new ArrayList<>(ordinals.size());
+        for (int f = 0; f < ordinals.size(); f++) {
+            long startTime = System.nanoTime();
+            GlobalOrdinals ord = ordinals.get(f);
+            Counts counts = new Counts(ord.valueCount(), end - start);
+            for (int i = start; i < end; i++) {
+                int docId = docIds[i];
+                int numberOfValues = ord.count(docId);
+                if (numberOfValues == 0) {
+                    counts.count(ord.valueCount(), 1, docLengths[i - start]);
+                } else if (numberOfValues == 1) {
+                    counts.count(ord.ord(docId, 0), 1, docLengths[i - start]);
+                } else {
+                    // Same value as DocPropertyStoredField.get(DocResult)
+                    String value = DocPropertyStoredField.fromArray(ord.values(docId)).value();
+                    long[] multiple = counts.multipleValues.computeIfAbsent(value, k -> new long[2]);
+                    multiple[0]++;
+                    multiple[1] += docLengths[i - start];
+                }
+            }
+            result.add(counts);
+            nanos.addAndGet(f, System.nanoTime() - startTime);
+        }
+        return result;
+    }
+
+    /** Read the document lengths for part of the (sorted) doc ids, in the same way DocResults.group() does. */
+    private static long[] docLengths(int[] docIds, int start, int end, List<LeafReaderContext> leaves, String lengthField) {
+        long[] docLengths = new long[end - start];
+        try {
+            int leaf = -1;
+            int leafEnd = 0;
+            NumericDocValues lengths = null;
+            for (int i = start; i < end; i++) {
+                int docId = docIds[i];
+                while (docId >= leafEnd) {
+                    leaf++;
+                    leafEnd = leaves.get(leaf).docBase + leaves.get(leaf).reader().maxDoc();
+                    lengths = leaves.get(leaf).reader().getNumericDocValues(lengthField);
+                }
+                LeafReaderContext rc = leaves.get(leaf);
+                long length = lengths != null && lengths.advanceExact(docId - rc.docBase) ? lengths.longValue() : 0;
+                // DocPropertyAnnotatedFieldLength subtracts the extra closing token, and DocResults.group() does as well
+                docLengths[i - start] = length - 2 * BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        return docLengths;
+    }
+
+    private static DocGroups toGroups(QueryInfo queryInfo, DocProperty facet, GlobalOrdinals ordinals, Counts counts) {
+        Map<PropertyValue, long[]> totals = new LinkedHashMap<>();
+        counts.forEach((ord, numberOfDocs, numberOfTokens) -> {
+            String value = ord < ordinals.valueCount() ? ordinals.value(ord) : "";
+            long[] total = totals.computeIfAbsent(new PropertyValueString(value), k -> new long[2]);
+            total[0] += numberOfDocs;
+            total[1] += numberOfTokens;
+        });
+        for (Map.Entry<String, long[]> e: counts.multipleValues.entrySet()) {
+            long[] total = totals.computeIfAbsent(new PropertyValueString(e.getKey()), k -> new long[2]);
+            total[0] += e.getValue()[0];
+            total[1] += e.getValue()[1];
+        }
+        List<DocGroup> groups = new ArrayList<>(totals.size());
+        for (Map.Entry<PropertyValue, long[]> e: totals.entrySet()) {
+            groups.add(DocGroup.fromList(queryInfo, e.getKey(), Collections.emptyList(), e.getValue()[0], e.getValue()[1]));
+        }
+        return DocGroups.fromList(queryInfo, groups, facet, null, null);
+    }
+}
@@ -1,26 +1,61 @@
 package nl.inl.blacklab.search.results;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.RamUsageEstimator;
+
 import nl.inl.blacklab.resultproperty.DocProperty;
 
 public class Facets implements SearchResult {
+
+    private static final Logger logger = LogManager.getLogger(Facets.class);
     
     private final List<DocProperty> facets;
     
     private final Map<DocProperty, DocGroups> counts;
+
+    /** Time spent counting each facet (ms) */
+    private final Map<DocProperty, Long> timings;
     
     private int resultObjects = 0;
 
+    private long ramBytesUsed = 0;
+
     public Facets(DocResults source, List<DocProperty> facets) {
         this.facets = facets;
         counts = new HashMap<>();
+        timings = new HashMap<>();
+
+        // Metadata fields with global ordinals are counted together, in a single pass
+        // (if there are enough documents); other facets are determined by grouping the documents.
+        List<DocProperty> countTogether = new ArrayList<>();
         for (DocProperty facetBy : facets) {
-            DocGroups groups = source.group(facetBy, 0);
-            counts.put(facetBy, groups);
+            if (FacetCounter.canCount(source, facetBy)) {
+                countTogether.add(facetBy);
+            } else {
+                long startTime = System.nanoTime();
+                counts.put(facetBy, source.group(facetBy, 0));
+                timings.put(facetBy, (System.nanoTime() - startTime) / 1_000_000);
+            }
+        }
+        if (!countTogether.isEmpty())
+            counts.putAll(FacetCounter.count(source, countTogether, timings));
+        if (logger.isDebugEnabled()) {
+            for (DocProperty facetBy: facets) {
+                logger.debug("Facet " + facetBy.serialize() + ": " + counts.get(facetBy).size() + " values, " +
+                        timings.get(facetBy) + " ms" + (countTogether.contains(facetBy) ? " (counted together)" : ""));
+            }
+        }
+
+        for (DocGroups groups: counts.values()) {
             resultObjects += groups.size();
+            ramBytesUsed += groups.ramBytesUsed() + RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY;
         }
     }
 
@@ -32,9 +67,26 @@ public class Facets implements SearchResult {
         return counts;
     }
 
+    /**
+     * How long did it take to determine the counts for each facet?
+     *
+     * For facets that were counted together, this is the time spent on that facet,
+     * summed over all threads that counted it.
+     *
+     * @return time per facet in ms
+     */
+    public Map<DocProperty, Long> timingsPerFacet() {
+        return Collections.unmodifiableMap(timings);
+    }
+
     @Override
     public long numberOfResultObjects() {
         return resultObjects;
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
 }
@@ -1,5 +1,7 @@
 package nl.inl.blacklab.search.results;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.resultproperty.ResultProperty;
 
@@ -10,6 +12,13 @@ import nl.inl.blacklab.resultproperty.ResultProperty;
  */
 public abstract class Group<T> implements Result<Group<T>> {
     
+    /** Memory used by a group object and its identity object (not the identity's value) */
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(DocGroup.class)
+            + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+
+    /** Memory used for each group in a groups object: an entry in the groups map and a reference in the results list */
+    static final long RAM_BYTES_PER_GROUP = RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
     protected final PropertyValue groupIdentity;
 
     private final Results<T, ? extends ResultProperty<T>> storedResults;
@@ -30,6 +39,15 @@ public abstract class Group<T> implements Result<Group<T>> {
         return storedResults;
     }
     
+    /**
+     * Estimate the memory used by this group, not counting its stored results.
+     *
+     * @return estimated number of bytes
+     */
+    long ramBytesUsedWithoutResults() {
+        return BASE_RAM_BYTES_USED + (groupIdentity == null ? 0 : RamUsageEstimator.sizeOfObject(groupIdentity.value()));
+    }
+
     public long numberOfStoredResults() {
         return storedResults != null ? storedResults.size() : 0;
     }
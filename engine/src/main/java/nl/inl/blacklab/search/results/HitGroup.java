@@ -1,5 +1,9 @@
 package nl.inl.blacklab.search.results;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 import nl.inl.blacklab.resultproperty.PropertyValue;
 
 /**
@@ -50,6 +54,38 @@ public class HitGroup extends Group<Hit> {
         super(groupIdentity, storedResults, totalSize);
     }
     
+    /**
+     * Estimate the memory used by this group and its stored hits.
+     *
+     * Captured groups are not included, because they're usually shared between groups.
+     *
+     * @return estimated number of bytes
+     */
+    long ramBytesUsedWithoutCapturedGroups() {
+        Hits hits = storedResults();
+        return ramBytesUsedWithoutResults() + HitsAbstract.BASE_RAM_BYTES_USED + hits.getInternalHits().ramBytesUsed();
+    }
+
+    /**
+     * Estimate the memory used by a number of groups.
+     *
+     * Captured groups shared between groups are counted once.
+     *
+     * @param groups groups
+     * @return estimated number of bytes
+     */
+    static long ramBytesUsed(Iterable<? extends HitGroup> groups) {
+        long bytes = 0;
+        Set<CapturedGroups> capturedGroupsSeen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (HitGroup group: groups) {
+            bytes += group.ramBytesUsedWithoutCapturedGroups();
+            CapturedGroups capturedGroups = group.storedResults().capturedGroups();
+            if (capturedGroups != null && capturedGroupsSeen.add(capturedGroups))
+                bytes += capturedGroups.ramBytesUsed();
+        }
+        return bytes;
+    }
+
     @Override
     public Hits storedResults() {
         return (Hits)super.storedResults();
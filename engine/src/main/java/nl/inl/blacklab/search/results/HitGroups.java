@@ -93,6 +93,9 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
 
     private int resultObjects;
 
+    /** Estimated memory used by our groups */
+    private final long ramBytesUsed;
+
     /**
      * Construct a ResultsGrouper object, by grouping the supplied hits.
      *
@@ -110,50 +113,72 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
         BlackLabIndex index = hits.queryInfo().index();
         criteria = criteria.copyWith(hits, requiredContext == null ? null : new Contexts(hits, requiredContext, criteria.needsContextSize(hits.index())));
         
-        //Thread currentThread = Thread.currentThread();
-        Map<PropertyValue, HitsInternalMutable> groupLists = new HashMap<>();
-        Map<PropertyValue, Integer> groupSizes = new HashMap<>();
         resultObjects = 0;
-        int i = 0;
-        for (Iterator<Hit> it = hits.iterator(); it.hasNext(); ) {
-            Hit hit = it.next();
-            PropertyValue identity = criteria.get(i);
-            HitsInternalMutable group = groupLists.get(identity);
-            if (group == null) {
-
-                if (groupLists.size() >= MAX_NUMBER_OF_GROUPS)
-                    throw new BlackLabRuntimeException("Cannot handle more than " + MAX_NUMBER_OF_GROUPS + " groups");
-
-                group = HitsInternal.create(-1, hits.size(), false);
-                groupLists.put(identity, group);
+        if (HitsGrouper.shouldUse(hits.size(), criteria)) {
+            // Group on primitive keys, in parallel
+            HitsInternal hitsInternal = hits.getInternalHits();
+            Map<PropertyValue, HitsGrouper.GroupInProgress> groupsInProgress = HitsGrouper.group(hits.size(), criteria,
+                    maxResultsToStorePerGroup, MAX_NUMBER_OF_GROUPS);
+            for (Map.Entry<PropertyValue, HitsGrouper.GroupInProgress> e : groupsInProgress.entrySet()) {
+                HitsGrouper.GroupInProgress groupInProgress = e.getValue();
+                HitsInternalMutable hitList = HitsInternal.create(groupInProgress.hitIndices.size(), false, false);
+                for (int i = 0; i < groupInProgress.hitIndices.size(); i++) {
+                    long hitIndex = groupInProgress.hitIndices.getLong(i);
+                    hitList.add(hitsInternal.doc(hitIndex), hitsInternal.start(hitIndex), hitsInternal.end(hitIndex));
+                }
+                resultObjects += hitList.size();
+                if (groupInProgress.size > largestGroupSize)
+                    largestGroupSize = groupInProgress.size;
+                HitGroup group = HitGroup.fromList(queryInfo(), e.getKey(), hitList, hits.capturedGroups(), groupInProgress.size);
+                groups.put(e.getKey(), group);
+                results.add(group);
             }
-            if (maxResultsToStorePerGroup < 0 || group.size() < maxResultsToStorePerGroup) {
-                group.add(hit);
-                resultObjects++;
+            resultObjects += groupsInProgress.size();
+        } else {
+            Map<PropertyValue, HitsInternalMutable> groupLists = new HashMap<>();
+            Map<PropertyValue, Integer> groupSizes = new HashMap<>();
+            int i = 0;
+            for (Iterator<Hit> it = hits.iterator(); it.hasNext(); ) {
+                Hit hit = it.next();
+                PropertyValue identity = criteria.get(i);
+                HitsInternalMutable group = groupLists.get(identity);
+                if (group == null) {
+
+                    if (groupLists.size() >= MAX_NUMBER_OF_GROUPS)
+                        throw new BlackLabRuntimeException("Cannot handle more than " + MAX_NUMBER_OF_GROUPS + " groups");
+
+                    group = HitsInternal.create(-1, hits.size(), false);
+                    groupLists.put(identity, group);
+                }
+                if (maxResultsToStorePerGroup < 0 || group.size() < maxResultsToStorePerGroup) {
+                    group.add(hit);
+                    resultObjects++;
+                }
+                Integer groupSize = groupSizes.get(identity);
+                if (groupSize == null)
+                    groupSize = 1;
+                else
+                    groupSize++;
+                if (groupSize > largestGroupSize)
+                    largestGroupSize = groupSize;
+                groupSizes.put(identity, groupSize);
+                ++i;
+            }
+            resultObjects += groupLists.size();
+            for (Map.Entry<PropertyValue, HitsInternalMutable> e : groupLists.entrySet()) {
+                PropertyValue groupId = e.getKey();
+                HitsInternal hitList = e.getValue();
+                Integer groupSize = groupSizes.get(groupId);
+                HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, hits.capturedGroups(), groupSize);
+                groups.put(groupId, group);
+                results.add(group);
             }
-            Integer groupSize = groupSizes.get(identity);
-            if (groupSize == null)
-                groupSize = 1;
-            else
-                groupSize++;
-            if (groupSize > largestGroupSize)
-                largestGroupSize = groupSize;
-            groupSizes.put(identity, groupSize);
-            ++i;
-        }
-        resultObjects += groupLists.size();
-        for (Map.Entry<PropertyValue, HitsInternalMutable> e : groupLists.entrySet()) {
-            PropertyValue groupId = e.getKey();
-            HitsInternal hitList = e.getValue();
-            Integer groupSize = groupSizes.get(groupId);
-            HitGroup group = HitGroup.fromList(queryInfo(), groupId, hitList, hits.capturedGroups(), groupSize);
-            groups.put(groupId, group);
-            results.add(group);
         }
 
         // Make a copy so we don't keep any references to the source hits
         this.hitsStats = hits.hitsStats().save();
         this.docsStats = hits.docsStats().save();
+        ramBytesUsed = HitGroup.ramBytesUsed(results) + groups.size() * Group.RAM_BYTES_PER_GROUP;
     }
 
     protected HitGroups(QueryInfo queryInfo, List<HitGroup> groups, HitProperty groupCriteria, SampleParameters sampleParameters, WindowStats windowStats, ResultsStats hitsStats, ResultsStats docsStats) {
@@ -173,6 +198,7 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
         // Make a copy so we don't keep any references to the source hits
         this.hitsStats = hitsStats.save();
         this.docsStats = docsStats.save();
+        ramBytesUsed = HitGroup.ramBytesUsed(results) + this.groups.size() * Group.RAM_BYTES_PER_GROUP;
     }
 
 
@@ -311,6 +337,11 @@ public class HitGroups extends ResultsList<HitGroup, GroupProperty<Hit, HitGroup
         return resultObjects;
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
     /** 
      * Get document stats for these groups.
      * NOTE: docsCounted will return -1 if this HitGroups instance is a sample and hasn't got all hits stored 
@@ -3,15 +3,17 @@ package nl.inl.blacklab.search.results;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -53,39 +55,32 @@ public class HitGroupsTokenFrequencies {
 
     private static final Logger logger = LogManager.getLogger(HitGroupsTokenFrequencies.class);
 
-    /** Precalculated hashcode for group id, to save time while grouping and sorting. */
-    private static class GroupIdHash {
-        private final int[] tokenIds;
-        private final int[] tokenSortPositions;
-        private final PropertyValue[] metadataValues;
-        private final int hash;
+    /**
+     * Assigns ids to combinations of metadata values, so we can use them in group keys.
+     *
+     * Thread-safe. There's one combination of metadata values per document, so looking
+     * these up is not in the inner loop.
+     */
+    private static final class MetadataValuesIds {
+        private final Map<List<PropertyValue>, Integer> ids = new ConcurrentHashMap<>();
 
-        /**
-         *
-         * @param tokenIds token term id for each token in the group id
-         * @param tokenSortPositions sort position for each token in the group id
-         * @param metadataValues relevant metadatavalues
-         * @param metadataValuesHash since many tokens per document, precalculate md hash for that thing
-         */
-        public GroupIdHash(int[] tokenIds, int[] tokenSortPositions, PropertyValue[] metadataValues, int metadataValuesHash) {
-            this.tokenIds = tokenIds;
-            this.tokenSortPositions = tokenSortPositions;
-            this.metadataValues = metadataValues;
-            hash = Arrays.hashCode(tokenSortPositions) ^ metadataValuesHash;
-        }
+        private final AtomicInteger nextId = new AtomicInteger();
 
-        @Override
-        public int hashCode() {
-            return hash;
+        public int get(PropertyValue[] metadataValues) {
+            return ids.computeIfAbsent(Arrays.asList(metadataValues), __ -> nextId.getAndIncrement());
         }
 
-        // Assume only called with other instances of IdHash (faster for large groupings)
-        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
-        @Override
-        public boolean equals(Object obj) {
-            return ((GroupIdHash) obj).hash == this.hash &&
-                   Arrays.equals(((GroupIdHash) obj).tokenSortPositions, this.tokenSortPositions) &&
-                   Arrays.deepEquals(((GroupIdHash) obj).metadataValues, this.metadataValues);
+        /**
+         * Get the metadata values for each id.
+         *
+         * Call this when all ids have been assigned.
+         *
+         * @return metadata values, indexed by id
+         */
+        public PropertyValue[][] valuesById() {
+            PropertyValue[][] values = new PropertyValue[ids.size()][];
+            ids.forEach((key, id) -> values[id] = key.toArray(new PropertyValue[0]));
+            return values;
         }
     }
 
@@ -103,18 +98,6 @@ public class HitGroupsTokenFrequencies {
         return !mustStoreHits && hitsSearch.isAnyTokenQuery() && property.isDocPropOrHitText();
     }
 
-    /** Counts of hits and docs while grouping. */
-    private static final class OccurrenceCounts {
-        // volatile just to be safe, as these objects are at times added together from different threads.
-        public volatile long hits;
-        public volatile int docs;
-
-        public OccurrenceCounts(long hits, int docs) {
-            this.hits = hits;
-            this.docs = docs;
-        }
-    }
-
     /** Info about doc and hit properties while grouping. */
     private static final class PropInfo {
 
@@ -185,8 +168,12 @@ public class HitGroupsTokenFrequencies {
         SearchSettings searchSettings = source.searchSettings();
 
         try {
-            // This is where we store our groups while we're computing/gathering them. Maps from group Id to number of hits and number of docs
-            final ConcurrentHashMap<GroupIdHash, OccurrenceCounts> globalOccurrences = new ConcurrentHashMap<>();
+            // This is where we store our groups while we're computing/gathering them: number of hits and number of docs
+            // per group key. Each thread counts into its own instance; these are merged at the end.
+            final TokenGroupCounts occurrences;
+
+            // Ids for the combinations of metadata values (first int in the group keys)
+            final MetadataValuesIds metadataValuesIds = new MetadataValuesIds();
 
             final BlackLabIndex index = queryInfo.index();
 
@@ -239,7 +226,7 @@ public class HitGroupsTokenFrequencies {
             }
 
             final int numAnnotations = hitProperties.size();
-            long numberOfDocsProcessed;
+            final AtomicLong numberOfDocsProcessed = new AtomicLong();
             final AtomicLong numberOfHitsProcessed = new AtomicLong();
             final AtomicBoolean hitMaxHitsToCount = new AtomicBoolean(false);
 
@@ -276,34 +263,25 @@ public class HitGroupsTokenFrequencies {
                     // This requires a different approach because we never retrieve the individual tokens if there's no annotation
                     // e.g. match '*' group by document year --
                     // What we do instead is for every document just retrieve how many tokens it contains (from its metadata), and add that count to the appropriate group
-                    numberOfDocsProcessed = docIds.size();
                     try (BlockTimer ignored = c.child("Grouping documents (metadata only path)")) {
                         String fieldName =  index.mainAnnotatedField().name();
                         DocPropertyAnnotatedFieldLength propTokens = new DocPropertyAnnotatedFieldLength(index, fieldName);
                         final int[] emptyTokenValuesArray = new int[0];
 
-                        docIds.parallelStream().forEach(docId -> {
+                        occurrences = docIds.parallelStream().collect(Collector.of(() -> new TokenGroupCounts(0), (counts, docId) -> {
                             final int docLength = (int) propTokens.get(docId) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
                             final DocResult synthesizedDocResult = DocResult.fromDoc(queryInfo, new PropertyValueDoc(
                                     index, docId), 0, docLength);
                             final PropertyValue[] metadataValuesForGroup = new PropertyValue[docProperties.size()];
                             for (int i = 0; i < docProperties.size(); ++i) { metadataValuesForGroup[i] = docProperties.get(i).get(synthesizedDocResult); }
-                            final int metadataValuesHash = Arrays.hashCode(metadataValuesForGroup); // precompute, it's the same for all hits in document
 
                             numberOfHitsProcessed.addAndGet(docLength);
+                            numberOfDocsProcessed.incrementAndGet();
 
                             // Add all tokens in document to the group.
-                            final GroupIdHash groupId = new GroupIdHash(emptyTokenValuesArray, emptyTokenValuesArray, metadataValuesForGroup, metadataValuesHash);
-                            globalOccurrences.compute(groupId, (__, groupSizes) -> {
-                                if (groupSizes != null) {
-                                    groupSizes.hits += docLength;
-                                    groupSizes.docs += 1;
-                                    return groupSizes;
-                                } else {
-                                    return new OccurrenceCounts(docLength, 1);
-                                }
-                            });
-                        });
+                            counts.startDocument();
+                            counts.add(new int[] { metadataValuesIds.get(metadataValuesForGroup) }, emptyTokenValuesArray, docLength);
+                        }, TokenGroupCounts::merge));
                     }
                 } else {
                     // We do have hit properties, so we need to use both document metadata and the tokens from the forward index to
@@ -323,11 +301,11 @@ public class HitGroupsTokenFrequencies {
 
                     final IndexReader reader = index.reader();
 
-                    numberOfDocsProcessed = docIds.parallelStream().filter(docId -> {
+                    occurrences = docIds.parallelStream().collect(Collector.of(() -> new TokenGroupCounts(numAnnotations), (counts, docId) -> {
 
                         // If we've already exceeded the maximum, skip this doc
                         if (numberOfHitsProcessed.get() >= maxHitsToCount)
-                            return false;
+                            return;
 
                         try {
 
@@ -335,14 +313,15 @@ public class HitGroupsTokenFrequencies {
                             // This will create one int[] for every annotation, containing ids that map to the values for this document for this annotation
 
                             final Document doc = reader.document(docId, fieldsToLoad);
-                            final List<int[]> tokenValuesPerAnnotation = new ArrayList<>();
-                            final List<int[]> sortValuesPerAnnotation = new ArrayList<>();
+                            final int[][] tokenValuesPerAnnotation = new int[numAnnotations][];
+                            final int[][] sortValuesPerAnnotation = new int[numAnnotations][];
 
                             try (BlockTimer ignored = c.child("Read annotations from forward index")) {
-                                for (AnnotInfo annot : hitProperties) {
+                                for (int annotationIndex = 0; annotationIndex < numAnnotations; ++annotationIndex) {
+                                    AnnotInfo annot = hitProperties.get(annotationIndex);
                                     final AnnotationForwardIndex afi = annot.getAnnotationForwardIndex();
                                     final int[] tokenValues = afi.getDocument(docId);
-                                    tokenValuesPerAnnotation.add(tokenValues);
+                                    tokenValuesPerAnnotation[annotationIndex] = tokenValues;
 
                                     // Look up sort values
                                     // NOTE: tried moving this to a TermsReader.arrayOfIdsToSortPosition() method,
@@ -353,7 +332,7 @@ public class HitGroupsTokenFrequencies {
                                         final int termId = tokenValues[tokenIndex];
                                         sortValues[tokenIndex] = annot.getTerms().idToSortPosition(termId, annot.getMatchSensitivity());
                                     }
-                                    sortValuesPerAnnotation.add(sortValues);
+                                    sortValuesPerAnnotation[annotationIndex] = sortValues;
                                 }
 
                             }
@@ -362,30 +341,29 @@ public class HitGroupsTokenFrequencies {
                             int docLength = Integer.parseInt(doc.get(lengthTokensFieldName)) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
                             final DocResult synthesizedDocResult = DocResult.fromDoc(queryInfo, new PropertyValueDoc(
                                     index, docId), 0, docLength);
-                            final PropertyValue[] metadataValuesForGroup = !docProperties.isEmpty() ? new PropertyValue[docProperties.size()] : null;
+                            final PropertyValue[] metadataValuesForGroup = new PropertyValue[docProperties.size()];
                             for (int i = 0; i < docProperties.size(); ++i)
                                 metadataValuesForGroup[i] = docProperties.get(i).get(synthesizedDocResult);
-                            final int metadataValuesHash = Arrays.hashCode(metadataValuesForGroup); // precompute, it's the same for all hits in document
+                            final int metadataValuesId = metadataValuesIds.get(metadataValuesForGroup); // same for all hits in document
 
                             // now we have all values for all relevant annotations for this document
-                            // iterate again and pair up the nth entries for all annotations, then store that as a group.
-
-                            // Keep track of term occurrences in this document; later we'll merge it with the global term frequencies
-                            Map<GroupIdHash, OccurrenceCounts> occsInDoc = new HashMap<>();
+                            // iterate again and pair up the nth entries for all annotations, then count that group.
 
                             try (BlockTimer ignored = c.child("Group tokens")) {
 
+                                // Group key: metadata values id, then sort position for each annotation.
+                                // (reused for each token; the counts object copies it when it finds a new group)
+                                final int[] groupKey = new int[1 + numAnnotations];
+                                final int[] annotationValuesForThisToken = new int[numAnnotations];
+                                groupKey[0] = metadataValuesId;
+                                counts.startDocument();
                                 for (int tokenIndex = 0; tokenIndex < docLength; ++ tokenIndex) {
-                                    int[] annotationValuesForThisToken = new int[numAnnotations];
-                                    int[] sortPositions = new int[numAnnotations];
 
                                     // Unfortunate fact: token ids are case-sensitive, and in order to group on a token's values case and diacritics insensitively,
                                     // we need to actually group by their "sort positions" - which is just the index the term would have if all terms would have been sorted
                                     // so in essence it's also an "id", but a case-insensitive one.
-                                    // we could further optimize to not do this step when grouping sensitively by making a specialized instance of the GroupIdHash class
-                                    // that hashes the token ids instead of the sortpositions in that case.
                                     for (int annotationIndex = 0; annotationIndex < numAnnotations; ++annotationIndex) {
-                                        int[] tokenValues = tokenValuesPerAnnotation.get(annotationIndex);
+                                        int[] tokenValues = tokenValuesPerAnnotation[annotationIndex];
                                         if (tokenIndex >= tokenValues.length) {
                                             logger.debug("### ERROR");
                                             logger.debug("docLength = " + docLength);
@@ -395,49 +373,24 @@ public class HitGroupsTokenFrequencies {
                                             logger.debug("annotation = " + (hitProperties.get(annotationIndex).getAnnotationForwardIndex().annotation().name()));
                                         }
                                         annotationValuesForThisToken[annotationIndex] = tokenValues[tokenIndex];
-                                        int[] sortValuesThisAnnotation = sortValuesPerAnnotation.get(annotationIndex);
-                                        sortPositions[annotationIndex] = sortValuesThisAnnotation[tokenIndex];
+                                        groupKey[1 + annotationIndex] = sortValuesPerAnnotation[annotationIndex][tokenIndex];
                                     }
-                                    final GroupIdHash groupId = new GroupIdHash(annotationValuesForThisToken, sortPositions, metadataValuesForGroup, metadataValuesHash);
-
-                                    // Count occurrence in this doc
-                                    OccurrenceCounts occ = occsInDoc.get(groupId);
-                                    if (occ == null) {
-                                        occ = new OccurrenceCounts(1, 1);
-                                        occsInDoc.put(groupId, occ);
-                                    } else {
-                                        occ.hits++;
-                                    }
-
-
+                                    counts.add(groupKey, annotationValuesForThisToken, 1);
                                 }
 
-                                // Merge occurrences in this doc with global occurrences
-                                occsInDoc.forEach((groupId, occurrenceInDocument) -> globalOccurrences.compute(groupId, (__, globalGroup) -> {
-                                    if (globalGroup != null) {
-                                        // Merge local & global counts
-                                        globalGroup.hits += occurrenceInDocument.hits;
-                                        globalGroup.docs += occurrenceInDocument.docs;
-                                        return globalGroup;
-                                    } else {
-                                        return occurrenceInDocument; // first time we found this group.
-                                    }
-                                }));
-
-
                                 // If we exceeded maxHitsToCount, remember that and don't process more docs.
                                 // (NOTE: we don't care if we don't get exactly maxHitsToCount in this case; just that
                                 //  we stop the operation before the server is overloaded)
                                 if (numberOfHitsProcessed.getAndUpdate(i -> i + docLength) >= maxHitsToCount) {
                                     hitMaxHitsToCount.set(true);
                                 }
+                                numberOfDocsProcessed.incrementAndGet();
 
                             }
                         } catch (IOException e) {
                             throw BlackLabRuntimeException.wrap(e);
                         }
-                        return true;
-                    }).count();
+                    }, TokenGroupCounts::merge));
                     logger.trace("Number of processed docs: " + numberOfDocsProcessed);
                 }
             }
@@ -447,11 +400,11 @@ public class HitGroupsTokenFrequencies {
             List<HitGroup> groups;
             try (final BlockTimer ignored = BlockTimer.create("Resolve string values for tokens")) {
                 final int numMetadataValues = docProperties.size();
-                groups = globalOccurrences.entrySet().parallelStream().map(e -> {
-                    final long groupSizeHits = e.getValue().hits;
-                    final int groupSizeDocs = e.getValue().docs;
-                    final int[] annotationValues = e.getKey().tokenIds;
-                    final PropertyValue[] metadataValues = e.getKey().metadataValues;
+                final PropertyValue[][] metadataValuesById = metadataValuesIds.valuesById();
+                groups = IntStream.range(0, occurrences.size()).parallel().mapToObj(group -> {
+                    final long groupSizeHits = occurrences.hits(group);
+                    final int groupSizeDocs = occurrences.docs(group);
+                    final PropertyValue[] metadataValues = metadataValuesById[occurrences.metadataId(group)];
                     // allocate new - is not copied when moving into propertyvaluemultiple
                     final PropertyValue[] groupIdAsList = new PropertyValue[numAnnotations + numMetadataValues];
 
@@ -468,7 +421,7 @@ public class HitGroupsTokenFrequencies {
                             AnnotInfo annotInfo = hitProperties.get(indexInInput);
                             Annotation annot = annotInfo.getAnnotationForwardIndex().annotation();
                             MatchSensitivity sens = annotInfo.getMatchSensitivity();
-                            groupIdAsList[indexInOutput++] = new PropertyValueContextWords(index, annot, sens, new int[] {annotationValues[indexInInput]}, false);
+                            groupIdAsList[indexInOutput++] = new PropertyValueContextWords(index, annot, sens, new int[] {occurrences.termId(group, indexInInput)}, false);
                         }
                     }
 
@@ -487,7 +440,7 @@ public class HitGroupsTokenFrequencies {
             logger.debug("fast path used for grouping");
 
             ResultsStats hitsStats = new ResultsStatsStatic(numberOfHitsProcessed.get(), numberOfHitsProcessed.get(), new MaxStats(hitMaxHitsToCount.get(), hitMaxHitsToCount.get()));
-            ResultsStats docsStats = new ResultsStatsStatic((int) numberOfDocsProcessed, (int) numberOfDocsProcessed, new MaxStats(hitMaxHitsToCount.get(), hitMaxHitsToCount.get()));
+            ResultsStats docsStats = new ResultsStatsStatic(numberOfDocsProcessed.get(), numberOfDocsProcessed.get(), new MaxStats(hitMaxHitsToCount.get(), hitMaxHitsToCount.get()));
             return HitGroups.fromList(queryInfo, groups, requestedGroupingProperty, null, null, hitsStats, docsStats);
         } catch (IOException e) {
             throw BlackLabRuntimeException.wrap(e);
@@ -30,6 +30,26 @@ public interface Hits extends Results<Hit, HitProperty> {
         return new HitsFromQuery(queryInfo, query, searchSettings);
     }
 
+    /**
+     * Get a page of hits from a SpanQuery, following a cursor.
+     *
+     * Use this to page through a large number of unsorted hits: each page only reads the hits
+     * it returns, no matter how many hits came before it. Use {@link HitsCursor#START} for the
+     * first page and {@link HitsCursor#next(nl.inl.blacklab.search.BlackLabIndex, Hits, int)}
+     * to get the cursor for the next page.
+     *
+     * @param queryInfo      information about the original query
+     * @param query          the query to execute to get the hits
+     * @param searchSettings search settings
+     * @param cursor         where to start
+     * @param number         maximum number of hits to return
+     * @return page of hits, in index order
+     * @throws IllegalArgumentException if the index has changed since the cursor was created
+     */
+    static Hits fromSpanQueryAfter(QueryInfo queryInfo, BLSpanQuery query, SearchSettings searchSettings, HitsCursor cursor, int number) {
+        return HitsFromQuery.afterCursor(queryInfo, query, searchSettings, cursor, number);
+    }
+
     /**
      * Make a wrapper Hits object for a list of Hit objects.
      * <p>
@@ -138,6 +158,20 @@ public interface Hits extends Results<Hit, HitProperty> {
     @Override
     Hits sort(HitProperty sortProp);
 
+    /**
+     * Return a new Hits object with the first hits of this one, sorted by the given property.
+     * <p>
+     * Gives the same hits as sorting and then taking a window starting at 0, but doesn't
+     * sort (or retrieve context for) all hits at once. Instead, hits are processed in
+     * batches and only the best ones found so far are kept. Useful if you only need the
+     * first page(s) of a large sorted result set.
+     *
+     * @param sortProp the hit property to sort on
+     * @param number   how many hits to keep
+     * @return a new Hits object with (at most) the first number sorted hits
+     */
+    Hits sortTop(HitProperty sortProp, long number);
+
     /**
      * Is this Hits object sorted by Lucene doc ids?
      *
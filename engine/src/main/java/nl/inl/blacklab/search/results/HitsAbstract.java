@@ -9,12 +9,14 @@ import java.util.TreeSet;
 import org.apache.commons.lang3.mutable.MutableInt;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.RamUsageEstimator;
 
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.resultproperty.HitProperty;
 import nl.inl.blacklab.resultproperty.HitPropertyDocumentId;
 import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.ConcordanceType;
 import nl.inl.blacklab.search.TermFrequencyList;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
@@ -29,6 +31,9 @@ public abstract class HitsAbstract extends ResultsAbstract<Hit, HitProperty> imp
 
     protected static final Logger logger = LogManager.getLogger(HitsAbstract.class);
 
+    /** Memory used by a Hits object itself, not counting the hits and captured groups */
+    static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsList.class);
+
     /**
      * Minimum number of hits to fetch in an ensureHitsRead() block.
      *
@@ -296,6 +301,71 @@ public abstract class HitsAbstract extends ResultsAbstract<Hit, HitProperty> imp
                 hitsCounted, docsRetrieved, docsCounted, capturedGroups, ascendingLuceneDocIds);
     }
 
+    @Override
+    public Hits sortTop(HitProperty sortProp, long number) {
+        if (number > Constants.JAVA_MAX_ARRAY_SIZE / 8) {
+            // Too many to keep in batches; just sort everything
+            return sort(sortProp).window(0, number);
+        }
+        List<Annotation> requiredContext = sortProp.needsContext();
+        ContextSize contextSize = requiredContext == null ? null : sortProp.needsContextSize(index());
+        long batchSize = Math.max(BlackLab.config().getSearch().getSortTopMinBatchSize(), number * 4);
+
+        // Read hits in batches. Sort each batch together with the best hits so far and keep
+        // the best ones, so we only need context for one batch at a time. (If the property has
+        // sort keys, we don't sort the whole batch, only the hits whose key is small enough)
+        HitsInternal top = HitsInternal.EMPTY_SINGLETON;
+        long batchStart = 0;
+        while (true) {
+            this.ensureResultsRead(batchStart + batchSize);
+            long batchEnd = Math.min(hitsInternal.size(), batchStart + batchSize);
+            if (batchEnd <= batchStart)
+                break;
+            HitsInternalMutable candidates = HitsInternal.create(top.size() + batchEnd - batchStart, false, false);
+            candidates.addAll(top);
+            long from = batchStart;
+            this.hitsInternal.withReadLock(h -> {
+                EphemeralHit hit = new EphemeralHit();
+                for (long i = from; i < batchEnd; i++) {
+                    h.getEphemeral(i, hit);
+                    candidates.add(hit);
+                }
+            });
+            Hits candidateHits = Hits.list(queryInfo(), candidates, capturedGroups());
+            HitProperty p = sortProp.copyWith(candidateHits,
+                    requiredContext == null ? null : new Contexts(candidateHits, requiredContext, contextSize));
+            HitsInternalMutable newTop;
+            EphemeralHit hit = new EphemeralHit();
+            if (candidates.size() >= BlackLab.config().getSearch().getParallelSortMinHits() && p.hasSortKeys()) {
+                // Only sort the hits whose sort key is small enough for them to be among the first
+                int[] indices = HitsSorter.topIndices((int) candidates.size(), p, (int) number);
+                newTop = HitsInternal.create(indices.length, false, false);
+                for (int i: indices) {
+                    candidates.getEphemeral(i, hit);
+                    newTop.add(hit);
+                }
+            } else {
+                HitsInternal sorted = candidates.sort(p);
+                long n = Math.min(number, sorted.size());
+                newTop = HitsInternal.create(n, false, false);
+                for (long i = 0; i < n; i++) {
+                    sorted.getEphemeral(i, hit);
+                    newTop.add(hit);
+                }
+            }
+            top = newTop;
+            batchStart = batchEnd;
+        }
+
+        CapturedGroups capturedGroups = capturedGroups();
+        long hitsCounted = hitsCountedSoFar();
+        long docsRetrieved = docsProcessedSoFar();
+        long docsCounted = docsCountedSoFar();
+        boolean ascendingLuceneDocIds = sortProp instanceof HitPropertyDocumentId && !sortProp.isReverse();
+        return Hits.list(queryInfo(), top, null, null,
+                hitsCounted, docsRetrieved, docsCounted, capturedGroups, ascendingLuceneDocIds);
+    }
+
     /**
      * Return a Hits object with these hits in ascending Lucene doc id order.
      *
@@ -358,6 +428,12 @@ public abstract class HitsAbstract extends ResultsAbstract<Hit, HitProperty> imp
         return this.hitsInternal.size();
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + hitsInternal.ramBytesUsed() +
+                (capturedGroups == null ? 0 : capturedGroups.ramBytesUsed());
+    }
+
     @Override
     public Iterator<Hit> iterator() {
         // We need to wrap the internal iterator, as we probably shouldn't
@@ -0,0 +1,166 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Objects;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.blacklab.search.BlackLabIndex;
+
+/**
+ * Position in the (unsorted) hits of a query, used to page through them.
+ *
+ * Unsorted hits are produced in index order: by Lucene document id, then by start and end
+ * position. A cursor records the last hit of a page, so the next page can be retrieved in a
+ * fresh request by skipping straight to that document in its index segment, without reading
+ * or storing any of the hits before it (see {@link Hits#fromSpanQueryAfter(QueryInfo,
+ * nl.inl.blacklab.search.lucene.BLSpanQuery, SearchSettings, HitsCursor, int)}).
+ *
+ * Because Lucene document ids can change when the index changes, a cursor also records the
+ * index version it was created for. It cannot be used with any other version.
+ *
+ * Cursors can be serialized to an opaque string, to pass to clients.
+ */
+public final class HitsCursor {
+
+    /** Index version if we can't determine it (cursor is not checked) */
+    private static final long UNKNOWN_VERSION = -1;
+
+    /**
+     * Cursor for the first page.
+     */
+    public static final HitsCursor START = new HitsCursor(UNKNOWN_VERSION, -1, -1, -1);
+
+    /**
+     * Get the cursor pointing after a hit.
+     *
+     * @param index index the hit comes from
+     * @param hit last hit of a page
+     * @return cursor for the next page
+     */
+    public static HitsCursor after(BlackLabIndex index, Hit hit) {
+        return new HitsCursor(indexVersion(index), hit.doc(), hit.start(), hit.end());
+    }
+
+    /**
+     * Get the cursor for the page after this one.
+     *
+     * @param index index the hits come from
+     * @param page page of hits retrieved using a cursor
+     * @param number number of hits that was requested for the page
+     * @return cursor for the next page, or null if this was the last page
+     */
+    public static HitsCursor next(BlackLabIndex index, Hits page, int number) {
+        if (page.size() < number || page.size() == 0)
+            return null;
+        return after(index, page.get(page.size() - 1));
+    }
+
+    /**
+     * Decode a serialized cursor.
+     *
+     * @param serialized cursor as produced by {@link #serialize()}
+     * @return the cursor
+     * @throws IllegalArgumentException if this is not a valid cursor
+     */
+    public static HitsCursor deserialize(String serialized) {
+        String[] parts = serialized.split(":", -1);
+        if (parts.length != 4)
+            throw new IllegalArgumentException("Invalid hits cursor: " + serialized);
+        try {
+            return new HitsCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                    Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid hits cursor: " + serialized, e);
+        }
+    }
+
+    static long indexVersion(BlackLabIndex index) {
+        IndexReader reader = index.reader();
+        return reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : UNKNOWN_VERSION;
+    }
+
+    /** Version of the index this cursor was created for */
+    private final long indexVersion;
+
+    /** Lucene document id of the last hit returned (or -1 if none) */
+    private final int doc;
+
+    /** Start of the last hit returned */
+    private final int start;
+
+    /** End of the last hit returned */
+    private final int end;
+
+    private HitsCursor(long indexVersion, int doc, int start, int end) {
+        this.indexVersion = indexVersion;
+        this.doc = doc;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Check that this cursor can be used with an index.
+     *
+     * @param index index we want to use this cursor with
+     * @throws IllegalArgumentException if the index has changed since the cursor was created
+     */
+    public void checkIndexVersion(BlackLabIndex index) {
+        long currentVersion = indexVersion(index);
+        if (indexVersion != UNKNOWN_VERSION && currentVersion != UNKNOWN_VERSION && indexVersion != currentVersion)
+            throw new IllegalArgumentException("Hits cursor is no longer valid, because the index has changed");
+    }
+
+    /**
+     * Does this cursor come before the specified hit?
+     *
+     * @param hitDoc Lucene document id
+     * @param hitStart hit start
+     * @param hitEnd hit end
+     * @return true if it's after the cursor, i.e. should be included in the page
+     */
+    boolean precedes(int hitDoc, int hitStart, int hitEnd) {
+        if (hitDoc != doc)
+            return hitDoc > doc;
+        if (hitStart != start)
+            return hitStart > start;
+        return hitEnd > end;
+    }
+
+    public int doc() {
+        return doc;
+    }
+
+    public boolean isStart() {
+        return doc < 0;
+    }
+
+    /**
+     * Encode this cursor as an opaque string.
+     *
+     * @return serialized cursor
+     */
+    public String serialize() {
+        return indexVersion + ":" + doc + ":" + start + ":" + end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        HitsCursor that = (HitsCursor) o;
+        return indexVersion == that.indexVersion && doc == that.doc && start == that.start && end == that.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexVersion, doc, start, end);
+    }
+
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}
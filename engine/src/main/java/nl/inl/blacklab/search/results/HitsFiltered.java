@@ -132,4 +132,11 @@ public class HitsFiltered extends HitsMutable {
     public boolean hasAscendingLuceneDocIds() {
         return ascendingLuceneDocIds;
     }
+
+    @Override
+    public long ramBytesUsed() {
+        // Our filter property holds on to the contexts it needs (if any)
+        Contexts contexts = filterProperty.contexts();
+        return super.ramBytesUsed() + (contexts == null ? 0 : contexts.ramBytesUsed());
+    }
 }
@@ -16,17 +16,24 @@ import java.util.stream.Collectors;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.spans.SpanWeight.Postings;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
 
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.Span;
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.lucene.BLSpanWeight;
+import nl.inl.blacklab.search.lucene.BLSpans;
 import nl.inl.blacklab.search.lucene.HitQueryContext;
 import nl.inl.blacklab.search.lucene.optimize.ClauseCombinerNfa;
 import nl.inl.util.CurrentThreadExecutorService;
+import nl.inl.util.ThreadAborter;
 
 public class HitsFromQuery extends HitsMutable {
 
@@ -53,10 +60,9 @@ public class HitsFromQuery extends HitsMutable {
     protected boolean allSourceSpansFullyRead = false;
 
     protected HitsFromQuery(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) {
-        super(queryInfo, HitsInternal.create(-1, true, true)); // explicitly construct HitsInternal so they're writeable
-        final BlackLabIndex index = queryInfo.index();
-        final IndexReader reader = index.reader();
-        BLSpanQuery optimizedQuery;
+        // explicitly construct HitsInternal so they're writeable; SpansReaders add to it from multiple threads
+        super(queryInfo, HitsInternal.createConcurrent());
+        final IndexReader reader = queryInfo.index().reader();
 
         // Ensure max. count >= max. process >= 0
         // After this both will be above 0 and process will never exceed count
@@ -70,37 +76,8 @@ public class HitsFromQuery extends HitsMutable {
         this.maxHitsToCount = configuredMaxHitsToCount;
 
         try {
-            // Override FI match threshold? (debug use only!)
-            synchronized (ClauseCombinerNfa.class) {
-                long oldFiMatchValue = ClauseCombinerNfa.getNfaThreshold();
-                if (searchSettings.fiMatchFactor() != -1) {
-                    logger.debug("setting NFA threshold for this query to " + searchSettings.fiMatchFactor());
-                    ClauseCombinerNfa.setNfaThreshold(searchSettings.fiMatchFactor());
-                }
-
-                sourceQuery.setQueryInfo(queryInfo);
-                boolean traceOptimization = BlackLab.config().getLog().getTrace().isOptimization();
-                if (traceOptimization)
-                    logger.debug("Query before optimize()/rewrite(): " + sourceQuery);
-
-                optimizedQuery = sourceQuery.optimize(reader);
-                if (traceOptimization)
-                    logger.debug("Query after optimize(): " + optimizedQuery);
-
-                optimizedQuery = optimizedQuery.rewrite(reader);
-                if (traceOptimization)
-                    logger.debug("Query after rewrite(): " + optimizedQuery);
-
-                optimizedQuery = BLSpanQuery.ensureSortedUnique(optimizedQuery);
-
-                // Restore previous FI match threshold
-                if (searchSettings.fiMatchFactor() != -1) {
-                    ClauseCombinerNfa.setNfaThreshold(oldFiMatchValue);
-                }
-            }
-
             // This call can take a long time
-            BLSpanWeight weight = optimizedQuery.createWeight(index.searcher(), ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+            BLSpanWeight weight = createWeight(queryInfo, sourceQuery, searchSettings);
 
             // We must always initialize one spansReader upfront, so global state for Capture Groups and context are created.
             // We then store get these global objects from the initialized SpansReader, and pass them to the rest of the (stil uninitialized) SpansReaders.
@@ -151,6 +128,123 @@ public class HitsFromQuery extends HitsMutable {
         }
     }
 
+    /**
+     * Optimize and rewrite the query, then create the weight we'll get our Spans from.
+     *
+     * This call can take a long time.
+     *
+     * @param queryInfo query info
+     * @param sourceQuery query to execute
+     * @param searchSettings search settings (we use the FI match factor, if set)
+     * @return the weight
+     */
+    static BLSpanWeight createWeight(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings) throws IOException {
+        final BlackLabIndex index = queryInfo.index();
+        final IndexReader reader = index.reader();
+        BLSpanQuery optimizedQuery;
+
+        // Override FI match threshold? (debug use only!)
+        synchronized (ClauseCombinerNfa.class) {
+            long oldFiMatchValue = ClauseCombinerNfa.getNfaThreshold();
+            if (searchSettings.fiMatchFactor() != -1) {
+                logger.debug("setting NFA threshold for this query to " + searchSettings.fiMatchFactor());
+                ClauseCombinerNfa.setNfaThreshold(searchSettings.fiMatchFactor());
+            }
+
+            sourceQuery.setQueryInfo(queryInfo);
+            boolean traceOptimization = BlackLab.config().getLog().getTrace().isOptimization();
+            if (traceOptimization)
+                logger.debug("Query before optimize()/rewrite(): " + sourceQuery);
+
+            optimizedQuery = sourceQuery.optimize(reader);
+            if (traceOptimization)
+                logger.debug("Query after optimize(): " + optimizedQuery);
+
+            optimizedQuery = optimizedQuery.rewrite(reader);
+            if (traceOptimization)
+                logger.debug("Query after rewrite(): " + optimizedQuery);
+
+            optimizedQuery = BLSpanQuery.ensureSortedUnique(optimizedQuery);
+
+            // Restore previous FI match threshold
+            if (searchSettings.fiMatchFactor() != -1) {
+                ClauseCombinerNfa.setNfaThreshold(oldFiMatchValue);
+            }
+        }
+
+        return optimizedQuery.createWeight(index.searcher(), ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+    }
+
+    /**
+     * Get a page of hits following a cursor.
+     *
+     * Hits are returned in index order (see {@link HitsCursor}). We skip index segments and
+     * documents before the cursor, so only the hits in the requested page are read and stored,
+     * no matter how far we are into the results. The maximum number of hits to process/count
+     * from the search settings doesn't apply, as we never read more than the page.
+     *
+     * @param queryInfo query info
+     * @param sourceQuery query to execute
+     * @param searchSettings search settings
+     * @param cursor where to start (the page will start after the cursor's hit)
+     * @param number maximum number of hits to return
+     * @return page of hits
+     * @throws IllegalArgumentException if the index has changed since the cursor was created
+     */
+    static Hits afterCursor(QueryInfo queryInfo, BLSpanQuery sourceQuery, SearchSettings searchSettings, HitsCursor cursor, int number) {
+        cursor.checkIndexVersion(queryInfo.index());
+        HitsInternalMutable results = HitsInternal.create(number, false, false);
+        CapturedGroupsImpl capturedGroups = null;
+        ThreadAborter threadAborter = ThreadAborter.create();
+        try {
+            BLSpanWeight weight = createWeight(queryInfo, sourceQuery, searchSettings);
+            for (LeafReaderContext leafReaderContext: queryInfo.index().reader().leaves()) {
+                int docBase = leafReaderContext.docBase;
+                if (results.size() >= number)
+                    break;
+                if (cursor.doc() >= docBase + leafReaderContext.reader().maxDoc())
+                    continue; // cursor is beyond this segment
+                BLSpans spans = weight.getSpans(leafReaderContext, Postings.OFFSETS);
+                if (spans == null)
+                    continue; // no hits in this segment
+                HitQueryContext hitQueryContext = new HitQueryContext(spans);
+                spans.setHitQueryContext(hitQueryContext);
+                if (capturedGroups == null && hitQueryContext.getCaptureRegisterNumber() > 0)
+                    capturedGroups = new CapturedGroupsImpl(hitQueryContext.getCapturedGroupNames());
+                int numCaptureGroups = capturedGroups == null ? 0 : hitQueryContext.numberOfCapturedGroups();
+                Bits liveDocs = leafReaderContext.reader().getLiveDocs();
+
+                // Skip straight to the cursor's document, if it's in this segment
+                int segmentDoc = spans.advance(Math.max(cursor.doc() - docBase, 0));
+                while (segmentDoc != DocIdSetIterator.NO_MORE_DOCS && results.size() < number) {
+                    if (liveDocs == null || liveDocs.get(segmentDoc)) {
+                        int doc = segmentDoc + docBase;
+                        int start = spans.nextStartPosition();
+                        while (start != Spans.NO_MORE_POSITIONS && results.size() < number) {
+                            int end = spans.endPosition();
+                            if (cursor.precedes(doc, start, end)) {
+                                results.add(doc, start, end);
+                                if (capturedGroups != null) {
+                                    Span[] groups = new Span[numCaptureGroups];
+                                    hitQueryContext.getCapturedGroups(groups);
+                                    capturedGroups.put(Hit.create(doc, start, end), groups);
+                                }
+                            }
+                            start = spans.nextStartPosition();
+                        }
+                    }
+                    segmentDoc = spans.nextDoc();
+                    threadAborter.checkAbort();
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedSearch(e);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+        return Hits.list(queryInfo, results, capturedGroups);
+    }
+
     @Override
     protected void ensureResultsRead(long number) {
         final long clampedNumber = number < 0 ? maxHitsToCount : Math.min(number, maxHitsToCount);
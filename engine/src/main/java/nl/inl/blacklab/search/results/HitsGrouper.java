@@ -0,0 +1,191 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.search.BlackLab;
+
+/**
+ * Groups hits (or rather, hit indices) by a HitProperty that supports group keys.
+ *
+ * Getting a PropertyValue for each hit and looking it up in a HashMap is expensive
+ * for large numbers of hits. If the property supports group keys (see
+ * {@link HitProperty#hasGroupKeys()}), we group on those instead, using primitive
+ * maps. The hits are divided into partitions that are grouped in parallel, then
+ * the partitions are merged. We only get PropertyValues for the final groups
+ * (and for hits that don't have a group key).
+ */
+public final class HitsGrouper {
+
+    private HitsGrouper() {
+    }
+
+    /** A group being built: its size and the (first) hits we store for it. */
+    static class GroupInProgress {
+
+        /** Number of hits in the group */
+        long size;
+
+        /** Index of the first hit in this group */
+        long firstHitIndex = -1;
+
+        /** Indices of the hits we store for this group, in order */
+        LongArrayList hitIndices = new LongArrayList();
+
+        void add(long hitIndex, long maxResultsToStorePerGroup) {
+            if (size == 0)
+                firstHitIndex = hitIndex;
+            if (maxResultsToStorePerGroup < 0 || hitIndices.size() < maxResultsToStorePerGroup)
+                hitIndices.add(hitIndex);
+            size++;
+        }
+
+        /**
+         * Add the hits from another part of this group.
+         *
+         * @param other other part of the group
+         * @param maxResultsToStorePerGroup how many results to store per group at most
+         */
+        void merge(GroupInProgress other, long maxResultsToStorePerGroup) {
+            boolean inOrder = hitIndices.isEmpty() || other.hitIndices.isEmpty() ||
+                    hitIndices.getLong(hitIndices.size() - 1) < other.hitIndices.getLong(0);
+            hitIndices.addAll(other.hitIndices);
+            if (!inOrder)
+                LongArrays.quickSort(hitIndices.elements(), 0, hitIndices.size());
+            if (maxResultsToStorePerGroup >= 0 && hitIndices.size() > maxResultsToStorePerGroup)
+                hitIndices.size((int) maxResultsToStorePerGroup);
+            firstHitIndex = Math.min(firstHitIndex, other.firstHitIndex);
+            size += other.size;
+        }
+    }
+
+    /** The groups found in one partition of the hits. */
+    private static class Partition {
+
+        /** Groups for hits that have a group key */
+        final Long2ObjectMap<GroupInProgress> keyed = new Long2ObjectOpenHashMap<>();
+
+        /** Groups for hits that don't have a group key */
+        final Map<PropertyValue, GroupInProgress> unkeyed = new HashMap<>();
+    }
+
+    private static Partition groupPartition(HitProperty p, long start, long end, long maxResultsToStorePerGroup,
+            int maxNumberOfGroups) {
+        Partition partition = new Partition();
+        for (long i = start; i < end; i++) {
+            long key = p.groupKey(i);
+            GroupInProgress group;
+            if (key == HitProperty.NO_GROUP_KEY) {
+                PropertyValue identity = p.get(i);
+                group = partition.unkeyed.get(identity);
+                if (group == null) {
+                    checkNumberOfGroups(partition.unkeyed.size(), maxNumberOfGroups);
+                    group = new GroupInProgress();
+                    partition.unkeyed.put(identity, group);
+                }
+            } else {
+                group = partition.keyed.get(key);
+                if (group == null) {
+                    checkNumberOfGroups(partition.keyed.size(), maxNumberOfGroups);
+                    group = new GroupInProgress();
+                    partition.keyed.put(key, group);
+                }
+            }
+            group.add(i, maxResultsToStorePerGroup);
+        }
+        return partition;
+    }
+
+    /**
+     * Make sure we can add another group.
+     *
+     * @param numberOfGroups current number of groups
+     * @param maxNumberOfGroups maximum number of groups allowed
+     * @throws BlackLabRuntimeException if we already have the maximum number of groups
+     */
+    private static void checkNumberOfGroups(int numberOfGroups, int maxNumberOfGroups) {
+        if (numberOfGroups >= maxNumberOfGroups)
+            throw new BlackLabRuntimeException("Cannot handle more than " + maxNumberOfGroups + " groups");
+    }
+
+    /**
+     * Should we group these hits using {@link #group(long, HitProperty, long, int)}?
+     *
+     * @param size number of hits
+     * @param p property to group by
+     * @return true if the property supports group keys and there are enough hits
+     */
+    static boolean shouldUse(long size, HitProperty p) {
+        return size >= BlackLab.config().getSearch().getParallelGroupingMinHits() && p.hasGroupKeys();
+    }
+
+    /**
+     * Group hit indices by a property.
+     *
+     * The property must support group keys.
+     *
+     * @param size number of hits
+     * @param p property to group by (with hits and contexts)
+     * @param maxResultsToStorePerGroup how many results to store per group at most
+     * @param maxNumberOfGroups maximum number of groups allowed (also applies to the number of distinct
+     *                          group keys, which is checked while grouping, so we fail early)
+     * @return groups by identity, with the hit indices we store for each
+     * @throws BlackLabRuntimeException if there are too many groups
+     */
+    static Map<PropertyValue, GroupInProgress> group(long size, HitProperty p, long maxResultsToStorePerGroup,
+            int maxNumberOfGroups) {
+        int partSize = BlackLab.config().getSearch().getGroupingPartitionSize();
+        int numberOfPartitions = (int) Math.min(Integer.MAX_VALUE, (size + partSize - 1) / partSize);
+        List<Partition> partitions = IntStream.range(0, numberOfPartitions).parallel()
+                .mapToObj(i -> groupPartition(p, (long) i * partSize, Math.min(size, (long) (i + 1) * partSize),
+                        maxResultsToStorePerGroup, maxNumberOfGroups))
+                .collect(Collectors.toList());
+
+        // Merge the partitions in order, so stored hits stay in order
+        Long2ObjectMap<GroupInProgress> keyed = new Long2ObjectOpenHashMap<>();
+        Map<PropertyValue, GroupInProgress> groups = new LinkedHashMap<>();
+        for (Partition partition: partitions) {
+            for (Long2ObjectMap.Entry<GroupInProgress> e: partition.keyed.long2ObjectEntrySet()) {
+                GroupInProgress group = keyed.get(e.getLongKey());
+                if (group == null) {
+                    checkNumberOfGroups(keyed.size(), maxNumberOfGroups);
+                    keyed.put(e.getLongKey(), e.getValue());
+                } else {
+                    group.merge(e.getValue(), maxResultsToStorePerGroup);
+                }
+            }
+            for (Map.Entry<PropertyValue, GroupInProgress> e: partition.unkeyed.entrySet()) {
+                mergeInto(groups, e.getKey(), e.getValue(), maxResultsToStorePerGroup, maxNumberOfGroups);
+            }
+        }
+
+        // Now determine the identity of each keyed group. Different keys may map to the same
+        // identity (see HitProperty.groupKey()), so we merge by identity.
+        for (GroupInProgress group: keyed.values()) {
+            mergeInto(groups, p.get(group.firstHitIndex), group, maxResultsToStorePerGroup, maxNumberOfGroups);
+        }
+        return groups;
+    }
+
+    private static void mergeInto(Map<PropertyValue, GroupInProgress> groups, PropertyValue identity,
+            GroupInProgress group, long maxResultsToStorePerGroup, int maxNumberOfGroups) {
+        GroupInProgress existing = groups.get(identity);
+        if (existing == null) {
+            checkNumberOfGroups(groups.size(), maxNumberOfGroups);
+            groups.put(identity, group);
+        } else {
+            existing.merge(group, maxResultsToStorePerGroup);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package nl.inl.blacklab.search.results;
 
 import java.util.function.Consumer;
 
+import org.apache.lucene.util.Accountable;
+
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
@@ -17,7 +19,7 @@ import nl.inl.blacklab.search.BlackLab;
  *
  * This is a read-only interface.
  */
-public interface HitsInternal extends Iterable<EphemeralHit> {
+public interface HitsInternal extends Iterable<EphemeralHit>, Accountable {
 
     /** An empty HitsInternalRead object. */
     HitsInternal EMPTY_SINGLETON = new HitsInternalNoLock32();
@@ -47,6 +49,19 @@ public interface HitsInternal extends Iterable<EphemeralHit> {
         return new HitsInternalNoLock32((int)initialCapacity);
     }
 
+    /**
+     * Create an empty HitsInternal that many threads can add hits to at the same time.
+     *
+     * Contrary to the locking implementations, neither adding nor reading hits
+     * takes a lock. Hits added in one call stay contiguous and in order.
+     * See {@link HitsInternalConcurrent}.
+     *
+     * @return HitsInternal object
+     */
+    static HitsInternalMutable createConcurrent() {
+        return new HitsInternalConcurrent();
+    }
+
     /**
      * Perform an operation with read lock.
      * <p>
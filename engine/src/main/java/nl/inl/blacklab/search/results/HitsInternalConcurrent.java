@@ -0,0 +1,446 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.longs.LongBigArrays;
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.resultproperty.HitProperty;
+
+/**
+ * A HitsInternal implementation that can be filled by many threads at once without locking.
+ *
+ * Intended for collecting hits from several {@link SpansReader}s. Hits are stored in
+ * chunks that are never moved or resized, so writers don't get in each other's way,
+ * and an index maps directly to a chunk and a position in it.
+ *
+ * Adding hits works in three steps:
+ * <ol>
+ *     <li>reserve a contiguous range of indexes (one atomic increment)</li>
+ *     <li>write the hits into that range (no synchronization needed, nobody else writes there)</li>
+ *     <li>publish the range, in the order ranges were reserved</li>
+ * </ol>
+ * Readers only ever see the published part, which is always completely written, so
+ * they don't need a lock either. If writing a range fails, the range is still published (or
+ * writers after it would wait forever), but the object is marked as failed: from then on,
+ * readers get an exception instead of hits that were never written. Because ranges are published in reservation order,
+ * a batch added with {@link #addAll(HitsInternal)} stays contiguous, and hits from one
+ * SpansReader stay in the order they were added, just like with the locking implementations.
+ *
+ * {@link #clear()} is the exception: it must not be called while other threads are using
+ * this object.
+ */
+class HitsInternalConcurrent implements HitsInternalMutable {
+
+    /** log2 of the number of hits in the first chunk (chunks double in size after that) */
+    private static final int MIN_CHUNK_SHIFT = 10;
+
+    /** log2 of the maximum number of hits per chunk (chunks stop growing at this size) */
+    private static final int MAX_CHUNK_SHIFT = 20;
+
+    /** Number of chunks that are smaller than the maximum size (each twice as big as the previous) */
+    private static final int NUMBER_OF_GROWING_CHUNKS = MAX_CHUNK_SHIFT - MIN_CHUNK_SHIFT + 1;
+
+    /** Index (plus the first chunk's size) where the maximum size chunks start */
+    private static final long GROWING_CHUNKS_END = 1L << (MAX_CHUNK_SHIFT + 1);
+
+    private static final long MAX_CHUNK_MASK = (1L << MAX_CHUNK_SHIFT) - 1;
+
+    /** How many times to busy-wait for earlier writers to publish before yielding */
+    private static final int MAX_SPINS = 100;
+
+    /**
+     * Which chunk is this hit in?
+     *
+     * Small result sets are common, so the first chunk is small, and chunks double in size
+     * until they reach the maximum size. That way, we don't waste much memory on small result
+     * sets, and we still don't need many chunks for huge ones.
+     *
+     * @param index hit index
+     * @return chunk index
+     */
+    private static int chunkIndex(long index) {
+        long j = index + (1L << MIN_CHUNK_SHIFT);
+        if (j < GROWING_CHUNKS_END)
+            return 63 - Long.numberOfLeadingZeros(j) - MIN_CHUNK_SHIFT;
+        return NUMBER_OF_GROWING_CHUNKS + (int) ((j - GROWING_CHUNKS_END) >>> MAX_CHUNK_SHIFT);
+    }
+
+    /**
+     * Where in its chunk is this hit?
+     *
+     * @param index hit index
+     * @return position in the chunk
+     */
+    private static int chunkOffset(long index) {
+        long j = index + (1L << MIN_CHUNK_SHIFT);
+        if (j < GROWING_CHUNKS_END)
+            return (int) (j - Long.highestOneBit(j));
+        return (int) ((j - GROWING_CHUNKS_END) & MAX_CHUNK_MASK);
+    }
+
+    /** Hits in a chunk */
+    private static class Chunk {
+        static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Chunk.class);
+
+        final int[] docs;
+        final int[] starts;
+        final int[] ends;
+
+        Chunk(int chunkIndex) {
+            int size = 1 << Math.min(chunkIndex + MIN_CHUNK_SHIFT, MAX_CHUNK_SHIFT);
+            docs = new int[size];
+            starts = new int[size];
+            ends = new int[size];
+        }
+    }
+
+    private class Iterator implements HitsInternal.Iterator {
+        private long pos = 0;
+        private final EphemeralHit hit = new EphemeralHit();
+
+        @Override
+        public boolean hasNext() {
+            return pos < size();
+        }
+
+        @Override
+        public EphemeralHit next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            getEphemeral(pos, hit);
+            ++pos;
+            return hit;
+        }
+    }
+
+    /** Memory used by this object, not counting the chunks */
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsInternalConcurrent.class)
+            + 2 * RamUsageEstimator.shallowSizeOfInstance(AtomicLong.class);
+
+    /** Our chunks. Slots beyond numberOfChunks are null. Replaced (not modified) when it needs to grow. */
+    private volatile Chunk[] chunks = new Chunk[NUMBER_OF_GROWING_CHUNKS];
+
+    /** How many chunks have been allocated. Written after {@link #chunks}. */
+    private volatile int numberOfChunks = 0;
+
+    /** Number of hits reserved by writers (some may not be written yet) */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /** Number of hits that have been written and may be read */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Why writing hits failed, or null if it didn't.
+     *
+     * Always set before the failed range is published, so readers that see the range see this too.
+     */
+    private volatile Throwable failure;
+
+    HitsInternalConcurrent() {
+    }
+
+    /**
+     * Reserve room for a number of hits.
+     *
+     * The caller must always publish the reserved range (even if writing fails, see
+     * {@link #publishFailed(long, long, Throwable)}), or writers after it would wait forever.
+     * If we can't allocate room for the range (e.g. out of memory), we roll back the reservation,
+     * or publish it as failed if other writers have reserved after us, before rethrowing.
+     *
+     * @param n number of hits to reserve room for
+     * @return index of the first reserved hit
+     */
+    private long reserve(long n) {
+        checkNotFailed(); // no use adding more hits
+        long first = reserved.getAndAdd(n);
+        try {
+            ensureChunks(chunkIndex(first + n - 1) + 1);
+        } catch (RuntimeException | Error e) {
+            if (!reserved.compareAndSet(first + n, first))
+                publishFailed(first, n, e);
+            throw e;
+        }
+        return first;
+    }
+
+    /**
+     * Make sure we have allocated the specified number of chunks.
+     *
+     * This only needs to do something when a new chunk is needed, so a lock is fine here.
+     *
+     * @param chunksNeeded number of chunks we need
+     */
+    private void ensureChunks(int chunksNeeded) {
+        if (numberOfChunks >= chunksNeeded)
+            return;
+        synchronized (this) {
+            if (numberOfChunks >= chunksNeeded)
+                return;
+            Chunk[] newChunks = chunks;
+            if (newChunks.length < chunksNeeded)
+                newChunks = Arrays.copyOf(newChunks, Math.max(chunksNeeded, newChunks.length * 2));
+            for (int i = numberOfChunks; i < chunksNeeded; i++)
+                newChunks[i] = new Chunk(i);
+            chunks = newChunks;
+            numberOfChunks = chunksNeeded;
+        }
+    }
+
+    /**
+     * Publish a range of hits we've written, making them available to readers.
+     *
+     * Waits for ranges reserved before ours to be published first.
+     *
+     * @param first first hit in our range
+     * @param n number of hits in our range
+     */
+    private void publish(long first, long n) {
+        // Writing a batch of hits takes very little time, so we don't have to wait long (if at all).
+        // But if the writer we're waiting for isn't running (e.g. more threads than cores), let it run.
+        int spins = 0;
+        while (published.get() != first) {
+            if (++spins < MAX_SPINS)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+        published.set(first + n);
+    }
+
+    /**
+     * Publish a range of hits we couldn't write, so writers after us don't wait forever.
+     *
+     * Marks this object as failed first, so the range never becomes readable.
+     *
+     * @param first first hit in our range
+     * @param n number of hits in our range
+     * @param e why writing failed
+     */
+    private void publishFailed(long first, long n, Throwable e) {
+        if (failure == null)
+            failure = e;
+        publish(first, n);
+    }
+
+    /**
+     * Make sure writing hits hasn't failed.
+     *
+     * @throws BlackLabRuntimeException if it has
+     */
+    private void checkNotFailed() {
+        Throwable e = failure;
+        if (e != null)
+            throw new BlackLabRuntimeException("Adding hits failed, results are incomplete", e);
+    }
+
+    private void set(long index, int doc, int start, int end) {
+        Chunk chunk = chunks[chunkIndex(index)];
+        int i = chunkOffset(index);
+        chunk.docs[i] = doc;
+        chunk.starts[i] = start;
+        chunk.ends[i] = end;
+    }
+
+    @Override
+    public void add(int doc, int start, int end) {
+        long index = reserve(1);
+        try {
+            set(index, doc, start, end);
+        } catch (RuntimeException | Error e) {
+            publishFailed(index, 1, e);
+            throw e;
+        }
+        publish(index, 1);
+    }
+
+    @Override
+    public void add(EphemeralHit hit) {
+        add(hit.doc, hit.start, hit.end);
+    }
+
+    @Override
+    public void add(Hit hit) {
+        add(hit.doc(), hit.start(), hit.end());
+    }
+
+    /**
+     * Add all the hits, keeping them contiguous and in order.
+     *
+     * The hits object must not be modified while we're adding it.
+     *
+     * @param hits hits to add
+     */
+    @Override
+    public void addAll(HitsInternal hits) {
+        hits.withReadLock(hr -> {
+            long n = hr.size();
+            if (n == 0)
+                return;
+            long first = reserve(n);
+            try {
+                long index = first;
+                for (EphemeralHit h: hr) {
+                    set(index, h.doc, h.start, h.end);
+                    index++;
+                }
+            } catch (RuntimeException | Error e) {
+                publishFailed(first, n, e);
+                throw e;
+            }
+            publish(first, n);
+        });
+    }
+
+    /**
+     * Remove all hits.
+     *
+     * NOT thread-safe: don't call this while other threads are adding or reading hits.
+     */
+    @Override
+    public synchronized void clear() {
+        chunks = new Chunk[NUMBER_OF_GROWING_CHUNKS];
+        numberOfChunks = 0;
+        reserved.set(0);
+        published.set(0);
+        failure = null;
+    }
+
+    @Override
+    public void withReadLock(Consumer<HitsInternal> cons) {
+        // No lock needed: the published part never changes
+        cons.accept(this);
+    }
+
+    private Chunk chunk(long index) {
+        long size = size();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Hit index " + index + " out of range (size " + size + ")");
+        return chunks[chunkIndex(index)];
+    }
+
+    @Override
+    public Hit get(long index) {
+        Chunk chunk = chunk(index);
+        int i = chunkOffset(index);
+        return new HitImpl(chunk.docs[i], chunk.starts[i], chunk.ends[i]);
+    }
+
+    @Override
+    public void getEphemeral(long index, EphemeralHit h) {
+        Chunk chunk = chunk(index);
+        int i = chunkOffset(index);
+        h.doc = chunk.docs[i];
+        h.start = chunk.starts[i];
+        h.end = chunk.ends[i];
+    }
+
+    @Override
+    public int doc(long index) {
+        return chunk(index).docs[chunkOffset(index)];
+    }
+
+    @Override
+    public int start(long index) {
+        return chunk(index).starts[chunkOffset(index)];
+    }
+
+    @Override
+    public int end(long index) {
+        return chunk(index).ends[chunkOffset(index)];
+    }
+
+    @Override
+    public long size() {
+        long size = published.get();
+        // (check after reading published; a failed range is published after setting failure)
+        checkNotFailed();
+        return size;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        // (read numberOfChunks first; chunks is always written before it)
+        int n = numberOfChunks;
+        Chunk[] chunks = this.chunks;
+        long bytes = BASE_RAM_BYTES_USED + RamUsageEstimator.shallowSizeOf(chunks);
+        for (int i = 0; i < n && i < chunks.length && chunks[i] != null; i++)
+            bytes += Chunk.BASE_RAM_BYTES_USED + 3 * RamUsageEstimator.sizeOf(chunks[i].docs);
+        return bytes;
+    }
+
+    @Override
+    public IntIterator docsIterator() {
+        return new IntIterator() {
+            long pos = 0;
+
+            @Override
+            public int nextInt() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return doc(pos++);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return pos < size();
+            }
+        };
+    }
+
+    @Override
+    public HitsInternal.Iterator iterator() {
+        return new Iterator();
+    }
+
+    /**
+     * Return a new object with sorted hits.
+     *
+     * Sorts the hits that have been published when this method is called.
+     *
+     * @param p sort property
+     * @return sorted hits
+     */
+    @Override
+    public HitsInternal sort(HitProperty p) {
+        HitsInternalMutable r;
+        long size = size();
+        if (size > Constants.JAVA_MAX_ARRAY_SIZE) {
+            // Fill an indices BigArray with 0 ... size
+            long[][] indices = LongBigArrays.newBigArray(size);
+            long i = 0;
+            for (final long[] segment : indices) {
+                for (int displacement = 0; displacement < segment.length; displacement++) {
+                    segment[displacement] = i;
+                    i++;
+                }
+            }
+
+            // Sort the indices using the given HitProperty
+            LongBigArrays.quickSort(indices, p);
+
+            // Now use the sorted indices to fill a new HitsInternal with the actual hits
+            r = HitsInternal.create(size, true, false);
+            for (final long[] segment: indices) {
+                for (long l: segment) {
+                    r.add(doc(l), start(l), end(l));
+                }
+            }
+        } else {
+            // We can use regular arrays Collections classes, faster
+            int[] indices = HitsSorter.sortedIndices((int) size, p);
+
+            r = HitsInternal.create(size, false, false);
+            for (int index : indices) {
+                r.add(doc(index), start(index), end(index));
+            }
+        }
+        return r;
+    }
+}
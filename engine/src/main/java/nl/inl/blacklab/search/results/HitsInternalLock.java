@@ -4,6 +4,8 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 import nl.inl.blacklab.resultproperty.HitProperty;
 
 /**
@@ -11,6 +13,11 @@ import nl.inl.blacklab.resultproperty.HitProperty;
  */
 class HitsInternalLock extends HitsInternalNoLock {
 
+    /** Memory used by our lock field and the lock itself (on top of what our superclass uses) */
+    private static final long LOCK_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsInternalLock.class)
+            - RamUsageEstimator.shallowSizeOfInstance(HitsInternalNoLock.class)
+            + RamUsageEstimator.shallowSizeOfInstance(ReentrantReadWriteLock.class);
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     HitsInternalLock(long initialCapacity) {
@@ -177,6 +184,16 @@ class HitsInternalLock extends HitsInternalNoLock {
         }
     }
 
+    @Override
+    public long ramBytesUsed() {
+        lock.readLock().lock();
+        try {
+            return LOCK_RAM_BYTES_USED + super.ramBytesUsed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public HitsInternal sort(HitProperty p) {
         this.lock.readLock().lock();
         try {
@@ -4,6 +4,8 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 import it.unimi.dsi.fastutil.ints.IntList;
 import nl.inl.blacklab.Constants;
 import nl.inl.blacklab.resultproperty.HitProperty;
@@ -21,6 +23,11 @@ import nl.inl.blacklab.resultproperty.HitProperty;
  */
 class HitsInternalLock32 extends HitsInternalNoLock32 {
 
+    /** Memory used by our lock field and the lock itself (on top of what our superclass uses) */
+    private static final long LOCK_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsInternalLock32.class)
+            - RamUsageEstimator.shallowSizeOfInstance(HitsInternalNoLock32.class)
+            + RamUsageEstimator.shallowSizeOfInstance(ReentrantReadWriteLock.class);
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     HitsInternalLock32(int initialCapacity) {
@@ -193,6 +200,16 @@ class HitsInternalLock32 extends HitsInternalNoLock32 {
         }
     }
 
+    @Override
+    public long ramBytesUsed() {
+        lock.readLock().lock();
+        try {
+            return LOCK_RAM_BYTES_USED + super.ramBytesUsed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public HitsInternal sort(HitProperty p) {
         this.lock.readLock().lock();
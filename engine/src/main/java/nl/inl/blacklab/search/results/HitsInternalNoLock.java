@@ -2,7 +2,8 @@ package nl.inl.blacklab.search.results;
 
 import java.util.function.Consumer;
 
-import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.lucene.util.RamUsageEstimator;
+
 import it.unimi.dsi.fastutil.ints.IntBigArrayBigList;
 import it.unimi.dsi.fastutil.ints.IntBigList;
 import it.unimi.dsi.fastutil.ints.IntIterator;
@@ -63,6 +64,27 @@ class HitsInternalNoLock implements HitsInternalMutable {
         }
     }
 
+    /** Memory used by this object and its lists, not counting the arrays holding the hits */
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsInternalNoLock.class)
+            + 3 * RamUsageEstimator.shallowSizeOfInstance(IntBigArrayBigList.class);
+
+    /**
+     * Estimate the memory used by a list's backing big array (including unused capacity).
+     *
+     * @param list list
+     * @return estimated number of bytes
+     */
+    static long ramBytesUsed(IntBigList list) {
+        if (list instanceof IntBigArrayBigList) {
+            int[][] elements = ((IntBigArrayBigList) list).elements();
+            long bytes = RamUsageEstimator.shallowSizeOf(elements);
+            for (int[] segment: elements)
+                bytes += RamUsageEstimator.sizeOf(segment);
+            return bytes;
+        }
+        return list.size64() * Integer.BYTES;
+    }
+
     protected final IntBigList docs;
     protected final IntBigList starts;
     protected final IntBigList ends;
@@ -173,6 +195,11 @@ class HitsInternalNoLock implements HitsInternalMutable {
         return docs.size64();
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + ramBytesUsed(docs) + ramBytesUsed(starts) + ramBytesUsed(ends);
+    }
+
     /**
      * Expert use: get the internal docs array.
      * The array is not locked, so care should be taken when reading it.
@@ -220,11 +247,7 @@ class HitsInternalNoLock implements HitsInternalMutable {
             }
         } else {
             // We can use regular arrays Collections classes, faster
-            int[] indices = new int[(int) size];
-            for (int i = 0; i < indices.length; ++i)
-                indices[i] = i;
-
-            IntArrays.quickSort(indices, p::compare);
+            int[] indices = HitsSorter.sortedIndices((int) size, p);
 
             r = HitsInternal.create(size, false, false);
             for (int index : indices) {
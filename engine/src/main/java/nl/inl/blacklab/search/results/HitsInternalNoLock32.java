@@ -2,8 +2,9 @@ package nl.inl.blacklab.search.results;
 
 import java.util.function.Consumer;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntList;
 import nl.inl.blacklab.Constants;
@@ -58,6 +59,22 @@ class HitsInternalNoLock32 implements HitsInternalMutable {
         }
     }
 
+    /** Memory used by this object and its lists, not counting the arrays holding the hits */
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HitsInternalNoLock32.class)
+            + 3 * RamUsageEstimator.shallowSizeOfInstance(IntArrayList.class);
+
+    /**
+     * Estimate the memory used by a list's backing array (including unused capacity).
+     *
+     * @param list list
+     * @return estimated number of bytes
+     */
+    static long ramBytesUsed(IntList list) {
+        if (list instanceof IntArrayList)
+            return RamUsageEstimator.sizeOf(((IntArrayList) list).elements());
+        return (long) list.size() * Integer.BYTES;
+    }
+
     protected final IntList docs;
     protected final IntList starts;
     protected final IntList ends;
@@ -189,6 +206,11 @@ class HitsInternalNoLock32 implements HitsInternalMutable {
         return docs.size();
     }
 
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES_USED + ramBytesUsed(docs) + ramBytesUsed(starts) + ramBytesUsed(ends);
+    }
+
     public IntIterator docsIterator() {
         return docs.intIterator();
     }
@@ -201,11 +223,7 @@ class HitsInternalNoLock32 implements HitsInternalMutable {
 
     @Override
     public HitsInternal sort(HitProperty p) {
-        int[] indices = new int[docs.size()];
-        for (int i = 0; i < indices.length; ++i)
-            indices[i] = i;
-
-        IntArrays.quickSort(indices, p::compare);
+        int[] indices = HitsSorter.sortedIndices(docs.size(), p);
 
         HitsInternalMutable r = HitsInternal.create(docs.size(), false, false);
         for (int index : indices) {
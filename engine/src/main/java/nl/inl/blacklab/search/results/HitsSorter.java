@@ -0,0 +1,99 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.BlackLab;
+
+/**
+ * Sorts hits (or rather, hit indices) by a HitProperty.
+ *
+ * Comparing two hits can be expensive, e.g. for context properties, which compare
+ * the sort positions of the context words one by one. If the property supports
+ * sort keys (see {@link HitProperty#hasSortKeys()}), we extract a key per hit first
+ * and sort on that, only calling the property's comparator to break ties. Because
+ * such properties can be compared from multiple threads, we also sort in parallel.
+ */
+public final class HitsSorter {
+
+    private HitsSorter() {
+    }
+
+    /**
+     * Sort hit indices by a property.
+     *
+     * @param size number of hits
+     * @param p property to sort by
+     * @return hit indices 0 ... size-1, sorted
+     */
+    static int[] sortedIndices(int size, HitProperty p) {
+        int[] indices = new int[size];
+        for (int i = 0; i < indices.length; ++i)
+            indices[i] = i;
+
+        if (size >= BlackLab.config().getSearch().getParallelSortMinHits() && p.hasSortKeys()) {
+            // Extract the keys, then sort on those, only using the (slower) comparator for ties
+            long[] keys = new long[size];
+            IntStream.range(0, size).parallel().forEach(i -> keys[i] = p.sortKey(i));
+            IntArrays.parallelQuickSort(indices, (a, b) -> {
+                int cmp = Long.compare(keys[a], keys[b]);
+                return cmp != 0 ? cmp : p.compare(a, b);
+            });
+        } else {
+            IntArrays.quickSort(indices, p::compare);
+        }
+        return indices;
+    }
+
+    /**
+     * Select the indices of the first hits sorted by a property, without sorting all of them.
+     *
+     * Only for properties with sort keys (see {@link HitProperty#hasSortKeys()}). We find the
+     * number'th smallest key using a heap; hits with a larger key can't be among the first,
+     * so we only need to sort (using the comparator) the hits with a key up to that one.
+     *
+     * @param size number of hits
+     * @param p property to sort by
+     * @param number how many hits to select
+     * @return indices of the first number hits, sorted
+     */
+    static int[] topIndices(int size, HitProperty p, int number) {
+        if (number <= 0)
+            return new int[0];
+        if (size <= number)
+            return sortedIndices(size, p);
+
+        // Find the number'th smallest key, using a max-heap of the smallest keys seen so far
+        long[] keys = new long[size];
+        LongHeapPriorityQueue smallestKeys = new LongHeapPriorityQueue(number, LongComparators.OPPOSITE_COMPARATOR);
+        for (int i = 0; i < size; i++) {
+            long key = p.sortKey(i);
+            keys[i] = key;
+            if (smallestKeys.size() < number)
+                smallestKeys.enqueue(key);
+            else if (key < smallestKeys.firstLong()) {
+                smallestKeys.dequeueLong();
+                smallestKeys.enqueue(key);
+            }
+        }
+        long maxKey = smallestKeys.firstLong();
+
+        // Sort only the hits that may be among the first
+        IntArrayList candidates = new IntArrayList(number);
+        for (int i = 0; i < size; i++) {
+            if (keys[i] <= maxKey)
+                candidates.add(i);
+        }
+        int[] indices = candidates.toIntArray();
+        IntArrays.quickSort(indices, (a, b) -> {
+            int cmp = Long.compare(keys[a], keys[b]);
+            return cmp != 0 ? cmp : p.compare(a, b);
+        });
+        return indices.length > number ? Arrays.copyOf(indices, number) : indices;
+    }
+}
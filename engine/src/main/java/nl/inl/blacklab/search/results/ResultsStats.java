@@ -3,6 +3,8 @@ package nl.inl.blacklab.search.results;
 import java.util.Collections;
 import java.util.Map;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 public abstract class ResultsStats implements SearchResult {
 
     /** Used to return from cache entry if search hasn't been started yet. */
@@ -130,6 +132,15 @@ public abstract class ResultsStats implements SearchResult {
         return 1;
     }
 
+    /**
+     * Stats objects are small. They may refer to the results they're counting,
+     * but those are accounted for separately.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.shallowSizeOf(this);
+    }
+
     /**
      * Return debug info.
      */
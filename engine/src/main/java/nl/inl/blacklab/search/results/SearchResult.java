@@ -3,23 +3,37 @@ package nl.inl.blacklab.search.results;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.lucene.util.Accountable;
+
 // Base interface for all possible search results
-public interface SearchResult {
+public interface SearchResult extends Accountable {
     
     /**
      * How many result objects does this search store?
      * 
-     * Used for estimating the cache size. Hits make up most of the storage
-     * of results objects, and they should take 24 bytes of memory, so we can use
-     * this number to make a reasonable approximation of memory usage.
+     * Hits make up most of the storage of results objects, so this gives
+     * an idea of the size of the results.
      * 
      * Note that this number can be misleading, because Hit objects are
-     * shared between results objects. But it's the best we have at the moment.
+     * shared between results objects. For memory management, use
+     * {@link #ramBytesUsed()} instead.
      * 
      * @return how many hits are stored in this result object
      */
     long numberOfResultObjects();
 
+    /**
+     * Estimate how much memory this result object uses.
+     *
+     * Includes everything this object keeps alive: hits, captured groups, groups and
+     * their identities, etc. Objects that are shared with other results (e.g. the
+     * index) are not included.
+     *
+     * @return estimated number of bytes used
+     */
+    @Override
+    long ramBytesUsed();
+
     /**
      * Return debug info.
      */
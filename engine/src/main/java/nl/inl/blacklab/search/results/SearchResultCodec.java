@@ -0,0 +1,275 @@
+package nl.inl.blacklab.search.results;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.resultproperty.PropertyValue;
+import nl.inl.blacklab.resultproperty.PropertyValueDoc;
+import nl.inl.blacklab.search.BlackLabIndex;
+
+/**
+ * Compact binary encoding of finished search results, so they can be stored outside the heap
+ * (e.g. in a persistent cache) and restored later.
+ *
+ * Only grouped results are supported: {@link HitGroups} and {@link DocGroups}. These are often
+ * expensive to produce but relatively small, so they're the most useful to keep. Group identities
+ * and criteria are stored in their serialized form; stored hits as arrays of doc, start and end.
+ *
+ * Results that cannot be restored exactly (windows, samples, hits with captured groups, or
+ * properties/values that don't survive serialization) are not encoded.
+ *
+ * Restored results refer to Lucene document ids, so they're only valid for the same version of
+ * the same index. The caller is responsible for checking that.
+ */
+public final class SearchResultCodec {
+
+    /** Version of the encoding. Increase when making incompatible changes. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_HIT_GROUPS = 1;
+
+    private static final byte TYPE_DOC_GROUPS = 2;
+
+    /** A HitGroup with stored hits */
+    private static final byte GROUP_WITH_HITS = 0;
+
+    /** A HitGroupWithoutResults (only counts) */
+    private static final byte GROUP_WITHOUT_RESULTS = 1;
+
+    private SearchResultCodec() {
+    }
+
+    /**
+     * Can we (probably) encode this result?
+     *
+     * This is a quick check on the type of result. {@link #encode(SearchResult, DataOutput)} can
+     * still refuse, e.g. if a group identity doesn't survive serialization.
+     *
+     * @param result result to check
+     * @return true if the result is of a type we can encode
+     */
+    public static boolean canEncode(SearchResult result) {
+        if (result instanceof HitGroups) {
+            HitGroups groups = (HitGroups) result;
+            return groups.windowStats() == null && groups.sampleParameters() == null && groups.groupCriteria() != null;
+        } else if (result instanceof DocGroups) {
+            DocGroups groups = (DocGroups) result;
+            return groups.windowStats() == null && groups.sampleParameters() == null && groups.groupCriteria() != null;
+        }
+        return false;
+    }
+
+    /**
+     * Encode a result.
+     *
+     * @param result result to encode
+     * @param out where to write the encoded result
+     * @return true if the result was encoded, false if it can't be (in that case, some data may
+     *   already have been written to out; discard it)
+     * @throws IOException if writing fails
+     */
+    public static boolean encode(SearchResult result, DataOutput out) throws IOException {
+        if (!canEncode(result))
+            return false;
+        if (result instanceof HitGroups)
+            return encodeHitGroups((HitGroups) result, out);
+        return encodeDocGroups((DocGroups) result, out);
+    }
+
+    /**
+     * Decode a result.
+     *
+     * @param queryInfo query info for the restored result (must refer to the same index version
+     *                  the result was encoded from)
+     * @param in encoded result, positioned at the start; will be positioned after it afterwards
+     * @return the restored result
+     */
+    public static SearchResult decode(QueryInfo queryInfo, ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+        case TYPE_HIT_GROUPS:
+            return decodeHitGroups(queryInfo, in);
+        case TYPE_DOC_GROUPS:
+            return decodeDocGroups(queryInfo, in);
+        default:
+            throw new IllegalArgumentException("Unknown encoded result type " + type);
+        }
+    }
+
+    private static boolean encodeHitGroups(HitGroups groups, DataOutput out) throws IOException {
+        QueryInfo queryInfo = groups.queryInfo();
+        String criteria = groups.groupCriteria().serialize();
+        if (!groups.groupCriteria().equals(HitProperty.deserialize(queryInfo.index(), queryInfo.field(), criteria)))
+            return false;
+        out.writeByte(TYPE_HIT_GROUPS);
+        writeString(out, criteria);
+        writeStats(out, groups.hitsStats());
+        writeStats(out, groups.docsStats());
+        out.writeInt((int) groups.size());
+        for (HitGroup group: groups) {
+            if (!writeIdentity(out, queryInfo, group.identity()))
+                return false;
+            out.writeLong(group.size());
+            Hits hits = group.storedResults();
+            if (group instanceof HitGroupWithoutResults) {
+                out.writeByte(GROUP_WITHOUT_RESULTS);
+                out.writeLong(hits.docsStats().countedTotal());
+                out.writeBoolean(hits.maxStats().hitsProcessedExceededMaximum());
+                out.writeBoolean(hits.maxStats().hitsCountedExceededMaximum());
+            } else {
+                out.writeByte(GROUP_WITH_HITS);
+                if (!writeHits(out, hits))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static HitGroups decodeHitGroups(QueryInfo queryInfo, ByteBuffer in) {
+        BlackLabIndex index = queryInfo.index();
+        HitProperty criteria = HitProperty.deserialize(index, queryInfo.field(), readString(in));
+        ResultsStats hitsStats = readStats(in);
+        ResultsStats docsStats = readStats(in);
+        int numberOfGroups = in.getInt();
+        List<HitGroup> groups = new ArrayList<>(numberOfGroups);
+        for (int i = 0; i < numberOfGroups; i++) {
+            PropertyValue identity = PropertyValue.deserialize(index, queryInfo.field(), readString(in));
+            long size = in.getLong();
+            if (in.get() == GROUP_WITHOUT_RESULTS) {
+                int numberOfDocs = (int) in.getLong();
+                boolean maxHitsProcessed = in.get() != 0;
+                boolean maxHitsCounted = in.get() != 0;
+                // (HitGroupWithoutResults passes these on in swapped order, so swap them here as well)
+                groups.add(new HitGroupWithoutResults(queryInfo, identity, size, numberOfDocs, maxHitsCounted, maxHitsProcessed));
+            } else {
+                groups.add(HitGroup.fromHits(identity, readHits(queryInfo, in), size));
+            }
+        }
+        return HitGroups.fromList(queryInfo, groups, criteria, null, null, hitsStats, docsStats);
+    }
+
+    private static boolean encodeDocGroups(DocGroups groups, DataOutput out) throws IOException {
+        QueryInfo queryInfo = groups.queryInfo();
+        String criteria = groups.groupCriteria().serialize();
+        if (!groups.groupCriteria().equals(DocProperty.deserialize(queryInfo.index(), criteria)))
+            return false;
+        out.writeByte(TYPE_DOC_GROUPS);
+        writeString(out, criteria);
+        out.writeInt((int) groups.size());
+        for (DocGroup group: groups) {
+            if (!writeIdentity(out, queryInfo, group.identity()))
+                return false;
+            out.writeLong(group.size());
+            out.writeLong(group.totalTokens());
+            DocResults docs = group.storedResults();
+            out.writeInt((int) docs.size());
+            for (DocResult doc: docs) {
+                out.writeInt(doc.docId());
+                out.writeFloat(doc.score());
+                out.writeLong(doc.size());
+                if (!writeHits(out, doc.storedResults()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static DocGroups decodeDocGroups(QueryInfo queryInfo, ByteBuffer in) {
+        BlackLabIndex index = queryInfo.index();
+        DocProperty criteria = DocProperty.deserialize(index, readString(in));
+        int numberOfGroups = in.getInt();
+        List<DocGroup> groups = new ArrayList<>(numberOfGroups);
+        for (int i = 0; i < numberOfGroups; i++) {
+            PropertyValue identity = PropertyValue.deserialize(index, queryInfo.field(), readString(in));
+            long size = in.getLong();
+            long totalTokens = in.getLong();
+            int numberOfDocs = in.getInt();
+            List<DocResult> docs = new ArrayList<>(numberOfDocs);
+            for (int j = 0; j < numberOfDocs; j++) {
+                PropertyValueDoc doc = new PropertyValueDoc(index, in.getInt());
+                float score = in.getFloat();
+                long numberOfHits = in.getLong();
+                Hits hits = readHits(queryInfo, in);
+                docs.add(hits.size() == 0 ? DocResult.fromDoc(queryInfo, doc, score, numberOfHits) :
+                        DocResult.fromHits(doc, hits, numberOfHits));
+            }
+            groups.add(DocGroup.fromList(queryInfo, identity, docs, size, totalTokens));
+        }
+        return DocGroups.fromList(queryInfo, groups, criteria, null, null);
+    }
+
+    /** Write a group identity, if it survives serialization. */
+    private static boolean writeIdentity(DataOutput out, QueryInfo queryInfo, PropertyValue identity) throws IOException {
+        if (identity == null)
+            return false;
+        String serialized = identity.serialize();
+        if (!identity.equals(PropertyValue.deserialize(queryInfo.index(), queryInfo.field(), serialized)))
+            return false;
+        writeString(out, serialized);
+        return true;
+    }
+
+    private static void writeStats(DataOutput out, ResultsStats stats) throws IOException {
+        out.writeLong(stats.processedTotal());
+        out.writeLong(stats.countedTotal());
+        out.writeBoolean(stats.maxStats().hitsProcessedExceededMaximum());
+        out.writeBoolean(stats.maxStats().hitsCountedExceededMaximum());
+    }
+
+    private static ResultsStats readStats(ByteBuffer in) {
+        long processed = in.getLong();
+        long counted = in.getLong();
+        boolean maxHitsProcessed = in.get() != 0;
+        boolean maxHitsCounted = in.get() != 0;
+        return new ResultsStatsStatic(processed, counted, new MaxStats(maxHitsProcessed, maxHitsCounted));
+    }
+
+    /** Write stored hits as doc, start and end arrays (unless they have captured groups). */
+    private static boolean writeHits(DataOutput out, Hits hits) throws IOException {
+        if (hits.hasCapturedGroups() || hits.size() > Integer.MAX_VALUE)
+            return false;
+        HitsInternal internal = hits.getInternalHits();
+        int n = (int) internal.size();
+        out.writeInt(n);
+        for (int i = 0; i < n; i++)
+            out.writeInt(internal.doc(i));
+        for (int i = 0; i < n; i++)
+            out.writeInt(internal.start(i));
+        for (int i = 0; i < n; i++)
+            out.writeInt(internal.end(i));
+        return true;
+    }
+
+    private static Hits readHits(QueryInfo queryInfo, ByteBuffer in) {
+        int n = in.getInt();
+        int[] docs = readInts(in, n);
+        int[] starts = readInts(in, n);
+        int[] ends = readInts(in, n);
+        return Hits.list(queryInfo, docs, starts, ends);
+    }
+
+    private static int[] readInts(ByteBuffer in, int n) {
+        int[] result = new int[n];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + n * Integer.BYTES);
+        return result;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
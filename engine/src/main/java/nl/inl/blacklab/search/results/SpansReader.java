@@ -57,7 +57,7 @@ class SpansReader implements Runnable {
     final AtomicLong globalHitsToProcess;
     /** Target number of hits to count, must always be >= {@link #globalHitsToProcess} */
     final AtomicLong globalHitsToCount;
-    /** Master list of hits, shared between SpansReaders, should always be locked before writing! */
+    /** Master list of hits, shared between SpansReaders; must support concurrent adding (see {@link HitsInternal#createConcurrent()}) */
     private final HitsInternalMutable globalResults;
     /** Master list of capturedGroups (only set if any groups to capture. Should always be locked before writing! */
     private CapturedGroupsImpl globalCapturedGroups;
@@ -110,7 +110,7 @@ class SpansReader implements Runnable {
      * @param weight                span weight we're querying
      * @param leafReaderContext     leaf reader we're running on
      * @param sourceHitQueryContext source HitQueryContext from HitsFromQueryParallel; we'll derive our own context from it
-     * @param globalResults         global results object (must be locked before writing)
+     * @param globalResults         global results object (must support concurrent adding)
      * @param globalCapturedGroups  global captured groups object (must be locked before writing)
      * @param globalDocsProcessed   global docs retrieved counter
      * @param globalDocsCounted     global docs counter (includes ones that weren't retrieved because of max. settings)
@@ -219,7 +219,8 @@ class SpansReader implements Runnable {
         final int numCaptureGroups = hitQueryContext.numberOfCapturedGroups();
         final ArrayList<Span[]> capturedGroups = numCaptureGroups > 0 ? new ArrayList<>() : null;
 
-        final HitsInternalMutable results = HitsInternal.create(-1, true, true);
+        // (only used by this thread, so no locking needed)
+        final HitsInternalMutable results = HitsInternal.create(-1, true, false);
         final Bits liveDocs = leafReaderContext.reader().getLiveDocs();
         final LongUnaryOperator incrementCountUnlessAtMax = c -> c < this.globalHitsToCount.get() ? c + 1 : c; // only increment if doing so won't put us over the limit.
         final LongUnaryOperator incrementProcessUnlessAtMax = c -> c < this.globalHitsToProcess.get() ? c + 1 : c; // only increment if doing so won't put us over the limit.
@@ -0,0 +1,261 @@
+package nl.inl.blacklab.search.results;
+
+import java.util.Arrays;
+
+import nl.inl.blacklab.Constants;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * Counts hits and documents per group while determining token frequencies.
+ *
+ * Used by {@link HitGroupsTokenFrequencies} and the frequency list tool. Instead of creating a key object for every
+ * token counted, group keys (a metadata values id followed by a sort position per annotation)
+ * are stored in a flat int arena, and groups are found using an open-addressing hash table
+ * of entry indexes. Counting a token that belongs to an existing group doesn't allocate anything.
+ *
+ * Not thread-safe. Each thread should count into its own instance; instances can be
+ * merged afterwards using {@link #merge(TokenGroupCounts)}.
+ */
+public final class TokenGroupCounts {
+
+    /** Initial number of entries (must be a power of two) */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Largest number of entries we can store (table size must stay a power of two below 2^31) */
+    private static final int MAX_CAPACITY = 1 << 29;
+
+    /** Number of ints in a key */
+    private final int keyLength;
+
+    /** Number of term ids stored per group */
+    private final int numAnnotations;
+
+    /** Hash table of entry index + 1 (0 means empty slot). Size is twice our capacity. */
+    private int[] table;
+
+    /** Group keys, keyLength ints per entry */
+    private int[] keys;
+
+    /** Hash for each entry (so we don't have to recompute them when growing) */
+    private int[] hashes;
+
+    /** Term id for each annotation of each entry (the first we encountered for that group), numAnnotations ints per entry */
+    private int[] termIds;
+
+    /** Number of hits in each group */
+    private long[] hits;
+
+    /** Number of documents in each group */
+    private int[] docs;
+
+    /** Last document (see {@link #currentDoc}) we counted for each group, so we know when to increment docs */
+    private int[] lastDoc;
+
+    /** Number of entries */
+    private int size = 0;
+
+    /** Document we're counting right now, see {@link #startDocument()}. */
+    private int currentDoc = 0;
+
+    /**
+     * Create an empty instance.
+     *
+     * @param numAnnotations number of annotations (token values) in each group key
+     */
+    public TokenGroupCounts(int numAnnotations) {
+        this.numAnnotations = numAnnotations;
+        keyLength = 1 + numAnnotations;
+        table = new int[INITIAL_CAPACITY * 2];
+        keys = new int[INITIAL_CAPACITY * keyLength];
+        hashes = new int[INITIAL_CAPACITY];
+        termIds = new int[INITIAL_CAPACITY * numAnnotations];
+        hits = new long[INITIAL_CAPACITY];
+        docs = new int[INITIAL_CAPACITY];
+        lastDoc = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Start counting a new document.
+     *
+     * Each group counts the number of documents it occurred in, so call this before
+     * adding the tokens from each document.
+     */
+    public void startDocument() {
+        currentDoc++;
+    }
+
+    /**
+     * Count hits for a group in the current document.
+     *
+     * @param key group key: metadata values id, followed by a value (e.g. sort position) per annotation
+     *            (contents are copied, so the array may be reused)
+     * @param tokenTermIds term id per annotation, stored if this is a new group
+     *                     (contents are copied, so the array may be reused)
+     * @param numberOfHits number of hits to add to the group
+     */
+    public void add(int[] key, int[] tokenTermIds, long numberOfHits) {
+        int entry = findOrInsert(key, 0, hash(key, 0), tokenTermIds, 0);
+        hits[entry] += numberOfHits;
+        if (lastDoc[entry] != currentDoc) {
+            lastDoc[entry] = currentDoc;
+            docs[entry]++;
+        }
+    }
+
+    /**
+     * Add the counts from another instance to this one.
+     *
+     * The other instance should count different documents; groups occurring in
+     * both will have their hits and document counts added together.
+     *
+     * @param other counts to add
+     * @return the merged counts (either this or other)
+     */
+    public TokenGroupCounts merge(TokenGroupCounts other) {
+        if (other.size > size)
+            return other.merge(this); // add the smaller one to the larger one
+        for (int i = 0; i < other.size; i++) {
+            int entry = findOrInsert(other.keys, i * keyLength, other.hashes[i], other.termIds, i * numAnnotations);
+            hits[entry] += other.hits[i];
+            docs[entry] += other.docs[i];
+        }
+        // Make sure the next document counted isn't mistaken for one we counted before
+        currentDoc = Math.max(currentDoc, other.currentDoc) + 1;
+        return this;
+    }
+
+    /**
+     * Number of groups.
+     *
+     * Groups are numbered 0 to size() - 1.
+     *
+     * @return number of groups
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the metadata values id for a group.
+     *
+     * @param group group number
+     * @return metadata values id
+     */
+    public int metadataId(int group) {
+        return keys[group * keyLength];
+    }
+
+    /**
+     * Get the term id for one of the annotations for a group.
+     *
+     * This is the first term id we encountered with this sort position.
+     *
+     * @param group group number
+     * @param annotationIndex annotation index
+     * @return term id
+     */
+    public int termId(int group, int annotationIndex) {
+        return termIds[group * numAnnotations + annotationIndex];
+    }
+
+    /**
+     * Number of hits in a group.
+     *
+     * @param group group number
+     * @return number of hits
+     */
+    public long hits(int group) {
+        return hits[group];
+    }
+
+    /**
+     * Number of documents in a group.
+     *
+     * @param group group number
+     * @return number of documents
+     */
+    public int docs(int group) {
+        return docs[group];
+    }
+
+    private int hash(int[] key, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + keyLength; i++)
+            h = 31 * h + key[i];
+        // Mix the bits (finalization step from MurmurHash3), as we mask off the low bits for the table
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private boolean keyEquals(int entry, int[] key, int offset) {
+        int entryOffset = entry * keyLength;
+        for (int i = 0; i < keyLength; i++) {
+            if (keys[entryOffset + i] != key[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find a group, or add it if it doesn't exist yet.
+     *
+     * @param key array containing the key
+     * @param keyOffset where the key starts
+     * @param hash hash for the key
+     * @param tokenTermIds array containing the term ids
+     * @param termIdsOffset where the term ids start
+     * @return entry index for the group
+     */
+    private int findOrInsert(int[] key, int keyOffset, int hash, int[] tokenTermIds, int termIdsOffset) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int entryPlusOne = table[slot];
+            if (entryPlusOne == 0)
+                break;
+            int entry = entryPlusOne - 1;
+            if (hashes[entry] == hash && keyEquals(entry, key, keyOffset))
+                return entry;
+            slot = (slot + 1) & mask;
+        }
+
+        // Not found; add new entry
+        if (size == hashes.length) {
+            grow();
+            return findOrInsert(key, keyOffset, hash, tokenTermIds, termIdsOffset);
+        }
+        int entry = size++;
+        System.arraycopy(key, keyOffset, keys, entry * keyLength, keyLength);
+        System.arraycopy(tokenTermIds, termIdsOffset, termIds, entry * numAnnotations, numAnnotations);
+        hashes[entry] = hash;
+        table[slot] = entry + 1;
+        return entry;
+    }
+
+    private void grow() {
+        int capacity = hashes.length;
+        int newCapacity = capacity * 2;
+        if (capacity >= MAX_CAPACITY || (long) newCapacity * keyLength > Constants.JAVA_MAX_ARRAY_SIZE)
+            throw new BlackLabRuntimeException("Cannot handle more than " + capacity + " groups");
+        keys = Arrays.copyOf(keys, newCapacity * keyLength);
+        hashes = Arrays.copyOf(hashes, newCapacity);
+        termIds = Arrays.copyOf(termIds, newCapacity * numAnnotations);
+        hits = Arrays.copyOf(hits, newCapacity);
+        docs = Arrays.copyOf(docs, newCapacity);
+        lastDoc = Arrays.copyOf(lastDoc, newCapacity);
+
+        // Rehash (table size stays twice the capacity, so load factor is at most 0.5)
+        table = new int[newCapacity * 2];
+        int mask = table.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int slot = hashes[entry] & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = entry + 1;
+        }
+    }
+}
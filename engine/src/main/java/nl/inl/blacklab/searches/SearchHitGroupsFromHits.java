@@ -77,6 +77,6 @@ public class SearchHitGroupsFromHits extends SearchHitGroups {
 
     @Override
     public String toString() {
-        return toString("group", source, property, maxResultsToStorePerGroup);
+        return toString("group", source, property, maxResultsToStorePerGroup, mustStoreHits);
     }
 }
@@ -0,0 +1,72 @@
+package nl.inl.blacklab.searches;
+
+import java.util.Objects;
+
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.HitsCursor;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchSettings;
+
+/** A search that yields a page of (unsorted) hits following a cursor. */
+public class SearchHitsAfterCursor extends SearchHits {
+
+    private final BLSpanQuery spanQuery;
+
+    private final SearchSettings searchSettings;
+
+    private final HitsCursor cursor;
+
+    private final int number;
+
+    SearchHitsAfterCursor(QueryInfo queryInfo, BLSpanQuery spanQuery, SearchSettings searchSettings, HitsCursor cursor, int number) {
+        super(queryInfo);
+        this.spanQuery = spanQuery;
+        this.searchSettings = searchSettings;
+        this.cursor = cursor;
+        this.number = number;
+    }
+
+    @Override
+    public Hits executeInternal(ActiveSearch<Hits> activeSearch) {
+        return Hits.fromSpanQueryAfter(queryInfo(), spanQuery, searchSettings, cursor, number);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), spanQuery, searchSettings, cursor, number);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!super.equals(obj))
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        SearchHitsAfterCursor other = (SearchHitsAfterCursor) obj;
+        return number == other.number && spanQuery.equals(other.spanQuery) &&
+                Objects.equals(searchSettings, other.searchSettings) && cursor.equals(other.cursor);
+    }
+
+    @Override
+    public String toString() {
+        return toString("hitsAfter", spanQuery, searchSettings, cursor, number);
+    }
+
+    /**
+     * Get the cursor for the page after the one this search yields.
+     *
+     * @param page hits this search yielded
+     * @return cursor for the next page, or null if this was the last page
+     */
+    public HitsCursor nextCursor(Hits page) {
+        return HitsCursor.next(queryInfo().index(), page, number);
+    }
+
+    @Override
+    public SearchSettings searchSettings() {
+        return searchSettings;
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.lucene.search.Query;
 
 import nl.inl.blacklab.search.lucene.BLSpanQuery;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.HitsCursor;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.SearchSettings;
 
@@ -65,7 +66,21 @@ public class SearchHitsFromBLSpanQuery extends SearchHits {
 
     @Override
     public String toString() {
-        return toString("hits", spanQuery);
+        return toString("hits", spanQuery, searchSettings);
+    }
+
+    /**
+     * Get a page of hits following a cursor.
+     *
+     * Unlike {@link #window(long, long)}, this doesn't need to retrieve the hits before the
+     * page, so it's suitable for paging through a very large number of unsorted hits.
+     *
+     * @param cursor where to start ({@link HitsCursor#START} for the first page)
+     * @param number maximum number of hits to return
+     * @return resulting operation
+     */
+    public SearchHitsAfterCursor afterCursor(HitsCursor cursor, int number) {
+        return new SearchHitsAfterCursor(queryInfo(), spanQuery, searchSettings, cursor, number);
     }
 
     public BLSpanQuery query() {
@@ -59,6 +59,14 @@ public class SearchHitsSorted extends SearchHits {
         return toString("sort", source, property);
     }
 
+    SearchHits source() {
+        return source;
+    }
+
+    HitProperty sortBy() {
+        return property;
+    }
+
     @Override
     public SearchSettings searchSettings() {
         return source.searchSettings();
@@ -3,6 +3,7 @@ package nl.inl.blacklab.searches;
 import java.util.Objects;
 
 import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.results.Hits;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.SearchSettings;
@@ -23,6 +24,14 @@ public class SearchHitsWindow extends SearchHits {
 
     @Override
     public Hits executeInternal(ActiveSearch<Hits> activeSearch) throws InvalidQuery {
+        if (source instanceof SearchHitsSorted && first + number < BlackLab.config().getSearch().getSortTopMaxHits()) {
+            // Only select the hits we need (plus one, so we know if there's more),
+            // instead of sorting all of them
+            SearchHitsSorted sorted = (SearchHitsSorted) source;
+            return executeChildSearch(activeSearch, sorted.source())
+                    .sortTop(sorted.sortBy(), first + number + 1)
+                    .window(first, number);
+        }
         return executeChildSearch(activeSearch, source).window(first, number);
     }
 
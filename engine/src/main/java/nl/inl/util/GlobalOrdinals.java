@@ -0,0 +1,400 @@
+package nl.inl.util;
+
+import java.io.IOException;
+import java.text.Collator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.jcip.annotations.ThreadSafe;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+
+/**
+ * Index-wide (global) ordinals for the values of a string DocValues field.
+ *
+ * The values of all documents are read once, sequentially (the efficient way to read
+ * DocValues), and each segment's ordinals are mapped to global ordinals using Lucene's
+ * {@link OrdinalMap}. Global ordinals are in the same order as the values' bytes.
+ *
+ * After that, the ordinals of any document can be looked up without locking or per-thread
+ * DocValues iterators, so instances can be shared by all threads. Values aren't copied;
+ * they are looked up in the segment the OrdinalMap says they first occur in.
+ *
+ * Building this costs 4 bytes per document (plus 4 per value) and reads the whole field,
+ * so it's only worth it when sorting or grouping a large number of results. Instances are
+ * cached per index reader and field, and removed when the reader is closed. The total
+ * memory the cache may use can be limited (see {@link #setMaxBytes(long)}); use is reported
+ * by {@link #getInfo()}.
+ */
+@ThreadSafe
+public class GlobalOrdinals {
+
+    /** Identifies a field in an index reader. */
+    private static final class Key {
+
+        /** Identifies the reader (see IndexReader.getReaderCacheHelper()) */
+        private final IndexReader.CacheKey readerKey;
+
+        private final String fieldName;
+
+        Key(IndexReader.CacheKey readerKey, String fieldName) {
+            this.readerKey = readerKey;
+            this.fieldName = fieldName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Key key = (Key) o;
+            return readerKey == key.readerKey && fieldName.equals(key.fieldName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(readerKey), fieldName);
+        }
+    }
+
+    /** Maximum number of bytes the cache may use, or 0 for no limit. */
+    private static volatile long maxBytes = 0;
+
+    /** Global ordinals per index reader and field */
+    private static volatile Cache<Key, GlobalOrdinals> cache = createCache(0);
+
+    /** Readers we've registered a listener for, so we can remove their entries when they're closed */
+    private static final Set<IndexReader.CacheKey> readersWithListener = ConcurrentHashMap.newKeySet();
+
+    private static Cache<Key, GlobalOrdinals> createCache(long maxBytes) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (maxBytes > 0) {
+            builder = builder.maximumWeight(maxBytes);
+        } else {
+            // (no limit, but we need a weigher to report the size)
+            builder = builder.maximumWeight(Long.MAX_VALUE);
+        }
+        return builder.weigher((Key key, GlobalOrdinals ordinals) -> (int) Math.min(Integer.MAX_VALUE, ordinals.ramBytesUsed()))
+                .build();
+    }
+
+    /**
+     * Set the maximum number of bytes the cache may use.
+     *
+     * When the limit is exceeded, the least recently used global ordinals are discarded (and
+     * built again when needed). Changing the limit discards all cached global ordinals.
+     *
+     * @param maxBytes maximum number of bytes, or 0 for no limit
+     */
+    public static synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes == GlobalOrdinals.maxBytes)
+            return;
+        GlobalOrdinals.maxBytes = maxBytes;
+        cache = createCache(maxBytes);
+    }
+
+    public static long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get global ordinals for a field, building them if necessary.
+     *
+     * Supports both SortedSetDocValues and (for very old indexes) SortedDocValues.
+     * Segments without DocValues for this field are treated as having no values for
+     * any of their documents.
+     *
+     * Building reads the whole field, so only call this if you need to sort or group
+     * a large number of results.
+     *
+     * @param reader index reader
+     * @param fieldName field to get global ordinals for
+     * @return global ordinals, or null if the index has no segments
+     */
+    public static GlobalOrdinals get(IndexReader reader, String fieldName) {
+        if (reader.leaves().isEmpty())
+            return null;
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            // We can't tell when this reader is closed, so we can't cache for it
+            return build(reader, fieldName);
+        }
+        IndexReader.CacheKey readerKey = cacheHelper.getKey();
+        if (readersWithListener.add(readerKey)) {
+            cacheHelper.addClosedListener(key -> {
+                readersWithListener.remove(key);
+                cache.asMap().keySet().removeIf(k -> k.readerKey == key);
+            });
+        }
+        return cache.get(new Key(readerKey, fieldName), k -> build(reader, fieldName));
+    }
+
+    /**
+     * Get information about the cache, for monitoring.
+     *
+     * @return cache size and hit/miss statistics
+     */
+    public static Map<String, Object> getInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        Cache<Key, GlobalOrdinals> c = cache;
+        c.cleanUp(); // make sure pending writes are reflected in the size
+        CacheStats stats = c.stats();
+        info.put("maxBytes", maxBytes);
+        info.put("sizeBytes", c.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+        info.put("numberOfFields", c.estimatedSize());
+        info.put("timesBuilt", stats.loadCount());
+        info.put("buildTimeMs", stats.totalLoadTime() / 1_000_000);
+        info.put("evictions", stats.evictionCount());
+        return info;
+    }
+
+    private static SortedSetDocValues docValues(LeafReader r, String fieldName) throws IOException {
+        SortedSetDocValues values = r.getSortedSetDocValues(fieldName);
+        if (values == null) {
+            // Very old indexes may still contain regular SortedDocValues
+            SortedDocValues sortedValues = r.getSortedDocValues(fieldName);
+            values = sortedValues == null ? DocValues.emptySortedSet() : DocValues.singleton(sortedValues);
+        }
+        return values;
+    }
+
+    private static GlobalOrdinals build(IndexReader reader, String fieldName) {
+        List<LeafReaderContext> leaves = reader.leaves();
+        try {
+            SortedSetDocValues[] segmentValues = new SortedSetDocValues[leaves.size()];
+            for (int i = 0; i < segmentValues.length; i++)
+                segmentValues[i] = docValues(leaves.get(i).reader(), fieldName);
+            OrdinalMap ordinalMap = OrdinalMap.build(null, segmentValues, PackedInts.DEFAULT);
+            if (ordinalMap.getValueCount() > Integer.MAX_VALUE)
+                throw new BlackLabRuntimeException("Too many values for field " + fieldName + ": " + ordinalMap.getValueCount());
+
+            // Read the global ordinals for each document, segment by segment
+            int[] docStart = new int[reader.maxDoc() + 1];
+            int[] ords = new int[Math.max(16, reader.maxDoc())];
+            int numberOfOrds = 0;
+            boolean multiValued = false;
+            for (int i = 0; i < leaves.size(); i++) {
+                LeafReaderContext rc = leaves.get(i);
+                SortedSetDocValues dv = docValues(rc.reader(), fieldName);
+                LongValues toGlobal = ordinalMap.getGlobalOrds(i);
+                int maxDoc = rc.reader().maxDoc();
+                int doc = dv.nextDoc();
+                for (int segmentDoc = 0; segmentDoc < maxDoc; segmentDoc++) {
+                    docStart[rc.docBase + segmentDoc] = numberOfOrds;
+                    if (doc == segmentDoc) {
+                        int valuesForDoc = 0;
+                        for (long ord = dv.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = dv.nextOrd()) {
+                            if (numberOfOrds == ords.length)
+                                ords = IntArrays.grow(ords, numberOfOrds + 1);
+                            ords[numberOfOrds] = (int) toGlobal.get(ord);
+                            numberOfOrds++;
+                            valuesForDoc++;
+                        }
+                        if (valuesForDoc > 1)
+                            multiValued = true;
+                        doc = dv.nextDoc();
+                    }
+                }
+            }
+            docStart[reader.maxDoc()] = numberOfOrds;
+            return new GlobalOrdinals(reader, fieldName, ordinalMap, docStart, IntArrays.trim(ords, numberOfOrds), multiValued);
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /** Collation ranks of our values, for a specific collator */
+    private static class SortRanks {
+        final Collator collator;
+
+        final int[] ranks;
+
+        SortRanks(Collator collator, int[] ranks) {
+            this.collator = collator;
+            this.ranks = ranks;
+        }
+    }
+
+    /** Our segments, to look up values in */
+    private final List<LeafReaderContext> leaves;
+
+    /** Our field */
+    private final String fieldName;
+
+    /** Maps segment ordinals to global ordinals and back */
+    private final OrdinalMap ordinalMap;
+
+    /** DocValues per segment to look up values with (created when needed; synchronize on them) */
+    private final SortedSetDocValues[] lookup;
+
+    /** Where each document's ordinals start in ords (docStart[maxDoc] == ords.length) */
+    private final int[] docStart;
+
+    /** Global ordinals for all documents */
+    private final int[] ords;
+
+    /** Does any document have more than one value? */
+    private final boolean multiValued;
+
+    /** Collation ranks of our values, or null if not determined yet */
+    private volatile SortRanks sortRanks;
+
+    private GlobalOrdinals(IndexReader reader, String fieldName, OrdinalMap ordinalMap, int[] docStart, int[] ords,
+            boolean multiValued) {
+        this.leaves = reader.leaves();
+        this.fieldName = fieldName;
+        this.ordinalMap = ordinalMap;
+        this.lookup = new SortedSetDocValues[leaves.size()];
+        this.docStart = docStart;
+        this.ords = ords;
+        this.multiValued = multiValued;
+    }
+
+    /**
+     * Number of distinct values in the index.
+     *
+     * @return number of values (global ordinals range from 0 to this value - 1)
+     */
+    public int valueCount() {
+        return (int) ordinalMap.getValueCount();
+    }
+
+    /**
+     * Estimate how much memory this uses.
+     *
+     * Includes the collation ranks, which are usually needed as well.
+     *
+     * @return estimated number of bytes
+     */
+    public long ramBytesUsed() {
+        return RamUsageEstimator.sizeOf(docStart) + RamUsageEstimator.sizeOf(ords) + ordinalMap.ramBytesUsed() +
+                (valueCount() + 1L) * Integer.BYTES;
+    }
+
+    /**
+     * Does any document have more than one value for this field?
+     *
+     * @return true if any document has multiple values
+     */
+    public boolean isMultiValued() {
+        return multiValued;
+    }
+
+    /**
+     * Number of values a document has.
+     *
+     * @param docId Lucene document id
+     * @return number of values
+     */
+    public int count(int docId) {
+        return docStart[docId + 1] - docStart[docId];
+    }
+
+    /**
+     * Get a global ordinal for a document.
+     *
+     * Ordinals for a document are in increasing order.
+     *
+     * @param docId Lucene document id
+     * @param index which of the document's values to get (0 - count(docId) - 1)
+     * @return global ordinal
+     */
+    public int ord(int docId, int index) {
+        return ords[docStart[docId] + index];
+    }
+
+    /**
+     * Get the value for a global ordinal.
+     *
+     * @param ord global ordinal
+     * @return value
+     */
+    public String value(int ord) {
+        int segment = ordinalMap.getFirstSegmentNumber(ord);
+        try {
+            SortedSetDocValues dv;
+            synchronized (lookup) {
+                dv = lookup[segment];
+                if (dv == null) {
+                    dv = lookup[segment] = docValues(leaves.get(segment).reader(), fieldName);
+                }
+            }
+            synchronized (dv) {
+                return dv.lookupOrd(ordinalMap.getFirstSegmentOrd(ord)).utf8ToString();
+            }
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /**
+     * Get the values for a document.
+     *
+     * @param docId Lucene document id
+     * @return values, ordered by global ordinal
+     */
+    public String[] values(int docId) {
+        int start = docStart[docId];
+        String[] result = new String[docStart[docId + 1] - start];
+        for (int i = 0; i < result.length; i++)
+            result[i] = value(ords[start + i]);
+        return result;
+    }
+
+    /**
+     * Get the rank of each value when sorted using a collator.
+     *
+     * Values that the collator considers equal get the same rank. The element after
+     * the last value (at index valueCount()) is the rank of the empty string, which
+     * is useful for documents without a value.
+     *
+     * The ranks are determined once (per collator) and shared, so don't modify them.
+     *
+     * @param collator collator to sort with
+     * @return rank per global ordinal, followed by the rank of the empty string
+     */
+    public int[] sortRanks(Collator collator) {
+        SortRanks current = sortRanks;
+        if (current == null || current.collator != collator) {
+            // Sort the values (with the empty string at the end) and assign ranks
+            String[] values = new String[valueCount() + 1];
+            for (int i = 0; i < values.length - 1; i++)
+                values[i] = value(i);
+            values[values.length - 1] = "";
+            int[] order = new int[values.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            IntArrays.quickSort(order, (a, b) -> collator.compare(values[a], values[b]));
+            int[] ranks = new int[order.length];
+            int rank = 0;
+            for (int i = 0; i < order.length; i++) {
+                if (i > 0 && collator.compare(values[order[i - 1]], values[order[i]]) != 0)
+                    rank++;
+                ranks[order[i]] = rank;
+            }
+            current = new SortRanks(collator, ranks);
+            sortRanks = current;
+        }
+        return current.ranks;
+    }
+}
@@ -0,0 +1,56 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBitPackedInts {
+
+    private static final int NUMBER_OF_VALUES = 1000;
+
+    @Test
+    public void testBitsRequired() {
+        Assert.assertEquals(1, BitPackedInts.bitsRequired(0));
+        Assert.assertEquals(1, BitPackedInts.bitsRequired(1));
+        Assert.assertEquals(2, BitPackedInts.bitsRequired(2));
+        Assert.assertEquals(8, BitPackedInts.bitsRequired(255));
+        Assert.assertEquals(9, BitPackedInts.bitsRequired(256));
+        Assert.assertEquals(31, BitPackedInts.bitsRequired(Integer.MAX_VALUE));
+        Assert.assertEquals(32, BitPackedInts.bitsRequired(-1));
+    }
+
+    @Test
+    public void testAllWidths() throws IOException {
+        Random random = new Random(42);
+        for (int bits = 1; bits <= 32; bits++) {
+            int base = -1; // NO_TERM is usually the lowest value
+            int[] values = new int[NUMBER_OF_VALUES];
+            for (int i = 0; i < values.length; i++) {
+                long range = 1L << bits;
+                values[i] = base + (int) (random.nextDouble() * range);
+            }
+            ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+            BitPackedInts.write(out, values, base, bits);
+            Assert.assertEquals(BitPackedInts.bytesRequired(values.length, bits), out.size());
+
+            byte[] packed = out.toArrayCopy();
+            byte[] src = new byte[packed.length + BitPackedInts.DECODE_PADDING];
+            System.arraycopy(packed, 0, src, 0, packed.length);
+
+            // Decode a few ranges, starting at different bit offsets
+            for (int start: new int[] { 0, 1, 7, 333, NUMBER_OF_VALUES - 1 }) {
+                int n = values.length - start;
+                long firstBit = (long) start * bits;
+                byte[] fromFirstByte = new byte[src.length];
+                System.arraycopy(src, (int) (firstBit >>> 3), fromFirstByte, 0, src.length - (int) (firstBit >>> 3));
+                int[] decoded = new int[n];
+                BitPackedInts.decode(fromFirstByte, (int) (firstBit & 7), bits, base, decoded, n);
+                for (int i = 0; i < n; i++)
+                    Assert.assertEquals("bits=" + bits + ", i=" + (start + i), values[start + i], decoded[i]);
+            }
+        }
+    }
+}
@@ -18,7 +18,7 @@ public class TestContentStoreBlockCodec {
 
     @Parameters(name = "codec #{0}")
     public static Collection<Integer> codecToUse() {
-        return List.of(0, 1);
+        return List.of(0, 1, 2);
     }
 
     /** Code of the codec to use */
@@ -84,12 +84,42 @@ public class TestContentStoreBlockCodec {
         Assert.assertEquals(testTitle + " method 1", expected, decoded);
 
         // Encode/decode into existing buffer
-        byte[] encodeBuffer = new byte[1024];
+        int bufferSize = Math.max(1024, expected.length() * 4);
+        byte[] encodeBuffer = new byte[bufferSize];
         int encodedLength = encoder.encode(inputBuffer, offset, length, encodeBuffer, 0, encodeBuffer.length);
-        byte[] decodeBuffer = new byte[1024];
+        byte[] decodeBuffer = new byte[bufferSize];
         int decodedLength = decoder.decode(encodeBuffer, 0, encodedLength, decodeBuffer, 0, decodeBuffer.length);
         Assert.assertTrue(testTitle + " method 2 success", decodedLength >= 0);
         String decoded2 = new String(decodeBuffer, 0, decodedLength, StandardCharsets.UTF_8);
         Assert.assertEquals(testTitle + " method 2 result", expected, decoded2);
     }
+
+    @Test
+    public void testRepetitive() throws IOException {
+        // Long, repetitive input with multi-byte characters, so we get (overlapping) matches and long lengths
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+            b.append("<w lemma=\"één\">").append(i % 7).append("</w>");
+        b.append("a".repeat(1000)).append("<end/>");
+        String input = b.toString();
+        testEncodeDecode(Triple.of(input, 0, input.length()));
+        testEncodeDecode(Triple.of(input, 17, input.length() - 40));
+    }
+
+    @Test
+    public void testInsufficientDecodeBuffer() throws IOException {
+        if (blockCodec == ContentStoreBlockCodecUncompressed.INSTANCE)
+            return; // throws an exception instead
+        String input = "<w>testing</w> <w>testing</w> <w>testing</w>";
+        byte[] encoded = encoder.encode(input, 0, input.length());
+        byte[] decodeBuffer = new byte[10];
+        Assert.assertEquals(-1, decoder.decode(encoded, 0, encoded.length, decodeBuffer, 0, decodeBuffer.length));
+    }
+
+    @Test
+    public void testFromName() {
+        Assert.assertSame(ContentStoreBlockCodecZlib.INSTANCE, ContentStoreBlockCodec.fromName(null));
+        Assert.assertSame(ContentStoreBlockCodecLZ4.INSTANCE, ContentStoreBlockCodec.fromName("lz4"));
+        Assert.assertSame(ContentStoreBlockCodecUncompressed.INSTANCE, ContentStoreBlockCodec.fromName("none"));
+    }
 }
@@ -0,0 +1,126 @@
+package nl.inl.blacklab.codec;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.codec.TokensCodec.VALUE_PER_TOKEN_PARAMETER;
+
+public class TestTokensCodec {
+
+    private static final int NUMBER_OF_TOKENS = 1000;
+
+    private static int[] randomTokens(Random random, int min, int max) {
+        int[] tokens = new int[NUMBER_OF_TOKENS];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = (int) (min + (long) (random.nextDouble() * ((long) max - min + 1)));
+        }
+        // Make sure the extremes are present
+        tokens[0] = min;
+        tokens[1] = max;
+        tokens[2] = -1;
+        return tokens;
+    }
+
+    private static ByteBuffersDataOutput write(VALUE_PER_TOKEN_PARAMETER param, int[] tokens) throws IOException {
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        for (int token: tokens) {
+            switch (param) {
+            case BYTE: out.writeByte((byte) token); break;
+            case SHORT: out.writeShort((short) token); break;
+            case THREE_BYTES: ThreeByteInt.write(out::writeByte, token); break;
+            case INT: out.writeInt(token); break;
+            }
+        }
+        return out;
+    }
+
+    private static void testParameter(VALUE_PER_TOKEN_PARAMETER param, int min, int max) throws IOException {
+        int[] tokens = randomTokens(new Random(param.getCode()), min, max);
+        ByteBuffersDataOutput out = write(param, tokens);
+        Assert.assertEquals((long) tokens.length * param.getBytesPerToken(), out.size());
+
+        // Bulk decode
+        byte[] bytes = out.toArrayCopy();
+        int[] decoded = new int[tokens.length + 2];
+        param.decode(bytes, decoded, 1, tokens.length);
+        for (int i = 0; i < tokens.length; i++)
+            Assert.assertEquals(tokens[i], decoded[i + 1]);
+
+        // Token-by-token decode should give the same result
+        ByteBuffersDataInput in = out.toDataInput();
+        int[] decodedPerToken = new int[tokens.length];
+        param.readTokenByToken(in, decodedPerToken);
+        Assert.assertArrayEquals(tokens, decodedPerToken);
+    }
+
+    @Test
+    public void testByte() throws IOException {
+        testParameter(VALUE_PER_TOKEN_PARAMETER.BYTE, Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    @Test
+    public void testShort() throws IOException {
+        testParameter(VALUE_PER_TOKEN_PARAMETER.SHORT, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    @Test
+    public void testThreeBytes() throws IOException {
+        testParameter(VALUE_PER_TOKEN_PARAMETER.THREE_BYTES, ThreeByteInt.MIN_VALUE, ThreeByteInt.MAX_VALUE);
+    }
+
+    @Test
+    public void testInt() throws IOException {
+        testParameter(VALUE_PER_TOKEN_PARAMETER.INT, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testRunLength() throws IOException {
+        // Sparse document: mostly NO_TERM with some runs of other values
+        int[] tokens = new int[NUMBER_OF_TOKENS];
+        Random random = new Random(1);
+        int value = -1;
+        for (int i = 0; i < tokens.length; i++) {
+            if (random.nextInt(10) == 0)
+                value = random.nextInt(3) - 1;
+            tokens[i] = value;
+        }
+
+        try (ByteBuffersDirectory dir = new ByteBuffersDirectory()) {
+            final long docOffset = 7; // make sure we don't assume the doc starts at 0
+            try (IndexOutput out = dir.createOutput("tokens", IOContext.DEFAULT)) {
+                for (int i = 0; i < docOffset; i++)
+                    out.writeByte((byte) 0);
+                int numberOfRuns = 0;
+                for (int i = 0; i < tokens.length; i++) {
+                    if (i == 0 || tokens[i] != tokens[i - 1])
+                        numberOfRuns++;
+                }
+                out.writeInt(numberOfRuns);
+                for (int i = 0; i < tokens.length; i++) {
+                    if (i == 0 || tokens[i] != tokens[i - 1]) {
+                        out.writeInt(i);
+                        out.writeInt(tokens[i]);
+                    }
+                }
+            }
+            try (IndexInput in = dir.openInput("tokens", IOContext.DEFAULT)) {
+                for (int start = 0; start < tokens.length; start += 37) {
+                    int length = Math.min(11 + start % 50, tokens.length - start);
+                    int[] snippet = new int[length];
+                    SegmentForwardIndex.readRunLength(in, docOffset, tokens.length, start, snippet);
+                    for (int i = 0; i < length; i++)
+                        Assert.assertEquals(tokens[start + i], snippet[i]);
+                }
+            }
+        }
+    }
+}
@@ -50,4 +50,25 @@ public class TestYaml {
         }
     }
 
+    @Test
+    public void testInvalidContentStoreCodec() {
+        DocIndexerFactoryConfig factoryConfig = new DocIndexerFactoryConfig() {
+            @Override
+            public boolean isSupported(String formatIdentifier) {
+                return "badcodec".equals(formatIdentifier);
+            }
+
+        };
+
+        try {
+            ClassLoader classLoader = this.getClass().getClassLoader();
+            File file = new File(classLoader.getResource("yaml/badcodec.blf.yaml").getFile());
+            factoryConfig.load("badcodec", file);
+            Assert.fail("expected invalid codec error");
+        } catch (IOException | InvalidInputFormatConfig ex) {
+            Assert.assertTrue(ex.getMessage().contains("bzip2"));
+            Assert.assertTrue(ex.getMessage().contains("zlib, lz4, none"));
+        }
+    }
+
 }
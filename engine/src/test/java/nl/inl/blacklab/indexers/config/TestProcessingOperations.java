@@ -1,8 +1,12 @@
 package nl.inl.blacklab.indexers.config;
 
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import nl.inl.blacklab.exceptions.InvalidInputFormatConfig;
+
 public class TestProcessingOperations {
     
     @Test
@@ -13,5 +17,38 @@ public class TestProcessingOperations {
         Assert.assertEquals("pl", DocIndexerConfig.opParsePartOfSpeech("NOU-C(gender=f,number=pl)", "number"));
         Assert.assertEquals("", DocIndexerConfig.opParsePartOfSpeech("NOU-C(gender=f,number=pl)", "type"));
     }
-    
+
+    private static ConfigProcessStep step(String method, String... params) {
+        ConfigProcessStep step = new ConfigProcessStep();
+        step.setMethod(method);
+        for (int i = 0; i < params.length; i += 2)
+            step.addParam(params[i], params[i + 1]);
+        return step;
+    }
+
+    @Test
+    public void testPipeline() {
+        List<ConfigProcessStep> process = List.of(
+                step("strip", "chars", " ."),
+                step("replace", "find", "(\\w+)-(\\w+)", "replace", "$2-$1"),
+                step("parsePos", "field", "_"));
+        ConfigAnnotation annotation = new ConfigAnnotation("word", "@word", null);
+        annotation.setProcess(process);
+        ProcessPipeline pipeline = annotation.getProcessPipeline();
+        Assert.assertSame(pipeline, annotation.getProcessPipeline()); // only compiled once
+        Assert.assertEquals("C-NOU", pipeline.apply(null, " NOU-C(gender=f). "));
+        Assert.assertEquals(List.of("C-NOU"), pipeline.applyMultiple(null, " NOU-C(gender=f). "));
+    }
+
+    @Test
+    public void testPipelineReplaceKeepAll() {
+        List<ConfigProcessStep> process = List.of(step("replace", "find", "a", "replace", "b", "keep", "all"));
+        Assert.assertEquals(List.of("aa", "bb"), new ProcessPipeline(process).applyMultiple(null, "aa"));
+    }
+
+    @Test(expected = InvalidInputFormatConfig.class)
+    public void testPipelineInvalidRegex() {
+        new ProcessPipeline(List.of(step("replace", "find", "(", "replace", "")));
+    }
+
 }
@@ -0,0 +1,106 @@
+package nl.inl.blacklab.search.fimatch;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import nl.inl.blacklab.forwardindex.Terms;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+
+public class TestForwardIndexDocumentImpl {
+
+    /** Two documents of different lengths; term ids are derived from annotation, document and position. */
+    private static final int[] DOC_LENGTHS = { 20_000, 100 };
+
+    private static int segmentTermId(int annotIndex, int docId, int pos) {
+        return annotIndex * 1_000_000 + docId * 100_000 + pos;
+    }
+
+    private static int globalTermId(int annotIndex, int docId, int pos) {
+        return -segmentTermId(annotIndex, docId, pos) - 2; // distinguishable from segment term ids and NO_TERM
+    }
+
+    private static class MockLeafReader implements ForwardIndexAccessorLeafReader {
+
+        int chunksFetched = 0;
+
+        @Override
+        public ForwardIndexDocument advanceForwardIndexDoc(int segmentDocId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getDocLength(int segmentDocId) {
+            return DOC_LENGTHS[segmentDocId];
+        }
+
+        @Override
+        public int[] getChunkGlobalTermIds(int annotIndex, int segmentDocId, int start, int end) {
+            int[] chunk = getChunkSegmentTermIds(annotIndex, segmentDocId, start, end);
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = globalTermId(annotIndex, segmentDocId, start + i);
+            return chunk;
+        }
+
+        @Override
+        public int[] getChunkSegmentTermIds(int annotIndex, int segmentDocId, int start, int end) {
+            Assert.assertTrue(start >= 0 && start < end && end <= DOC_LENGTHS[segmentDocId]);
+            chunksFetched++;
+            int[] chunk = new int[end - start];
+            for (int i = 0; i < chunk.length; i++)
+                chunk[i] = segmentTermId(annotIndex, segmentDocId, start + i);
+            return chunk;
+        }
+
+        @Override
+        public int getNumberOfAnnotations() {
+            return 2;
+        }
+
+        @Override
+        public String getTermString(int annotIndex, int segmentTermId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean segmentTermsEqual(int annotIndex, int[] segmentTermIds, MatchSensitivity sensitivity) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testSequentialAccess() {
+        MockLeafReader leafReader = new MockLeafReader();
+        ForwardIndexDocumentImpl fiDoc = new ForwardIndexDocumentImpl(leafReader);
+        fiDoc.reset(0);
+        int length = DOC_LENGTHS[0];
+        for (int pos = 5000; pos < length; pos++)
+            Assert.assertEquals(segmentTermId(1, 0, pos), fiDoc.getTokenSegmentTermId(1, pos));
+        for (int pos = 4999; pos >= 0; pos--)
+            Assert.assertEquals(segmentTermId(1, 0, pos), fiDoc.getTokenSegmentTermId(1, pos));
+        // Windows grow as we keep reading in the same direction
+        Assert.assertTrue(leafReader.chunksFetched < 20);
+        Assert.assertEquals(Terms.NO_TERM, fiDoc.getTokenSegmentTermId(1, length));
+        Assert.assertEquals(Terms.NO_TERM, fiDoc.getTokenSegmentTermId(1, -1));
+    }
+
+    @Test
+    public void testRandomAccessAndReset() {
+        Random random = new Random(1);
+        ForwardIndexDocumentImpl fiDoc = new ForwardIndexDocumentImpl(new MockLeafReader());
+        for (int i = 0; i < 10; i++) {
+            int docId = i % 2;
+            fiDoc.reset(docId);
+            for (int j = 0; j < 1000; j++) {
+                int annotIndex = random.nextInt(2);
+                int pos = random.nextInt(DOC_LENGTHS[docId]);
+                // Segment and global term ids must not get mixed up
+                Assert.assertEquals(segmentTermId(annotIndex, docId, pos), fiDoc.getTokenSegmentTermId(annotIndex, pos));
+                Assert.assertEquals(globalTermId(annotIndex, docId, pos), fiDoc.getTokenGlobalTermId(annotIndex, pos));
+            }
+            Assert.assertTrue(fiDoc.validPos(DOC_LENGTHS[docId] - 1));
+            Assert.assertFalse(fiDoc.validPos(DOC_LENGTHS[docId]));
+        }
+    }
+}
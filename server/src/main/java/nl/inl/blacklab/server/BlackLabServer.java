@@ -26,6 +26,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Metrics;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
 import nl.inl.blacklab.exceptions.InterruptedSearch;
 import nl.inl.blacklab.exceptions.InvalidQuery;
@@ -34,6 +35,7 @@ import nl.inl.blacklab.instrumentation.RequestInstrumentationProvider;
 import nl.inl.blacklab.instrumentation.impl.PrometheusMetricsProvider;
 import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.server.config.BLSConfig;
+import nl.inl.blacklab.server.config.BLSConfigProtocol;
 import nl.inl.blacklab.server.config.ConfigFileReader;
 import nl.inl.blacklab.server.datastream.DataFormat;
 import nl.inl.blacklab.server.datastream.DataStream;
@@ -242,10 +244,26 @@ public class BlackLabServer extends HttpServlet {
         String rootEl = requestHandler.omitBlackLabResponseRootElement() ? null : ResponseStreamer.BLACKLAB_RESPONSE_ROOT_ELEMENT;
 
         // === Handle the request
-        StringWriter buf = new StringWriter();
-        PrintWriter out = new PrintWriter(buf);
+        // We capture the response in a buffer, so we can still send an error response instead.
+        // If streaming is enabled (or the response may be large, e.g. document contents), we only
+        // buffer the start of the response and then send the rest to the client as it is generated.
+        BLSConfigProtocol protocol = searchManager.config().getProtocol();
+        boolean streaming = requestHandler.isStreamingResponse() || protocol.isStreamResponses();
+        int bufferSize = streaming ? protocol.getResponseBufferSize() : Integer.MAX_VALUE;
+        boolean gzip = protocol.isGzipResponses() && ServletUtil.acceptsGzip(request);
+        final DataFormat responseOutputType = outputType;
+        StreamingResponseWriter responseWriter = new StreamingResponseWriter(OUTPUT_ENCODING, bufferSize, gzip,
+                code -> {
+                    writeResponseHeaders(responseObject, code, responseOutputType, cacheTime);
+                    if (protocol.isGzipResponses())
+                        responseObject.addHeader("Vary", "Accept-Encoding");
+                    if (gzip)
+                        responseObject.setHeader("Content-Encoding", "gzip");
+                    return responseObject.getOutputStream();
+                });
+        PrintWriter out = new PrintWriter(responseWriter);
         DataStream ds = DataStreamAbstract.create(outputType, out, prettyPrint);
-        ds.setOmitEmptyAnnotations(searchManager.config().getProtocol().isOmitEmptyProperties());
+        ds.setOmitEmptyAnnotations(protocol.isOmitEmptyProperties());
         ds.startDocument(rootEl);
         ResponseStreamer dstream = ResponseStreamer.get(ds, requestHandler.apiCompatibility());
         StringWriter errorBuf = new StringWriter();
@@ -273,24 +291,37 @@ public class BlackLabServer extends HttpServlet {
         } finally {
             requestHandler.cleanup(); // close logger
         }
-        ds.endDocument();
+        boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
 
-        // === Write the response headers
+        if (out.checkError()) {
+            // Sending (part of) the response failed. PrintWriter doesn't throw, so we check here.
+            logger.debug("(couldn't send response, client probably cancelled the request)");
+            return;
+        }
 
-        // Write HTTP headers (status code, encoding, content type and cache)
-        responseObject.setStatus(httpCode);
-        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
-        responseObject.setContentType(outputType.getContentType());
-        optAddAllowOriginHeader(responseObject);
-        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+        if (errorOccurred && responseWriter.isStarted()) {
+            // We've already sent the headers and part of the response, so we can't send an error response anymore.
+            // Abort the response instead of finishing it, so the client knows it is incomplete:
+            // the container closes the connection if we throw after the response was committed.
+            logger.error("Error occurred after response was partially sent, aborting response: " + errorBuf);
+            responseWriter.abort();
+            throw new BlackLabRuntimeException("Error occurred after response was partially sent, response aborted");
+        }
 
-        // === Write the response that was captured in buf
+        // === Finish the response (or replace it with the error response)
         try {
-            Writer realOut = new OutputStreamWriter(responseObject.getOutputStream(), OUTPUT_ENCODING);
-            boolean errorOccurred = errorBuf.getBuffer().length() > errorBufLengthBefore;
-            StringWriter writeWhat = errorOccurred ? errorBuf : buf;
-            realOut.write(writeWhat.toString());
-            realOut.flush();
+            if (errorOccurred) {
+                // (set the status code first, in case the error response is too large to buffer)
+                responseWriter.discard(httpCode);
+                responseWriter.append(errorBuf.getBuffer());
+            } else {
+                if (!responseWriter.isStarted())
+                    responseWriter.setHttpCode(httpCode);
+                ds.endDocument();
+                if (out.checkError()) // (also flushes)
+                    throw new IOException("Couldn't send response");
+            }
+            responseWriter.finish();
         } catch (IOException e) {
             // Client cancelled the request midway through.
             // This is okay, don't raise the alarm.
@@ -298,6 +329,23 @@ public class BlackLabServer extends HttpServlet {
         }
     }
 
+    /**
+     * Write HTTP headers (status code, encoding, content type and cache).
+     *
+     * @param responseObject response to write headers for
+     * @param httpCode HTTP status code
+     * @param outputType response format
+     * @param cacheTime how long the client may cache the response (seconds)
+     */
+    private void writeResponseHeaders(HttpServletResponse responseObject, int httpCode, DataFormat outputType,
+            int cacheTime) {
+        responseObject.setStatus(httpCode);
+        responseObject.setCharacterEncoding(OUTPUT_ENCODING.name().toLowerCase());
+        responseObject.setContentType(outputType.getContentType());
+        optAddAllowOriginHeader(responseObject);
+        ServletUtil.writeCacheHeaders(responseObject, cacheTime);
+    }
+
     private void initializationErrorResponse(HttpServletResponse responseObject, BlsException e) {
         // Write HTTP headers (status code, encoding, content type and cache)
         responseObject.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
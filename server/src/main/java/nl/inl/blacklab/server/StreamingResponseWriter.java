@@ -0,0 +1,221 @@
+package nl.inl.blacklab.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writes the response to the client, optionally while it is still being generated.
+ *
+ * Output is buffered until the buffer size is exceeded (or {@link #finish()} is called).
+ * Until that point, nothing has been sent, so the response can still be replaced
+ * by an error response (see {@link #discard(int)}). After that, the response headers
+ * are written and all output goes directly to the client (through a small buffer),
+ * so the response never has to fit in memory as a whole.
+ *
+ * If an error occurs after we've started sending, call {@link #abort()} and throw
+ * out of the servlet, so the container closes the connection without properly
+ * ending the response.
+ *
+ * Use a buffer size of Integer.MAX_VALUE to always buffer the whole response.
+ */
+public class StreamingResponseWriter extends Writer {
+
+    /** Size of our output buffers (characters and bytes) once we've started writing */
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
+    /** Writes the response headers and provides the stream to write the response body to. */
+    @FunctionalInterface
+    public interface Committer {
+        /**
+         * Write the response headers and get the stream to write the response body to.
+         *
+         * @param httpCode HTTP status code to send
+         * @return stream to write the response body to
+         */
+        OutputStream commit(int httpCode) throws IOException;
+    }
+
+    /** Encoding to use */
+    private final Charset encoding;
+
+    /** How many characters to buffer before we start sending the response */
+    private final int bufferSize;
+
+    /** Should we gzip the response body? */
+    private final boolean gzip;
+
+    /** Writes the response headers (called just before the first output is sent) */
+    private final Committer committer;
+
+    /** HTTP status code to send when we start sending the response */
+    private int httpCode = HttpServletResponse.SC_OK;
+
+    /** Output that hasn't been sent yet, or null if we've started sending */
+    private StringBuilder buffer = new StringBuilder();
+
+    /** Writer for the response body, or null if we haven't started sending yet */
+    private Writer out;
+
+    /** Stream we got from the committer, or null if we haven't started sending yet */
+    private OutputStream stream;
+
+    /** Our gzip stream if we're gzipping, so we can finish it */
+    private GZIPOutputStream gzipOut;
+
+    /** Has the response been aborted? Then we don't write anything anymore. */
+    private boolean aborted;
+
+    /**
+     * Create the writer.
+     *
+     * @param encoding encoding to use
+     * @param bufferSize how many characters to buffer before we start sending the response
+     * @param gzip if true, gzip the response body (the committer should write the Content-Encoding header)
+     * @param committer writes the response headers and provides the stream to write to
+     */
+    public StreamingResponseWriter(Charset encoding, int bufferSize, boolean gzip, Committer committer) {
+        this.encoding = encoding;
+        this.bufferSize = bufferSize;
+        this.gzip = gzip;
+        this.committer = committer;
+    }
+
+    /**
+     * Have we started sending the response?
+     *
+     * @return true if the headers and (part of) the response have been sent
+     */
+    public boolean isStarted() {
+        return out != null;
+    }
+
+    /**
+     * Send the response headers and any buffered output.
+     */
+    private void start() throws IOException {
+        OutputStream stream = this.stream = committer.commit(httpCode);
+        if (gzip) {
+            // Favour speed over size; responses usually compress very well anyway
+            stream = gzipOut = new GZIPOutputStream(stream, OUTPUT_BUFFER_SIZE) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+        out = new BufferedWriter(new OutputStreamWriter(stream, encoding), OUTPUT_BUFFER_SIZE);
+
+        // Write the buffered output in chunks, so we don't need another copy of it
+        char[] chunk = new char[Math.min(OUTPUT_BUFFER_SIZE, Math.max(1, buffer.length()))];
+        for (int i = 0; i < buffer.length(); i += chunk.length) {
+            int end = Math.min(buffer.length(), i + chunk.length);
+            buffer.getChars(i, end, chunk, 0);
+            out.write(chunk, 0, end - i);
+        }
+        buffer = null;
+    }
+
+    private void ensureNotAborted() throws IOException {
+        if (aborted)
+            throw new IOException("Response was aborted");
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureNotAborted();
+        if (out != null) {
+            out.write(cbuf, off, len);
+        } else {
+            buffer.append(cbuf, off, len);
+            if (buffer.length() > bufferSize)
+                start();
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureNotAborted();
+        if (out != null) {
+            out.write(str, off, len);
+        } else {
+            buffer.append(str, off, off + len);
+            if (buffer.length() > bufferSize)
+                start();
+        }
+    }
+
+    /**
+     * Set the HTTP status code to send.
+     *
+     * @param httpCode HTTP status code to send when we start sending the response
+     * @throws IllegalStateException if we've already started sending the response
+     */
+    public void setHttpCode(int httpCode) {
+        if (out != null)
+            throw new IllegalStateException("Response has already been (partially) sent");
+        this.httpCode = httpCode;
+    }
+
+    /**
+     * Discard any buffered output, so we can write an error response instead.
+     *
+     * The error response will be sent with the specified status code, even if it's
+     * too large to buffer.
+     *
+     * @param httpCode HTTP status code to send for the error response
+     * @throws IllegalStateException if we've already started sending the response
+     */
+    public void discard(int httpCode) {
+        setHttpCode(httpCode);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Finish the response.
+     *
+     * If we haven't started sending yet, the headers are sent (see {@link #setHttpCode(int)}),
+     * followed by the buffered output.
+     */
+    public void finish() throws IOException {
+        ensureNotAborted();
+        if (out == null)
+            start();
+        out.flush();
+        if (gzipOut != null)
+            gzipOut.finish();
+    }
+
+    /**
+     * Abort a response we've already started sending, e.g. because an error occurred.
+     *
+     * Nothing more will be written, not even output we've already accepted but not sent
+     * yet. The caller should then throw out of the servlet: because the response has been
+     * committed, the container will close the connection instead of ending the response
+     * normally, so the client can tell it is incomplete.
+     *
+     * Note that we don't close the stream ourselves: for a chunked response, that would
+     * write the terminating chunk, making the truncated response look complete.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Only flushes output we're already sending; buffered output is kept until we start
+        if (out != null && !aborted)
+            out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -1,6 +1,10 @@
 package nl.inl.blacklab.server.datastream;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 
 /**
  * Class to stream out XML or JSON data.
@@ -18,6 +22,9 @@ public abstract class DataStreamAbstract implements DataStream {
         return new DataStreamXml(out, prettyPrint);
     }
 
+    /** Size of the buffer used to copy plain text from a stream to the output. */
+    private static final int PLAIN_COPY_BUFFER_SIZE = 8192;
+
     protected final PrintWriter out;
 
     private int indent = 0;
@@ -117,6 +124,19 @@ public abstract class DataStreamAbstract implements DataStream {
         return print(value);
     }
 
+    @Override
+    public DataStream plain(Reader value) {
+        try (Reader reader = value) {
+            char[] buffer = new char[PLAIN_COPY_BUFFER_SIZE];
+            int n;
+            while ((n = reader.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+        } catch (IOException e) {
+            throw new BlackLabRuntimeException(e);
+        }
+        return this;
+    }
+
     /**
      * Output an XML fragment, either as a string
      * value or as part of the XML structure.
@@ -421,6 +421,20 @@ public abstract class RequestHandler {
         return false;
     }
 
+    /**
+     * Should the response be written to the client directly, instead of buffered?
+     *
+     * Useful for potentially large responses. Errors that occur before the response
+     * buffer (protocol.responseBufferSize) fills up are still reported normally, but
+     * errors after that point abort the response. If protocol.streamResponses is
+     * enabled, all responses are streamed regardless of this method.
+     *
+     * @return true if the response should be streamed
+     */
+    public boolean isStreamingResponse() {
+        return false;
+    }
+
     protected boolean isDocsOperation() {
         return false;
     }
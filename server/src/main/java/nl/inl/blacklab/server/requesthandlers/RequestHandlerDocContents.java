@@ -28,6 +28,12 @@ public class RequestHandlerDocContents extends RequestHandler {
         return true;
     }
 
+    @Override
+    public boolean isStreamingResponse() {
+        // Documents may be large; don't keep the whole response in memory
+        return true;
+    }
+
     @Override
     public int handle(ResponseStreamer rs) throws BlsException, InvalidQuery {
         // Find the document pid
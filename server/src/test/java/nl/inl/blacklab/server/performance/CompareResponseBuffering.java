@@ -0,0 +1,155 @@
+package nl.inl.blacklab.server.performance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+
+import nl.inl.blacklab.server.StreamingResponseWriter;
+import nl.inl.blacklab.server.datastream.DataFormat;
+import nl.inl.blacklab.server.datastream.DataStream;
+import nl.inl.blacklab.server.datastream.DataStreamAbstract;
+
+/**
+ * Compare peak memory use and time to first byte of a large response (e.g. a big
+ * page of hits) when buffering the whole response before sending it, versus
+ * streaming it using {@link StreamingResponseWriter}.
+ *
+ * The response is generated using the real DataStream and StreamingResponseWriter
+ * BlackLab Server uses. (This lives in the server module's test sources, so it's not
+ * part of the WAR; the tools module can't depend on the server.)
+ *
+ * Output is discarded, so this only measures generating and encoding the response.
+ * Peak memory is measured using the heap memory pools' peak usage, so run with a
+ * single-threaded setup and enough heap (e.g. -Xmx4g) for meaningful numbers.
+ */
+public class CompareResponseBuffering {
+
+    /** Number of hits in our simulated response */
+    private static final int NUMBER_OF_HITS = 1_000_000;
+
+    /** How many characters to buffer before we start streaming (the default setting) */
+    private static final int STREAMING_BUFFER_SIZE = 65536;
+
+    /** Discards output, but records when the first byte was written. */
+    private static class DiscardingOutputStream extends OutputStream {
+
+        private final long startTime = System.nanoTime();
+
+        private long firstByteTime = -1;
+
+        private long bytesWritten = 0;
+
+        @Override
+        public void write(int b) {
+            write(null, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (firstByteTime < 0)
+                firstByteTime = System.nanoTime();
+            bytesWritten += len;
+        }
+
+        long timeToFirstByteMs() {
+            return (firstByteTime - startTime) / 1_000_000;
+        }
+    }
+
+    /** Generate a response like a (large) page of hits. */
+    private static void writeResponse(PrintWriter out) {
+        DataStream ds = DataStreamAbstract.create(DataFormat.JSON, out, false);
+        ds.startDocument(null);
+        ds.startMap().startEntry("hits").startList();
+        for (int i = 0; i < NUMBER_OF_HITS; i++) {
+            ds.startItem("hit").startMap()
+                    .entry("docPid", "doc" + (i / 100))
+                    .entry("start", i % 100 * 10)
+                    .entry("end", i % 100 * 10 + 2)
+                    .entry("left", "some words to the left of")
+                    .entry("match", "the match")
+                    .entry("right", "and some words to the right")
+                    .endMap().endItem();
+        }
+        ds.endList().endEntry().endMap();
+        ds.endDocument();
+        out.flush();
+    }
+
+    /** The way responses used to be sent: generate into a StringWriter, then send the resulting string. */
+    private static DiscardingOutputStream buffered() {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        StringWriter buf = new StringWriter();
+        writeResponse(new PrintWriter(buf));
+        try {
+            Writer realOut = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+            realOut.write(buf.toString());
+            realOut.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return os;
+    }
+
+    private static DiscardingOutputStream withResponseWriter(int bufferSize, boolean gzip) {
+        DiscardingOutputStream os = new DiscardingOutputStream();
+        StreamingResponseWriter responseWriter = new StreamingResponseWriter(StandardCharsets.UTF_8, bufferSize, gzip,
+                httpCode -> os);
+        writeResponse(new PrintWriter(responseWriter));
+        try {
+            responseWriter.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return os;
+    }
+
+    private static long heapPeakBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static void resetHeapPeak() {
+        System.gc();
+        for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+        }
+    }
+
+    private interface Request {
+        DiscardingOutputStream run();
+    }
+
+    private static void measure(String name, Request request) {
+        request.run(); // warm up
+        resetHeapPeak();
+        long before = heapPeakBytes();
+        long start = System.nanoTime();
+        DiscardingOutputStream os = request.run();
+        long totalMs = (System.nanoTime() - start) / 1_000_000;
+        long peakMb = (heapPeakBytes() - before) / 1_000_000;
+        System.out.printf("%-30s peak heap +%5d MB, first byte after %5d ms, total %5d ms, %d bytes%n", name,
+                peakMb, os.timeToFirstByteMs(), totalMs, os.bytesWritten);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Response with " + NUMBER_OF_HITS + " hits (JSON)");
+        measure("StringWriter, then send", CompareResponseBuffering::buffered);
+        measure("buffered (responseWriter)", () -> withResponseWriter(Integer.MAX_VALUE, false));
+        measure("streaming", () -> withResponseWriter(STREAMING_BUFFER_SIZE, false));
+        measure("streaming, gzip", () -> withResponseWriter(STREAMING_BUFFER_SIZE, true));
+    }
+}
@@ -151,11 +151,14 @@ public class BlackLabSearchComponent extends SearchComponent implements SolrCore
      * Process a request.
      * <p>
      * Called after previous (e.g. standard Solr) components have run.
+     * <p>
+     * May be called by many request threads at the same time. Shared state (the engine,
+     * index manager and cache in our SearchManager) takes care of its own synchronization.
      *
      * @param rb response builder where we can find request and results from previous components
      */
     @Override
-    public synchronized void process(ResponseBuilder rb) {
+    public void process(ResponseBuilder rb) {
         // Should we run at all?
         if (QueryParamsSolr.shouldRunComponent(rb.req.getParams())) {
             try {
@@ -170,9 +173,7 @@ public class BlackLabSearchComponent extends SearchComponent implements SolrCore
 
                 UserRequest userRequest = new UserRequestSolr(rb, this);
                 WebserviceParams params = userRequest.getParams(index, null);
-                if (!searchManager.getIndexManager().indexExists(params.getCorpusName())) {
-                    searchManager.getIndexManager().registerIndex(params.getCorpusName(), index);
-                }
+                searchManager.getIndexManager().registerIndexIfNotExists(params.getCorpusName(), index);
                 DataStream ds = new DataStreamSolr(rb.rsp).startDocument("");
 
                 // FIXME: Produce CSV output?
@@ -9,6 +9,8 @@ package org.ivdnt.blacklab.solr;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.solr.client.solrj.SolrClient;
@@ -100,4 +102,74 @@ public class TestSearchComponent {
         List<NamedList<Object>> hits = (List<NamedList<Object>>) blacklab.get("hits");
         Assert.assertEquals(21, hits.size());
     }
+
+    private static NamedList<Object> searchHits(String number, String cursor) throws SolrServerException, IOException {
+        ModifiableSolrParams solrParams = new ModifiableSolrParams();
+        solrParams.add(CommonParams.Q, "*:*");
+        solrParams.add("bl.op", "hits");
+        solrParams.add("bl.patt", "\"the\"");
+        solrParams.add("bl.number", number);
+        if (cursor != null)
+            solrParams.add("bl.cursor", cursor);
+        QueryResponse queryResponse = SolrTestServer.client().query(CORE_NAME, solrParams);
+        return (NamedList<Object>)queryResponse.getResponse().get(Constants.SOLR_BLACKLAB_SECTION_NAME);
+    }
+
+    private static String hitPosition(NamedList<Object> hit) {
+        return hit.get("docPid") + ":" + hit.get("start") + "-" + hit.get("end");
+    }
+
+    @Test
+    public void testSearchWithCursor() throws SolrServerException, IOException {
+        List<String> expected = new ArrayList<>();
+        for (NamedList<Object> hit: (List<NamedList<Object>>) searchHits("100", null).get("hits"))
+            expected.add(hitPosition(hit));
+
+        // Page through the hits, resuming each request after the cursor returned by the previous one
+        List<String> actual = new ArrayList<>();
+        String cursor = "start";
+        int requests = 0;
+        while (cursor != null) {
+            NamedList<Object> blacklab = searchHits("15", cursor);
+            for (NamedList<Object> hit: (List<NamedList<Object>>) blacklab.get("hits"))
+                actual.add(hitPosition(hit));
+            NamedList<Object> summary = (NamedList<Object>) blacklab.get("summary");
+            // Only the page is searched for, so the total isn't known
+            Assert.assertNull(summary.get("numberOfHits"));
+            cursor = (String) summary.get("nextCursor");
+            requests++;
+        }
+        Assert.assertEquals(2, requests);
+        Assert.assertEquals(21, actual.size());
+        // (unsorted hits from different index segments may be returned in a different order)
+        Collections.sort(expected);
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSortedWindowDoesntSortAllHits() throws SolrServerException, IOException {
+        ModifiableSolrParams solrParams = new ModifiableSolrParams();
+        solrParams.add(CommonParams.Q, "*:*");
+        solrParams.add("bl.op", "hits");
+        solrParams.add("bl.patt", "\"the\"");
+        solrParams.add("bl.sort", "hit:word");
+        solrParams.add("bl.number", "5");
+        NamedList<Object> blacklab = (NamedList<Object>) SolrTestServer.client().query(CORE_NAME, solrParams)
+                .getResponse().get(Constants.SOLR_BLACKLAB_SECTION_NAME);
+        Assert.assertEquals(5, ((List<?>) blacklab.get("hits")).size());
+        Assert.assertEquals(21L, ((NamedList<Object>) blacklab.get("summary")).get("numberOfHits"));
+
+        // The window selects the first sorted hits itself; the full sorted search should never run
+        solrParams = new ModifiableSolrParams();
+        solrParams.add(CommonParams.Q, "*:*");
+        solrParams.add("bl.op", "cache-info");
+        blacklab = (NamedList<Object>) SolrTestServer.client().query(CORE_NAME, solrParams)
+                .getResponse().get(Constants.SOLR_BLACKLAB_SECTION_NAME);
+        List<String> searchesInCache = new ArrayList<>();
+        for (NamedList<Object> entry: (List<NamedList<Object>>) blacklab.get("cacheContents"))
+            searchesInCache.add((String) entry.get("class"));
+        Assert.assertTrue(searchesInCache.contains("SearchHitsWindow"));
+        Assert.assertFalse(searchesInCache.contains("SearchHitsSorted"));
+    }
 }
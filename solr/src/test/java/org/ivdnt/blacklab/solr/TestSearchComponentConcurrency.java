@@ -0,0 +1,97 @@
+package org.ivdnt.blacklab.solr;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import nl.inl.blacklab.Constants;
+
+/**
+ * Many threads sending BlackLab requests to the same core at once.
+ *
+ * Checks that concurrent requests all produce correct results. (To measure throughput,
+ * see CompareSearchComponentThroughput in the tools module.)
+ */
+public class TestSearchComponentConcurrency {
+
+    static final String CORE_NAME = "test";
+
+    /** Number of requests each thread sends */
+    private static final int REQUESTS_PER_THREAD = 25;
+
+    /** Thread counts to test with */
+    private static final int[] THREAD_COUNTS = { 1, 2, 4, 8 };
+
+    @BeforeClass
+    public static void prepareClass() throws Exception {
+        Path resourcePath = Paths.get("src", "test", "resources", "solrDir");
+        Path existingIndexPath = Paths.get("src", "test", "resources", "existing-index");
+        SolrTestServer.createEmbeddedServer(CORE_NAME, resourcePath, existingIndexPath);
+        SolrTestServer.setLogLevel("WARN");
+    }
+
+    @AfterClass
+    public static void cleanUpClass() {
+        SolrTestServer.close();
+    }
+
+    private static int searchHits(String pattern) throws Exception {
+        ModifiableSolrParams solrParams = new ModifiableSolrParams();
+        solrParams.add(CommonParams.Q, "*:*");
+        solrParams.add("bl.op", "hits");
+        solrParams.add("bl.patt", pattern);
+        solrParams.add("bl.number", "100");
+        solrParams.add("bl.usecache", "false"); // make sure we actually search every time
+        QueryResponse queryResponse = SolrTestServer.client().query(CORE_NAME, solrParams);
+        @SuppressWarnings("unchecked")
+        NamedList<Object> blacklab = (NamedList<Object>) queryResponse.getResponse().get(Constants.SOLR_BLACKLAB_SECTION_NAME);
+        Assert.assertNull("Error response: " + blacklab.get("error"), blacklab.get("error"));
+        @SuppressWarnings("unchecked")
+        List<NamedList<Object>> hits = (List<NamedList<Object>>) blacklab.get("hits");
+        return hits.size();
+    }
+
+    @Test
+    public void testConcurrentSearches() throws Exception {
+        // Warm up (also opens the index)
+        int expectedHits = searchHits("\"the\"");
+        Assert.assertEquals(21, expectedHits);
+
+        for (int numberOfThreads: THREAD_COUNTS) {
+            ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+            try {
+                List<Callable<Integer>> tasks = new ArrayList<>();
+                for (int i = 0; i < numberOfThreads; i++) {
+                    tasks.add(() -> {
+                        int n = 0;
+                        for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                            Assert.assertEquals(expectedHits, searchHits("\"the\""));
+                            n++;
+                        }
+                        return n;
+                    });
+                }
+                int requests = 0;
+                for (Future<Integer> f: executor.invokeAll(tasks))
+                    requests += f.get(); // rethrows any failure
+                Assert.assertEquals(numberOfThreads * REQUESTS_PER_THREAD, requests);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package nl.inl.blacklab.performance;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
+import nl.inl.blacklab.codec.BlackLab40StoredFieldsFormat;
+import nl.inl.blacklab.codec.ContentStoreBlockCodec;
 import nl.inl.blacklab.contentstore.ContentStoreExternal;
 import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
@@ -18,7 +23,22 @@ public class BatchContentStore {
 
     private static final int SNIPPET_LENGTH_CHARS = 100;
 
-    public static void main(String[] args) throws ErrorOpeningIndex {
+    /** Codecs to compare in -codecs mode */
+    private static final List<String> CODECS_TO_COMPARE = List.of("none", "zlib", "lz4");
+
+    /** How many times to decode all blocks in -codecs mode (the first rounds are not timed, to warm up) */
+    private static final int CODEC_DECODE_ROUNDS = 20;
+
+    public static void main(String[] args) throws ErrorOpeningIndex, IOException {
+
+        if (args.length > 0 && args[0].equals("-codecs")) {
+            if (args.length != 2) {
+                usage();
+                return;
+            }
+            compareCodecs(new File(args[1]));
+            return;
+        }
 
         int fileArgNumber = 0;
         File indexDir = null;
@@ -148,6 +168,78 @@ public class BatchContentStore {
         return t.elapsed();
     }
 
+    /**
+     * Compare the content store block codecs on a set of (e.g. XML) files.
+     *
+     * Splits the files into blocks like the integrated content store does, encodes them using
+     * each codec and reports the size and the encode and decode throughput.
+     *
+     * @param fileOrDir file or directory (processed recursively) with input files
+     */
+    public static void compareCodecs(File fileOrDir) throws IOException {
+        List<String> documents = new ArrayList<>();
+        if (fileOrDir.isDirectory()) {
+            FileUtil.processTree(fileOrDir, "*", true, new FileUtil.FileTask() {
+                @Override
+                public void process(File f) {
+                    try {
+                        documents.add(Files.readString(f.toPath(), StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw BlackLabRuntimeException.wrap(e);
+                    }
+                }
+            });
+        } else {
+            documents.add(Files.readString(fileOrDir.toPath(), StandardCharsets.UTF_8));
+        }
+        long totalBytes = documents.stream().mapToLong(d -> d.getBytes(StandardCharsets.UTF_8).length).sum();
+        System.err.println("Read " + documents.size() + " documents, " + totalBytes + " bytes");
+
+        int blockSizeChars = BlackLab40StoredFieldsFormat.DEFAULT_BLOCK_SIZE_CHARS;
+        System.out.println("Codec\tSizeBytes\tRatio\tEncodeMBps\tDecodeMBps");
+        for (String codecName: CODECS_TO_COMPARE) {
+            ContentStoreBlockCodec codec = ContentStoreBlockCodec.fromName(codecName);
+
+            // Encode all documents in blocks
+            List<byte[]> blocks = new ArrayList<>();
+            long encodedBytes = 0;
+            Timer t = new Timer();
+            try (ContentStoreBlockCodec.Encoder encoder = codec.getEncoder()) {
+                for (String document: documents) {
+                    for (int offset = 0; offset < document.length(); offset += blockSizeChars) {
+                        byte[] block = encoder.encode(document, offset, Math.min(blockSizeChars, document.length() - offset));
+                        blocks.add(block);
+                        encodedBytes += block.length;
+                    }
+                }
+            }
+            double encodeMBps = megabytesPerSecond(totalBytes, t.elapsed());
+
+            // Decode all blocks several times
+            byte[] buffer = new byte[blockSizeChars * 4 + 1024];
+            int warmupRounds = CODEC_DECODE_ROUNDS / 4;
+            for (int round = 0; round < CODEC_DECODE_ROUNDS; round++) {
+                if (round == warmupRounds)
+                    t.reset();
+                try (ContentStoreBlockCodec.Decoder decoder = codec.getDecoder()) {
+                    for (byte[] block: blocks) {
+                        if (decoder.decode(block, 0, block.length, buffer, 0, buffer.length) < 0)
+                            throw new BlackLabRuntimeException("Decode buffer too small");
+                    }
+                }
+            }
+            long decodeMs = t.elapsed();
+            double decodeMBps = megabytesPerSecond(totalBytes * (CODEC_DECODE_ROUNDS - warmupRounds), decodeMs);
+
+            System.out.printf("%s\t%d\t%.3f\t%.1f\t%.1f%n", codecName, encodedBytes,
+                    (double) encodedBytes / totalBytes, encodeMBps, decodeMBps);
+        }
+    }
+
+    private static double megabytesPerSecond(long bytes, long ms) {
+        return bytes / 1_000_000.0 / Math.max(1, ms) * 1000;
+    }
+
     private static void usage() {
         System.err.println("\nUsage: " + BatchContentStore.class.getSimpleName()
                 + " <contentStoreDir> <inputfile>\n\n"
@@ -160,6 +252,10 @@ public class BatchContentStore {
                 // + "Options:\n"
                 // + "-t do not determine total number of hits\n"
                 // + "\n"
-                + "Output:\n" + "<first> <number> <skip> <snippets>\t<searchTimeMs>\n");
+                + "Output:\n" + "<first> <number> <skip> <snippets>\t<searchTimeMs>\n"
+                + "\n"
+                + "Alternative usage: " + BatchContentStore.class.getSimpleName() + " -codecs <fileOrDir>\n\n"
+                + "Compares the integrated content store's block codecs (size, encode and decode speed)\n"
+                + "on the specified file, or all files in the specified directory (e.g. your XML input files).\n");
     }
 }
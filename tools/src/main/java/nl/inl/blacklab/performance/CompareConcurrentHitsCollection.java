@@ -0,0 +1,105 @@
+package nl.inl.blacklab.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import nl.inl.blacklab.search.results.HitsInternal;
+import nl.inl.blacklab.search.results.HitsInternalMutable;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of collecting hits from several threads into one HitsInternal,
+ * the way SpansReaders do: each thread collects a small batch, then adds it to
+ * the global results.
+ *
+ * Also measures reading the results while they're being collected, which is
+ * what happens when a client is paging through a running search.
+ *
+ * Not representative of real-world usage (threads do nothing but add hits).
+ */
+public class CompareConcurrentHitsCollection {
+
+    public static final long HITS_PER_THREAD = 5_000_000;
+
+    /** Same as SpansReader.ADD_HITS_TO_GLOBAL_THRESHOLD */
+    public static final int BATCH_SIZE = 100;
+
+    static void time(String message, Runnable r) {
+        Timer t = new Timer();
+        r.run();
+        if (message != null)
+            System.out.println(message + ": " + t.elapsed() + "ms");
+    }
+
+    static void fill(HitsInternalMutable hits, int thread) {
+        HitsInternalMutable batch = HitsInternal.create(BATCH_SIZE, false, false);
+        for (int i = 0; i < HITS_PER_THREAD; i++) {
+            batch.add(thread, i, i + 1);
+            if (batch.size() >= BATCH_SIZE) {
+                hits.addAll(batch);
+                batch.clear();
+            }
+        }
+        hits.addAll(batch);
+    }
+
+    static void read(HitsInternalMutable hits, long total) {
+        // Keep reading the last hit until all hits are in
+        long n = 0;
+        while (hits.size() < total) {
+            long size = hits.size();
+            if (size > 0)
+                n += hits.doc(size - 1);
+            Thread.yield();
+        }
+        if (n == -1)
+            System.out.println("(never happens, just to make sure the loop isn't optimized away)");
+    }
+
+    static void test(String msg, int numberOfThreads, boolean withReader, Supplier<HitsInternalMutable> factory) {
+        HitsInternalMutable hits = factory.get();
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads + 1);
+        try {
+            time(msg, () -> {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < numberOfThreads; t++) {
+                    int thread = t;
+                    futures.add(executor.submit(() -> fill(hits, thread)));
+                }
+                if (withReader)
+                    futures.add(executor.submit(() -> read(hits, HITS_PER_THREAD * numberOfThreads)));
+                try {
+                    for (Future<?> f: futures)
+                        f.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static void testAll(String prefix, int numberOfThreads, boolean withReader) {
+        String name = prefix == null ? null : prefix + " " + numberOfThreads + " THREADS" + (withReader ? " + READER" : "");
+        test(name == null ? null : name + " LOCKED    ", numberOfThreads, withReader, () -> HitsInternal.create(-1, true, true));
+        test(name == null ? null : name + " CONCURRENT", numberOfThreads, withReader, HitsInternal::createConcurrent);
+    }
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        time("WARMUP", () -> testAll(null, 2, true));
+
+        for (int n = 1; n <= maxThreads; n *= 2) {
+            testAll("FILL", n, false);
+            testAll("FILL", n, true);
+        }
+    }
+
+}
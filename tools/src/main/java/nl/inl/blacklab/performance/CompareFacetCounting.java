@@ -0,0 +1,81 @@
+package nl.inl.blacklab.performance;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.DocProperty;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.DocGroup;
+import nl.inl.blacklab.search.results.DocGroups;
+import nl.inl.blacklab.search.results.DocResults;
+import nl.inl.blacklab.search.results.Facets;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of determining facets by grouping the documents once per facet
+ * versus counting all facets together (see {@link Facets}).
+ *
+ * Facets are specified like the BLS facets parameter, e.g. "field:author,field:year".
+ */
+public class CompareFacetCounting {
+
+    /** How many times to determine the facets for timing (after warmup) */
+    private static final int ITERATIONS = 3;
+
+    private static void groupPerFacet(DocResults docs, List<DocProperty> facets) {
+        for (DocProperty facet: facets)
+            docs.group(facet, 0);
+    }
+
+    /** Check that both methods produce the same counts. */
+    private static void checkSameCounts(DocResults docs, Facets facets) {
+        for (Map.Entry<DocProperty, DocGroups> e: facets.countsPerFacet().entrySet()) {
+            DocGroups expected = docs.group(e.getKey(), 0);
+            DocGroups actual = e.getValue();
+            if (expected.size() != actual.size())
+                throw new IllegalStateException("Facet " + e.getKey().name() + ": different number of values");
+            for (DocGroup group: expected) {
+                DocGroup other = actual.get(group.identity());
+                if (other == null || other.size() != group.size() || other.totalTokens() != group.totalTokens())
+                    throw new IllegalStateException("Facet " + e.getKey().name() + ": value " + group.identity() + " differs");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws ErrorOpeningIndex, InvalidQuery {
+        if (args.length != 3) {
+            System.err.println("Usage: " + CompareFacetCounting.class.getSimpleName()
+                    + " <indexdir> <cql-query> <facets>");
+            return;
+        }
+        try (BlackLabIndex index = BlackLab.open(new File(args[0]))) {
+            DocResults docs = index.find(CorpusQueryLanguageParser.parse(args[1]).toQuery(QueryInfo.create(index)), null)
+                    .perDocResults(Results.NO_LIMIT);
+            List<DocProperty> facets = DocProperty.deserialize(index, args[2]).propsList();
+            System.out.println(args[1] + ": " + docs.size() + " documents, " + facets.size() + " facets");
+
+            groupPerFacet(docs, facets); // warmup
+            Timer t = new Timer();
+            for (int i = 0; i < ITERATIONS; i++)
+                groupPerFacet(docs, facets);
+            System.out.printf("  %-20s %8.1f ms%n", "group per facet", (double) t.elapsed() / ITERATIONS);
+
+            Facets result = new Facets(docs, facets); // warmup
+            t = new Timer();
+            for (int i = 0; i < ITERATIONS; i++)
+                result = new Facets(docs, facets);
+            System.out.printf("  %-20s %8.1f ms%n", "count together", (double) t.elapsed() / ITERATIONS);
+            for (Map.Entry<DocProperty, Long> e: result.timingsPerFacet().entrySet())
+                System.out.printf("    %-18s %8d ms%n", e.getKey().name(), e.getValue());
+
+            checkSameCounts(docs, result);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nl.inl.blacklab.performance;
+
+import java.io.File;
+
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.HitGroup;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of grouping hits by getting a PropertyValue for each hit
+ * (single-threaded) versus grouping on primitive group keys in parallel.
+ *
+ * Groups the hits for a query by each of the specified properties (serialized
+ * like the BLS group parameter, e.g. "hit:lemma:i" or "wordleft:word").
+ * Timing includes retrieving the contexts needed for grouping, which is the same
+ * for both methods.
+ */
+public class CompareHitGrouping {
+
+    /** How many times to group for timing (after warmup) */
+    private static final int ITERATIONS = 3;
+
+    private static HitGroups time(Hits hits, HitProperty groupBy, boolean useGroupKeys) {
+        int minHitsBefore = BlackLab.config().getSearch().getParallelGroupingMinHits();
+        BlackLab.config().getSearch().setParallelGroupingMinHits(useGroupKeys ? 0 : Integer.MAX_VALUE);
+        try {
+            HitGroups groups = hits.group(groupBy, Results.NO_LIMIT); // warmup
+            Timer t = new Timer();
+            for (int i = 0; i < ITERATIONS; i++)
+                groups = hits.group(groupBy, Results.NO_LIMIT);
+            System.out.printf("  %-20s %8.1f ms (%d groups)%n", useGroupKeys ? "group keys, parallel" : "property values",
+                    (double) t.elapsed() / ITERATIONS, groups.size());
+            return groups;
+        } finally {
+            BlackLab.config().getSearch().setParallelGroupingMinHits(minHitsBefore);
+        }
+    }
+
+    /** Check that both methods produce the same groups. */
+    private static void checkSameGroups(HitGroups a, HitGroups b) {
+        if (a.size() != b.size())
+            throw new IllegalStateException("Different number of groups: " + a.size() + " vs. " + b.size());
+        for (HitGroup groupA: a) {
+            HitGroup groupB = b.get(groupA.identity());
+            if (groupB == null || groupB.size() != groupA.size())
+                throw new IllegalStateException("Group " + groupA.identity() + " differs");
+        }
+    }
+
+    public static void main(String[] args) throws ErrorOpeningIndex, InvalidQuery {
+        if (args.length < 3) {
+            System.err.println("Usage: " + CompareHitGrouping.class.getSimpleName()
+                    + " <indexdir> <cql-query> <groupprop1> [<groupprop2> ...]");
+            return;
+        }
+        try (BlackLabIndex index = BlackLab.open(new File(args[0]))) {
+            Hits hits = index.find(CorpusQueryLanguageParser.parse(args[1]).toQuery(QueryInfo.create(index)), null);
+            System.out.println(args[1] + ": " + hits.size() + " hits");
+            for (int i = 2; i < args.length; i++) {
+                HitProperty groupBy = HitProperty.deserialize(hits, args[i]);
+                System.out.println(" group by " + args[i]);
+                HitGroups groupsPropertyValues = time(hits, groupBy, false);
+                HitGroups groupsKeys = time(hits, groupBy, true);
+                checkSameGroups(groupsPropertyValues, groupsKeys);
+            }
+        }
+    }
+}
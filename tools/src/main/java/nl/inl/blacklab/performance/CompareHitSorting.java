@@ -0,0 +1,73 @@
+package nl.inl.blacklab.performance;
+
+import java.io.File;
+
+import nl.inl.blacklab.exceptions.ErrorOpeningIndex;
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.HitProperty;
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of sorting hits using only the sort property's comparator
+ * (single-threaded) versus extracting sort keys and sorting in parallel.
+ *
+ * Sorts the hits for a query by each of the specified sort properties (serialized
+ * like the BLS sort parameter, e.g. "left:word:i" or "hit:lemma,right:word").
+ * Timing includes retrieving the contexts needed for sorting, which is the same
+ * for both methods.
+ */
+public class CompareHitSorting {
+
+    /** How many times to sort for timing (after warmup) */
+    private static final int ITERATIONS = 3;
+
+    private static Hits time(Hits hits, HitProperty sortBy, boolean useSortKeys) {
+        int minHitsBefore = BlackLab.config().getSearch().getParallelSortMinHits();
+        BlackLab.config().getSearch().setParallelSortMinHits(useSortKeys ? 0 : Integer.MAX_VALUE);
+        try {
+            Hits sorted = hits.sort(sortBy); // warmup
+            Timer t = new Timer();
+            for (int i = 0; i < ITERATIONS; i++)
+                sorted = hits.sort(sortBy);
+            System.out.printf("  %-20s %8.1f ms%n", useSortKeys ? "sort keys, parallel" : "comparator",
+                    (double) t.elapsed() / ITERATIONS);
+            return sorted;
+        } finally {
+            BlackLab.config().getSearch().setParallelSortMinHits(minHitsBefore);
+        }
+    }
+
+    /** Check that both sorts put hits with the same property values in the same order. */
+    private static void checkSameOrder(HitProperty sortBy, Hits a, Hits b) {
+        HitProperty pa = sortBy.copyWith(a);
+        HitProperty pb = sortBy.copyWith(b);
+        for (long i = 0; i < a.size(); i++) {
+            if (!pa.get(i).equals(pb.get(i)))
+                throw new IllegalStateException("Sort results differ at hit " + i + ": " + pa.get(i) + " vs. " + pb.get(i));
+        }
+    }
+
+    public static void main(String[] args) throws ErrorOpeningIndex, InvalidQuery {
+        if (args.length < 3) {
+            System.err.println("Usage: " + CompareHitSorting.class.getSimpleName()
+                    + " <indexdir> <cql-query> <sortprop1> [<sortprop2> ...]");
+            return;
+        }
+        try (BlackLabIndex index = BlackLab.open(new File(args[0]))) {
+            Hits hits = index.find(CorpusQueryLanguageParser.parse(args[1]).toQuery(QueryInfo.create(index)), null);
+            System.out.println(args[1] + ": " + hits.size() + " hits");
+            for (int i = 2; i < args.length; i++) {
+                HitProperty sortBy = HitProperty.deserialize(hits, args[i]);
+                System.out.println(" sort by " + args[i]);
+                Hits sortedComparator = time(hits, sortBy, false);
+                Hits sortedKeys = time(hits, sortBy, true);
+                checkSameOrder(sortBy, sortedComparator, sortedKeys);
+            }
+        }
+    }
+}
@@ -57,12 +57,14 @@ public class CompareHitsInternalImpls {
             test(null, HitsInternal.create(-1, true,  false));
             test(null, HitsInternal.create(-1, false,  true));
             test(null, HitsInternal.create(-1, true,   true));
+            test(null, HitsInternal.createConcurrent());
         });
 
         test("SMALL UNLOCKED", HitsInternal.create(-1, false, false));
         test("HUGE  UNLOCKED", HitsInternal.create(-1, true,  false));
         test("SMALL LOCKED  ", HitsInternal.create(-1, false,  true));
         test("HUGE  LOCKED  ", HitsInternal.create(-1, true,   true));
+        test("CONCURRENT    ", HitsInternal.createConcurrent());
     }
 
 }
@@ -0,0 +1,139 @@
+package nl.inl.blacklab.performance;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.inl.blacklab.exceptions.InvalidInputFormatConfig;
+import nl.inl.blacklab.indexers.config.ConfigProcessStep;
+import nl.inl.blacklab.indexers.config.ProcessPipeline;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of applying an annotation's processing steps to each token
+ * by interpreting the configured steps (looking up the method and parameters and
+ * compiling the replace regexes for every value, as DocIndexerConfig used to) versus
+ * using a compiled {@link ProcessPipeline}.
+ *
+ * Only measures the processing steps, not the rest of indexing.
+ */
+public class CompareProcessSteps {
+
+    /** Number of tokens to process per test */
+    private static final int TOKENS = 2_000_000;
+
+    /** Number of different token values */
+    private static final int VOCABULARY_SIZE = 10_000;
+
+    private static ConfigProcessStep step(String method, String... params) {
+        ConfigProcessStep step = new ConfigProcessStep();
+        step.setMethod(method);
+        for (int i = 0; i < params.length; i += 2)
+            step.addParam(params[i], params[i + 1]);
+        return step;
+    }
+
+    /** A typical processing chain for a part of speech annotation. */
+    private static final List<ConfigProcessStep> PROCESS = List.of(
+            step("strip", "chars", " *"),
+            step("replace", "find", "^([A-Z]+)-([A-Z]+)", "replace", "$1_$2"),
+            step("replace", "find", "\\s+", "replace", " "),
+            step("parsePos", "field", "_"));
+
+    /** Compiled version of PROCESS, as kept by the config objects */
+    private static final ProcessPipeline PIPELINE = new ProcessPipeline(PROCESS);
+
+    /** Same as DocIndexerConfig.MAIN_POS_PATTERN, which was already precompiled */
+    private static final Pattern MAIN_POS_PATTERN = Pattern.compile("^([^(]+)(\\s*\\(.*\\))?$");
+
+    private static String[] createTokens() {
+        Random random = new Random(123);
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        String[] pos = { "NOU-C", "NOU-P", "VRB", "AA", "ADP", "PD", "CONJ" };
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = " " + pos[random.nextInt(pos.length)] + "(feat" + i + "=x,  number=sg)* ";
+        }
+        String[] tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++)
+            tokens[i] = vocabulary[random.nextInt(VOCABULARY_SIZE)];
+        return tokens;
+    }
+
+    /**
+     * Apply the steps the way DocIndexerConfig.processString() did before they were compiled.
+     *
+     * Copied from the old DocIndexerConfig code (processString(), opReplace(), opStrip() and
+     * opParsePartOfSpeech()), but only supports the methods we use in this test.
+     */
+    private static String interpret(String result, List<ConfigProcessStep> process) {
+        for (ConfigProcessStep step : process) {
+            String method = step.getMethod();
+            Map<String, String> param = step.getParam();
+            switch (method) {
+            case "replace":
+                if (param.getOrDefault("keep", "replaced").equals("all"))
+                    throw new UnsupportedOperationException();
+                result = opReplace(result, param);
+                break;
+            case "strip":
+                result = StringUtils.strip(result, param.getOrDefault("chars", " "));
+                break;
+            case "parsePos": {
+                String field = param.getOrDefault("field", "_");
+                if (!field.equals("_"))
+                    throw new UnsupportedOperationException();
+                result = MAIN_POS_PATTERN.matcher(result.trim()).replaceAll("$1");
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unknown processing step method " + method);
+            }
+        }
+        return result;
+    }
+
+    private static String opReplace(String result, Map<String, String> param) {
+        String find = param.get("find");
+        String replace = param.get("replace");
+        if (find == null || replace == null)
+            throw new InvalidInputFormatConfig("replace needs parameters find and replace");
+        try {
+            result = result.replaceAll(find, replace);
+        } catch (PatternSyntaxException e) {
+            throw new InvalidInputFormatConfig("Syntax error in replace regex: " + find);
+        }
+        return result;
+    }
+
+    private static void time(String message, String[] tokens, boolean compiled) {
+        // Warm up, then time
+        long hash = 0;
+        for (int run = 0; run < 2; run++) {
+            Timer t = new Timer();
+            for (String token: tokens) {
+                String result = compiled ? PIPELINE.apply(null, token) : interpret(token, PROCESS);
+                hash += result.hashCode();
+            }
+            if (run == 1) {
+                long ms = Math.max(1, t.elapsed());
+                System.out.printf("%-12s %8d ms %12d tokens/s  (hash %d)%n", message, ms, tokens.length * 1000L / ms,
+                        hash);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        String[] tokens = createTokens();
+        String expected = interpret(tokens[0], PROCESS);
+        String actual = PIPELINE.apply(null, tokens[0]);
+        if (!expected.equals(actual))
+            throw new IllegalStateException("Different results: " + expected + " vs. " + actual);
+        time("interpreted", tokens, false);
+        time("compiled", tokens, true);
+    }
+
+}
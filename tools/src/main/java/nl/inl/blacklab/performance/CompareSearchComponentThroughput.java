@@ -0,0 +1,104 @@
+package nl.inl.blacklab.performance;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nl.inl.util.Timer;
+
+/**
+ * Measure throughput of BlackLab's Solr search component with different numbers
+ * of concurrent clients.
+ *
+ * Sends hits requests for the same pattern to a running Solr core, with the
+ * BlackLab cache disabled so every request actually searches, and reports the
+ * number of requests per second for each number of threads.
+ *
+ * (TestSearchComponentConcurrency in the solr module checks that concurrent
+ * requests produce correct results; this only measures how fast they are.)
+ */
+public class CompareSearchComponentThroughput {
+
+    /** Thread counts to test with */
+    private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16 };
+
+    /** Number of requests each thread sends */
+    private static final int REQUESTS_PER_THREAD = 200;
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+
+    private static void usage() {
+        System.out.println("Usage:\n" +
+                "  CompareSearchComponentThroughput <coreUrl> <pattern>\n" +
+                "\n" +
+                "coreUrl: URL of the Solr core, e.g. http://localhost:8983/solr/test\n" +
+                "pattern: CorpusQL pattern to search for, e.g. '\"the\"'");
+    }
+
+    private static void search(URI uri) {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200)
+                throw new RuntimeException("Request failed with status " + response.statusCode() + ": " + response.body());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void time(URI uri, int numberOfThreads) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < numberOfThreads; i++) {
+                tasks.add(() -> {
+                    for (int j = 0; j < REQUESTS_PER_THREAD; j++)
+                        search(uri);
+                    return null;
+                });
+            }
+            Timer t = new Timer();
+            for (Future<Void> f: executor.invokeAll(tasks))
+                f.get(); // rethrows any failure
+            long ms = Math.max(1, t.elapsed());
+            long requests = (long) numberOfThreads * REQUESTS_PER_THREAD;
+            System.out.printf("%2d threads: %6d requests in %6d ms, %8.1f requests/s%n", numberOfThreads, requests,
+                    ms, requests * 1000.0 / ms);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if (args.length != 2) {
+            usage();
+            return;
+        }
+        String coreUrl = args[0].replaceAll("/+$", "");
+        String pattern = URLEncoder.encode(args[1], StandardCharsets.UTF_8);
+        URI uri = URI.create(coreUrl + "/select?q=*:*&wt=json&bl.op=hits&bl.number=100&bl.usecache=false&bl.patt=" +
+                pattern);
+
+        // Warm up (also opens the index)
+        for (int i = 0; i < REQUESTS_PER_THREAD; i++)
+            search(uri);
+
+        for (int numberOfThreads: THREAD_COUNTS)
+            time(uri, numberOfThreads);
+    }
+
+}
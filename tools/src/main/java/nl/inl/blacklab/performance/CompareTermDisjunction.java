@@ -0,0 +1,173 @@
+package nl.inl.blacklab.performance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+
+import nl.inl.blacklab.search.BlackLab;
+import nl.inl.blacklab.search.lucene.BLSpanOrQuery;
+import nl.inl.blacklab.search.lucene.BLSpanQuery;
+import nl.inl.blacklab.search.lucene.BLSpanTermQuery;
+import nl.inl.blacklab.search.lucene.BLSpanWeight;
+import nl.inl.blacklab.search.lucene.BLSpans;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of the two ways BLSpanOrQuery can resolve a large disjunction
+ * of terms (e.g. an expanded wildcard or regex): merging the term postings with
+ * priority queues, or reading all positions into a sorted buffer.
+ *
+ * Uses synthetic in-memory indexes with Zipf-distributed terms, so no disk I/O is involved.
+ */
+public class CompareTermDisjunction {
+
+    /** Field we index our synthetic documents in */
+    private static final String FIELD = "word";
+
+    /** Number of different terms in our synthetic indexes */
+    private static final int VOCABULARY_SIZE = 50_000;
+
+    /** How many times to run each query for timing (after warmup) */
+    private static final int ITERATIONS = 10;
+
+    /** Cumulative Zipf distribution over the vocabulary, for generating terms */
+    private static final double[] ZIPF_CDF = zipfCdf();
+
+    private static double[] zipfCdf() {
+        double[] cdf = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            sum += 1.0 / (i + 1);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < VOCABULARY_SIZE; i++)
+            cdf[i] /= sum;
+        return cdf;
+    }
+
+    private static String term(int rank) {
+        return "w" + rank;
+    }
+
+    private static Directory createIndex(int numberOfDocs, int docLength) throws IOException {
+        Random random = new Random(123);
+        Directory dir = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < numberOfDocs; i++) {
+                text.setLength(0);
+                for (int j = 0; j < docLength; j++) {
+                    int rank = Arrays.binarySearch(ZIPF_CDF, random.nextDouble());
+                    text.append(term(rank < 0 ? Math.min(-rank - 1, VOCABULARY_SIZE - 1) : rank)).append(' ');
+                }
+                Document doc = new Document();
+                doc.add(new TextField(FIELD, text.toString(), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        return dir;
+    }
+
+    /**
+     * Create a disjunction of terms from the vocabulary.
+     *
+     * @param firstRank rank of the most frequent term to include
+     * @param numberOfTerms number of terms to include (every other term from firstRank)
+     * @return the query
+     */
+    private static BLSpanOrQuery disjunction(int firstRank, int numberOfTerms) {
+        BLSpanQuery[] clauses = new BLSpanQuery[numberOfTerms];
+        for (int i = 0; i < numberOfTerms; i++)
+            clauses[i] = new BLSpanTermQuery(null, new Term(FIELD, term(firstRank + i * 2)));
+        return new BLSpanOrQuery(clauses);
+    }
+
+    /**
+     * Find all hits for the query.
+     *
+     * @return number of hits found
+     */
+    private static long countHits(IndexReader reader, BLSpanQuery query) {
+        try {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            BLSpanWeight weight = query.createWeight(searcher, ScoreMode.COMPLETE_NO_SCORES, 1.0f);
+            long n = 0;
+            for (LeafReaderContext lrc: reader.leaves()) {
+                BLSpans spans = weight.getSpans(lrc, SpanWeight.Postings.POSITIONS);
+                if (spans == null)
+                    continue;
+                while (spans.nextDoc() != Spans.NO_MORE_DOCS) {
+                    while (spans.nextStartPosition() != Spans.NO_MORE_POSITIONS)
+                        n++;
+                }
+            }
+            return n;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long time(IndexReader reader, BLSpanQuery query, boolean sortedBuffer) {
+        int minTermsBefore = BlackLab.config().getSearch().getTermDisjunctionMinTerms();
+        long maxPositionsBefore = BlackLab.config().getSearch().getTermDisjunctionMaxPositions();
+        BlackLab.config().getSearch().setTermDisjunctionMinTerms(sortedBuffer ? 1 : Integer.MAX_VALUE);
+        BlackLab.config().getSearch().setTermDisjunctionMaxPositions(Long.MAX_VALUE);
+        try {
+            // Warm up, then time
+            long hits = 0;
+            for (int i = 0; i < ITERATIONS / 2; i++)
+                hits = countHits(reader, query);
+            Timer t = new Timer();
+            for (int i = 0; i < ITERATIONS; i++)
+                countHits(reader, query);
+            System.out.printf("  %-14s %10d hits %8.1f ms%n", sortedBuffer ? "sorted buffer" : "priority queue",
+                    hits, (double) t.elapsed() / ITERATIONS);
+            return hits;
+        } finally {
+            BlackLab.config().getSearch().setTermDisjunctionMinTerms(minTermsBefore);
+            BlackLab.config().getSearch().setTermDisjunctionMaxPositions(maxPositionsBefore);
+        }
+    }
+
+    private static void test(int numberOfDocs, int docLength) throws IOException {
+        System.out.println("Index with " + numberOfDocs + " docs of " + docLength + " tokens");
+        try (Directory dir = createIndex(numberOfDocs, docLength); IndexReader reader = DirectoryReader.open(dir)) {
+            int[][] disjunctions = { { 100, 20 }, { 100, 1000 }, { 1000, 10_000 }, { 10, 20_000 } };
+            for (int[] d: disjunctions) {
+                int firstRank = d[0], numberOfTerms = d[1];
+                System.out.println(" " + numberOfTerms + " terms, starting at rank " + firstRank);
+                BLSpanOrQuery query = disjunction(firstRank, numberOfTerms);
+                long hitsQueue = time(reader, query, false);
+                long hitsBuffer = time(reader, query, true);
+                if (hitsQueue != hitsBuffer)
+                    throw new IllegalStateException("Different number of hits: " + hitsQueue + " vs. " + hitsBuffer);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        test(1_000, 1_000);
+        test(5_000, 2_000);
+        test(200, 50_000);
+    }
+
+}
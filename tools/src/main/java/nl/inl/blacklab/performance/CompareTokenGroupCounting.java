@@ -0,0 +1,144 @@
+package nl.inl.blacklab.performance;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+
+import nl.inl.blacklab.search.results.TokenGroupCounts;
+
+/**
+ * Compare performance of counting token frequency groups using {@link TokenGroupCounts}
+ * (as HitGroupsTokenFrequencies does) versus creating a key object for each token.
+ *
+ * Uses a synthetic corpus: documents with a year and Zipf-distributed tokens.
+ */
+public class CompareTokenGroupCounting {
+
+    private static final int NUMBER_OF_DOCS = 5_000;
+
+    private static final int AVERAGE_DOC_LENGTH = 2_000;
+
+    private static final int VOCABULARY_SIZE = 200_000;
+
+    private static final int NUMBER_OF_YEARS = 50;
+
+    private static final int NUMBER_OF_RUNS = 3;
+
+    /** Group key as it was before: one object per token. */
+    private static class GroupIdHash {
+        private final int[] tokenIds;
+        private final int[] tokenSortPositions;
+        private final Object[] metadataValues;
+        private final int hash;
+
+        public GroupIdHash(int[] tokenIds, int[] tokenSortPositions, Object[] metadataValues, int metadataValuesHash) {
+            this.tokenIds = tokenIds;
+            this.tokenSortPositions = tokenSortPositions;
+            this.metadataValues = metadataValues;
+            hash = Arrays.hashCode(tokenSortPositions) ^ metadataValuesHash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+        @Override
+        public boolean equals(Object obj) {
+            return ((GroupIdHash) obj).hash == this.hash &&
+                    Arrays.equals(((GroupIdHash) obj).tokenSortPositions, this.tokenSortPositions) &&
+                    Arrays.deepEquals(((GroupIdHash) obj).metadataValues, this.metadataValues);
+        }
+    }
+
+    private static final class OccurrenceCounts {
+        public volatile long hits;
+        public volatile int docs;
+
+        public OccurrenceCounts(long hits, int docs) {
+            this.hits = hits;
+            this.docs = docs;
+        }
+    }
+
+    private static int[][] docs;
+
+    private static int[] docYears;
+
+    public static void main(String[] args) {
+        createCorpus();
+        for (int run = 0; run < NUMBER_OF_RUNS; run++) {
+            long start = System.nanoTime();
+            int groupsBefore = groupWithObjectKeys();
+            long msBefore = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int groupsAfter = groupWithTokenGroupCounts();
+            long msAfter = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("Run %d: object keys %d ms (%d groups), TokenGroupCounts %d ms (%d groups)%n",
+                    run + 1, msBefore, groupsBefore, msAfter, groupsAfter);
+        }
+    }
+
+    private static void createCorpus() {
+        Random random = new Random(42);
+        docs = new int[NUMBER_OF_DOCS][];
+        docYears = new int[NUMBER_OF_DOCS];
+        for (int i = 0; i < NUMBER_OF_DOCS; i++) {
+            int length = random.nextInt(AVERAGE_DOC_LENGTH * 2);
+            docs[i] = new int[length];
+            for (int j = 0; j < length; j++) {
+                // Approximately Zipf-distributed term ids
+                docs[i][j] = (int) Math.min(VOCABULARY_SIZE - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY_SIZE)) - 1);
+            }
+            docYears[i] = 1950 + random.nextInt(NUMBER_OF_YEARS);
+        }
+    }
+
+    /** Group by token and year, creating a key object for every token */
+    private static int groupWithObjectKeys() {
+        Map<GroupIdHash, OccurrenceCounts> globalOccurrences = new ConcurrentHashMap<>();
+        IntStream.range(0, NUMBER_OF_DOCS).parallel().forEach(doc -> {
+            Object[] metadataValues = new Object[] { docYears[doc] };
+            int metadataValuesHash = Arrays.hashCode(metadataValues);
+            Map<GroupIdHash, OccurrenceCounts> occsInDoc = new HashMap<>();
+            for (int termId: docs[doc]) {
+                GroupIdHash groupId = new GroupIdHash(new int[] { termId }, new int[] { termId }, metadataValues, metadataValuesHash);
+                OccurrenceCounts occ = occsInDoc.get(groupId);
+                if (occ == null)
+                    occsInDoc.put(groupId, new OccurrenceCounts(1, 1));
+                else
+                    occ.hits++;
+            }
+            occsInDoc.forEach((groupId, occ) -> globalOccurrences.compute(groupId, (__, globalGroup) -> {
+                if (globalGroup != null) {
+                    globalGroup.hits += occ.hits;
+                    globalGroup.docs += occ.docs;
+                    return globalGroup;
+                }
+                return occ;
+            }));
+        });
+        return globalOccurrences.size();
+    }
+
+    /** Group by token and year using TokenGroupCounts */
+    private static int groupWithTokenGroupCounts() {
+        TokenGroupCounts counts = IntStream.range(0, NUMBER_OF_DOCS).boxed().parallel().collect(Collector.of(() -> new TokenGroupCounts(1), (c, doc) -> {
+            int[] key = new int[] { docYears[doc], 0 };
+            int[] termIds = new int[1];
+            c.startDocument();
+            for (int termId: docs[doc]) {
+                key[1] = termIds[0] = termId;
+                c.add(key, termIds, 1);
+            }
+        }, TokenGroupCounts::merge));
+        return counts.size();
+    }
+}
@@ -0,0 +1,98 @@
+package nl.inl.blacklab.performance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+import org.apache.lucene.store.ByteBuffersDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+
+import nl.inl.blacklab.codec.TokensCodec.VALUE_PER_TOKEN_PARAMETER;
+import nl.inl.util.Timer;
+
+/**
+ * Compare performance of decoding forward index snippets token by token
+ * versus bulk-reading the bytes and decoding them in one go.
+ *
+ * Simulates KWIC generation: many short snippets from random places in a large
+ * document. Not representative of real-world usage (no disk I/O involved).
+ */
+public class CompareTokensDecoding {
+
+    /** Number of tokens in our synthetic "document" */
+    public static final int DOC_LENGTH = 10_000_000;
+
+    /** Number of snippets to decode per test */
+    public static final int ITERATIONS = 5_000_000;
+
+    static void time(String message, Runnable r) {
+        Timer t = new Timer();
+        r.run();
+        if (message != null)
+            System.out.println(message + ": " + t.elapsed() + "ms");
+    }
+
+    static ByteBuffersDataInput encode(VALUE_PER_TOKEN_PARAMETER param) {
+        Random random = new Random(123);
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        int bits = param.getBytesPerToken() * 8;
+        for (int i = 0; i < DOC_LENGTH; i++) {
+            // Write a value that fits the width, in big-endian order (like Lucene's DataOutput)
+            int value = random.nextInt() >> (32 - bits);
+            for (int shift = bits - 8; shift >= 0; shift -= 8)
+                out.writeByte((byte) (value >> shift));
+        }
+        return out.toDataInput();
+    }
+
+    static long testPerToken(ByteBuffersDataInput in, VALUE_PER_TOKEN_PARAMETER param, int snippetLength) {
+        Random random = new Random(456);
+        long n = 0;
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                int[] snippet = new int[snippetLength];
+                in.seek((long) random.nextInt(DOC_LENGTH - snippetLength) * param.getBytesPerToken());
+                param.readTokenByToken(in, snippet);
+                n += snippet[0];
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return n;
+    }
+
+    static long testBulk(ByteBuffersDataInput in, VALUE_PER_TOKEN_PARAMETER param, int snippetLength) {
+        Random random = new Random(456);
+        byte[] buffer = new byte[snippetLength * param.getBytesPerToken()];
+        long n = 0;
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                int[] snippet = new int[snippetLength];
+                in.seek((long) random.nextInt(DOC_LENGTH - snippetLength) * param.getBytesPerToken());
+                in.readBytes(buffer, 0, buffer.length);
+                param.decode(buffer, snippet, 0, snippetLength);
+                n += snippet[0];
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return n;
+    }
+
+    static void test(boolean report, int snippetLength) {
+        for (VALUE_PER_TOKEN_PARAMETER param: VALUE_PER_TOKEN_PARAMETER.values()) {
+            ByteBuffersDataInput in = encode(param);
+            String msg = report ? String.format("%-11s x %3d", param, snippetLength) : null;
+            time(msg == null ? null : msg + " PER-TOKEN", () -> testPerToken(in, param, snippetLength));
+            time(msg == null ? null : msg + " BULK     ", () -> testBulk(in, param, snippetLength));
+        }
+    }
+
+    public static void main(String[] args) {
+        time("WARMUP", () -> test(false, 11));
+
+        test(true, 11);  // typical KWIC with 5 words of context on either side
+        test(true, 101); // larger context, e.g. for sorting/NFA matching
+    }
+
+}
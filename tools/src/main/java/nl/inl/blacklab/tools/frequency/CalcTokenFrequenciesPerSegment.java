@@ -0,0 +1,401 @@
+package nl.inl.blacklab.tools.frequency;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Bits;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.forwardindex.ForwardIndexSegmentReader;
+import nl.inl.blacklab.forwardindex.TermsIntegrated;
+import nl.inl.blacklab.search.BlackLabIndexAbstract;
+import nl.inl.blacklab.search.BlackLabIndexIntegrated;
+import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
+import nl.inl.blacklab.search.indexmetadata.Annotation;
+import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
+import nl.inl.blacklab.search.results.TokenGroupCounts;
+
+/**
+ * Calculate a frequency list per index segment, processing segments in parallel.
+ *
+ * Only works with the integrated index format. Compared to {@link CalcTokenFrequencies}:
+ * - each segment counts segment-local term ids straight from the forward index, without
+ *   creating objects per token
+ * - segment term ids are only mapped to global term ids (and case-insensitive sort positions)
+ *   when the segment's counts are written to disk
+ * - when a segment's grouping exceeds its share of the memory budget (groupsPerChunk), it is
+ *   sorted and written to disk as a "run"; at the end, all runs are merged into the output file
+ *
+ * The output only contains hit counts, like the other modes.
+ */
+class CalcTokenFrequenciesPerSegment {
+
+    /**
+     * Assigns ids to combinations of metadata values, so we can use them in group keys.
+     *
+     * Thread-safe. Ids are global, so runs from different segments can be merged.
+     */
+    private static final class MetadataValuesIds {
+        private final Map<List<String>, Integer> ids = new ConcurrentHashMap<>();
+
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        /**
+         * Get the id for a combination of metadata values.
+         *
+         * @param metadataValues metadata values (not stored, so the caller may reuse the array)
+         * @return id
+         */
+        public int get(String[] metadataValues) {
+            Integer id = ids.get(Arrays.asList(metadataValues));
+            if (id != null)
+                return id;
+            // New combination; store a copy as the key, as the caller will change the array
+            return ids.computeIfAbsent(Arrays.asList(metadataValues.clone()), __ -> nextId.getAndIncrement());
+        }
+
+        public String[][] valuesById() {
+            String[][] values = new String[ids.size()][];
+            ids.forEach((key, id) -> values[id] = key.toArray(new String[0]));
+            return values;
+        }
+    }
+
+    /**
+     * Reads a run file (groups sorted by key, see {@link #writeRun}).
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final DataInputStream in;
+
+        /** Key of the current group: sort position for each annotation, then metadata values id */
+        final int[] key;
+
+        /** Global term id for each annotation of the current group */
+        final int[] termIds;
+
+        /** Hits in the current group */
+        long hits;
+
+        RunReader(File file, int numAnnotations, boolean compressed) throws IOException {
+            InputStream stream = new FileInputStream(file);
+            if (compressed)
+                stream = new GZIPInputStream(stream);
+            in = new DataInputStream(new BufferedInputStream(stream));
+            key = new int[numAnnotations + 1];
+            termIds = new int[numAnnotations];
+        }
+
+        /**
+         * Read the next group.
+         *
+         * @return false if there are no more groups
+         */
+        boolean next() throws IOException {
+            if (!in.readBoolean())
+                return false;
+            for (int i = 0; i < key.length; i++)
+                key[i] = in.readInt();
+            for (int i = 0; i < termIds.length; i++)
+                termIds[i] = in.readInt();
+            hits = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final BlackLabIndexIntegrated index;
+
+    private final String reportName;
+
+    private final Config config;
+
+    private final int numAnnotations;
+
+    /** Lucene field containing the forward index for each annotation */
+    private final String[] luceneFields;
+
+    /** Terms for each annotation */
+    private final TermsIntegrated[] terms;
+
+    private final List<String> metadataFields;
+
+    private final MetadataValuesIds metadataValuesIds = new MetadataValuesIds();
+
+    /** Where to write the run files */
+    private final File tmpDir;
+
+    /** Run files written so far */
+    private final List<File> runFiles = Collections.synchronizedList(new ArrayList<>());
+
+    /** Max. number of groups per segment before we write a run */
+    private final int maxGroupsPerSegment;
+
+    /**
+     * Make a frequency list.
+     *
+     * @param index index
+     * @param annotatedField annotated field
+     * @param freqList frequency list to make
+     * @param outputDir where to write the output file (and temporary files)
+     * @param gzip whether to gzip the output file
+     * @param config configuration
+     */
+    static void make(BlackLabIndexIntegrated index, AnnotatedField annotatedField, ConfigFreqList freqList,
+            File outputDir, boolean gzip, Config config) {
+        new CalcTokenFrequenciesPerSegment(index, annotatedField, freqList, outputDir, config).make(outputDir, gzip);
+    }
+
+    private CalcTokenFrequenciesPerSegment(BlackLabIndexIntegrated index, AnnotatedField annotatedField,
+            ConfigFreqList freqList, File outputDir, Config config) {
+        this.index = index;
+        this.reportName = freqList.getReportName();
+        this.config = config;
+        List<Annotation> annotations = freqList.getAnnotations().stream()
+                .map(annotatedField::annotation)
+                .collect(Collectors.toList());
+        numAnnotations = annotations.size();
+        luceneFields = annotations.stream()
+                .map(a -> a.forwardIndexSensitivity().luceneField())
+                .toArray(String[]::new);
+        terms = annotations.stream()
+                .map(a -> (TermsIntegrated) index.annotationForwardIndex(a).terms())
+                .toArray(TermsIntegrated[]::new);
+        metadataFields = freqList.getMetadataFields();
+        tmpDir = new File(outputDir, "tmp");
+
+        // Divide the memory budget between the segments we process at the same time
+        int parallelSegments = Math.max(1, Math.min(index.reader().leaves().size(),
+                Runtime.getRuntime().availableProcessors()));
+        maxGroupsPerSegment = Math.max(1, config.getGroupsPerChunk() / parallelSegments);
+    }
+
+    private void make(File outputDir, boolean gzip) {
+        if (!tmpDir.exists() && !tmpDir.mkdir())
+            throw new RuntimeException("Could not create tmp dir: " + tmpDir);
+        try {
+            for (int rep = 0; rep < config.getRepetitions(); rep++) { // FOR DEBUGGING
+                index.reader().leaves().parallelStream().forEach(this::processSegment);
+            }
+            mergeRuns(new File(outputDir, reportName + ".tsv" + (gzip ? ".gz" : "")), gzip);
+        } finally {
+            for (File runFile: runFiles) {
+                if (!runFile.delete())
+                    System.err.println("Could not delete: " + runFile);
+            }
+            if (!tmpDir.delete())
+                System.err.println("Could not delete: " + tmpDir);
+        }
+    }
+
+    /**
+     * Count all tokens in a segment, writing runs as needed.
+     *
+     * @param lrc segment
+     */
+    private void processSegment(LeafReaderContext lrc) {
+        try {
+            ForwardIndexSegmentReader fi = BlackLabIndexIntegrated.forwardIndex(lrc); // only use from this thread
+            LeafReader reader = lrc.reader();
+            Bits liveDocs = reader.getLiveDocs();
+            int metadataDocId = index.metadata().metadataDocId() - lrc.docBase;
+            Set<String> fieldsToLoad = new HashSet<>(metadataFields);
+
+            // Group key: metadata values id, then segment term id for each annotation
+            int[] key = new int[numAnnotations + 1];
+            int[] segmentTermIds = new int[numAnnotations];
+            int[][] tokens = new int[numAnnotations][];
+            String[] metadataValues = new String[metadataFields.size()];
+            TokenGroupCounts counts = new TokenGroupCounts(numAnnotations);
+            int runNumber = 0;
+            for (int docId = 0; docId < reader.maxDoc(); docId++) {
+                if (liveDocs != null && !liveDocs.get(docId) || docId == metadataDocId)
+                    continue;
+
+                // Metadata values are the same for all tokens in the document
+                if (!metadataFields.isEmpty()) {
+                    Document doc = reader.document(docId, fieldsToLoad);
+                    for (int i = 0; i < metadataValues.length; i++)
+                        metadataValues[i] = doc.get(metadataFields.get(i));
+                }
+                key[0] = metadataValuesIds.get(metadataValues);
+
+                // Count the tokens
+                int docLength = (int) fi.docLength(luceneFields[0], docId) - BlackLabIndexAbstract.IGNORE_EXTRA_CLOSING_TOKEN;
+                for (int i = 0; i < numAnnotations; i++)
+                    tokens[i] = fi.retrievePart(luceneFields[i], docId, -1, -1);
+                counts.startDocument();
+                for (int tokenIndex = 0; tokenIndex < docLength; tokenIndex++) {
+                    for (int i = 0; i < numAnnotations; i++)
+                        key[i + 1] = segmentTermIds[i] = tokens[i][tokenIndex];
+                    counts.add(key, segmentTermIds, 1);
+                }
+
+                // If the grouping has gotten too large, write it to disk so we don't run out of memory.
+                if (counts.size() > maxGroupsPerSegment) {
+                    writeRun(lrc, runNumber++, counts);
+                    counts = new TokenGroupCounts(numAnnotations);
+                }
+            }
+            if (counts.size() > 0)
+                writeRun(lrc, runNumber++, counts);
+            System.out.println("  Processed segment " + lrc.ord + " (" + reader.numDocs() + " docs, " +
+                    runNumber + " run(s))");
+        } catch (IOException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /**
+     * Write a segment's counts to a run file.
+     *
+     * Segment term ids are converted to global term ids and case-insensitive sort positions,
+     * and groups are sorted by (sort positions, metadata values id). Groups that end up with
+     * the same key (e.g. "The" and "the") are merged.
+     *
+     * @param lrc segment
+     * @param runNumber run number within this segment
+     * @param counts counts for (part of) the segment
+     */
+    private void writeRun(LeafReaderContext lrc, int runNumber, TokenGroupCounts counts) throws IOException {
+        int n = counts.size();
+        int keyLength = numAnnotations + 1;
+        int[] keys = new int[n * keyLength];
+        int[] termIds = new int[n * numAnnotations];
+        for (int group = 0; group < n; group++) {
+            for (int i = 0; i < numAnnotations; i++) {
+                int globalTermId = terms[i].segmentIdToGlobalId(lrc.ord, counts.termId(group, i));
+                termIds[group * numAnnotations + i] = globalTermId;
+                keys[group * keyLength + i] = globalTermId < 0 ? globalTermId :
+                        terms[i].idToSortPosition(globalTermId, MatchSensitivity.INSENSITIVE);
+            }
+            keys[group * keyLength + numAnnotations] = counts.metadataId(group);
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        IntArrays.quickSort(order, (a, b) -> Arrays.compare(keys, a * keyLength, (a + 1) * keyLength,
+                keys, b * keyLength, (b + 1) * keyLength));
+
+        // (unique name, so we never overwrite runs from another repetition or report)
+        File runFile = File.createTempFile(reportName + "-" + lrc.ord + "-" + runNumber + "-", ".run", tmpDir);
+        runFiles.add(runFile);
+        OutputStream stream = new FileOutputStream(runFile);
+        if (config.isCompressTempFiles())
+            stream = new GZIPOutputStream(stream);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            int i = 0;
+            while (i < n) {
+                // Merge all groups with the same key
+                int group = order[i];
+                long hits = 0;
+                int j = i;
+                while (j < n && Arrays.equals(keys, group * keyLength, (group + 1) * keyLength,
+                        keys, order[j] * keyLength, (order[j] + 1) * keyLength)) {
+                    hits += counts.hits(order[j]);
+                    j++;
+                }
+                out.writeBoolean(true);
+                for (int k = 0; k < keyLength; k++)
+                    out.writeInt(keys[group * keyLength + k]);
+                for (int k = 0; k < numAnnotations; k++)
+                    out.writeInt(termIds[group * numAnnotations + k]);
+                out.writeLong(hits);
+                i = j;
+            }
+            out.writeBoolean(false);
+        }
+    }
+
+    /**
+     * Merge all runs, writing the resulting TSV as we go.
+     *
+     * This takes very little memory even if the final output file is huge.
+     *
+     * @param outputFile file to write
+     * @param gzip whether to gzip the output file
+     */
+    private void mergeRuns(File outputFile, boolean gzip) {
+        System.out.println("  Merging " + runFiles.size() + " run files to produce " + outputFile);
+        String[][] metadataValuesById = metadataValuesIds.valuesById();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Arrays.compare(a.key, b.key));
+        List<RunReader> readers = new ArrayList<>();
+        try (OutputStream outputStream = new FileOutputStream(outputFile)) {
+            OutputStream stream = outputStream;
+            if (gzip)
+                stream = new GZIPOutputStream(stream);
+            try (Writer w = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+                 CSVPrinter csv = new CSVPrinter(w, FreqListOutputTsv.TAB_SEPARATED_FORMAT)) {
+                for (File runFile: runFiles) {
+                    RunReader reader = new RunReader(runFile, numAnnotations, config.isCompressTempFiles());
+                    readers.add(reader);
+                    if (reader.next())
+                        queue.add(reader);
+                }
+
+                // Keep merging the groups with the lowest key and advancing those runs
+                int[] currentKey = new int[numAnnotations + 1];
+                int[] currentTermIds = new int[numAnnotations];
+                while (!queue.isEmpty()) {
+                    RunReader first = queue.peek();
+                    System.arraycopy(first.key, 0, currentKey, 0, currentKey.length);
+                    System.arraycopy(first.termIds, 0, currentTermIds, 0, currentTermIds.length);
+                    long hits = 0;
+                    while (!queue.isEmpty() && Arrays.equals(queue.peek().key, currentKey)) {
+                        RunReader reader = queue.poll();
+                        hits += reader.hits;
+                        if (reader.next())
+                            queue.add(reader);
+                    }
+
+                    // Write the merged group to the output file
+                    List<String> record = new ArrayList<>();
+                    for (int i = 0; i < numAnnotations; i++) {
+                        int termId = currentTermIds[i];
+                        record.add(termId < 0 ? "" : MatchSensitivity.INSENSITIVE.desensitize(terms[i].get(termId)));
+                    }
+                    Collections.addAll(record, metadataValuesById[currentKey[numAnnotations]]);
+                    record.add(Long.toString(hits));
+                    csv.printRecord(record);
+                }
+            } finally {
+                for (RunReader reader: readers)
+                    reader.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing output for " + reportName, e);
+        }
+    }
+}
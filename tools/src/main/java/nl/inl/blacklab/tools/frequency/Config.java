@@ -47,6 +47,18 @@ class Config {
      */
     private boolean compressTempFiles = false;
 
+    /**
+     * Process the index per segment (in parallel) instead of per batch of documents?
+     *
+     * Counts segment term ids directly from the forward index, and writes sorted runs
+     * to disk when a segment's grouping gets too large (see groupsPerChunk, which is
+     * divided among the segments being processed at the same time).
+     *
+     * Optional. Only works with the integrated index format.
+     * Default: false.
+     */
+    private boolean perSegment = false;
+
     /**
      * Use regular search instead of specifically optimized one?
      *
@@ -140,11 +152,21 @@ class Config {
         this.compressTempFiles = compressTempFiles;
     }
 
+    public boolean isPerSegment() {
+        return perSegment;
+    }
+
+    @SuppressWarnings("unused")
+    public void setPerSegment(boolean perSegment) {
+        this.perSegment = perSegment;
+    }
+
     @Override
     public String toString() {
         return "Config{" +
                 "docsToProcessInParallel=" + docsToProcessInParallel +
                 ", groupsPerChunk=" + groupsPerChunk +
+                ", perSegment=" + perSegment +
                 ", useRegularSearch=" + useRegularSearch +
                 ", repetitions=" + repetitions +
                 ", annotatedField='" + annotatedField + '\'' +
@@ -155,6 +177,7 @@ class Config {
     public String show() {
         return "docsToProcessInParallel: " + docsToProcessInParallel + "\n" +
                 "groupsPerChunk: " + groupsPerChunk + "\n" +
+                "perSegment: " + perSegment + "\n" +
                 "useRegularSearch: " + useRegularSearch + "\n" +
                 "repetitions: " + repetitions + "\n" +
                 "annotatedField: '" + annotatedField + "\n" +
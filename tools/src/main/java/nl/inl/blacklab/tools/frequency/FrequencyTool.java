@@ -37,6 +37,7 @@ import nl.inl.blacklab.resultproperty.HitPropertyHitText;
 import nl.inl.blacklab.resultproperty.HitPropertyMultiple;
 import nl.inl.blacklab.search.BlackLab;
 import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.BlackLabIndexIntegrated;
 import nl.inl.blacklab.search.indexmetadata.AnnotatedField;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.search.indexmetadata.MatchSensitivity;
@@ -131,7 +132,7 @@ public class FrequencyTool {
         }
     }
 
-    private static void makeFrequencyLists(BlackLabIndex index, Config config, File outputDir, boolean gzip) {
+    static void makeFrequencyLists(BlackLabIndex index, Config config, File outputDir, boolean gzip) {
         AnnotatedField annotatedField = index.annotatedField(config.getAnnotatedField());
         config.check(index);
         index.setCache(new SearchCacheDummy()); // don't cache results
@@ -151,6 +152,8 @@ public class FrequencyTool {
             extraInfo.add(config.getRepetitions() + " repetitions");
         if (config.isUseRegularSearch())
             extraInfo.add("regular search");
+        else if (config.isPerSegment())
+            extraInfo.add("per segment");
         String strExtraInfo = extraInfo.isEmpty() ? "" : " (" + StringUtils.join(extraInfo, ", ") + ")";
         System.out.println("Generate frequency list" + strExtraInfo + ": " + reportName);
 
@@ -160,6 +163,14 @@ public class FrequencyTool {
             return;
         }
 
+        if (config.isPerSegment()) {
+            if (!(index instanceof BlackLabIndexIntegrated))
+                throw new BlackLabRuntimeException("perSegment only works with the integrated index format");
+            CalcTokenFrequenciesPerSegment.make((BlackLabIndexIntegrated) index, annotatedField, freqList, outputDir,
+                    gzip, config);
+            return;
+        }
+
         // Use specifically optimized CalcTokenFrequencies
         List<String> annotationNames = freqList.getAnnotations();
         List<Annotation> annotations = annotationNames.stream().map(annotatedField::annotation).collect(Collectors.toList());
@@ -25,6 +25,12 @@ public class BLSConfigCache {
     @Deprecated
     int maxSizeMegs = 100;
 
+    /** Maximum estimated size of the results in the cache (megabytes), or -1 for no limit.
+     *
+     * Based on the estimated memory use of each cached result (see SearchResult.ramBytesUsed()).
+     */
+    private int maxEstimatedSizeMegs = -1;
+
     /** Maximum number of cache entries to keep.
      *
      * Please note that memory use per cache entry may vary wildly.
@@ -55,9 +61,27 @@ public class BLSConfigCache {
     /** Cache implementation to use. */
     private String implementation = "";
 
+    /** Directory for the persistent (on-disk) results cache, or empty to disable it. */
+    private String diskCacheDir = "";
+
+    /** Maximum total size of the persistent results cache (megabytes). */
+    private int diskCacheMaxSizeMegs = 1000;
+
+    /** Only keep results on disk that took at least this long to produce (ms). */
+    private int diskCacheMinSearchTimeMs = 1000;
+
     @Deprecated
     public void setMaxSizeMegs(int maxSizeMegs) {
-        logger.warn("Ignoring deprecated configuration option: cache.maxSizeMegs (use targetFreeMemMegs instead)");
+        logger.warn("Ignoring deprecated configuration option: cache.maxSizeMegs (use maxEstimatedSizeMegs or targetFreeMemMegs instead)");
+    }
+
+    public int getMaxEstimatedSizeMegs() {
+        return maxEstimatedSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setMaxEstimatedSizeMegs(int maxEstimatedSizeMegs) {
+        this.maxEstimatedSizeMegs = maxEstimatedSizeMegs;
     }
 
     public int getMaxNumberOfJobs() {
@@ -179,4 +203,31 @@ public class BLSConfigCache {
         this.implementation = implementation;
     }
 
+    public String getDiskCacheDir() {
+        return diskCacheDir;
+    }
+
+    @SuppressWarnings("unused")
+    public void setDiskCacheDir(String diskCacheDir) {
+        this.diskCacheDir = diskCacheDir;
+    }
+
+    public int getDiskCacheMaxSizeMegs() {
+        return diskCacheMaxSizeMegs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setDiskCacheMaxSizeMegs(int diskCacheMaxSizeMegs) {
+        this.diskCacheMaxSizeMegs = diskCacheMaxSizeMegs;
+    }
+
+    public int getDiskCacheMinSearchTimeMs() {
+        return diskCacheMinSearchTimeMs;
+    }
+
+    @SuppressWarnings("unused")
+    public void setDiskCacheMinSearchTimeMs(int diskCacheMinSearchTimeMs) {
+        this.diskCacheMinSearchTimeMs = diskCacheMinSearchTimeMs;
+    }
+
 }
\ No newline at end of file
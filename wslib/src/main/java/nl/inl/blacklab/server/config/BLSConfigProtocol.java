@@ -34,6 +34,42 @@ public class BLSConfigProtocol {
         this.defaultOutputType = defaultOutputType;
     }
 
+    /** Should responses be sent to the client while they're being generated, instead of afterwards? */
+    private boolean streamResponses = false;
+
+    /** When streaming, how many characters to buffer before we start sending (and can no longer send an error) */
+    private int responseBufferSize = 65536;
+
+    /** Should responses be gzipped if the client accepts that? */
+    private boolean gzipResponses = false;
+
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    @SuppressWarnings("unused")
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    public int getResponseBufferSize() {
+        return responseBufferSize;
+    }
+
+    @SuppressWarnings("unused")
+    public void setResponseBufferSize(int responseBufferSize) {
+        this.responseBufferSize = responseBufferSize;
+    }
+
+    public boolean isGzipResponses() {
+        return gzipResponses;
+    }
+
+    @SuppressWarnings("unused")
+    public void setGzipResponses(boolean gzipResponses) {
+        this.gzipResponses = gzipResponses;
+    }
+
     public String getAccessControlAllowOrigin() {
         return accessControlAllowOrigin;
     }
@@ -1,11 +1,16 @@
 package nl.inl.blacklab.server.datastream;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
 import nl.inl.blacklab.search.indexmetadata.Annotation;
 import nl.inl.blacklab.server.util.WebserviceUtil;
 
@@ -257,6 +262,24 @@ public interface DataStream {
 
     DataStream plain(String value);
 
+    /**
+     * Output plain text read from a stream, and close the stream.
+     *
+     * Subclasses that write to an output stream should copy the text in chunks,
+     * so large values (e.g. document contents) don't have to be kept in memory.
+     * The default implementation reads the entire value first.
+     *
+     * @param value stream to read the text from
+     * @return this data stream
+     */
+    default DataStream plain(Reader value) {
+        try (Reader reader = value) {
+            return plain(IOUtils.toString(reader));
+        } catch (IOException e) {
+            throw new BlackLabRuntimeException(e);
+        }
+    }
+
     /**
      * Should contextList omit empty annotations if possible? (XML only)
      */
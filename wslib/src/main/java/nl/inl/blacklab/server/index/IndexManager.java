@@ -275,7 +275,7 @@ public class IndexManager {
         }
     }
 
-    public void registerIndex(String indexId, BlackLabIndex index) {
+    public synchronized void registerIndex(String indexId, BlackLabIndex index) {
         try {
             indices.put(indexId, new Index(indexId, index, this.searchMan));
         } catch (FileNotFoundException e) {
@@ -283,6 +283,20 @@ public class IndexManager {
         }
     }
 
+    /**
+     * Register an index, unless an index with this id already exists.
+     *
+     * Checking and registering happen atomically, so this is safe to call
+     * from concurrent requests.
+     *
+     * @param indexId index id
+     * @param index index to register
+     */
+    public synchronized void registerIndexIfNotExists(String indexId, BlackLabIndex index) throws BlsException {
+        if (!indexExists(indexId))
+            registerIndex(indexId, index);
+    }
+
     public boolean canCreateIndex(User user) {
         if (!user.isLoggedIn())
             return false;
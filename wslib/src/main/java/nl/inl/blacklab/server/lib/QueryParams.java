@@ -77,6 +77,8 @@ public interface QueryParams {
 
     long getNumberOfResultsToShow();
 
+    Optional<String> getCursor();
+
     int getWordsAroundHit();
 
     ConcordanceType getConcordanceType();
@@ -264,6 +264,9 @@ public abstract class QueryParamsAbstract implements QueryParams {
         return getLong(WebserviceParameter.NUMBER_OF_RESULTS);
     }
 
+    @Override
+    public Optional<String> getCursor() { return opt(WebserviceParameter.CURSOR); }
+
     @Override
     public int getWordsAroundHit() { return getInt(WebserviceParameter.WORDS_AROUND_HIT); }
 
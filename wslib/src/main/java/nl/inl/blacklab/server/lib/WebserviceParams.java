@@ -50,7 +50,7 @@ public interface WebserviceParams extends QueryParams {
     void setFilterQuery(Query query);
 
     /**
-     * @return hits - filtered then sorted then sampled then windowed
+     * @return hits - filtered then sorted then sampled then windowed (or the page after the cursor, if given)
      */
     SearchHits hitsWindow() throws BlsException;
 
@@ -77,6 +77,16 @@ public interface WebserviceParams extends QueryParams {
      */
     SearchHits hitsSample() throws BlsException;
 
+    /**
+     * Hits to count.
+     *
+     * Like {@link #hitsSample()}, but not sorted if we don't need to: sorting doesn't change
+     * the count, and a window of sorted hits may not need all hits sorted (see SearchHitsWindow).
+     *
+     * @return hits - filtered then (if sampling) sorted and sampled
+     */
+    SearchHits hitsToCount() throws BlsException;
+
     SearchDocs docsWindow() throws BlsException;
 
     SearchDocs docsSorted() throws BlsException;
@@ -22,6 +22,7 @@ import nl.inl.blacklab.resultproperty.PropertyValue;
 import nl.inl.blacklab.search.BlackLabIndex;
 import nl.inl.blacklab.search.ConcordanceType;
 import nl.inl.blacklab.search.results.ContextSize;
+import nl.inl.blacklab.search.results.HitsCursor;
 import nl.inl.blacklab.search.results.Results;
 import nl.inl.blacklab.search.results.SampleParameters;
 import nl.inl.blacklab.search.results.SearchSettings;
@@ -33,6 +34,8 @@ import nl.inl.blacklab.searches.SearchEmpty;
 import nl.inl.blacklab.searches.SearchFacets;
 import nl.inl.blacklab.searches.SearchHitGroups;
 import nl.inl.blacklab.searches.SearchHits;
+import nl.inl.blacklab.searches.SearchHitsAfterCursor;
+import nl.inl.blacklab.searches.SearchHitsFromBLSpanQuery;
 import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.jobs.ContextSettings;
@@ -54,6 +57,9 @@ import nl.inl.blacklab.webservice.WebserviceParameter;
 public class WebserviceParamsImpl implements WebserviceParams {
     private static final Logger logger = LogManager.getLogger(WebserviceParamsImpl.class);
 
+    /** Value for the cursor parameter to get the first page of hits */
+    private static final String CURSOR_START = "start";
+
     /**
      * Get the search-related parameters from the request object.
      * This ignores stuff like the requested output type, etc.
@@ -163,16 +169,41 @@ public class WebserviceParamsImpl implements WebserviceParams {
     }
 
     /**
-     * @return hits - filtered then sorted then sampled then windowed
+     * @return hits - filtered then sorted then sampled then windowed (or the page after the cursor, if given)
      */
     @Override
     public SearchHits hitsWindow() throws BlsException {
+        Optional<String> cursor = getCursor();
+        if (cursor.isPresent())
+            return hitsAfterCursor(cursor.get());
         WindowSettings windowSettings = windowSettings();
         if (windowSettings == null)
             return hitsSample();
         return hitsSample().window(windowSettings.first(), windowSettings.size());
     }
 
+    /**
+     * Get the page of (unsorted) hits after a cursor from a previous response.
+     *
+     * @param serializedCursor nextCursor from a previous response, or "start" for the first page
+     * @return page of hits
+     */
+    private SearchHitsAfterCursor hitsAfterCursor(String serializedCursor) throws BlsException {
+        boolean filterHits = !StringUtils.isEmpty(getHitFilterCriterium()) && !StringUtils.isEmpty(getHitFilterValue());
+        if (hitsSortSettings() != null || sampleSettings() != null || filterHits) {
+            throw new BadRequest("CURSOR_NOT_SUPPORTED",
+                    "Cannot use 'cursor' parameter when sorting, sampling or filtering hits.");
+        }
+        HitsCursor cursor;
+        try {
+            cursor = serializedCursor.equals(CURSOR_START) ? HitsCursor.START : HitsCursor.deserialize(serializedCursor);
+            cursor.checkIndexVersion(blIndex());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequest("INVALID_CURSOR", e.getMessage());
+        }
+        return ((SearchHitsFromBLSpanQuery) hits()).afterCursor(cursor, (int) windowSettings().size());
+    }
+
     @Override
     public WindowSettings windowSettings() {
         long size = Math.min(Math.max(0, getNumberOfResultsToShow()), configParam().getPageSize().getMax());
@@ -390,6 +421,12 @@ public class WebserviceParamsImpl implements WebserviceParams {
         return hitsSorted().sample(sampleSettings);
     }
 
+    @Override
+    public SearchHits hitsToCount() throws BlsException {
+        // (the sample depends on the sort order, so in that case we do need to sort)
+        return sampleSettings() == null ? hitsFiltered() : hitsSample();
+    }
+
     /**
      * @return hits - filtered then sorted
      */
@@ -602,6 +639,11 @@ public class WebserviceParamsImpl implements WebserviceParams {
         return params.getNumberOfResultsToShow();
     }
 
+    @Override
+    public Optional<String> getCursor() {
+        return params.getCursor();
+    }
+
     @Override
     public int getWordsAroundHit() {
         return params.getWordsAroundHit();
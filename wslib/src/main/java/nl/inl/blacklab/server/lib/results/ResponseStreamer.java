@@ -14,7 +14,9 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import nl.inl.blacklab.codec.ContentStoreBlockCache;
 import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.forwardindex.TermsIntegratedCache;
 import nl.inl.blacklab.index.DocIndexerFactory;
 import nl.inl.blacklab.resultproperty.DocProperty;
 import nl.inl.blacklab.resultproperty.PropertyValue;
@@ -63,6 +65,7 @@ import nl.inl.blacklab.server.lib.ResultIndexMetadata;
 import nl.inl.blacklab.server.lib.SearchTimings;
 import nl.inl.blacklab.server.lib.WebserviceParams;
 import nl.inl.blacklab.webservice.WebserviceParameter;
+import nl.inl.util.GlobalOrdinals;
 
 /**
  * For serializing BlackLab response objects.
@@ -546,9 +549,12 @@ public class ResponseStreamer {
         ds.startEntry("summary").startMap();
         {
             summaryCommonFields(summaryFields);
-            summaryNumHits(result);
+            if (result != null)
+                summaryNumHits(result);
             if (params.getIncludeTokenCount())
                 ds.entry("tokensInMatchingDocuments", resultHits.getTotalTokens());
+            if (resultHits.getNextCursor() != null)
+                ds.entry("nextCursor", resultHits.getNextCursor().serialize());
 
             // Write docField (pidField, titleField, etc.) and metadata display names
             // (these arguably shouldn't be included with every hits response; can be read once from the index
@@ -1001,7 +1007,14 @@ public class ResponseStreamer {
     }
 
     public void docContentsResponsePlain(ResultDocContents resultDocContents) {
-        ds.plain(getDocContentsResponsePlain(resultDocContents));
+        if (resultDocContents.isFullDocument()) {
+            // Stream the full document, so large documents don't have to be kept in memory
+            if (resultDocContents.needsXmlDeclaration())
+                ds.plain(DataStream.XML_PROLOG);
+            ds.plain(resultDocContents.getContentReader());
+        } else {
+            ds.plain(getDocContentsResponsePlain(resultDocContents));
+        }
     }
 
     public void docInfoResponse(ResultDocInfo docInfo, Map<String, List<String>> metadataFieldGroups,
@@ -1136,6 +1149,15 @@ public class ResponseStreamer {
         ds.endEntry()
             .startEntry("cacheContents");
         ds.value(blackLabCache.getContents(includeDebugInfo));
+        ds.endEntry()
+            .startEntry("forwardIndexTerms");
+        ds.value(TermsIntegratedCache.getInfo());
+        ds.endEntry()
+            .startEntry("contentStoreBlockCache");
+        ds.value(ContentStoreBlockCache.getInfo());
+        ds.endEntry()
+            .startEntry("metadataOrdinals");
+        ds.value(GlobalOrdinals.getInfo());
         ds.endEntry()
                 .endMap();
     }
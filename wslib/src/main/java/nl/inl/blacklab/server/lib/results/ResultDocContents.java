@@ -1,10 +1,16 @@
 package nl.inl.blacklab.server.lib.results;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
@@ -32,6 +38,11 @@ public class ResultDocContents {
             "(?:\\s+encoding\\s*=\\s*([\"'])[A-Za-z][A-Za-z0-9._-]*\\2)?" +
             "(?:\\s+standalone\\s*=\\s*([\"'])(?:yes|no)\\3)?\\s*\\?>\\s*");
 
+    /**
+     * How many characters to look at when checking for an XML declaration in a streamed document.
+     */
+    private static final int XML_DECL_CHECK_LENGTH = 1024;
+
     /**
      * xmlns:namespace="...." on root
      */
@@ -62,8 +73,16 @@ public class ResultDocContents {
      */
     private boolean mustOutputXmlDeclaration;
 
+    /**
+     * The content, or null if we're streaming it (see contentReader)
+     */
     private String content;
 
+    /**
+     * If we're streaming the content (full document without highlighting): reader for the content
+     */
+    private Reader contentReader;
+
     private Set<String> namespaces;
 
     private Set<String> anonNamespaces;
@@ -82,10 +101,39 @@ public class ResultDocContents {
         return mustOutputXmlDeclaration;
     }
 
+    /**
+     * Get the content.
+     *
+     * If the content is being streamed (full document without highlighting),
+     * this reads all of it into memory. Use {@link #getContentReader()} instead if possible.
+     *
+     * @return the content
+     */
     public String getContent() {
+        if (content == null && contentReader != null) {
+            try (Reader reader = contentReader) {
+                content = IOUtils.toString(reader);
+            } catch (IOException e) {
+                throw new InternalServerError("Error reading document contents", "INTERR_READING_DOCUMENT_CONTENTS", e);
+            }
+            contentReader = null;
+        }
         return content;
     }
 
+    /**
+     * Get a stream of the content.
+     *
+     * For a full document without highlighting, the document is read from the
+     * content store as the stream is consumed, so it isn't kept in memory all at once.
+     * Can only be consumed once.
+     *
+     * @return stream of the content
+     */
+    public Reader getContentReader() {
+        return contentReader != null ? contentReader : new StringReader(content);
+    }
+
     public Set<String> getNamespaces() {
         return namespaces;
     }
@@ -128,6 +176,13 @@ public class ResultDocContents {
             hits = params.hitsSample().execute();
         }
 
+        if (hits == null && isFullDocument) {
+            // Full document without highlighting; no need to process it, so we can stream it
+            // from the content store instead of keeping it in memory.
+            streamFullDocument(index, docId, document);
+            return;
+        }
+
         // Note: we use the highlighter regardless of whether there's hits because
         // it makes sure our document fragment is well-formed.
         Hits hitsInDoc;
@@ -186,4 +241,23 @@ public class ResultDocContents {
             }
         }
     }
+
+    private void streamFullDocument(BlackLabIndex index, int docId, Document document) throws BlsException {
+        BufferedReader reader = new BufferedReader(
+                DocUtil.contentsReader(index, docId, document, index.mainAnnotatedField()), XML_DECL_CHECK_LENGTH);
+        try {
+            // Check the start of the document for an XML declaration
+            char[] start = new char[XML_DECL_CHECK_LENGTH];
+            reader.mark(start.length);
+            int length = 0;
+            int n;
+            while (length < start.length && (n = reader.read(start, length, start.length - length)) >= 0)
+                length += n;
+            reader.reset();
+            mustOutputXmlDeclaration = !XML_DECL.matcher(CharBuffer.wrap(start, 0, length)).find();
+        } catch (IOException e) {
+            throw new InternalServerError("Error reading document contents", "INTERR_READING_DOCUMENT_CONTENTS", e);
+        }
+        contentReader = reader;
+    }
 }
@@ -34,6 +34,7 @@ import nl.inl.blacklab.search.results.DocResults;
 import nl.inl.blacklab.search.results.HitGroup;
 import nl.inl.blacklab.search.results.HitGroups;
 import nl.inl.blacklab.search.results.Hits;
+import nl.inl.blacklab.search.results.HitsCursor;
 import nl.inl.blacklab.search.results.QueryInfo;
 import nl.inl.blacklab.search.results.Results;
 import nl.inl.blacklab.search.results.ResultsStats;
@@ -48,6 +49,7 @@ import nl.inl.blacklab.searches.SearchCount;
 import nl.inl.blacklab.searches.SearchEmpty;
 import nl.inl.blacklab.searches.SearchHitGroupsFromHits;
 import nl.inl.blacklab.searches.SearchHits;
+import nl.inl.blacklab.searches.SearchHitsAfterCursor;
 import nl.inl.blacklab.server.exceptions.BadRequest;
 import nl.inl.blacklab.server.exceptions.BlsException;
 import nl.inl.blacklab.server.index.Index;
@@ -64,7 +66,11 @@ public class ResultHits {
 
     private final WebserviceParams params;
 
-    private final Hits hits;
+    /**
+     * All hits (not necessarily sorted), or null if we're paging using cursors
+     * (then we only search for them when needed, see getHits())
+     */
+    private Hits hits;
 
     private ResultsStats hitsStats = null;
 
@@ -72,6 +78,9 @@ public class ResultHits {
 
     private final boolean viewingGroup;
 
+    /** Are we paging using cursors? Then we only search for one page, and don't count the total. */
+    private final boolean pagingWithCursor;
+
     private final SearchCacheEntry<?> cacheEntry;
 
     private SearchCacheEntry<Hits> cacheEntryWindow;
@@ -80,6 +89,9 @@ public class ResultHits {
 
     private Hits window;
 
+    /** Cursor for the next page, if we're paging using cursors and this isn't the last page */
+    private HitsCursor nextCursor;
+
     private long totalTokens;
 
     private ConcordanceContext concordanceContext;
@@ -116,6 +128,7 @@ public class ResultHits {
         String viewGroup = params.getViewGroup().orElse("");
 
         viewingGroup = groupBy.length() > 0 && viewGroup.length() > 0;
+        pagingWithCursor = !viewingGroup && params.getCursor().isPresent();
         boolean waitForTotal = params.getWaitForTotal();
         try {
             if (viewingGroup) {
@@ -126,10 +139,15 @@ public class ResultHits {
                 // The hits are already complete - get the stats directly.
                 hitsStats = hits.hitsStats();
                 docsStats = hits.docsStats();
+            } else if (pagingWithCursor) {
+                // Paging using cursors. We only need the page, which finishSearch() will get.
+                // Don't start the full search and count; that would defeat the purpose.
+                cacheEntry = null;
             } else {
                 // Regular hits request.
                 // Create the search objects
-                SearchHits searchHits = params.hitsSample();
+                // (we don't sort here; the window search will, and may not need to sort all hits)
+                SearchHits searchHits = params.hitsToCount();
                 SearchCount searchHitCount = searchHits.hitCount();
                 SearchCount searchDocCount = searchHits.docCount();
                 // Start the search.
@@ -316,25 +334,42 @@ public class ResultHits {
         return new SearchTimings(searchTime, countTime);
     }
 
-    public Hits getHits() {
+    /**
+     * Get all the hits (not necessarily sorted).
+     *
+     * If we're paging using cursors, this starts the full search, so only call it if needed.
+     *
+     * @return all hits
+     */
+    public synchronized Hits getHits() {
+        if (hits == null) {
+            try {
+                hits = params.hitsToCount().execute();
+            } catch (InvalidQuery e) {
+                throw WebserviceOperations.translateSearchException(e);
+            }
+        }
         return hits;
     }
 
     public void finishSearch() {
         WindowSettings windowSettings = params.windowSettings();
-        if (!hits.hitsStats().processedAtLeast(windowSettings.first()))
+        if (!pagingWithCursor && !hits.hitsStats().processedAtLeast(windowSettings.first()))
             throw new BadRequest("HIT_NUMBER_OUT_OF_RANGE", "Non-existent hit number specified.");
 
         cacheEntryWindow = null;
         if (!viewingGroup) {
             // Request the window of hits we're interested in.
             // (we hold on to the cache entry so that we can differentiate between search and count time later)
-            cacheEntryWindow = params.hitsWindow().executeAsync();
+            SearchHits searchWindow = params.hitsWindow();
+            cacheEntryWindow = searchWindow.executeAsync();
             try {
                 window = cacheEntryWindow.get(); // blocks until requested hits window is available
             } catch (InterruptedException | ExecutionException e) {
                 throw WebserviceOperations.translateSearchException(e);
             }
+            if (searchWindow instanceof SearchHitsAfterCursor)
+                nextCursor = ((SearchHitsAfterCursor) searchWindow).nextCursor(window);
         } else {
             // We're viewing a single group in a grouping result. Just get the hits window directly.
             window = hits.window(windowSettings.first(), windowSettings.size());
@@ -343,7 +378,7 @@ public class ResultHits {
         boolean includeTokenCount = params.getIncludeTokenCount();
         totalTokens = -1;
         if (includeTokenCount) {
-            DocResults perDocResults = hits.perDocResults(Results.NO_LIMIT);
+            DocResults perDocResults = getHits().perDocResults(Results.NO_LIMIT);
             // Determine total number of tokens in result set
             totalTokens = perDocResults.subcorpusSize().getTokens();
         }
@@ -365,7 +400,8 @@ public class ResultHits {
         metaDisplayNames = WebserviceOperations.getMetaDisplayNames(index);
 
         SearchTimings searchTimings = getSearchTimings();
-        summaryNumHits = WebserviceOperations.numResultsSummaryHits(
+        // (when paging using cursors, we don't know the total number of hits)
+        summaryNumHits = pagingWithCursor ? null : WebserviceOperations.numResultsSummaryHits(
                 getHitsStats(), getDocsStats(),
                 params.getWaitForTotal(), searchTimings.getCountTime() < 0, null);
         summaryCommonFields = WebserviceOperations.summaryCommonFields(params,
@@ -380,6 +416,8 @@ public class ResultHits {
     }
 
     public long getCountTime() {
+        if (cacheEntry == null)
+            return 0; // paging using cursors; we don't count
         return cacheEntry.threwException() ? -1 : cacheEntry.timer().time();
     }
 
@@ -387,6 +425,10 @@ public class ResultHits {
         return window;
     }
 
+    public HitsCursor getNextCursor() {
+        return nextCursor;
+    }
+
     public long getTotalTokens() {
         return totalTokens;
     }
@@ -431,6 +473,11 @@ public class ResultHits {
         return params;
     }
 
+    /**
+     * Get the number of hits and docs.
+     *
+     * @return number of hits and docs, or null if we're paging using cursors
+     */
     public ResultSummaryNumHits getSummaryNumHits() {
         return summaryNumHits;
     }
@@ -0,0 +1,390 @@
+package nl.inl.blacklab.server.search;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.searches.Search;
+import nl.inl.blacklab.searches.SearchCache;
+import nl.inl.blacklab.searches.SearchCount;
+import nl.inl.blacklab.server.config.BLSConfig;
+import nl.inl.blacklab.server.config.BLSConfigCache;
+import nl.inl.blacklab.server.util.BlsUtils;
+
+/**
+ * Base class for BLS's cache implementations ({@link BlsCache} and {@link BlsCacheConcurrent}).
+ *
+ * Contains the cache policy that both share (when to abort or remove a search, when we can
+ * start another one), the optional disk cache tier, the cleanup thread and status reporting.
+ * Subclasses decide how entries are stored and locked.
+ */
+public abstract class BlsCacheAbstract implements SearchCache {
+
+    private static final Logger logger = LogManager.getLogger(BlsCacheAbstract.class);
+
+    /** Bytes in one megabyte */
+    protected static final long ONE_MB_BYTES = 1_000_000;
+
+    /** Bytes in one gigabyte */
+    protected static final long ONE_GB_BYTES = ONE_MB_BYTES * 1_000;
+
+    /**
+     * Returns the amount of memory that can still be allocated before we get the
+     * OutOfMemory exception.
+     *
+     * @return the amount of memory that can still be allocated
+     */
+    public static long getFreeMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.freeMemory() + (runtime.maxMemory() - runtime.totalMemory());
+    }
+
+    /**
+     * A thread that regularly calls offerToDiskCache() and updateCache() to
+     * ensure that cache cleanup continues even if no new requests are coming in.
+     */
+    class CleanupSearchesThread extends Thread implements UncaughtExceptionHandler {
+
+        private static final int CLEAN_UP_CACHE_INTERVAL_MS = 500;
+
+        /** Construct the cleanup thread object. */
+        public CleanupSearchesThread() {
+            super("CleanupSearches");
+            setUncaughtExceptionHandler(this);
+        }
+
+        @Override
+        public void run() {
+            while (!interrupted()) {
+                try {
+                    Thread.sleep(CLEAN_UP_CACHE_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    logger.info("CleanupSearchesThread interrupted");
+                    return;
+                }
+
+                // (offer finished searches to the disk cache first, so they're not lost if
+                //  updateCache() evicts them)
+                offerToDiskCache();
+                updateCache();
+            }
+        }
+
+        @Override
+        public void uncaughtException(Thread t, Throwable e) {
+            logger.error("CleanupSearchesThread threw an exception!");
+            e.printStackTrace();
+        }
+
+    }
+
+    protected final BLSConfigCache config;
+
+    protected final int maxConcurrentSearches;
+
+    /** Abort an abandoned count after how much time? (s) */
+    protected final int abandonedCountAbortTimeSec;
+
+    protected final boolean trace;
+
+    protected final boolean cacheDisabled;
+
+    /** Persistent second cache tier, or null if not configured */
+    protected final BlsDiskCache diskCache;
+
+    /** Estimated memory used by the cache, as of the last call to updateCache() */
+    protected volatile long cacheSizeBytes;
+
+    private CleanupSearchesThread cleanupThread;
+
+    private String previousCacheStatsMessage = "";
+
+    protected BlsCacheAbstract(BLSConfig blsConfig) {
+        this.config = blsConfig.getCache();
+        this.maxConcurrentSearches = blsConfig.getPerformance().getMaxConcurrentSearches();
+        this.abandonedCountAbortTimeSec = blsConfig.getPerformance().getAbandonedCountAbortTimeSec();
+        this.trace = blsConfig.getLog().getTrace().isCache();
+        cacheDisabled = config.getMaxJobAgeSec() == 0 || config.getMaxNumberOfJobs() == 0;
+        diskCache = cacheDisabled || config.getDiskCacheDir().isEmpty() ? null : new BlsDiskCache(config);
+    }
+
+    /**
+     * Start the thread that periodically cleans up the cache (unless the cache is disabled).
+     *
+     * Subclasses should call this at the end of their constructor.
+     */
+    protected void startCleanupThread() {
+        if (!cacheDisabled) {
+            cleanupThread = new CleanupSearchesThread();
+            cleanupThread.setDaemon(true); // don't prevent JVM from exiting.
+            cleanupThread.start();
+        }
+    }
+
+    /**
+     * Clean up at the end of our lifetime.
+     */
+    @Override
+    public void cleanup() {
+        if (cleanupThread != null) {
+            cleanupThread.interrupt();
+            cleanupThread = null;
+        }
+        clear(true);
+        if (diskCache != null)
+            diskCache.cleanup();
+    }
+
+    /**
+     * Get a snapshot of the entries currently in the cache.
+     *
+     * @return list of entries (a copy that the caller may modify)
+     */
+    protected abstract List<BlsCacheEntry<?>> entries();
+
+    /**
+     * Abort searches if too much memory is in use or the search is taking too long.
+     * Remove older finished searches from cache. Start a queued search if load is low enough.
+     */
+    abstract void updateCache();
+
+    /**
+     * Write finished searches that were expensive to produce to the disk cache (if configured),
+     * so they survive eviction and restarts.
+     *
+     * Doesn't hold any cache lock; the disk cache writes the results in the background.
+     */
+    void offerToDiskCache() {
+        if (diskCache == null)
+            return;
+        for (BlsCacheEntry<?> entry: entries()) {
+            if (entry.resultIfFinished() != null && entry.markOfferedToDiskCache())
+                diskCache.put(entry);
+        }
+    }
+
+    /**
+     * Look for a search in the disk cache (if configured).
+     *
+     * This reads from disk, so don't call it while holding a cache lock.
+     *
+     * @param search the search
+     * @return a finished cache entry with the result, or null if not found
+     * @param <R> result type
+     */
+    protected <R extends SearchResult> BlsCacheEntry<R> getFromDiskCache(Search<R> search) {
+        if (diskCache == null)
+            return null;
+        BlsCacheEntry<R> entry = diskCache.get(search);
+        if (entry != null)
+            traceInfo("-- FROM DISK: {}", search);
+        return entry;
+    }
+
+    void traceInfo(String msg, Object... params) {
+        if (trace) {
+            logger.info(msg, params);
+        }
+    }
+
+    String getCacheStats() {
+        if (trace) {
+            Map<String, Integer> counts = getCountsPerStatus(entries());
+            return String.format("%d queued, %d running, %d finished, %d cancelled",
+                counts.get("queued"),
+                counts.get("running"),
+                counts.get("finished"),
+                counts.get("cancelled")
+            );
+        }
+        return "";
+    }
+
+    private static Map<String, Integer> getCountsPerStatus(List<BlsCacheEntry<?>> entries) {
+        int queued = 0, running = 0, finished = 0, cancelled = 0;
+        for (BlsCacheEntry<? extends SearchResult> entry: entries) {
+            if (!entry.wasStarted())
+                queued++;
+            else if (entry.isCancelled())
+                cancelled++;
+            else if (entry.isDone())
+                finished++;
+            else
+                running++;
+        }
+        Map<String, Integer> countPerStatus = new HashMap<>();
+        countPerStatus.put("queued", queued);
+        countPerStatus.put("running", running);
+        countPerStatus.put("finished", finished);
+        countPerStatus.put("cancelled", cancelled);
+        return countPerStatus;
+    }
+
+    void traceCacheStats() {
+        if (trace) {
+            String msg = getCacheStats();
+            if (!msg.equals(previousCacheStatsMessage)) {
+                double freeGigs = (double)(getFreeMemory() * 10 / ONE_GB_BYTES) / 10;
+                traceInfo("{}: {}, {}G free heap", "CACHE AFTER UPDATE", msg, freeGigs);
+            }
+            previousCacheStatsMessage = msg;
+        }
+    }
+
+    public int numberOfRunningSearches() {
+        return (int) entries().stream().filter(BlsCacheEntry::isRunning).count();
+    }
+
+    protected int numberOfQueuedSearches() {
+        return (int) entries().stream().filter(s -> !s.wasStarted()).count();
+    }
+
+    /**
+     * See if server load is low enough that we can start (unqueue) another search.
+     *
+     * @return true if we can start a search, false if it's still too busy
+     */
+    protected boolean canStartAnotherSearch() {
+        int runningSearches = numberOfRunningSearches();
+        if (runningSearches == 0)
+            return true;
+        long freeMemory = getFreeMemory();
+        int minFreeMemForSearchMegs = config.getMinFreeMemForSearchMegs();
+        boolean enoughMemory = freeMemory / ONE_MB_BYTES >= minFreeMemForSearchMegs;
+        boolean threadsAvailable = runningSearches < maxConcurrentSearches;
+        return enoughMemory && threadsAvailable;
+    }
+
+    /**
+     * Cancel a running search if it's taking too long (longer than maxSearchTimeSec).
+     *
+     * @param search running search
+     * @return true if the search was cancelled
+     */
+    protected boolean abortIfTakingTooLong(BlsCacheEntry<?> search) {
+        int maxSearchTimeSec = config.getMaxSearchTimeSec();
+        if (!search.isRunning() || search.timeUserWaitedMs() <= maxSearchTimeSec * 1000L)
+            return false;
+        // Search is taking too long. Cancel it.
+        traceInfo("Search is taking too long (time " + (search.timeUserWaitedMs()/1000) + "s > max time " + maxSearchTimeSec + "s)");
+        traceInfo("-- ABORT (taking too long): {}", search);
+        String maxTime = BlsUtils.describeIntervalSec(maxSearchTimeSec);
+        String retryTime = BlsUtils.describeIntervalSec(config.getDenyAbortedSearchSec());
+        search.setReason("Running search aborted because it took longer than " + maxTime + ". " +
+                "This is done to ease server load. If you want to try again, please wait " +
+                retryTime + ".");
+        search.cancel(true);
+        return true;
+    }
+
+    /**
+     * Is this a running count that no client has asked about for a while?
+     *
+     * @param search cache entry
+     * @return true if it's an abandoned count that should be aborted
+     */
+    protected boolean isAbandonedCount(BlsCacheEntry<?> search) {
+        return search.isRunning() && search.search() instanceof SearchCount &&
+                search.timeSinceLastAccessMs() > abortCountAfterSec() * 1000L;
+    }
+
+    /**
+     * Cancel an abandoned count.
+     *
+     * The caller should remove it from the cache as well. Abandoned counts are removed right
+     * away, because we do this quite quickly (e.g. 30s) and don't want to penalize users if
+     * they decide to come back to this search.
+     *
+     * @param search abandoned count
+     */
+    protected void abortAbandonedCount(BlsCacheEntry<?> search) {
+        traceInfo("-- ABORT (abandoned count): {}", search);
+        String maxTime = BlsUtils.describeIntervalSec(abortCountAfterSec());
+        search.setReason("Running count aborted because of runtime > " + maxTime + " with no requests. " +
+                "This is done to ease server load. If you need the results of this count, please try your search again.");
+        search.cancel(true);
+    }
+
+    private int abortCountAfterSec() {
+        // Don't abort count before hits search, as this will fail if a search is so heavy that it cannot
+        // produce the first page of hits before its count is aborted.
+        return Math.max(abandonedCountAbortTimeSec, config.getMaxJobAgeSec());
+    }
+
+    /**
+     * Has this finished (or cancelled) search been in the cache too long?
+     *
+     * @param search finished search
+     * @return true if it should be removed
+     */
+    protected boolean isSearchTooOld(BlsCacheEntry<?> search) {
+        if (config.getMaxJobAgeSec() < 0)
+            return false;
+        if (search.isCancelled()) {
+            // Cancelled (aborted) search kept in cache to prevent clients from resubmitting right away.
+            return search.timeSinceFinishedMs() > config.getDenyAbortedSearchSec() * 1000L ||
+                    search.timeSinceCreationMs() > config.getMaxJobAgeSec() * 1000L;
+        }
+        // Finished search.
+        return search.timeUnusedMs() > config.getMaxJobAgeSec() * 1000L;
+    }
+
+    /**
+     * How much memory should we free up by removing finished searches?
+     *
+     * @param sizeBytes estimated current cache size
+     * @return number of bytes to free up (zero or less if we don't need to)
+     */
+    protected long memoryToFreeUpBytes(long sizeBytes) {
+        long freeMegs = getFreeMemory() / ONE_MB_BYTES;
+        long memoryToFreeUpBytes = (config.getTargetFreeMemMegs() - freeMegs) * ONE_MB_BYTES;
+        int maxSizeMegs = config.getMaxEstimatedSizeMegs();
+        if (maxSizeMegs >= 0)
+            memoryToFreeUpBytes = Math.max(memoryToFreeUpBytes, sizeBytes - maxSizeMegs * ONE_MB_BYTES);
+        if (memoryToFreeUpBytes > 0) {
+            traceInfo("Cache too large or not enough free mem (cache " + sizeBytes / ONE_MB_BYTES +
+                    "M, max " + maxSizeMegs + "M; free " + freeMegs + "M, min free " +
+                    config.getTargetFreeMemMegs() + "M)");
+        }
+        return memoryToFreeUpBytes;
+    }
+
+    @Override
+    public Map<String, Object> getStatus() {
+        List<BlsCacheEntry<?>> entries = entries();
+        Map<String, Integer> counts = getCountsPerStatus(entries);
+        Map<String, Object> status = new HashMap<>(Map.ofEntries(
+            Map.entry("maxEstimatedSizeMegs", config.getMaxEstimatedSizeMegs()),
+            Map.entry("targetFreeMemMegs", config.getTargetFreeMemMegs()),
+            Map.entry("minFreeMemForSearchMegs", config.getMinFreeMemForSearchMegs()),
+            Map.entry("maxQueuedSearches", config.getMaxQueuedSearches()),
+            Map.entry("maxSearchTimeSec", config.getMaxSearchTimeSec()),
+            Map.entry("maxJobAgeSec", config.getMaxJobAgeSec()),
+            Map.entry("maxSearchAgeSec", config.getMaxJobAgeSec()),
+            Map.entry("sizeBytes", cacheSizeBytes),
+            Map.entry("numberOfSearches", entries.size()),
+            Map.entry("freeMemory", getFreeMemory()),
+            Map.entry("countsPerStatus", Map.of(
+                "queued", counts.get("queued"),
+                "running", counts.get("running"),
+                "finished", counts.get("finished"),
+                "cancelled", counts.get("cancelled")
+            ))
+        ));
+        if (diskCache != null)
+            status.put("diskCache", diskCache.getStatus());
+        return status;
+    }
+
+    @Override
+    public List<Map<String, Object>> getContents(boolean includeDebugInfo) {
+        return entries().stream().map(e -> e.getInfo(includeDebugInfo)).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,297 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.inl.blacklab.exceptions.ServerOverloaded;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.searches.Search;
+import nl.inl.blacklab.server.config.BLSConfig;
+
+/**
+ * A version of {@link BlsCache} that doesn't use a global lock.
+ *
+ * BlsCache synchronizes all operations on the same monitor, including the
+ * periodic cleanup, which sorts all entries by worthiness. Under high load,
+ * lookups have to wait for each other and for the cleanup.
+ *
+ * This implementation instead:
+ * <ul>
+ *     <li>keeps the entries in a {@link ConcurrentHashMap}, so lookups don't block each other;</li>
+ *     <li>uses {@link ConcurrentHashMap#computeIfAbsent(Object, java.util.function.Function)} so
+ *         concurrent requests for the same search share one entry;</li>
+ *     <li>evicts by sampling a few finished entries and removing the least worthy one,
+ *         instead of sorting all entries;</li>
+ *     <li>only locks (briefly) when deciding which queued search to start next.</li>
+ * </ul>
+ *
+ * Cache policy (maximum search time, maximum age, target free memory, etc.) and the optional
+ * disk cache are the same as BlsCache's, except that maxNumberOfJobs is also enforced here.
+ *
+ * Select it with <code>cache.implementation: BlsCacheConcurrent</code> in blacklab-server.yaml.
+ */
+public class BlsCacheConcurrent extends BlsCacheAbstract {
+
+    private static final Logger logger = LogManager.getLogger(BlsCacheConcurrent.class);
+
+    /** How many finished entries to look at when choosing one to evict */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    protected final Map<Search<?>, BlsCacheEntry<? extends SearchResult>> searches = new ConcurrentHashMap<>();
+
+    /** Held while choosing a queued search to start, so we don't start several at once */
+    private final Object startSearchLock = new Object();
+
+    public BlsCacheConcurrent(BLSConfig blsConfig, @SuppressWarnings("unused") ExecutorService executorService) {
+        super(blsConfig);
+        startCleanupThread();
+    }
+
+    @Override
+    protected List<BlsCacheEntry<?>> entries() {
+        return new ArrayList<>(searches.values());
+    }
+
+    /**
+     * Remove all cache entries for the specified index.
+     *
+     * @param index the index
+     */
+    @Override
+    public void removeSearchesForIndex(BlackLabIndex index) {
+        traceInfo("Remove searches for index: " + index.name());
+        searches.values().removeIf(entry -> {
+            if (entry.search().queryInfo().index() != index)
+                return false;
+            entry.cancel(true);
+            return true;
+        });
+    }
+
+    /**
+     * Get rid of all the cached Searches.
+     *
+     * @param cancelRunning if true, cancels all running searches as well.
+     */
+    @Override
+    public void clear(boolean cancelRunning) {
+        searches.values().removeIf(entry -> {
+            entry.cancel(true);
+            return true;
+        });
+        traceInfo("Cache cleared.");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends SearchResult> BlsCacheEntry<R> getAsync(Search<R> search, boolean allowQueue) {
+        boolean useCache = search.queryInfo().useCache() && !cacheDisabled;
+        BlsCacheEntry<R> future = useCache ? (BlsCacheEntry<R>) searches.get(search) : null;
+        if (future == null && useCache) {
+            // Not in memory, but maybe we still have the result on disk
+            BlsCacheEntry<R> fromDisk = getFromDiskCache(search);
+            if (fromDisk != null) {
+                future = (BlsCacheEntry<R>) searches.computeIfAbsent(search, k -> fromDisk);
+                if (future == fromDisk)
+                    return future;
+            }
+        }
+        if (future == null) {
+            int numQueued = numberOfQueuedSearches();
+            if (numQueued >= config.getMaxQueuedSearches()) {
+                logger.warn("Can't start new search, too many queued searches (numQueued = " + numQueued + ", maxQueuedSearches = " + config.getMaxQueuedSearches() + ")");
+                throw new ServerOverloaded("The server is too busy right now (" + numQueued + " searches queued). Please try again later.");
+            }
+
+            // Create the cache entry, unless another thread beat us to it.
+            // Note that all entries start "queued" (i.e. the search itself hasn't been started yet).
+            BlsCacheEntry<R> newEntry = new BlsCacheEntry<>(search);
+            future = useCache ? (BlsCacheEntry<R>) searches.computeIfAbsent(search, k -> newEntry) : newEntry;
+            if (future == newEntry) {
+                logger.info("not found in cache, starting search: " + search);
+                // Can we start the search, or should it remain queued for now?
+                if (!allowQueue || !useCache) {
+                    // No queueing allowed (i.e. subtask required by another subtask). Start the search right away.
+                    // (we also do this if you bypass the cache, because then queueing doesn't work)
+                    if (!allowQueue)
+                        traceInfo("-- STARTING: {} (TOP-LEVEL SEARCH)", search);
+                    else
+                        traceInfo("-- STARTING: {} (NOT USING CACHE)", search);
+                    future.startIfNotStarted();
+                } else {
+                    // Queueing is allowed.
+                    // Check if this (or an older queued search) can be started now.
+                    startSearchIfPossible(false);
+                    if (future.wasStarted()) {
+                        traceInfo("-- STARTING: {} (QUEUEING NOT NECESSARY)", search);
+                    } else {
+                        traceInfo("-- QUEUEING: {}", search);
+                    }
+                }
+                return future;
+            }
+        }
+
+        // Already in cache.
+        traceInfo("-- FOUND:    {}", search);
+        future.updateLastAccess();
+        // If another running search needs this search, but it was queued, start it now.
+        if (!allowQueue)
+            future.startIfNotStarted();
+        return future;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R extends SearchResult> BlsCacheEntry<R> remove(Search<R> search) {
+        BlsCacheEntry<R> future = (BlsCacheEntry<R>) searches.remove(search);
+        if (future != null)
+            traceInfo("-- REMOVED:  {} ({} searches left)", search, searches.size());
+        return future;
+    }
+
+    /**
+     * Remove this entry from the cache, if it's still there.
+     *
+     * Unlike {@link #remove(Search)}, this won't remove a newer entry for the same search.
+     *
+     * @param entry entry to remove
+     * @return true if the entry was removed
+     */
+    private boolean removeEntry(BlsCacheEntry<?> entry) {
+        boolean removed = searches.remove(entry.search(), entry);
+        if (removed)
+            traceInfo("-- REMOVED:  {} ({} searches left)", entry.search(), searches.size());
+        return removed;
+    }
+
+    /**
+     * If we can start another search, finds the worthiest queued search and start it.
+     *
+     * @param report if true (and trace is on), report the search we started
+     */
+    void startSearchIfPossible(boolean report) {
+        // Only one thread at a time decides what to start, or we might start too many
+        synchronized (startSearchLock) {
+            if (!canStartAnotherSearch())
+                return;
+
+            // Find the worthiest queued search (no need to sort everything for that)
+            // Only start one per iteration (give it a little time to start its subtasks)
+            BlsCacheEntry<?> best = null;
+            for (BlsCacheEntry<?> entry: searches.values()) {
+                if (entry.wasStarted())
+                    continue;
+                entry.calculateWorthiness();
+                if (best == null || entry.worthiness() > best.worthiness())
+                    best = entry;
+            }
+            if (best != null && best.startIfNotStarted()) {
+                if (report)
+                    traceInfo("-- UNQUEUE:  {}", best);
+            }
+        }
+    }
+
+    /**
+     * Abort searches if too much memory is in use or the search is taking too long.
+     * Remove older finished searches from cache. Start a queued search if load is low enough.
+     *
+     * Doesn't block other cache operations. Entries added while this runs will be
+     * considered the next time.
+     */
+    void updateCache() {
+        // Take a snapshot of the entries (doesn't block other threads)
+        List<BlsCacheEntry<?>> entries = entries();
+
+        long sizeBytes = 0;
+        for (BlsCacheEntry<?> entry: entries) {
+            sizeBytes += entry.ramBytesUsed();
+        }
+
+        //------------------
+        // STEP 1: abort searches that are taking too long, and remove old finished searches;
+        //         also abort any long-running counts that no client has asked about for a while.
+        List<BlsCacheEntry<?>> finished = new ArrayList<>();
+        for (BlsCacheEntry<?> search: entries) {
+            if (search.isRunning()) {
+                if (!abortIfTakingTooLong(search) && isAbandonedCount(search)) {
+                    removeEntry(search);
+                    abortAbandonedCount(search);
+                }
+                continue;
+            }
+            if (!search.isDone())
+                continue; // queued
+
+            if (isSearchTooOld(search)) {
+                traceInfo("Searchjob too old (age " + (int)(search.timeUnusedMs()/1000) + "s > max age "
+                        + config.getMaxJobAgeSec() + "s)");
+                traceInfo("-- REMOVE ({}): {}", "search too old", search);
+                removeEntry(search);
+            } else {
+                finished.add(search);
+            }
+        }
+
+        //------------------
+        // STEP 2: if the cache is too large, we're low on memory or have too many entries,
+        //         evict unworthy finished searches.
+        long memoryToFreeUpBytes = memoryToFreeUpBytes(sizeBytes);
+        int entriesToRemove = searches.size() - config.getMaxNumberOfJobs();
+        while ((memoryToFreeUpBytes > 0 || entriesToRemove > 0) && !finished.isEmpty()) {
+            BlsCacheEntry<?> victim = removeLeastWorthySample(finished);
+            traceInfo("-- REMOVE ({}): {}", memoryToFreeUpBytes > 0 ? "free up memory" : "too many entries", victim);
+            if (removeEntry(victim)) {
+                long victimSizeBytes = victim.ramBytesUsed();
+                memoryToFreeUpBytes -= victimSizeBytes;
+                sizeBytes -= victimSizeBytes;
+                entriesToRemove--;
+            }
+        }
+        cacheSizeBytes = sizeBytes;
+
+        // See if we can start a queued search
+        startSearchIfPossible(true);
+
+        // Report the cache status (if it changed)
+        traceCacheStats();
+    }
+
+    /**
+     * Choose an eviction candidate by sampling a few entries and picking the least worthy.
+     *
+     * This approximates "remove the least worthy entry" without sorting all entries.
+     * The chosen entry is removed from the list.
+     *
+     * @param candidates entries to choose from (must not be empty)
+     * @return the chosen entry
+     */
+    private static BlsCacheEntry<?> removeLeastWorthySample(List<BlsCacheEntry<?>> candidates) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int n = candidates.size();
+        int victimIndex = -1;
+        for (int i = 0; i < Math.min(n, EVICTION_SAMPLE_SIZE); i++) {
+            // If we have only a few candidates, just look at all of them
+            int index = n <= EVICTION_SAMPLE_SIZE ? i : random.nextInt(n);
+            BlsCacheEntry<?> candidate = candidates.get(index);
+            candidate.calculateWorthiness();
+            if (victimIndex < 0 || candidate.worthiness() < candidates.get(victimIndex).worthiness())
+                victimIndex = index;
+        }
+        // Remove by swapping with the last element (order doesn't matter)
+        BlsCacheEntry<?> victim = candidates.get(victimIndex);
+        candidates.set(victimIndex, candidates.get(n - 1));
+        candidates.remove(n - 1);
+        return victim;
+    }
+
+}
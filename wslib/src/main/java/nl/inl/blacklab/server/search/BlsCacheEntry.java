@@ -5,10 +5,12 @@ import java.io.StringWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.ThreadContext;
@@ -26,7 +28,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
     static final int POLLING_TIME_MS = 100;
 
     /** id for the next job started */
-    private static Long nextEntryId = 0L;
+    private static final AtomicLong nextEntryId = new AtomicLong();
 
     /** A peek at the result of the search, or null if not available */
     private T peekValue;
@@ -36,12 +38,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
     }
 
     public static long getNextEntryId() {
-        Long n;
-        synchronized(nextEntryId) {
-            n = nextEntryId;
-            nextEntryId++;
-        }
-        return n;
+        return nextEntryId.getAndIncrement();
     }
 
     /** Unique entry id */
@@ -58,7 +55,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      * Note that the actual result of this future is never retrieved,
      * because the thread sets our result instance variable directly.
      */
-    private Future<?> future = null;
+    private volatile Future<?> future = null;
 
     /** Result of the search (set directly by thread) */
     private T result = null;
@@ -79,7 +76,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
     private final long createTime;
 
     /** When was this entry last accessed (ms) */
-    private long lastAccessTime;
+    private volatile long lastAccessTime;
 
     /** When did we finish or cancel our task? (ms; set by thread) */
     private long doneTime = 0;
@@ -93,10 +90,13 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
      * started (because another search task needs its results, or because load is low enough for
      * "new" searches), start() is called and this is set to true.
      */
-    private boolean started = false;
+    private volatile boolean started = false;
 
     /** Was this cancelled? (future is set to null in that case, to free the memory, so we need this status) */
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
+
+    /** Have we offered our result to the disk cache yet? (only accessed by the cache) */
+    private boolean offeredToDiskCache = false;
 
     /**
      * Construct a cache entry.
@@ -109,11 +109,30 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         createTime = lastAccessTime = now();
     }
 
+    /**
+     * Construct a cache entry for a result we already have (e.g. read from the disk cache).
+     *
+     * The entry is finished right away.
+     *
+     * @param search the search
+     * @param result the result of the search
+     * @param processingTimeMs how long the search originally took (ms)
+     */
+    public BlsCacheEntry(Search<T> search, T result, long processingTimeMs) {
+        this(search);
+        this.result = result;
+        started = true;
+        future = CompletableFuture.completedFuture(null);
+        doneTime = createTime;
+        timer().add(processingTimeMs);
+        offeredToDiskCache = true;
+    }
+
     /**
      * Start performing the task.
      */
     @Override
-    public void start() {
+    public synchronized void start() {
         if (future != null)
             throw new RuntimeException("Search already started");
         started = true;
@@ -125,6 +144,20 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         });
     }
 
+    /**
+     * Start performing the task, unless that was already done.
+     *
+     * Useful if several threads may try to start the same queued search.
+     *
+     * @return true if we started the task, false if it was already started
+     */
+    public synchronized boolean startIfNotStarted() {
+        if (started)
+            return false;
+        start();
+        return true;
+    }
+
     /** Perform the requested search.
      *
      * {@link #start()} submits a Runnable to the search executor service that calls this.
@@ -305,7 +338,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
             // - the smaller, the worthier
 
             // Size score from 1-100; 1M per unit, so 100 corresponds to 100M or larger
-            long sizeScore = Math.max(1, Math.min(100, numberOfStoredHits() * BlsCache.SIZE_OF_HIT / 1000000));
+            long sizeScore = Math.max(1, Math.min(100, ramBytesUsed() / 1000000));
 
             // Run time score from 1-10000; 0.03s per unit, so 10000 corresponds to 5 minutes or longer
             long runTimeScore = Math.max(1, Math.min(10000, timeUserWaitedMs() * 10 / 300));
@@ -358,12 +391,45 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         return exceptionThrown != null;
     }
 
+    /**
+     * Get the result, if the search finished successfully.
+     *
+     * @return the result, or null if not available (yet)
+     */
+    T resultIfFinished() {
+        return isDone() && !isCancelled() && exceptionThrown == null ? result : null;
+    }
+
+    /**
+     * Mark this entry as offered to the disk cache.
+     *
+     * @return true if it hadn't been offered yet
+     */
+    boolean markOfferedToDiskCache() {
+        if (offeredToDiskCache)
+            return false;
+        offeredToDiskCache = true;
+        return true;
+    }
+
     public long numberOfStoredHits() {
         if (result == null)
             return 0;
         return result.numberOfResultObjects();
     }
 
+    /**
+     * Estimate the memory used by the result of this search.
+     *
+     * @return estimated number of bytes, or 0 if there's no result (yet)
+     */
+    public long ramBytesUsed() {
+        T theResult = result; // avoid locking
+        if (theResult == null)
+            return 0;
+        return theResult.ramBytesUsed();
+    }
+
     public String status() {
         if (!wasStarted())
             return "queued";
@@ -384,6 +450,7 @@ public class BlsCacheEntry<T extends SearchResult> extends SearchCacheEntry<T> {
         if (!StringUtils.isEmpty(reason))
             stats.put("cancelReason", reason);
         stats.put("numberOfStoredHits", numberOfStoredHits());
+        stats.put("sizeBytes", ramBytesUsed());
         stats.put("processingTime", timer().time() / 1000.0);
         stats.put("userWaitTime", timeUserWaitedMs() / 1000.0);
         stats.put("notAccessedFor", timeSinceLastAccessMs() / 1000.0);
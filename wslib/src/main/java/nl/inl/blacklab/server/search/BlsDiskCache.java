@@ -0,0 +1,295 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+
+import nl.inl.blacklab.exceptions.BlackLabRuntimeException;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.search.results.SearchResultCodec;
+import nl.inl.blacklab.searches.Search;
+import nl.inl.blacklab.server.config.BLSConfigCache;
+
+/**
+ * Persistent (on-disk) second tier for {@link BlsCache}.
+ *
+ * Finished searches that took a while to produce are written to a local directory in a
+ * compact binary form (see {@link SearchResultCodec}), so they survive eviction from the
+ * in-memory cache and server restarts. If a search is not in memory, we check here before
+ * running it again.
+ *
+ * Entries are keyed by the search (its class and description) and the index (its location and
+ * Lucene index version), so results are never reused after the index changes. The directory is
+ * kept below a maximum size by removing the least recently used entries; file modification times
+ * record last use, so this survives restarts as well. Files are memory-mapped when read.
+ */
+public class BlsDiskCache {
+
+    private static final Logger logger = LogManager.getLogger(BlsDiskCache.class);
+
+    /** Bytes in one megabyte */
+    private static final long ONE_MB_BYTES = 1_000_000;
+
+    /** Extension for our cache files */
+    private static final String FILE_EXTENSION = ".blrc";
+
+    /** Extension for cache files that are still being written */
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /** Start of every cache file ("BLRC") */
+    private static final int MAGIC = 0x424C5243;
+
+    /** Version of our file header. Increase when making incompatible changes. */
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    /** Directory we store our entries in */
+    private final File dir;
+
+    private final long maxSizeBytes;
+
+    /** Minimum original processing time for a result to be written to disk (ms) */
+    private final long minSearchTimeMs;
+
+    /** Size of each entry file by file name, least recently used first */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of our entry files */
+    private long sizeBytes = 0;
+
+    /** Writes entries in the background, so cache maintenance doesn't have to wait for the disk */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "BlsDiskCacheWriter");
+        t.setDaemon(true); // don't prevent JVM from exiting.
+        return t;
+    });
+
+    public BlsDiskCache(BLSConfigCache config) {
+        dir = new File(config.getDiskCacheDir());
+        maxSizeBytes = config.getDiskCacheMaxSizeMegs() * ONE_MB_BYTES;
+        minSearchTimeMs = config.getDiskCacheMinSearchTimeMs();
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new BlackLabRuntimeException("Could not create disk cache directory " + dir);
+
+        // Find existing entries, least recently used first, and remove any incomplete files
+        File[] files = dir.listFiles();
+        if (files == null)
+            throw new BlackLabRuntimeException("Could not read disk cache directory " + dir);
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file: files) {
+            if (file.getName().endsWith(FILE_EXTENSION)) {
+                entries.put(file.getName(), file.length());
+                sizeBytes += file.length();
+            } else if (file.getName().endsWith(TEMP_FILE_EXTENSION)) {
+                deleteFile(file);
+            }
+        }
+        removeLeastRecentlyUsed();
+        logger.info("Disk cache in " + dir + ": " + entries.size() + " entries, " + sizeBytes / ONE_MB_BYTES + "M");
+    }
+
+    /**
+     * Determine the key for a search.
+     *
+     * @param search the search
+     * @return key, or null if we can't store results for this search
+     */
+    private static String key(Search<?> search) {
+        BlackLabIndex index = search.queryInfo().index();
+        IndexReader reader = index.reader();
+        if (!(reader instanceof DirectoryReader) || index.indexDirectory() == null)
+            return null; // we can't tell if the index changed
+        return index.indexDirectory().getAbsolutePath() + "\n" +
+                ((DirectoryReader) reader).getVersion() + "\n" +
+                search.queryInfo().field().name() + "\n" +
+                search.getClass().getName() + "\n" +
+                search;
+    }
+
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            BigInteger hash = new BigInteger(1, digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+            return String.format("%064x", hash) + FILE_EXTENSION;
+        } catch (NoSuchAlgorithmException e) {
+            throw BlackLabRuntimeException.wrap(e);
+        }
+    }
+
+    /**
+     * Get a search from the disk cache.
+     *
+     * @param search the search
+     * @return a finished cache entry with the result, or null if not found
+     * @param <R> result type
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends SearchResult> BlsCacheEntry<R> get(Search<R> search) {
+        String key = key(search);
+        if (key == null)
+            return null;
+        String fileName = fileName(key);
+        synchronized (this) {
+            if (entries.get(fileName) == null) // (also marks the entry as recently used)
+                return null;
+        }
+        File file = new File(dir, fileName);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FILE_FORMAT_VERSION || in.getInt() != SearchResultCodec.FORMAT_VERSION) {
+                // Written by a different version; we can't use it
+                remove(fileName);
+                return null;
+            }
+            byte[] storedKey = new byte[in.getInt()];
+            in.get(storedKey);
+            if (!key.equals(new String(storedKey, StandardCharsets.UTF_8)))
+                return null; // different search with the same hash (very unlikely)
+            long processingTimeMs = in.getLong();
+            R result = (R) SearchResultCodec.decode(search.queryInfo(), in);
+            if (!file.setLastModified(System.currentTimeMillis()))
+                logger.debug("Could not update last modified time of " + file);
+            return new BlsCacheEntry<>(search, result, processingTimeMs);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read disk cache entry " + file + " for " + search + ", removing it", e);
+            remove(fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Write the result of a finished search to the disk cache, if it's worth it.
+     *
+     * Results are checked and written in the background, so this returns right away.
+     *
+     * @param entry finished cache entry
+     */
+    public void put(BlsCacheEntry<?> entry) {
+        long processingTimeMs = entry.timer().time();
+        SearchResult result = entry.resultIfFinished();
+        if (processingTimeMs < minSearchTimeMs || result == null)
+            return;
+        try {
+            writer.execute(() -> write(entry.search(), result, processingTimeMs));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Disk cache closed, not writing " + entry.search());
+        }
+    }
+
+    private void write(Search<?> search, SearchResult result, long processingTimeMs) {
+        if (!SearchResultCodec.canEncode(result))
+            return;
+        String key = key(search);
+        if (key == null)
+            return;
+        String fileName = fileName(key);
+        synchronized (this) {
+            if (entries.containsKey(fileName))
+                return;
+        }
+        File tempFile = new File(dir, fileName + TEMP_FILE_EXTENSION);
+        File file = new File(dir, fileName);
+        try {
+            boolean encoded;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FILE_FORMAT_VERSION);
+                out.writeInt(SearchResultCodec.FORMAT_VERSION);
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeLong(processingTimeMs);
+                encoded = SearchResultCodec.encode(result, out);
+            }
+            if (!encoded || tempFile.length() > maxSizeBytes) {
+                deleteFile(tempFile);
+                return;
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Long previousSize = entries.put(fileName, file.length());
+                sizeBytes += file.length() - (previousSize == null ? 0 : previousSize);
+                removeLeastRecentlyUsed();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write disk cache entry " + file, e);
+            deleteFile(tempFile);
+        }
+    }
+
+    /** Remove least recently used entries until we're within our maximum size. */
+    private synchronized void removeLeastRecentlyUsed() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            deleteFile(new File(dir, entry.getKey()));
+            sizeBytes -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    private synchronized void remove(String fileName) {
+        Long size = entries.remove(fileName);
+        if (size != null) {
+            deleteFile(new File(dir, fileName));
+            sizeBytes -= size;
+        }
+    }
+
+    private static void deleteFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("Could not delete disk cache file " + file, e);
+        }
+    }
+
+    /**
+     * Stop writing entries, waiting a little while for pending writes to finish.
+     */
+    public void cleanup() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS))
+                writer.shutdownNow();
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        return Map.of(
+            "dir", dir.getAbsolutePath(),
+            "maxSizeMegs", maxSizeBytes / ONE_MB_BYTES,
+            "minSearchTimeMs", minSearchTimeMs,
+            "sizeBytes", sizeBytes,
+            "numberOfEntries", entries.size()
+        );
+    }
+}
@@ -125,6 +125,28 @@ public class ServletUtil {
         }
     }
 
+    /**
+     * Does the client accept a gzipped response?
+     *
+     * @param request the servlet request
+     * @return true if the Accept-Encoding header includes gzip (with a nonzero quality value)
+     */
+    public static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null)
+            return false;
+        boolean wildcard = false;
+        for (String encoding: acceptEncoding.split(",")) {
+            String[] parts = encoding.trim().split("\\s*;\\s*");
+            boolean acceptable = parts.length < 2 || !parts[1].matches("q=0(\\.0*)?");
+            if (parts[0].equalsIgnoreCase("gzip"))
+                return acceptable;
+            if (parts[0].equals("*"))
+                wildcard = acceptable;
+        }
+        return wildcard;
+    }
+
     /**
      * Returns the path info and query string (if any) of the request URL
      *
@@ -0,0 +1,207 @@
+package nl.inl.blacklab.server.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.InterruptedSearch;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.SearchResult;
+import nl.inl.blacklab.searches.AbstractSearch;
+import nl.inl.blacklab.searches.ActiveSearch;
+import nl.inl.blacklab.server.config.BLSConfig;
+import nl.inl.blacklab.testutil.TestIndex;
+
+public class TestBlsCacheConcurrent {
+
+    private static final int MAX_NUMBER_OF_JOBS = 3;
+
+    /** How long to wait for something that should happen (s) */
+    private static final int TIMEOUT_SEC = 10;
+
+    /** Result of our test searches */
+    private static final SearchResult RESULT = new SearchResult() {
+        @Override
+        public long numberOfResultObjects() {
+            return 1;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return 100;
+        }
+    };
+
+    /**
+     * A search that doesn't finish until it's released (or interrupted).
+     *
+     * Counts how often it was executed.
+     */
+    private static class TestSearch extends AbstractSearch<SearchResult> {
+
+        private final String name;
+
+        final CountDownLatch release;
+
+        final AtomicInteger executions = new AtomicInteger();
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        TestSearch(QueryInfo queryInfo, String name, boolean finishRightAway) {
+            super(queryInfo);
+            this.name = name;
+            release = new CountDownLatch(finishRightAway ? 0 : 1);
+        }
+
+        @Override
+        public SearchResult executeInternal(ActiveSearch<SearchResult> activeSearch) {
+            executions.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedSearch(e);
+            }
+            return RESULT;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && name.equals(((TestSearch) o).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(super.hashCode(), name);
+        }
+
+        @Override
+        public String toString() {
+            return toString("test", name);
+        }
+    }
+
+    private BlackLabIndex index;
+
+    private BlsCacheConcurrent cache;
+
+    @Before
+    public void setUp() {
+        index = TestIndex.getReusable(null).index();
+        BLSConfig config = new BLSConfig();
+        config.getCache().setMaxNumberOfJobs(MAX_NUMBER_OF_JOBS);
+        config.getCache().setTargetFreeMemMegs(0); // (only evict because of the number of entries)
+        cache = new BlsCacheConcurrent(config, null);
+    }
+
+    @After
+    public void tearDown() {
+        cache.cleanup();
+    }
+
+    private TestSearch search(String name, boolean finishRightAway) {
+        return new TestSearch(QueryInfo.create(index), name, finishRightAway);
+    }
+
+    private static void waitUntilRunning(TestSearch search) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (search.executions.get() == 0) {
+            Assert.assertTrue("Search wasn't started", System.currentTimeMillis() - start < TIMEOUT_SEC * 1000L);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testConcurrentGetAsyncSharesEntry() throws Exception {
+        int numberOfThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            // All threads ask for the same search at the same time (well, equal searches)
+            CountDownLatch go = new CountDownLatch(1);
+            List<TestSearch> searches = new ArrayList<>();
+            List<Callable<BlsCacheEntry<SearchResult>>> tasks = new ArrayList<>();
+            for (int i = 0; i < numberOfThreads; i++) {
+                TestSearch equalSearch = search("shared", false);
+                searches.add(equalSearch);
+                tasks.add(() -> {
+                    go.await();
+                    return cache.getAsync(equalSearch, true);
+                });
+            }
+            List<Future<BlsCacheEntry<SearchResult>>> futures = new ArrayList<>();
+            for (Callable<BlsCacheEntry<SearchResult>> task: tasks)
+                futures.add(executor.submit(task));
+            go.countDown();
+            BlsCacheEntry<SearchResult> entry = futures.get(0).get();
+            for (Future<BlsCacheEntry<SearchResult>> f: futures)
+                Assert.assertSame(entry, f.get());
+
+            // Only the search from the thread that created the entry was executed, once
+            TestSearch search = (TestSearch) entry.search();
+            waitUntilRunning(search);
+            search.release.countDown();
+            Assert.assertSame(RESULT, entry.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+            Assert.assertEquals(1, searches.stream().mapToInt(ts -> ts.executions.get()).sum());
+            Assert.assertEquals(1, cache.entries().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvictsFinishedSearchesOverMaxNumberOfJobs() throws Exception {
+        List<BlsCacheEntry<SearchResult>> finished = new ArrayList<>();
+        for (int i = 0; i < MAX_NUMBER_OF_JOBS + 2; i++) {
+            BlsCacheEntry<SearchResult> entry = cache.getAsync(search("finished" + i, true), false);
+            entry.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+            finished.add(entry);
+        }
+        TestSearch running = search("running", false);
+        BlsCacheEntry<SearchResult> runningEntry = cache.getAsync(running, false);
+        waitUntilRunning(running);
+
+        // (the cleanup thread may already have done this; either way, the result should be the same)
+        cache.updateCache();
+
+        // Only finished searches were evicted, until we're at the maximum number of entries
+        List<BlsCacheEntry<?>> entries = cache.entries();
+        Assert.assertEquals(MAX_NUMBER_OF_JOBS, entries.size());
+        Assert.assertTrue(entries.contains(runningEntry));
+        Assert.assertFalse(runningEntry.isCancelled());
+        Assert.assertEquals(MAX_NUMBER_OF_JOBS - 1, finished.stream().filter(entries::contains).count());
+        running.release.countDown();
+    }
+
+    @Test
+    public void testClearCancelsRunningSearch() throws Exception {
+        TestSearch search = search("cancelled", false);
+        BlsCacheEntry<SearchResult> entry = cache.getAsync(search, true);
+        waitUntilRunning(search);
+
+        cache.clear(true);
+        Assert.assertTrue(entry.isCancelled());
+        Assert.assertTrue("Search thread wasn't interrupted", search.interrupted.await(TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertTrue(cache.entries().isEmpty());
+
+        // Asking for the search again starts a new one instead of returning the cancelled entry
+        TestSearch again = search("cancelled", true);
+        BlsCacheEntry<SearchResult> newEntry = cache.getAsync(again, true);
+        Assert.assertNotSame(entry, newEntry);
+        Assert.assertSame(RESULT, newEntry.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(1, again.executions.get());
+    }
+
+}
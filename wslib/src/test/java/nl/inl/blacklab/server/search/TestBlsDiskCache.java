@@ -0,0 +1,147 @@
+package nl.inl.blacklab.server.search;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.inl.blacklab.exceptions.InvalidQuery;
+import nl.inl.blacklab.queryParser.corpusql.CorpusQueryLanguageParser;
+import nl.inl.blacklab.resultproperty.HitPropertyDocumentStoredField;
+import nl.inl.blacklab.search.BlackLabIndex;
+import nl.inl.blacklab.search.results.HitGroups;
+import nl.inl.blacklab.search.results.QueryInfo;
+import nl.inl.blacklab.search.results.Results;
+import nl.inl.blacklab.searches.SearchHitGroups;
+import nl.inl.blacklab.server.config.BLSConfigCache;
+import nl.inl.blacklab.testutil.TestIndex;
+import nl.inl.util.UtilsForTesting;
+
+public class TestBlsDiskCache {
+
+    private static final int ENTRY_SIZE_BYTES = 400_000;
+
+    private UtilsForTesting.TestDir dir;
+
+    private BLSConfigCache config;
+
+    private BlsDiskCache diskCache;
+
+    @Before
+    public void setUp() {
+        dir = UtilsForTesting.createBlackLabTestDir("TestBlsDiskCache");
+        config = new BLSConfigCache();
+        config.setDiskCacheDir(dir.file().getAbsolutePath());
+        config.setDiskCacheMaxSizeMegs(1);
+        config.setDiskCacheMinSearchTimeMs(0);
+    }
+
+    @After
+    public void tearDown() {
+        if (diskCache != null)
+            diskCache.cleanup();
+        dir.close();
+    }
+
+    private static SearchHitGroups search(String pattern) throws InvalidQuery {
+        BlackLabIndex index = TestIndex.getReusable(null).index();
+        return index.search()
+                .find(CorpusQueryLanguageParser.parse(pattern).toQuery(QueryInfo.create(index)))
+                .groupWithStoredHits(new HitPropertyDocumentStoredField(index, "title"), Results.NO_LIMIT);
+    }
+
+    /** Write a search result to a new disk cache, then reopen it (waits for the write to finish) */
+    private void putAndReopen(SearchHitGroups search) throws InvalidQuery {
+        diskCache = new BlsDiskCache(config);
+        diskCache.put(new BlsCacheEntry<>(search, search.execute(), 1000));
+        diskCache.cleanup();
+        diskCache = new BlsDiskCache(config);
+    }
+
+    private File[] entryFiles() {
+        File[] files = dir.file().listFiles((d, name) -> name.endsWith(".blrc"));
+        Assert.assertNotNull(files);
+        return files;
+    }
+
+    private void createEntryFile(String name, long lastModified) throws IOException {
+        File file = new File(dir.file(), name);
+        Files.write(file.toPath(), new byte[ENTRY_SIZE_BYTES]);
+        Assert.assertTrue(file.setLastModified(lastModified));
+    }
+
+    @Test
+    public void testRoundTrip() throws InvalidQuery, InterruptedException, ExecutionException {
+        SearchHitGroups search = search("'the'");
+        putAndReopen(search);
+        Assert.assertEquals(1, entryFiles().length);
+
+        BlsCacheEntry<HitGroups> entry = diskCache.get(search);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(1000, entry.timer().time());
+        HitGroups expected = search.execute();
+        HitGroups actual = entry.get();
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.hitsStats().countedTotal(), actual.hitsStats().countedTotal());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).identity(), actual.get(i).identity());
+            Assert.assertEquals(expected.get(i).size(), actual.get(i).size());
+        }
+
+        // A different search is not found
+        Assert.assertNull(diskCache.get(search("'fox'")));
+    }
+
+    @Test
+    public void testOldVersionIsRemoved() throws InvalidQuery, IOException {
+        SearchHitGroups search = search("'the'");
+        putAndReopen(search);
+        File file = entryFiles()[0];
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x424C5243); // correct magic number...
+            out.writeInt(0);          // ...but a file format version we don't know
+        }
+
+        Assert.assertNull(diskCache.get(search));
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testCorruptFileIsRemoved() throws InvalidQuery, IOException {
+        SearchHitGroups search = search("'the'");
+        putAndReopen(search);
+        File file = entryFiles()[0];
+        byte[] contents = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(contents, contents.length / 2)); // truncated
+
+        Assert.assertNull(diskCache.get(search));
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testRemoveLeastRecentlyUsed() throws IOException {
+        long now = System.currentTimeMillis();
+        createEntryFile("a.blrc", now - 30_000);
+        createEntryFile("b.blrc", now - 20_000);
+        createEntryFile("c.blrc", now - 10_000);
+        createEntryFile("d.blrc.tmp", now); // incomplete write
+
+        // Together, the entries are larger than 1M, so the oldest should be removed
+        diskCache = new BlsDiskCache(config);
+        Assert.assertFalse(new File(dir.file(), "a.blrc").exists());
+        Assert.assertTrue(new File(dir.file(), "b.blrc").exists());
+        Assert.assertTrue(new File(dir.file(), "c.blrc").exists());
+        Assert.assertFalse(new File(dir.file(), "d.blrc.tmp").exists());
+        Assert.assertEquals(2, diskCache.getStatus().get("numberOfEntries"));
+        Assert.assertEquals(2L * ENTRY_SIZE_BYTES, diskCache.getStatus().get("sizeBytes"));
+    }
+
+}